@@ -27,8 +27,10 @@ java {
 
 application {
     mainClass.set("dev.argon.jawawasm.app.App")
+    applicationDefaultJvmArgs = listOf("--enable-native-access=ALL-UNNAMED")
 }
 
 tasks.named<Test>("test") {
     useJUnitPlatform()
+    jvmArgs("--enable-native-access=ALL-UNNAMED")
 }
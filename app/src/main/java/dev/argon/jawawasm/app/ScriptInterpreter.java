@@ -33,6 +33,7 @@ public final class ScriptInterpreter implements AutoCloseable {
 	 * Create a ScriptInterpreter.
 	 * @param wasmExecutable Path to the reference interpreter.
 	 * @param output Writer to receive output.
+	 * @throws MemoryBudgetExceededException if the memory of the spectest module cannot be created.
 	 */
 	public ScriptInterpreter(Path wasmExecutable, PrintWriter output) {
 		this.wasmExecutable = wasmExecutable;
@@ -130,7 +131,7 @@ public final class ScriptInterpreter implements AutoCloseable {
 							runAction(action);
 						}
 						catch(ExecutionException ex) {
-							if(ex.getCause() instanceof StackOverflowError) {
+							if(ex.getCause() instanceof CallStackExhaustedException || ex.getCause() instanceof StackOverflowError) {
 								foundError = true;
 							}
 							else {
@@ -326,6 +327,18 @@ public final class ScriptInterpreter implements AutoCloseable {
 				}
 			}
 
+			case "unaligned atomic" -> {
+				if(error instanceof UnalignedAtomicException) {
+					gotExpectedError = true;
+				}
+			}
+
+			case "expected shared memory" -> {
+				if(error instanceof UnsharedMemoryException) {
+					gotExpectedError = true;
+				}
+			}
+
 			case String m when m.startsWith("uninitialized element") -> {
 				if(error instanceof NullPointerException) {
 					gotExpectedError = true;
@@ -6,6 +6,7 @@ plugins {
     `java-library`
     `maven-publish`
     signing
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 
@@ -20,6 +21,10 @@ dependencies {
     api(project(":format"))
     compileOnly("org.jspecify:jspecify:0.3.0")
     testImplementation("org.junit.jupiter:junit-jupiter:5.9.1")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+    // The benchmarks build their modules with the helpers used by the tests.
+    jmhImplementation(sourceSets["test"].output)
 }
 
 java {
@@ -71,6 +76,35 @@ publishing {
     }
 }
 
+tasks.withType<Test>().configureEach {
+    jvmArgs("--enable-native-access=ALL-UNNAMED")
+}
+
+tasks.named<Test>("test") {
+    useJUnitPlatform {
+        excludeTags("stress", "soak")
+    }
+}
+
+// Long-running stress and soak tests, which are not part of the regular build.
+tasks.register<Test>("stressTest") {
+    description = "Runs the stress and soak tests."
+    group = "verification"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform {
+        includeTags("stress", "soak")
+    }
+    testLogging {
+        showStandardStreams = true
+    }
+}
+
+jmh {
+    // Reports the allocation rate of each benchmark.
+    profilers.add("gc")
+}
+
 signing {
     sign(publishing.publications["mavenJava"])
 }
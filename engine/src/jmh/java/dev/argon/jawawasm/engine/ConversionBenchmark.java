@@ -0,0 +1,212 @@
+package dev.argon.jawawasm.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The conversions between floats and unsigned or range checked integers in Util,
+ * compared with the BigDecimal versions that they replaced.
+ * The inputs are in range, so that none of the conversions trap.
+ * Run with the jmh task.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class ConversionBenchmark {
+
+	private static final int VALUES = 1024;
+
+	// Half of the values have the top bit set, so they are negative as signed longs.
+	private long[] u64s;
+
+	private double[] s32Doubles;
+	private double[] s64Doubles;
+	private double[] u32Doubles;
+	private double[] u64Doubles;
+
+	@Setup
+	public void setup() {
+		var random = new Random(0);
+		u64s = new long[VALUES];
+		s32Doubles = new double[VALUES];
+		s64Doubles = new double[VALUES];
+		u32Doubles = new double[VALUES];
+		u64Doubles = new double[VALUES];
+		for(int i = 0; i < VALUES; ++i) {
+			u64s[i] = random.nextLong();
+			s32Doubles[i] = (random.nextDouble() - 0.5) * 0x1p32;
+			s64Doubles[i] = (random.nextDouble() - 0.5) * 0x1p63;
+			u32Doubles[i] = random.nextDouble() * 0x1p32;
+			u64Doubles[i] = random.nextDouble() * 0x1p64;
+		}
+	}
+
+	@Benchmark
+	public float u64ToF32() {
+		float sum = 0;
+		for(long value : u64s) {
+			sum += Util.u64ToF32(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float u64ToF32BigDecimal() {
+		float sum = 0;
+		for(long value : u64s) {
+			sum += new BigDecimal(Long.toUnsignedString(value)).floatValue();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double u64ToF64() {
+		double sum = 0;
+		for(long value : u64s) {
+			sum += Util.u64ToF64(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double u64ToF64BigDecimal() {
+		double sum = 0;
+		for(long value : u64s) {
+			sum += new BigDecimal(Long.toUnsignedString(value)).doubleValue();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int truncF64ToS32() {
+		int sum = 0;
+		for(double value : s32Doubles) {
+			sum += Util.truncF64ToS32(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int truncF64ToS32BigDecimal() {
+		int sum = 0;
+		for(double value : s32Doubles) {
+			sum += truncF64ToS32BigDecimal(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long truncF64ToS64() {
+		long sum = 0;
+		for(double value : s64Doubles) {
+			sum += Util.truncF64ToS64(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long truncF64ToS64BigDecimal() {
+		long sum = 0;
+		for(double value : s64Doubles) {
+			sum += truncF64ToS64BigDecimal(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int truncF64ToU32() {
+		int sum = 0;
+		for(double value : u32Doubles) {
+			sum += Util.truncF64ToU32(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int truncF64ToU32BigDecimal() {
+		int sum = 0;
+		for(double value : u32Doubles) {
+			sum += truncF64ToU32BigDecimal(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long truncF64ToU64() {
+		long sum = 0;
+		for(double value : u64Doubles) {
+			sum += Util.truncF64ToU64(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long truncF64ToU64BigDecimal() {
+		long sum = 0;
+		for(double value : u64Doubles) {
+			sum += truncF64ToU64BigDecimal(value);
+		}
+		return sum;
+	}
+
+	// The versions of the truncations before they were rewritten without BigDecimal.
+
+	private static int truncF64ToS32BigDecimal(double a) {
+		if(!Double.isFinite(a)) {
+			throw new ArithmeticException();
+		}
+
+		var value = new BigDecimal(a);
+		if(value.compareTo(new BigDecimal((long)Integer.MIN_VALUE - 1)) <= 0 || value.compareTo(new BigDecimal((long)Integer.MAX_VALUE + 1)) >= 0) {
+			throw new ArithmeticException();
+		}
+
+		return value.intValue();
+	}
+
+	private static long truncF64ToS64BigDecimal(double a) {
+		if(!Double.isFinite(a)) {
+			throw new ArithmeticException();
+		}
+
+		var value = new BigDecimal(a);
+		if(value.compareTo(new BigDecimal(Long.MIN_VALUE).subtract(BigDecimal.ONE)) <= 0 || value.compareTo(new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE)) >= 0) {
+			throw new ArithmeticException();
+		}
+
+		return value.longValue();
+	}
+
+	private static int truncF64ToU32BigDecimal(double a) {
+		if(!Double.isFinite(a) || a <= -1.0) {
+			throw new ArithmeticException();
+		}
+
+		var value = new BigDecimal(a);
+		if(value.compareTo(new BigDecimal(4294967296L)) >= 0) {
+			throw new ArithmeticException();
+		}
+
+		return value.intValue();
+	}
+
+	private static long truncF64ToU64BigDecimal(double a) {
+		if(!Double.isFinite(a) || a <= -1.0) {
+			throw new ArithmeticException();
+		}
+
+		var value = new BigDecimal(a);
+		if(value.compareTo(new BigDecimal("18446744073709551616")) >= 0) {
+			throw new ArithmeticException();
+		}
+
+		return value.longValue();
+	}
+
+}
@@ -0,0 +1,69 @@
+package dev.argon.jawawasm.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+
+/**
+ * The cost of fuel metering for a loop of arithmetic, in the interpreter and in compiled code.
+ * Each call runs 1000 iterations, and every iteration is charged at the loop header and at the branch.
+ * Run with the jmh task.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class FuelBenchmark {
+
+	// sum returns the sum of the integers below its argument.
+	private static final TestModule MODULE = new TestModule()
+		.function("sum", types(I32), types(I32), types(I32), code()
+			.op(0x03, 0x40)
+			.localGet(1).localGet(0).op(0x6A).localSet(1)
+			.localGet(0).i32Const(1).op(0x6B).op(0x22, 0x00)
+			.op(0x0D, 0x00)
+			.op(0x0B)
+			.localGet(1));
+
+	@Param({ "interpreter", "interpreter+fuel", "compiler", "compiler+fuel" })
+	public String tier;
+
+	private Engine engine;
+	private WasmFunction sum;
+	private Invocation invocation;
+	private final Object[] args = { 1000 };
+
+	@Setup
+	public void setup() throws Throwable {
+		engine = new Engine();
+		engine.setCompilerEnabled(tier.startsWith("compiler"));
+		engine.setCompilerThreads(0);
+		engine.setCompileThreshold(1);
+		engine.setFuelEnabled(tier.endsWith("+fuel"));
+
+		var instance = engine.instantiateModule(MODULE.read(), name -> { throw new ModuleResolutionException(); });
+		sum = (WasmFunction)instance.getExport("sum");
+
+		// Enough fuel that the benchmark never runs out.
+		invocation = new Invocation(engine);
+		invocation.setFuel(Long.MAX_VALUE);
+
+		// Compiles the function before the measurement.
+		invocation.invokeNow(sum, args);
+	}
+
+	@TearDown
+	public void tearDown() {
+		engine.close();
+	}
+
+	@Benchmark
+	public Object[] sum() throws Throwable {
+		return invocation.invokeNow(sum, args);
+	}
+
+}
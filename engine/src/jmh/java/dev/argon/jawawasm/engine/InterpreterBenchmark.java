@@ -0,0 +1,71 @@
+package dev.argon.jawawasm.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+
+/**
+ * Calls into the interpreter, with the compiler disabled.
+ * The values of the interpreter are kept in primitive slots, so they are not allocated,
+ * and the gc profiler, which the jmh task enables, shows what is allocated for each call.
+ * Run with the jmh task.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class InterpreterBenchmark {
+
+	private static final TestModule MODULE = new TestModule()
+		// arith runs a loop of i64 and f64 arithmetic as many times as its argument.
+		.function("arith", types(I32), types(F64), types(I64, F64), code()
+			.op(0x03, 0x40)
+			.localGet(1).i64Const(3).op(0x7E).localGet(0).op(0xAD).op(0x7C).localSet(1)
+			.localGet(2).localGet(1).op(0xB9).op(0xA0).localSet(2)
+			.localGet(0).i32Const(1).op(0x6B).op(0x22, 0x00)
+			.op(0x0D, 0x00)
+			.op(0x0B)
+			.localGet(2))
+		// fib is the recursive Fibonacci function.
+		.function("fib", types(I32), types(I32), code()
+			.localGet(0).i32Const(2).op(0x48)
+			.op(0x04, I32)
+			.localGet(0)
+			.op(0x05)
+			.localGet(0).i32Const(1).op(0x6B).call(1)
+			.localGet(0).i32Const(2).op(0x6B).call(1)
+			.op(0x6A)
+			.op(0x0B));
+
+	@Param({ "arith", "fib" })
+	public String function;
+
+	private Engine engine;
+	private WasmFunction target;
+	private Object[] args;
+
+	@Setup
+	public void setup() throws Throwable {
+		engine = new Engine();
+		engine.setCompilerEnabled(false);
+
+		var instance = engine.instantiateModule(MODULE.read(), name -> { throw new ModuleResolutionException(); });
+		target = (WasmFunction)instance.getExport(function);
+		args = new Object[] { function.equals("fib") ? 20 : 10000 };
+	}
+
+	@TearDown
+	public void tearDown() {
+		engine.close();
+	}
+
+	@Benchmark
+	public Object[] call() throws Throwable {
+		return target.invokeNow(args);
+	}
+
+}
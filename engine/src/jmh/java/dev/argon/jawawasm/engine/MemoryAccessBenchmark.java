@@ -0,0 +1,318 @@
+package dev.argon.jawawasm.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * Loads and stores of every width through WasmMemoryImpl, which uses unaligned layouts,
+ * compared with its Aligned variants, which are used when the alignment hint is natural and check the address,
+ * and with aligned layouts used directly.
+ * Every address is naturally aligned.
+ * Run with the jmh task.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class MemoryAccessBenchmark {
+
+	private static final int BYTES = 16 * Util.PAGE_SIZE;
+	private static final int ACCESSES = 1024;
+
+	private static final ValueLayout.OfShort ALIGNED_I16 = ValueLayout.JAVA_SHORT.withOrder(LITTLE_ENDIAN);
+	private static final ValueLayout.OfInt ALIGNED_I32 = ValueLayout.JAVA_INT.withOrder(LITTLE_ENDIAN);
+	private static final ValueLayout.OfLong ALIGNED_I64 = ValueLayout.JAVA_LONG.withOrder(LITTLE_ENDIAN).withByteAlignment(8);
+	private static final ValueLayout.OfFloat ALIGNED_F32 = ValueLayout.JAVA_FLOAT.withOrder(LITTLE_ENDIAN);
+	private static final ValueLayout.OfDouble ALIGNED_F64 = ValueLayout.JAVA_DOUBLE.withOrder(LITTLE_ENDIAN).withByteAlignment(8);
+
+	private Arena arena;
+	private MemorySegment segment;
+	private WasmMemoryNoResize memory;
+
+	// Addresses aligned to 8 bytes, in a random order so that the accesses cannot be vectorized.
+	private int[] addresses;
+
+	@Setup
+	public void setup() {
+		arena = Arena.ofShared();
+		segment = arena.allocate(BYTES, Util.PAGE_SIZE);
+		memory = new WasmMemoryImpl(segment);
+
+		var random = new Random(0);
+		addresses = new int[ACCESSES];
+		for(int i = 0; i < addresses.length; ++i) {
+			addresses[i] = random.nextInt(BYTES / 8) * 8;
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		arena.close();
+	}
+
+	@Benchmark
+	public int loadI8() {
+		int sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadI8(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int loadI16() {
+		int sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadI16(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int loadI16Aligned() {
+		int sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadI16Aligned(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int loadI16AlignedLayout() {
+		int sum = 0;
+		for(int address : addresses) {
+			sum += segment.get(ALIGNED_I16, address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int loadI32() {
+		int sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadI32(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int loadI32Aligned() {
+		int sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadI32Aligned(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int loadI32AlignedLayout() {
+		int sum = 0;
+		for(int address : addresses) {
+			sum += segment.get(ALIGNED_I32, address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long loadI64() {
+		long sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadI64(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long loadI64Aligned() {
+		long sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadI64Aligned(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long loadI64AlignedLayout() {
+		long sum = 0;
+		for(int address : addresses) {
+			sum += segment.get(ALIGNED_I64, address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float loadF32() {
+		float sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadF32(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float loadF32Aligned() {
+		float sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadF32Aligned(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float loadF32AlignedLayout() {
+		float sum = 0;
+		for(int address : addresses) {
+			sum += segment.get(ALIGNED_F32, address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double loadF64() {
+		double sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadF64(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double loadF64Aligned() {
+		double sum = 0;
+		for(int address : addresses) {
+			sum += memory.loadF64Aligned(address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double loadF64AlignedLayout() {
+		double sum = 0;
+		for(int address : addresses) {
+			sum += segment.get(ALIGNED_F64, address);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public void storeI8() {
+		for(int address : addresses) {
+			memory.storeI8(address, (byte)address);
+		}
+	}
+
+	@Benchmark
+	public void storeI16() {
+		for(int address : addresses) {
+			memory.storeI16(address, (short)address);
+		}
+	}
+
+	@Benchmark
+	public void storeI16Aligned() {
+		for(int address : addresses) {
+			memory.storeI16Aligned(address, (short)address);
+		}
+	}
+
+	@Benchmark
+	public void storeI16AlignedLayout() {
+		for(int address : addresses) {
+			segment.set(ALIGNED_I16, address, (short)address);
+		}
+	}
+
+	@Benchmark
+	public void storeI32() {
+		for(int address : addresses) {
+			memory.storeI32(address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeI32Aligned() {
+		for(int address : addresses) {
+			memory.storeI32Aligned(address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeI32AlignedLayout() {
+		for(int address : addresses) {
+			segment.set(ALIGNED_I32, address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeI64() {
+		for(int address : addresses) {
+			memory.storeI64(address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeI64Aligned() {
+		for(int address : addresses) {
+			memory.storeI64Aligned(address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeI64AlignedLayout() {
+		for(int address : addresses) {
+			segment.set(ALIGNED_I64, address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeF32() {
+		for(int address : addresses) {
+			memory.storeF32(address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeF32Aligned() {
+		for(int address : addresses) {
+			memory.storeF32Aligned(address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeF32AlignedLayout() {
+		for(int address : addresses) {
+			segment.set(ALIGNED_F32, address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeF64() {
+		for(int address : addresses) {
+			memory.storeF64(address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeF64Aligned() {
+		for(int address : addresses) {
+			memory.storeF64Aligned(address, address);
+		}
+	}
+
+	@Benchmark
+	public void storeF64AlignedLayout() {
+		for(int address : addresses) {
+			segment.set(ALIGNED_F64, address, address);
+		}
+	}
+
+}
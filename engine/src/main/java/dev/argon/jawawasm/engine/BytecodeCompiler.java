@@ -0,0 +1,1940 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.instructions.*;
+import dev.argon.jawawasm.format.modules.LabelIdx;
+import dev.argon.jawawasm.format.types.FuncType;
+import dev.argon.jawawasm.format.types.ResultType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+/**
+ * Compiles functions to JVM bytecode.
+ * Each compiled function is a static method of its own hidden class.
+ * Calls to other functions of the module go through their call sites, so they switch to compiled code when the
+ * callee is compiled.
+ */
+final class BytecodeCompiler {
+	private BytecodeCompiler(InstantiatedModule module, ModuleFunction function) {
+		this.module = module;
+		this.function = function;
+	}
+
+	private static final String CLASS_NAME = "dev/argon/jawawasm/engine/CompiledFunction";
+	private static final String OBJECT = "java/lang/Object";
+	private static final String OBJECT_ARRAY = "[Ljava/lang/Object;";
+	private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+	private static final String MODULE = "dev/argon/jawawasm/engine/InstantiatedModule";
+	private static final String FUNCTION = "dev/argon/jawawasm/engine/WasmFunction";
+	private static final String MEMORY = "dev/argon/jawawasm/engine/WasmMemory";
+	private static final String MEMORY_META = "dev/argon/jawawasm/engine/WasmMemoryMeta";
+	private static final String MEMORY_BUFFER = "dev/argon/jawawasm/engine/WasmMemoryNoResize";
+	private static final String TABLE = "dev/argon/jawawasm/engine/WasmTable";
+	private static final String INDIRECT_CALL_CACHE = "dev/argon/jawawasm/engine/IndirectCallCache";
+	private static final String GLOBAL = "dev/argon/jawawasm/engine/WasmGlobal";
+	private static final String INVOCATION = "dev/argon/jawawasm/engine/Invocation";
+	private static final String ELEMENTS = "dev/argon/jawawasm/engine/WasmElements";
+	private static final String UTIL = "dev/argon/jawawasm/engine/Util";
+	private static final String DATA = "dev/argon/jawawasm/format/modules/Data";
+	private static final String ATOMIC_RMW_OP = "dev/argon/jawawasm/format/instructions/MemoryInstr$AtomicRmwOp";
+
+	private static final String CODE_METHOD = "code";
+	private static final String BRIDGE_METHOD = "invoke";
+	private static final String SLOTS_METHOD = "invokeSlots";
+	private static final String SLOTS_DESCRIPTOR = "([J" + OBJECT_ARRAY + "I)V";
+
+	// HotSpot does not JIT compile methods with more bytecode than this.
+	private static final int MAX_METHOD_SIZE = 8000;
+
+	private final InstantiatedModule module;
+	private final ModuleFunction function;
+	private final ClassFileWriter classFile = new ClassFileWriter(CLASS_NAME, OBJECT, List.of());
+
+	// Static final fields of the generated class, initialized from the class data.
+	private record FieldInfo(String descriptor, Object value) {}
+	private final Map<String, FieldInfo> fields = new LinkedHashMap<>();
+
+	/**
+	 * Compiles a function.
+	 * If compilation succeeds, the function will use the compiled code when invoked.
+	 * Otherwise, the function continues to be interpreted.
+	 * @param module The module containing the function.
+	 * @param function The function.
+	 * @return true if the function was compiled.
+	 */
+	public static boolean compile(InstantiatedModule module, ModuleFunction function) {
+		if(!canCompile(function)) {
+			return false;
+		}
+
+		try {
+			new BytecodeCompiler(module, function).compileFunction();
+			return true;
+		}
+		catch(NotCompilableException ex) {
+			return false;
+		}
+	}
+
+	// Thrown when a function turns out not to be compilable while it is being compiled,
+	// such as when the generated method is too large.
+	// Any other exception is a bug in the compiler and is not caught.
+	private static final class NotCompilableException extends RuntimeException {
+		public NotCompilableException(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	// Checks for the features that the compiler does not support, so that most functions
+	// that cannot be compiled are rejected without generating any code.
+	private static boolean canCompile(ModuleFunction function) {
+		if(!hasJvmSignature(function.type())) {
+			return false;
+		}
+
+		for(int kind : function.code().locals()) {
+			if(kind == SlotKind.V128) {
+				return false;
+			}
+		}
+
+		return canCompile(function.definition().body().body());
+	}
+
+	private static boolean canCompile(List<? extends Instr> instrs) {
+		for(var instr : instrs) {
+			boolean supported = switch(instr) {
+				case VectorInstr vectorInstr -> false;
+				case ControlInstr.Return_Call returnCall -> false;
+				case ControlInstr.Return_Call_Indirect returnCallIndirect -> false;
+				case ControlInstr.Block(var blockType, var body) -> canCompile(body);
+				case ControlInstr.Loop(var blockType, var body) -> canCompile(body);
+				case ControlInstr.If(var blockType, var thenBody, var elseBody) -> canCompile(thenBody) && canCompile(elseBody);
+				default -> true;
+			};
+
+			if(!supported) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void compileFunction() {
+		var type = function.type();
+		String descriptor = methodDescriptor(type);
+		classFile.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, CODE_METHOD, descriptor, new FunctionCompiler(function).compile());
+		classFile.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, BRIDGE_METHOD, "(" + OBJECT_ARRAY + ")" + OBJECT_ARRAY, bridgeMethod(type));
+		classFile.addMethod(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, SLOTS_METHOD, SLOTS_DESCRIPTOR, slotsMethod(type));
+		classFile.addMethod(ClassFileWriter.ACC_STATIC, "<clinit>", "()V", staticInitializer());
+
+		Object[] classData = new Object[fields.size()];
+		int index = 0;
+		for(var field : fields.values()) {
+			classData[index++] = field.value();
+		}
+
+		MethodHandle code;
+		MethodHandle bridge;
+		MethodHandle slots;
+		try {
+			var lookup = MethodHandles.lookup().defineHiddenClassWithClassData(classFile.toByteArray(), classData, true);
+			code = lookup.findStatic(lookup.lookupClass(), CODE_METHOD, methodType(type));
+			bridge = lookup.findStatic(lookup.lookupClass(), BRIDGE_METHOD, MethodType.methodType(Object[].class, Object[].class));
+			slots = lookup.findStatic(lookup.lookupClass(), SLOTS_METHOD, MethodType.methodType(void.class, long[].class, Object[].class, int.class));
+		}
+		catch(ReflectiveOperationException ex) {
+			throw new IllegalStateException("Generated class is missing its methods", ex);
+		}
+		function.setCompiled(code, bridge, slots);
+	}
+
+	/**
+	 * Gets the type of the static method for a function.
+	 * @param type The function type.
+	 * @return The method type.
+	 */
+	public static MethodType methodType(FuncType type) {
+		int[] params = SlotKind.of(type.args());
+		int[] results = SlotKind.of(type.results());
+		Class<?>[] paramClasses = new Class<?>[params.length];
+		for(int i = 0; i < params.length; ++i) {
+			paramClasses[i] = jvmClass(params[i]);
+		}
+		return MethodType.methodType(results.length == 0 ? void.class : jvmClass(results[0]), paramClasses);
+	}
+
+	private static Class<?> jvmClass(int kind) {
+		return switch(kind) {
+			case SlotKind.I32 -> int.class;
+			case SlotKind.I64 -> long.class;
+			case SlotKind.F32 -> float.class;
+			case SlotKind.F64 -> double.class;
+			case SlotKind.REF -> Object.class;
+			default -> throw new IllegalArgumentException("Vector values are not supported");
+		};
+	}
+
+	/**
+	 * Checks whether a function can be represented by a static method.
+	 * @param type The function type.
+	 * @return true if the function can be compiled.
+	 */
+	public static boolean hasJvmSignature(FuncType type) {
+		int slots = 0;
+		for(var t : type.args().types()) {
+			int kind = SlotKind.of(t);
+			if(kind == SlotKind.V128) {
+				return false;
+			}
+			slots += (kind == SlotKind.I64 || kind == SlotKind.F64) ? 2 : 1;
+		}
+
+		var results = type.results().types();
+		return slots <= 255 && (results.isEmpty() || (results.size() == 1 && SlotKind.of(results.get(0)) != SlotKind.V128));
+	}
+
+	private static String descriptor(int kind) {
+		return switch(kind) {
+			case SlotKind.I32 -> "I";
+			case SlotKind.I64 -> "J";
+			case SlotKind.F32 -> "F";
+			case SlotKind.F64 -> "D";
+			case SlotKind.REF -> "L" + OBJECT + ";";
+			default -> throw new IllegalArgumentException("Vector values are not supported");
+		};
+	}
+
+	private static String methodDescriptor(FuncType type) {
+		var sb = new StringBuilder("(");
+		for(int kind : SlotKind.of(type.args())) {
+			sb.append(descriptor(kind));
+		}
+		sb.append(")");
+		int[] results = SlotKind.of(type.results());
+		sb.append(results.length == 0 ? "V" : descriptor(results[0]));
+		return sb.toString();
+	}
+
+	private static List<String> parameterDescriptors(FuncType type) {
+		List<String> params = new ArrayList<>();
+		for(int kind : SlotKind.of(type.args())) {
+			params.add(descriptor(kind));
+		}
+		return params;
+	}
+
+	private int field(String name, String descriptor, Object value) {
+		if(!fields.containsKey(name)) {
+			fields.put(name, new FieldInfo(descriptor, value));
+			classFile.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL, name, descriptor);
+		}
+		return classFile.fieldRef(CLASS_NAME, name, descriptor);
+	}
+
+	private int moduleField() {
+		return field("module", "L" + MODULE + ";", module);
+	}
+
+	private int memoryField() {
+		return field("memory", "L" + MEMORY + ";", module.getMemory(0));
+	}
+
+	private int functionField(int index) {
+		return field("function" + index, "L" + FUNCTION + ";", module.getFunction(index));
+	}
+
+	private int callSiteField(int index, ModuleFunction callee) {
+		return field("call" + index, "L" + METHOD_HANDLE + ";", callee.callSite().dynamicInvoker());
+	}
+
+	// Each call_indirect instruction has its own cache.
+	private int indirectCallField(FuncType type) {
+		return field("indirect" + fields.size(), "L" + INDIRECT_CALL_CACHE + ";", new IndirectCallCache(CallSignature.of(type)));
+	}
+
+	private int tableField(int index) {
+		return field("table" + index, "L" + TABLE + ";", module.getTable(index));
+	}
+
+	private int globalField(int index) {
+		return field("global" + index, "L" + GLOBAL + ";", module.getGlobal(index));
+	}
+
+	private CodeWriter staticInitializer() {
+		var code = new CodeWriter(List.of());
+		int data = code.addLocal(OBJECT_ARRAY);
+
+		code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef("java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;"));
+		code.op(JvmOpcode.GETSTATIC, classFile.fieldRef("java/lang/constant/ConstantDescs", "DEFAULT_NAME", "Ljava/lang/String;"));
+		code.ldc(classFile.classRef(OBJECT_ARRAY));
+		code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef(
+			"java/lang/invoke/MethodHandles",
+			"classData",
+			"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;"
+		));
+		code.op(JvmOpcode.CHECKCAST, classFile.classRef(OBJECT_ARRAY));
+		code.local(JvmOpcode.ASTORE, data);
+
+		int index = 0;
+		for(var entry : fields.entrySet()) {
+			String desc = entry.getValue().descriptor();
+			code.local(JvmOpcode.ALOAD, data);
+			pushInt(code, index++);
+			code.op(JvmOpcode.AALOAD);
+			code.op(JvmOpcode.CHECKCAST, classFile.classRef(desc.substring(1, desc.length() - 1)));
+			code.op(JvmOpcode.PUTSTATIC, classFile.fieldRef(CLASS_NAME, entry.getKey(), desc));
+		}
+		code.op(JvmOpcode.RETURN);
+		return code;
+	}
+
+	// Converts between the Object[] calling convention and the static method of a function.
+	private CodeWriter bridgeMethod(FuncType type) {
+		var code = new CodeWriter(List.of(OBJECT_ARRAY));
+		int[] params = SlotKind.of(type.args());
+		int[] results = SlotKind.of(type.results());
+
+		code.requireStack(2 * params.length + 4);
+		for(int i = 0; i < params.length; ++i) {
+			code.local(JvmOpcode.ALOAD, 0);
+			pushInt(code, i);
+			code.op(JvmOpcode.AALOAD);
+			unbox(code, params[i]);
+		}
+		code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef(CLASS_NAME, CODE_METHOD, methodDescriptor(type)));
+
+		if(results.length == 0) {
+			code.op(JvmOpcode.ICONST_0);
+			code.op(JvmOpcode.ANEWARRAY, classFile.classRef(OBJECT));
+		}
+		else {
+			int result = code.addLocal(descriptor(results[0]));
+			code.local(storeOpcode(results[0]), result);
+			code.op(JvmOpcode.ICONST_1);
+			code.op(JvmOpcode.ANEWARRAY, classFile.classRef(OBJECT));
+			code.op(JvmOpcode.DUP);
+			code.op(JvmOpcode.ICONST_0);
+			code.local(loadOpcode(results[0]), result);
+			box(code, results[0]);
+			code.op(JvmOpcode.AASTORE);
+		}
+		code.op(JvmOpcode.ARETURN);
+		return code;
+	}
+
+	// Calls the function with arguments on the operand stack of the interpreter.
+	// The arguments start at the index in the third parameter and the result is written to the same index.
+	// See StackFrame for the representation of values.
+	private CodeWriter slotsMethod(FuncType type) {
+		var code = new CodeWriter(List.of("[J", OBJECT_ARRAY, "I"));
+		int[] params = SlotKind.of(type.args());
+		int[] results = SlotKind.of(type.results());
+
+		code.requireStack(2 * params.length + 6);
+		for(int i = 0; i < params.length; ++i) {
+			code.local(JvmOpcode.ALOAD, params[i] == SlotKind.REF ? 1 : 0);
+			code.local(JvmOpcode.ILOAD, 2);
+			if(i > 0) {
+				pushInt(code, i);
+				code.op(JvmOpcode.IADD);
+			}
+
+			switch(params[i]) {
+				case SlotKind.I32 -> {
+					code.op(JvmOpcode.LALOAD);
+					code.op(JvmOpcode.L2I);
+				}
+				case SlotKind.I64 -> code.op(JvmOpcode.LALOAD);
+				case SlotKind.F32 -> {
+					code.op(JvmOpcode.LALOAD);
+					code.op(JvmOpcode.L2I);
+					code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef("java/lang/Float", "intBitsToFloat", "(I)F"));
+				}
+				case SlotKind.F64 -> {
+					code.op(JvmOpcode.LALOAD);
+					code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef("java/lang/Double", "longBitsToDouble", "(J)D"));
+				}
+				default -> code.op(JvmOpcode.AALOAD);
+			}
+		}
+		code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef(CLASS_NAME, CODE_METHOD, methodDescriptor(type)));
+
+		if(results.length > 0) {
+			int result = code.addLocal(descriptor(results[0]));
+			code.local(storeOpcode(results[0]), result);
+			code.local(JvmOpcode.ALOAD, results[0] == SlotKind.REF ? 1 : 0);
+			code.local(JvmOpcode.ILOAD, 2);
+			code.local(loadOpcode(results[0]), result);
+			switch(results[0]) {
+				case SlotKind.I32 -> {
+					code.op(JvmOpcode.I2L);
+					code.op(JvmOpcode.LASTORE);
+				}
+				case SlotKind.I64 -> code.op(JvmOpcode.LASTORE);
+				case SlotKind.F32 -> {
+					code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef("java/lang/Float", "floatToRawIntBits", "(F)I"));
+					code.op(JvmOpcode.I2L);
+					code.op(JvmOpcode.LASTORE);
+				}
+				case SlotKind.F64 -> {
+					code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef("java/lang/Double", "doubleToRawLongBits", "(D)J"));
+					code.op(JvmOpcode.LASTORE);
+				}
+				default -> code.op(JvmOpcode.AASTORE);
+			}
+		}
+		code.op(JvmOpcode.RETURN);
+		return code;
+	}
+
+	private void pushInt(CodeWriter code, int value) {
+		if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			code.pushInt(value);
+		}
+		else {
+			code.ldc(classFile.intConstant(value));
+		}
+	}
+
+	private void box(CodeWriter code, int kind) {
+		switch(kind) {
+			case SlotKind.I32 -> code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef("java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;"));
+			case SlotKind.I64 -> code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef("java/lang/Long", "valueOf", "(J)Ljava/lang/Long;"));
+			case SlotKind.F32 -> code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef("java/lang/Float", "valueOf", "(F)Ljava/lang/Float;"));
+			case SlotKind.F64 -> code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"));
+			case SlotKind.REF -> {}
+			default -> throw new IllegalArgumentException("Vector values are not supported");
+		}
+	}
+
+	private void unbox(CodeWriter code, int kind) {
+		switch(kind) {
+			case SlotKind.I32 -> {
+				code.op(JvmOpcode.CHECKCAST, classFile.classRef("java/lang/Integer"));
+				code.invoke(JvmOpcode.INVOKEVIRTUAL, classFile.methodRef("java/lang/Integer", "intValue", "()I"));
+			}
+			case SlotKind.I64 -> {
+				code.op(JvmOpcode.CHECKCAST, classFile.classRef("java/lang/Long"));
+				code.invoke(JvmOpcode.INVOKEVIRTUAL, classFile.methodRef("java/lang/Long", "longValue", "()J"));
+			}
+			case SlotKind.F32 -> {
+				code.op(JvmOpcode.CHECKCAST, classFile.classRef("java/lang/Float"));
+				code.invoke(JvmOpcode.INVOKEVIRTUAL, classFile.methodRef("java/lang/Float", "floatValue", "()F"));
+			}
+			case SlotKind.F64 -> {
+				code.op(JvmOpcode.CHECKCAST, classFile.classRef("java/lang/Double"));
+				code.invoke(JvmOpcode.INVOKEVIRTUAL, classFile.methodRef("java/lang/Double", "doubleValue", "()D"));
+			}
+			case SlotKind.REF -> {}
+			default -> throw new IllegalArgumentException("Vector values are not supported");
+		}
+	}
+
+	private static int loadOpcode(int kind) {
+		return switch(kind) {
+			case SlotKind.I32 -> JvmOpcode.ILOAD;
+			case SlotKind.I64 -> JvmOpcode.LLOAD;
+			case SlotKind.F32 -> JvmOpcode.FLOAD;
+			case SlotKind.F64 -> JvmOpcode.DLOAD;
+			default -> JvmOpcode.ALOAD;
+		};
+	}
+
+	private static int storeOpcode(int kind) {
+		return switch(kind) {
+			case SlotKind.I32 -> JvmOpcode.ISTORE;
+			case SlotKind.I64 -> JvmOpcode.LSTORE;
+			case SlotKind.F32 -> JvmOpcode.FSTORE;
+			case SlotKind.F64 -> JvmOpcode.DSTORE;
+			default -> JvmOpcode.ASTORE;
+		};
+	}
+
+	private static int returnOpcode(int kind) {
+		return switch(kind) {
+			case SlotKind.I32 -> JvmOpcode.IRETURN;
+			case SlotKind.I64 -> JvmOpcode.LRETURN;
+			case SlotKind.F32 -> JvmOpcode.FRETURN;
+			case SlotKind.F64 -> JvmOpcode.DRETURN;
+			default -> JvmOpcode.ARETURN;
+		};
+	}
+
+	// A block, loop or if that may be the target of a branch.
+	// The height is the operand stack height below the parameters of the block.
+	private static final class ControlFrame {
+		public ControlFrame(int height, int[] branchKinds, CodeWriter.Label label) {
+			this.height = height;
+			this.branchKinds = branchKinds;
+			this.label = label;
+		}
+
+		public final int height;
+		public final int[] branchKinds;
+		public final CodeWriter.Label label;
+		public boolean targeted = false;
+	}
+
+	// Compiles a single function.
+	// Every local and every operand stack slot is a JVM local, so the JVM operand stack is empty between instructions
+	// and every branch target has the same frame.
+	private final class FunctionCompiler {
+		public FunctionCompiler(ModuleFunction function) {
+			var type = function.type();
+			var definition = function.definition();
+			code = new CodeWriter(parameterDescriptors(type));
+			resultKinds = SlotKind.of(type.results());
+
+			var signature = function.code().signature();
+			int paramCount = signature.params().length;
+			localKinds = function.code().locals();
+			localSlots = new int[localKinds.length];
+			int slot = 0;
+			for(int i = 0; i < paramCount; ++i) {
+				localSlots[i] = slot;
+				slot += CodeWriter.slotSize(descriptor(localKinds[i]));
+			}
+			for(int i = paramCount; i < localKinds.length; ++i) {
+				localSlots[i] = code.addLocal(descriptor(localKinds[i]));
+			}
+			memoryBuffer = module.hasMemory() ? code.addLocal("L" + MEMORY_BUFFER + ";") : -1;
+			invocation = module.isMetered() || module.isInterruptible() ? code.addLocal("L" + INVOCATION + ";") : -1;
+
+			body = definition.body().body();
+		}
+
+		private final CodeWriter code;
+		private final int[] resultKinds;
+		private final int[] localKinds;
+		private final int[] localSlots;
+		private final List<? extends Instr> body;
+
+		// Holds the current backing memory, or -1 if the module has no memory.
+		private final int memoryBuffer;
+
+		// Holds the invocation that is charged fuel and has the epoch deadline, or -1 if the module needs neither.
+		private final int invocation;
+
+		private int[] stackKinds = new int[16];
+		private int height = 0;
+		private final int[][] stackSlots = new int[SlotKind.REF + 1][];
+		private final List<ControlFrame> controlStack = new ArrayList<>();
+		private boolean reachable = true;
+
+		public CodeWriter compile() {
+			// The locals are initialized at the end of the method so that the frame of every branch target is known
+			// before all locals have been allocated.
+			var init = new CodeWriter.Label();
+			var start = new CodeWriter.Label();
+			code.jump(JvmOpcode.GOTO, init);
+			code.bind(start);
+
+			checkEpoch();
+			compileInstrs(body);
+			if(reachable) {
+				emitReturn();
+			}
+
+			code.bindEntry(init);
+			int slot = code.firstNonParamLocal();
+			for(String type : code.nonParamLocals()) {
+				switch(type) {
+					case "I" -> code.op(JvmOpcode.ICONST_0);
+					case "J" -> code.op(JvmOpcode.LCONST_0);
+					case "F" -> code.op(JvmOpcode.FCONST_0);
+					case "D" -> code.op(JvmOpcode.DCONST_0);
+					default -> code.op(JvmOpcode.ACONST_NULL);
+				}
+				code.local(storeOpcode(kindOf(type)), slot);
+				slot += CodeWriter.slotSize(type);
+			}
+			bindMemory();
+			if(invocation >= 0) {
+				invokeStatic(INVOCATION, "required", "()L" + INVOCATION + ";");
+				code.local(JvmOpcode.ASTORE, invocation);
+			}
+			code.jump(JvmOpcode.GOTO, start);
+
+			if(code.size() > MAX_METHOD_SIZE) {
+				throw new NotCompilableException("Method is too large");
+			}
+
+			return code;
+		}
+
+		private static int kindOf(String descriptor) {
+			return switch(descriptor) {
+				case "I" -> SlotKind.I32;
+				case "J" -> SlotKind.I64;
+				case "F" -> SlotKind.F32;
+				case "D" -> SlotKind.F64;
+				default -> SlotKind.REF;
+			};
+		}
+
+		private int stackSlot(int depth, int kind) {
+			if(kind == SlotKind.V128) {
+				throw new NotCompilableException("Vector values are not supported");
+			}
+
+			int[] slots = stackSlots[kind];
+			if(slots == null || slots.length <= depth) {
+				int oldLength = slots == null ? 0 : slots.length;
+				slots = slots == null ? new int[Math.max(16, depth + 1)] : Arrays.copyOf(slots, Math.max(slots.length * 2, depth + 1));
+				Arrays.fill(slots, oldLength, slots.length, -1);
+				stackSlots[kind] = slots;
+			}
+
+			if(slots[depth] < 0) {
+				slots[depth] = code.addLocal(descriptor(kind));
+			}
+			return slots[depth];
+		}
+
+		// Returns the local that holds the pushed value.
+		private int push(int kind) {
+			if(height == stackKinds.length) {
+				stackKinds = Arrays.copyOf(stackKinds, stackKinds.length * 2);
+			}
+			stackKinds[height] = kind;
+			return stackSlot(height++, kind);
+		}
+
+		// Returns the local that holds the popped value.
+		private int pop(int kind) {
+			--height;
+			if(height < 0 || stackKinds[height] != kind) {
+				throw new NotCompilableException("Unexpected operand type");
+			}
+			return stackSlot(height, kind);
+		}
+
+		private int peekKind() {
+			if(height == 0) {
+				throw new NotCompilableException("Unexpected operand type");
+			}
+			return stackKinds[height - 1];
+		}
+
+		private void load(int kind, int slot) {
+			code.local(loadOpcode(kind), slot);
+		}
+
+		private void store(int kind, int slot) {
+			code.local(storeOpcode(kind), slot);
+		}
+
+		private void pushInt(int value) {
+			BytecodeCompiler.this.pushInt(code, value);
+		}
+
+		private void pushLong(long value) {
+			if(value == 0 || value == 1) {
+				code.op(JvmOpcode.LCONST_0 + (int)value);
+			}
+			else {
+				code.ldc2(classFile.longConstant(value));
+			}
+		}
+
+		private void pushFloat(float value) {
+			if(Float.floatToRawIntBits(value) == 0) {
+				code.op(JvmOpcode.FCONST_0);
+			}
+			else {
+				code.ldc(classFile.floatConstant(value));
+			}
+		}
+
+		private void pushDouble(double value) {
+			if(Double.doubleToRawLongBits(value) == 0) {
+				code.op(JvmOpcode.DCONST_0);
+			}
+			else {
+				code.ldc2(classFile.doubleConstant(value));
+			}
+		}
+
+		// Pushes the value of an immutable numeric global, given as raw bits.
+		private void pushGlobalConstant(int kind, long bits) {
+			switch(kind) {
+				case SlotKind.I32 -> pushInt((int)bits);
+				case SlotKind.I64 -> pushLong(bits);
+				case SlotKind.F32 -> pushFloat(Float.intBitsToFloat((int)bits));
+				case SlotKind.F64 -> pushDouble(Double.longBitsToDouble(bits));
+				default -> throw new NotCompilableException("Only numeric globals can be folded");
+			}
+		}
+
+		private static String globalAccessorSuffix(int kind) {
+			return switch(kind) {
+				case SlotKind.I32 -> "I32";
+				case SlotKind.I64 -> "I64";
+				case SlotKind.F32 -> "F32";
+				case SlotKind.F64 -> "F64";
+				case SlotKind.REF -> "Ref";
+				default -> throw new NotCompilableException("Vector values are not supported");
+			};
+		}
+
+		private void invokeStatic(String owner, String name, String descriptor) {
+			code.invoke(JvmOpcode.INVOKESTATIC, classFile.methodRef(owner, name, descriptor));
+		}
+
+		private void invokeStaticInterface(String owner, String name, String descriptor) {
+			code.invoke(JvmOpcode.INVOKESTATIC, classFile.interfaceMethodRef(owner, name, descriptor));
+		}
+
+		private void invokeVirtual(String owner, String name, String descriptor) {
+			code.invoke(JvmOpcode.INVOKEVIRTUAL, classFile.methodRef(owner, name, descriptor));
+		}
+
+		private void invokeInterface(String owner, String name, String descriptor) {
+			code.invokeInterface(classFile.interfaceMethodRef(owner, name, descriptor), argumentSlots(descriptor));
+		}
+
+		private static int argumentSlots(String descriptor) {
+			int slots = 0;
+			int i = 1;
+			while(descriptor.charAt(i) != ')') {
+				char c = descriptor.charAt(i);
+				switch(c) {
+					case 'J', 'D' -> {
+						slots += 2;
+						++i;
+					}
+					case 'L' -> {
+						++slots;
+						i = descriptor.indexOf(';', i) + 1;
+					}
+					case '[' -> {
+						++slots;
+						while(descriptor.charAt(i) == '[') {
+							++i;
+						}
+						i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+					}
+					default -> {
+						++slots;
+						++i;
+					}
+				}
+			}
+			return slots;
+		}
+
+		private void unary(int inKind, int outKind, Runnable op) {
+			int a = pop(inKind);
+			load(inKind, a);
+			op.run();
+			store(outKind, push(outKind));
+		}
+
+		private void binary(int kind, Runnable op) {
+			int b = pop(kind);
+			int a = pop(kind);
+			load(kind, a);
+			load(kind, b);
+			op.run();
+			store(kind, push(kind));
+		}
+
+		private void binary(int kind, int opcode) {
+			binary(kind, () -> code.op(opcode));
+		}
+
+		// Compares the two operands with an optional comparison instruction followed by a conditional jump.
+		private void compare(int kind, Runnable compare, int jumpOpcode) {
+			int b = pop(kind);
+			int a = pop(kind);
+			load(kind, a);
+			load(kind, b);
+			compare.run();
+			condition(jumpOpcode);
+		}
+
+		// Pushes 1 if the jump is taken, otherwise 0.
+		private void condition(int jumpOpcode) {
+			int result = push(SlotKind.I32);
+			var isTrue = new CodeWriter.Label();
+			var end = new CodeWriter.Label();
+			code.jump(jumpOpcode, isTrue);
+			code.op(JvmOpcode.ICONST_0);
+			store(SlotKind.I32, result);
+			code.jump(JvmOpcode.GOTO, end);
+			code.bind(isTrue);
+			code.op(JvmOpcode.ICONST_1);
+			store(SlotKind.I32, result);
+			code.bind(end);
+		}
+
+		private FuncType expandBlockType(ControlInstr.BlockType blockType) {
+			return switch(blockType) {
+				case ControlInstr.BlockType.Empty() -> new FuncType(new ResultType(List.of()), new ResultType(List.of()));
+				case ControlInstr.BlockType.OfIndex(var index) -> module.getType(index);
+				case ControlInstr.BlockType.OfValType(var valType) -> new FuncType(new ResultType(List.of()), new ResultType(List.of(valType)));
+			};
+		}
+
+		private void pushKinds(int[] kinds) {
+			for(int kind : kinds) {
+				push(kind);
+			}
+		}
+
+		// Instructions following an unconditional transfer of control are unreachable and are not compiled.
+		// Modules that yield at the deadline are not compiled, so compiled code always traps.
+		private void checkEpoch() {
+			if(module.isInterruptible()) {
+				code.local(JvmOpcode.ALOAD, invocation);
+				invokeVirtual(INVOCATION, "checkEpochDeadline", "()V");
+			}
+		}
+
+		// Fuel is charged at the same points as in the interpreter.
+		private void compileInstrs(List<? extends Instr> instrs) {
+			int[] fuelCosts = module.isMetered() ? Fuel.blockCosts(instrs) : null;
+			for(int i = 0; i < instrs.size(); ++i) {
+				if(!reachable) {
+					break;
+				}
+
+				if(fuelCosts != null && fuelCosts[i] > 0) {
+					code.local(JvmOpcode.ALOAD, invocation);
+					pushInt(fuelCosts[i]);
+					invokeVirtual(INVOCATION, "consumeFuel", "(I)V");
+				}
+				compileInstr(instrs.get(i));
+			}
+		}
+
+		private void compileInstr(Instr instr) {
+			switch(instr) {
+				case NumericInstr numericInstr -> compileNumericInstr(numericInstr);
+				case VectorInstr vectorInstr -> throw new NotCompilableException("Vector instructions are not supported");
+				case ReferenceInstr referenceInstr -> compileReferenceInstr(referenceInstr);
+				case ParametricInstr parametricInstr -> compileParametricInstr(parametricInstr);
+				case VariableInstr variableInstr -> compileVariableInstr(variableInstr);
+				case TableInstr tableInstr -> compileTableInstr(tableInstr);
+				case MemoryInstr memoryInstr -> compileMemoryInstr(memoryInstr);
+				case ControlInstr controlInstr -> compileControlInstr(controlInstr);
+			}
+		}
+
+		private void compileNumericInstr(NumericInstr instr) {
+			switch(instr) {
+				case NumericInstr.I32_Const(var value) -> {
+					pushInt(value);
+					store(SlotKind.I32, push(SlotKind.I32));
+				}
+				case NumericInstr.I64_Const(var value) -> {
+					pushLong(value);
+					store(SlotKind.I64, push(SlotKind.I64));
+				}
+				case NumericInstr.F32_Const(var value) -> {
+					pushFloat(value);
+					store(SlotKind.F32, push(SlotKind.F32));
+				}
+				case NumericInstr.F64_Const(var value) -> {
+					pushDouble(value);
+					store(SlotKind.F64, push(SlotKind.F64));
+				}
+
+				case NumericInstr.Inn_IUnOp(var size, var op) -> {
+					switch(size) {
+						case _32 -> unary(SlotKind.I32, SlotKind.I32, () -> invokeStatic("java/lang/Integer", switch(op) {
+							case CLZ -> "numberOfLeadingZeros";
+							case CTZ -> "numberOfTrailingZeros";
+							case POPCNT -> "bitCount";
+						}, "(I)I"));
+						case _64 -> unary(SlotKind.I64, SlotKind.I64, () -> {
+							invokeStatic("java/lang/Long", switch(op) {
+								case CLZ -> "numberOfLeadingZeros";
+								case CTZ -> "numberOfTrailingZeros";
+								case POPCNT -> "bitCount";
+							}, "(J)I");
+							code.op(JvmOpcode.I2L);
+						});
+					}
+				}
+
+				case NumericInstr.Fnn_FUnOp(var size, var op) -> {
+					switch(size) {
+						case _32 -> unary(SlotKind.F32, SlotKind.F32, () -> {
+							switch(op) {
+								case ABS -> invokeStatic("java/lang/Math", "abs", "(F)F");
+								case NEG -> code.op(JvmOpcode.FNEG);
+								case SQRT -> {
+									code.op(JvmOpcode.F2D);
+									invokeStatic("java/lang/Math", "sqrt", "(D)D");
+									code.op(JvmOpcode.D2F);
+								}
+								case CEIL -> invokeStatic(UTIL, "ceilF32", "(F)F");
+								case FLOOR -> invokeStatic(UTIL, "floorF32", "(F)F");
+								case TRUNC -> invokeStatic(UTIL, "truncF32", "(F)F");
+								case NEAREST -> invokeStatic(UTIL, "nearestF32", "(F)F");
+							}
+						});
+						case _64 -> unary(SlotKind.F64, SlotKind.F64, () -> {
+							switch(op) {
+								case ABS -> invokeStatic("java/lang/Math", "abs", "(D)D");
+								case NEG -> code.op(JvmOpcode.DNEG);
+								case SQRT -> invokeStatic("java/lang/Math", "sqrt", "(D)D");
+								case CEIL -> invokeStatic(UTIL, "ceilF64", "(D)D");
+								case FLOOR -> invokeStatic(UTIL, "floorF64", "(D)D");
+								case TRUNC -> invokeStatic(UTIL, "truncF64", "(D)D");
+								case NEAREST -> invokeStatic(UTIL, "nearestF64", "(D)D");
+							}
+						});
+					}
+				}
+
+				case NumericInstr.Inn_IBinOp(var size, var op) -> {
+					switch(size) {
+						case _32 -> {
+							switch(op) {
+								case ADD -> binary(SlotKind.I32, JvmOpcode.IADD);
+								case SUB -> binary(SlotKind.I32, JvmOpcode.ISUB);
+								case MUL -> binary(SlotKind.I32, JvmOpcode.IMUL);
+								case DIV_U -> binary(SlotKind.I32, () -> invokeStatic("java/lang/Integer", "divideUnsigned", "(II)I"));
+								case DIV_S -> binary(SlotKind.I32, () -> invokeStatic(UTIL, "divideS32", "(II)I"));
+								case REM_U -> binary(SlotKind.I32, () -> invokeStatic("java/lang/Integer", "remainderUnsigned", "(II)I"));
+								case REM_S -> binary(SlotKind.I32, JvmOpcode.IREM);
+								case AND -> binary(SlotKind.I32, JvmOpcode.IAND);
+								case OR -> binary(SlotKind.I32, JvmOpcode.IOR);
+								case XOR -> binary(SlotKind.I32, JvmOpcode.IXOR);
+								case SHL -> binary(SlotKind.I32, JvmOpcode.ISHL);
+								case SHR_U -> binary(SlotKind.I32, JvmOpcode.IUSHR);
+								case SHR_S -> binary(SlotKind.I32, JvmOpcode.ISHR);
+								case ROTL -> binary(SlotKind.I32, () -> invokeStatic("java/lang/Integer", "rotateLeft", "(II)I"));
+								case ROTR -> binary(SlotKind.I32, () -> invokeStatic("java/lang/Integer", "rotateRight", "(II)I"));
+							}
+						}
+						case _64 -> {
+							switch(op) {
+								case ADD -> binary(SlotKind.I64, JvmOpcode.LADD);
+								case SUB -> binary(SlotKind.I64, JvmOpcode.LSUB);
+								case MUL -> binary(SlotKind.I64, JvmOpcode.LMUL);
+								case DIV_U -> binary(SlotKind.I64, () -> invokeStatic("java/lang/Long", "divideUnsigned", "(JJ)J"));
+								case DIV_S -> binary(SlotKind.I64, () -> invokeStatic(UTIL, "divideS64", "(JJ)J"));
+								case REM_U -> binary(SlotKind.I64, () -> invokeStatic("java/lang/Long", "remainderUnsigned", "(JJ)J"));
+								case REM_S -> binary(SlotKind.I64, JvmOpcode.LREM);
+								case AND -> binary(SlotKind.I64, JvmOpcode.LAND);
+								case OR -> binary(SlotKind.I64, JvmOpcode.LOR);
+								case XOR -> binary(SlotKind.I64, JvmOpcode.LXOR);
+								case SHL -> shift(JvmOpcode.LSHL);
+								case SHR_U -> shift(JvmOpcode.LUSHR);
+								case SHR_S -> shift(JvmOpcode.LSHR);
+								case ROTL -> binary(SlotKind.I64, () -> {
+									code.op(JvmOpcode.L2I);
+									invokeStatic("java/lang/Long", "rotateLeft", "(JI)J");
+								});
+								case ROTR -> binary(SlotKind.I64, () -> {
+									code.op(JvmOpcode.L2I);
+									invokeStatic("java/lang/Long", "rotateRight", "(JI)J");
+								});
+							}
+						}
+					}
+				}
+
+				case NumericInstr.Fnn_FBinOp(var size, var op) -> {
+					switch(size) {
+						case _32 -> {
+							switch(op) {
+								case ADD -> binary(SlotKind.F32, JvmOpcode.FADD);
+								case SUB -> binary(SlotKind.F32, JvmOpcode.FSUB);
+								case MUL -> binary(SlotKind.F32, JvmOpcode.FMUL);
+								case DIV -> binary(SlotKind.F32, JvmOpcode.FDIV);
+								case MIN -> binary(SlotKind.F32, () -> invokeStatic(UTIL, "minF32", "(FF)F"));
+								case MAX -> binary(SlotKind.F32, () -> invokeStatic(UTIL, "maxF32", "(FF)F"));
+								case COPYSIGN -> binary(SlotKind.F32, () -> invokeStatic("java/lang/Math", "copySign", "(FF)F"));
+							}
+						}
+						case _64 -> {
+							switch(op) {
+								case ADD -> binary(SlotKind.F64, JvmOpcode.DADD);
+								case SUB -> binary(SlotKind.F64, JvmOpcode.DSUB);
+								case MUL -> binary(SlotKind.F64, JvmOpcode.DMUL);
+								case DIV -> binary(SlotKind.F64, JvmOpcode.DDIV);
+								case MIN -> binary(SlotKind.F64, () -> invokeStatic(UTIL, "minF64", "(DD)D"));
+								case MAX -> binary(SlotKind.F64, () -> invokeStatic(UTIL, "maxF64", "(DD)D"));
+								case COPYSIGN -> binary(SlotKind.F64, () -> invokeStatic("java/lang/Math", "copySign", "(DD)D"));
+							}
+						}
+					}
+				}
+
+				case NumericInstr.Inn_ITestOp(var size, var op) -> {
+					switch(size) {
+						case _32 -> {
+							load(SlotKind.I32, pop(SlotKind.I32));
+							condition(JvmOpcode.IFEQ);
+						}
+						case _64 -> {
+							load(SlotKind.I64, pop(SlotKind.I64));
+							code.op(JvmOpcode.LCONST_0);
+							code.op(JvmOpcode.LCMP);
+							condition(JvmOpcode.IFEQ);
+						}
+					}
+				}
+
+				case NumericInstr.Inn_IRelOp(var size, var op) -> {
+					switch(size) {
+						case _32 -> {
+							Runnable none = () -> {};
+							Runnable unsigned = () -> invokeStatic("java/lang/Integer", "compareUnsigned", "(II)I");
+							switch(op) {
+								case EQ -> compare(SlotKind.I32, none, JvmOpcode.IF_ICMPEQ);
+								case NE -> compare(SlotKind.I32, none, JvmOpcode.IF_ICMPNE);
+								case LT_S -> compare(SlotKind.I32, none, JvmOpcode.IF_ICMPLT);
+								case GT_S -> compare(SlotKind.I32, none, JvmOpcode.IF_ICMPGT);
+								case LE_S -> compare(SlotKind.I32, none, JvmOpcode.IF_ICMPLE);
+								case GE_S -> compare(SlotKind.I32, none, JvmOpcode.IF_ICMPGE);
+								case LT_U -> compare(SlotKind.I32, unsigned, JvmOpcode.IFLT);
+								case GT_U -> compare(SlotKind.I32, unsigned, JvmOpcode.IFGT);
+								case LE_U -> compare(SlotKind.I32, unsigned, JvmOpcode.IFLE);
+								case GE_U -> compare(SlotKind.I32, unsigned, JvmOpcode.IFGE);
+							}
+						}
+						case _64 -> {
+							Runnable signed = () -> code.op(JvmOpcode.LCMP);
+							Runnable unsigned = () -> invokeStatic("java/lang/Long", "compareUnsigned", "(JJ)I");
+							switch(op) {
+								case EQ -> compare(SlotKind.I64, signed, JvmOpcode.IFEQ);
+								case NE -> compare(SlotKind.I64, signed, JvmOpcode.IFNE);
+								case LT_S -> compare(SlotKind.I64, signed, JvmOpcode.IFLT);
+								case GT_S -> compare(SlotKind.I64, signed, JvmOpcode.IFGT);
+								case LE_S -> compare(SlotKind.I64, signed, JvmOpcode.IFLE);
+								case GE_S -> compare(SlotKind.I64, signed, JvmOpcode.IFGE);
+								case LT_U -> compare(SlotKind.I64, unsigned, JvmOpcode.IFLT);
+								case GT_U -> compare(SlotKind.I64, unsigned, JvmOpcode.IFGT);
+								case LE_U -> compare(SlotKind.I64, unsigned, JvmOpcode.IFLE);
+								case GE_U -> compare(SlotKind.I64, unsigned, JvmOpcode.IFGE);
+							}
+						}
+					}
+				}
+
+				// A NaN operand must make every comparison except ne false.
+				// fcmpg produces 1 for NaN and fcmpl produces -1, so the variant is chosen to fail the jump.
+				case NumericInstr.Fnn_FRelOp(var size, var op) -> {
+					int kind = switch(size) {
+						case _32 -> SlotKind.F32;
+						case _64 -> SlotKind.F64;
+					};
+					int cmpl = size == NumericInstr.NumSize._32 ? JvmOpcode.FCMPL : JvmOpcode.DCMPL;
+					int cmpg = size == NumericInstr.NumSize._32 ? JvmOpcode.FCMPG : JvmOpcode.DCMPG;
+					switch(op) {
+						case EQ -> compare(kind, () -> code.op(cmpl), JvmOpcode.IFEQ);
+						case NE -> compare(kind, () -> code.op(cmpl), JvmOpcode.IFNE);
+						case LT -> compare(kind, () -> code.op(cmpg), JvmOpcode.IFLT);
+						case GT -> compare(kind, () -> code.op(cmpl), JvmOpcode.IFGT);
+						case LE -> compare(kind, () -> code.op(cmpg), JvmOpcode.IFLE);
+						case GE -> compare(kind, () -> code.op(cmpl), JvmOpcode.IFGE);
+					}
+				}
+
+				case NumericInstr.Inn_Extend8_S(var size) -> {
+					switch(size) {
+						case _32 -> unary(SlotKind.I32, SlotKind.I32, () -> code.op(JvmOpcode.I2B));
+						case _64 -> unary(SlotKind.I64, SlotKind.I64, () -> {
+							code.op(JvmOpcode.L2I);
+							code.op(JvmOpcode.I2B);
+							code.op(JvmOpcode.I2L);
+						});
+					}
+				}
+
+				case NumericInstr.Inn_Extend16_S(var size) -> {
+					switch(size) {
+						case _32 -> unary(SlotKind.I32, SlotKind.I32, () -> code.op(JvmOpcode.I2S));
+						case _64 -> unary(SlotKind.I64, SlotKind.I64, () -> {
+							code.op(JvmOpcode.L2I);
+							code.op(JvmOpcode.I2S);
+							code.op(JvmOpcode.I2L);
+						});
+					}
+				}
+
+				case NumericInstr.I64_Extend32_S() -> unary(SlotKind.I64, SlotKind.I64, () -> {
+					code.op(JvmOpcode.L2I);
+					code.op(JvmOpcode.I2L);
+				});
+				case NumericInstr.I32_Wrap_I64() -> unary(SlotKind.I64, SlotKind.I32, () -> code.op(JvmOpcode.L2I));
+				case NumericInstr.I64_Extend_I32_S() -> unary(SlotKind.I32, SlotKind.I64, () -> code.op(JvmOpcode.I2L));
+				case NumericInstr.I64_Extend_I32_U() -> unary(SlotKind.I32, SlotKind.I64, () -> invokeStatic("java/lang/Integer", "toUnsignedLong", "(I)J"));
+
+				case NumericInstr.Inn_Trunc_Fmm_S(var intSize, var floatSize) -> truncate(intSize, floatSize, switch(intSize) {
+					case _32 -> "truncF64ToS32";
+					case _64 -> "truncF64ToS64";
+				});
+
+				case NumericInstr.Inn_Trunc_Fmm_U(var intSize, var floatSize) -> truncate(intSize, floatSize, switch(intSize) {
+					case _32 -> "truncF64ToU32";
+					case _64 -> "truncF64ToU64";
+				});
+
+				// The JVM conversions already saturate.
+				case NumericInstr.Inn_Trunc_Sat_Fmm_S(var intSize, var floatSize) -> {
+					int inKind = floatKind(floatSize);
+					int outKind = intKind(intSize);
+					unary(inKind, outKind, () -> code.op(switch(intSize) {
+						case _32 -> inKind == SlotKind.F32 ? JvmOpcode.F2I : JvmOpcode.D2I;
+						case _64 -> inKind == SlotKind.F32 ? JvmOpcode.F2L : JvmOpcode.D2L;
+					}));
+				}
+
+				case NumericInstr.Inn_Trunc_Sat_Fmm_U(var intSize, var floatSize) -> {
+					int inKind = floatKind(floatSize);
+					int outKind = intKind(intSize);
+					String name = "truncSat" + (inKind == SlotKind.F32 ? "F32" : "F64") + (outKind == SlotKind.I32 ? "U32" : "U64");
+					unary(inKind, outKind, () -> invokeStatic(UTIL, name, "(" + descriptor(inKind) + ")" + descriptor(outKind)));
+				}
+
+				case NumericInstr.F32_Demote_F64() -> unary(SlotKind.F64, SlotKind.F32, () -> code.op(JvmOpcode.D2F));
+				case NumericInstr.F64_Promote_F32() -> unary(SlotKind.F32, SlotKind.F64, () -> code.op(JvmOpcode.F2D));
+
+				case NumericInstr.Fnn_Convert_Imm_S(var floatSize, var intSize) -> {
+					int inKind = intKind(intSize);
+					int outKind = floatKind(floatSize);
+					unary(inKind, outKind, () -> code.op(switch(floatSize) {
+						case _32 -> inKind == SlotKind.I32 ? JvmOpcode.I2F : JvmOpcode.L2F;
+						case _64 -> inKind == SlotKind.I32 ? JvmOpcode.I2D : JvmOpcode.L2D;
+					}));
+				}
+
+				case NumericInstr.Fnn_Convert_Imm_U(var floatSize, var intSize) -> {
+					int inKind = intKind(intSize);
+					int outKind = floatKind(floatSize);
+					unary(inKind, outKind, () -> {
+						if(inKind == SlotKind.I32) {
+							invokeStatic("java/lang/Integer", "toUnsignedLong", "(I)J");
+							code.op(outKind == SlotKind.F32 ? JvmOpcode.L2F : JvmOpcode.L2D);
+						}
+						else if(outKind == SlotKind.F32) {
+							invokeStatic(UTIL, "u64ToF32", "(J)F");
+						}
+						else {
+							invokeStatic(UTIL, "u64ToF64", "(J)D");
+						}
+					});
+				}
+
+				case NumericInstr.Fnn_Reinterpret_Inn(var size) -> {
+					switch(size) {
+						case _32 -> unary(SlotKind.I32, SlotKind.F32, () -> invokeStatic("java/lang/Float", "intBitsToFloat", "(I)F"));
+						case _64 -> unary(SlotKind.I64, SlotKind.F64, () -> invokeStatic("java/lang/Double", "longBitsToDouble", "(J)D"));
+					}
+				}
+
+				case NumericInstr.Inn_Reinterpret_Fnn(var size) -> {
+					switch(size) {
+						case _32 -> unary(SlotKind.F32, SlotKind.I32, () -> invokeStatic("java/lang/Float", "floatToRawIntBits", "(F)I"));
+						case _64 -> unary(SlotKind.F64, SlotKind.I64, () -> invokeStatic("java/lang/Double", "doubleToRawLongBits", "(D)J"));
+					}
+				}
+			}
+		}
+
+		private static int intKind(NumericInstr.NumSize size) {
+			return switch(size) {
+				case _32 -> SlotKind.I32;
+				case _64 -> SlotKind.I64;
+			};
+		}
+
+		private static int floatKind(NumericInstr.NumSize size) {
+			return switch(size) {
+				case _32 -> SlotKind.F32;
+				case _64 -> SlotKind.F64;
+			};
+		}
+
+		// The 64-bit shift instructions take an int shift distance.
+		private void shift(int opcode) {
+			binary(SlotKind.I64, () -> {
+				code.op(JvmOpcode.L2I);
+				code.op(opcode);
+			});
+		}
+
+		// Trapping truncation is implemented by Util in terms of doubles.
+		private void truncate(NumericInstr.NumSize intSize, NumericInstr.NumSize floatSize, String name) {
+			int inKind = floatKind(floatSize);
+			int outKind = intKind(intSize);
+			unary(inKind, outKind, () -> {
+				if(inKind == SlotKind.F32) {
+					code.op(JvmOpcode.F2D);
+				}
+				invokeStatic(UTIL, name, "(D)" + descriptor(outKind));
+			});
+		}
+
+		private void compileReferenceInstr(ReferenceInstr instr) {
+			switch(instr) {
+				case ReferenceInstr.Ref_Null(var type) -> {
+					code.op(JvmOpcode.ACONST_NULL);
+					store(SlotKind.REF, push(SlotKind.REF));
+				}
+				case ReferenceInstr.Ref_IsNull() -> {
+					load(SlotKind.REF, pop(SlotKind.REF));
+					condition(JvmOpcode.IFNULL);
+				}
+				case ReferenceInstr.Ref_Func(var func) -> {
+					code.op(JvmOpcode.GETSTATIC, functionField(func.index()));
+					store(SlotKind.REF, push(SlotKind.REF));
+				}
+			}
+		}
+
+		private void compileParametricInstr(ParametricInstr instr) {
+			switch(instr) {
+				case ParametricInstr.Drop() -> {
+					peekKind();
+					--height;
+				}
+				case ParametricInstr.Select(var types) -> {
+					int c = pop(SlotKind.I32);
+					int kind = peekKind();
+					int b = pop(kind);
+					int a = pop(kind);
+
+					// The result is stored in the slot of the first operand.
+					var keep = new CodeWriter.Label();
+					load(SlotKind.I32, c);
+					code.jump(JvmOpcode.IFNE, keep);
+					load(kind, b);
+					store(kind, a);
+					code.bind(keep);
+					push(kind);
+				}
+			}
+		}
+
+		private void compileVariableInstr(VariableInstr instr) {
+			switch(instr) {
+				case VariableInstr.Local_Get(var local) -> {
+					int kind = localKinds[local.index()];
+					load(kind, localSlots[local.index()]);
+					store(kind, push(kind));
+				}
+				case VariableInstr.Local_Set(var local) -> {
+					int kind = localKinds[local.index()];
+					load(kind, pop(kind));
+					store(kind, localSlots[local.index()]);
+				}
+				case VariableInstr.Local_Tee(var local) -> {
+					int kind = localKinds[local.index()];
+					load(kind, pop(kind));
+					push(kind);
+					store(kind, localSlots[local.index()]);
+				}
+				case VariableInstr.Global_Get(var global) -> {
+					int kind = SlotKind.of(module.getGlobalType(global).type());
+					var value = module.getGlobal(global.index());
+					if(value.isConstant() && !SlotKind.isObject(kind)) {
+						pushGlobalConstant(kind, value.getBits());
+					}
+					else {
+						code.op(JvmOpcode.GETSTATIC, globalField(global.index()));
+						invokeVirtual(GLOBAL, "get" + globalAccessorSuffix(kind), "()" + descriptor(kind));
+					}
+					store(kind, push(kind));
+				}
+				case VariableInstr.Global_Set(var global) -> {
+					int kind = SlotKind.of(module.getGlobalType(global).type());
+					int value = pop(kind);
+					code.op(JvmOpcode.GETSTATIC, globalField(global.index()));
+					load(kind, value);
+					invokeVirtual(GLOBAL, "set" + globalAccessorSuffix(kind), "(" + descriptor(kind) + ")V");
+				}
+			}
+		}
+
+		private void compileTableInstr(TableInstr instr) {
+			switch(instr) {
+				case TableInstr.Table_Get(var table) -> {
+					int i = pop(SlotKind.I32);
+					code.op(JvmOpcode.GETSTATIC, tableField(table.index()));
+					load(SlotKind.I32, i);
+					invokeVirtual(TABLE, "get", "(I)L" + OBJECT + ";");
+					store(SlotKind.REF, push(SlotKind.REF));
+				}
+				case TableInstr.Table_Set(var table) -> {
+					int val = pop(SlotKind.REF);
+					int i = pop(SlotKind.I32);
+					code.op(JvmOpcode.GETSTATIC, tableField(table.index()));
+					load(SlotKind.I32, i);
+					load(SlotKind.REF, val);
+					invokeVirtual(TABLE, "set", "(IL" + OBJECT + ";)V");
+				}
+				case TableInstr.Table_Size(var table) -> {
+					code.op(JvmOpcode.GETSTATIC, tableField(table.index()));
+					invokeVirtual(TABLE, "size", "()I");
+					store(SlotKind.I32, push(SlotKind.I32));
+				}
+				case TableInstr.Table_Grow(var table) -> {
+					int n = pop(SlotKind.I32);
+					int val = pop(SlotKind.REF);
+					code.op(JvmOpcode.GETSTATIC, tableField(table.index()));
+					load(SlotKind.I32, n);
+					load(SlotKind.REF, val);
+					invokeVirtual(TABLE, "grow", "(IL" + OBJECT + ";)I");
+					store(SlotKind.I32, push(SlotKind.I32));
+				}
+				case TableInstr.Table_Fill(var table) -> {
+					int n = pop(SlotKind.I32);
+					int val = pop(SlotKind.REF);
+					int i = pop(SlotKind.I32);
+					load(SlotKind.I32, n);
+					load(SlotKind.REF, val);
+					load(SlotKind.I32, i);
+					code.op(JvmOpcode.GETSTATIC, tableField(table.index()));
+					invokeStatic(TABLE, "fill", "(IL" + OBJECT + ";IL" + TABLE + ";)V");
+				}
+				case TableInstr.Table_Copy(var dest, var src) -> {
+					int n = pop(SlotKind.I32);
+					int s = pop(SlotKind.I32);
+					int d = pop(SlotKind.I32);
+					load(SlotKind.I32, n);
+					load(SlotKind.I32, s);
+					load(SlotKind.I32, d);
+					code.op(JvmOpcode.GETSTATIC, tableField(dest.index()));
+					code.op(JvmOpcode.GETSTATIC, tableField(src.index()));
+					invokeStatic(TABLE, "copy", "(IIIL" + TABLE + ";L" + TABLE + ";)V");
+				}
+				case TableInstr.Table_Init(var table, var elem) -> {
+					int n = pop(SlotKind.I32);
+					int s = pop(SlotKind.I32);
+					int d = pop(SlotKind.I32);
+					load(SlotKind.I32, d);
+					load(SlotKind.I32, s);
+					load(SlotKind.I32, n);
+					code.op(JvmOpcode.GETSTATIC, tableField(table.index()));
+					code.op(JvmOpcode.GETSTATIC, moduleField());
+					pushInt(elem.index());
+					invokeVirtual(MODULE, "getElement", "(I)L" + ELEMENTS + ";");
+					invokeStatic(TABLE, "init", "(IIIL" + TABLE + ";L" + ELEMENTS + ";)V");
+				}
+				case TableInstr.Elem_Drop(var elem) -> {
+					code.op(JvmOpcode.GETSTATIC, moduleField());
+					pushInt(elem.index());
+					invokeVirtual(MODULE, "dropElement", "(I)V");
+				}
+			}
+		}
+
+		// Must be called after anything that can grow the memory.
+		private void bindMemory() {
+			if(memoryBuffer >= 0) {
+				code.op(JvmOpcode.GETSTATIC, memoryField());
+				code.op(JvmOpcode.CHECKCAST, classFile.classRef(MEMORY_META));
+				invokeVirtual(MEMORY_META, "buffer", "()L" + MEMORY_BUFFER + ";");
+				code.local(JvmOpcode.ASTORE, memoryBuffer);
+			}
+		}
+
+		private void memoryAddress(MemoryInstr.MemArg memArg, int address) {
+			code.local(JvmOpcode.ALOAD, memoryBuffer);
+			load(SlotKind.I32, address);
+			if(memArg.offset() != 0) {
+				pushInt(memArg.offset());
+				invokeStatic(UTIL, "calculateMemoryAddress", "(II)I");
+			}
+		}
+
+		// Uses the Aligned variant of an access when the alignment hint is the natural alignment of the value.
+		private static String accessMethod(MemoryInstr.MemArg memArg, String name, String valueDescriptor) {
+			int naturalAlign = switch(valueDescriptor) {
+				case "S" -> 1;
+				case "I", "F" -> 2;
+				case "J", "D" -> 3;
+				default -> 0;
+			};
+			return naturalAlign > 0 && memArg.align() == naturalAlign ? name + "Aligned" : name;
+		}
+
+		private void memoryLoad(MemoryInstr.MemArg memArg, String name, String valueDescriptor, int kind, Runnable convert) {
+			int address = pop(SlotKind.I32);
+			memoryAddress(memArg, address);
+			invokeInterface(MEMORY_BUFFER, accessMethod(memArg, name, valueDescriptor), "(I)" + valueDescriptor);
+			convert.run();
+			store(kind, push(kind));
+		}
+
+		private void memoryStore(MemoryInstr.MemArg memArg, String name, String valueDescriptor, int kind, Runnable convert) {
+			int value = pop(kind);
+			int address = pop(SlotKind.I32);
+			memoryAddress(memArg, address);
+			load(kind, value);
+			convert.run();
+			invokeInterface(MEMORY_BUFFER, accessMethod(memArg, name, valueDescriptor), "(I" + valueDescriptor + ")V");
+		}
+
+		private void compileMemoryInstr(MemoryInstr instr) {
+			Runnable none = () -> {};
+			switch(instr) {
+				case MemoryInstr.Inn_Load(var numSize, var memArg) -> {
+					switch(numSize) {
+						case _32 -> memoryLoad(memArg, "loadI32", "I", SlotKind.I32, none);
+						case _64 -> memoryLoad(memArg, "loadI64", "J", SlotKind.I64, none);
+					}
+				}
+
+				case MemoryInstr.Fnn_Load(var numSize, var memArg) -> {
+					switch(numSize) {
+						case _32 -> memoryLoad(memArg, "loadF32", "F", SlotKind.F32, none);
+						case _64 -> memoryLoad(memArg, "loadF64", "D", SlotKind.F64, none);
+					}
+				}
+
+				case MemoryInstr.Inn_Store(var numSize, var memArg) -> {
+					switch(numSize) {
+						case _32 -> memoryStore(memArg, "storeI32", "I", SlotKind.I32, none);
+						case _64 -> memoryStore(memArg, "storeI64", "J", SlotKind.I64, none);
+					}
+				}
+
+				case MemoryInstr.Fnn_Store(var numSize, var memArg) -> {
+					switch(numSize) {
+						case _32 -> memoryStore(memArg, "storeF32", "F", SlotKind.F32, none);
+						case _64 -> memoryStore(memArg, "storeF64", "D", SlotKind.F64, none);
+					}
+				}
+
+				case MemoryInstr.Inn_Load8_U(var numSize, var memArg) -> memoryLoad(memArg, "loadI8", "B", intKind(numSize), () -> {
+					pushInt(0xFF);
+					code.op(JvmOpcode.IAND);
+					widen(numSize);
+				});
+
+				case MemoryInstr.Inn_Load8_S(var numSize, var memArg) -> memoryLoad(memArg, "loadI8", "B", intKind(numSize), () -> widen(numSize));
+
+				case MemoryInstr.Inn_Load16_U(var numSize, var memArg) -> memoryLoad(memArg, "loadI16", "S", intKind(numSize), () -> {
+					code.ldc(classFile.intConstant(0xFFFF));
+					code.op(JvmOpcode.IAND);
+					widen(numSize);
+				});
+
+				case MemoryInstr.Inn_Load16_S(var numSize, var memArg) -> memoryLoad(memArg, "loadI16", "S", intKind(numSize), () -> widen(numSize));
+
+				case MemoryInstr.I64_Load32_U(var memArg) -> memoryLoad(memArg, "loadI32", "I", SlotKind.I64, () -> invokeStatic("java/lang/Integer", "toUnsignedLong", "(I)J"));
+				case MemoryInstr.I64_Load32_S(var memArg) -> memoryLoad(memArg, "loadI32", "I", SlotKind.I64, () -> code.op(JvmOpcode.I2L));
+
+				case MemoryInstr.Inn_Store8(var numSize, var memArg) -> memoryStore(memArg, "storeI8", "B", intKind(numSize), () -> {
+					narrow(numSize);
+					code.op(JvmOpcode.I2B);
+				});
+
+				case MemoryInstr.Inn_Store16(var numSize, var memArg) -> memoryStore(memArg, "storeI16", "S", intKind(numSize), () -> {
+					narrow(numSize);
+					code.op(JvmOpcode.I2S);
+				});
+
+				case MemoryInstr.I64_Store32(var memArg) -> memoryStore(memArg, "storeI32", "I", SlotKind.I64, () -> code.op(JvmOpcode.L2I));
+
+				case MemoryInstr.Memory_Size() -> {
+					code.local(JvmOpcode.ALOAD, memoryBuffer);
+					invokeInterface(MEMORY_BUFFER, "pageSize", "()I");
+					store(SlotKind.I32, push(SlotKind.I32));
+				}
+				case MemoryInstr.Memory_Grow() -> {
+					int n = pop(SlotKind.I32);
+					code.op(JvmOpcode.GETSTATIC, memoryField());
+					load(SlotKind.I32, n);
+					invokeInterface(MEMORY, "grow", "(I)I");
+					store(SlotKind.I32, push(SlotKind.I32));
+					bindMemory();
+				}
+				case MemoryInstr.Memory_Fill() -> {
+					int n = pop(SlotKind.I32);
+					int val = pop(SlotKind.I32);
+					int d = pop(SlotKind.I32);
+					load(SlotKind.I32, d);
+					load(SlotKind.I32, val);
+					code.op(JvmOpcode.I2B);
+					load(SlotKind.I32, n);
+					code.op(JvmOpcode.GETSTATIC, memoryField());
+					invokeStaticInterface(MEMORY, "fill", "(IBIL" + MEMORY + ";)V");
+				}
+				case MemoryInstr.Memory_Copy() -> {
+					int n = pop(SlotKind.I32);
+					int s = pop(SlotKind.I32);
+					int d = pop(SlotKind.I32);
+					load(SlotKind.I32, d);
+					load(SlotKind.I32, s);
+					load(SlotKind.I32, n);
+					code.op(JvmOpcode.GETSTATIC, memoryField());
+					invokeStaticInterface(MEMORY, "copy", "(IIIL" + MEMORY + ";)V");
+				}
+				case MemoryInstr.Memory_Init(var dataIdx) -> {
+					int n = pop(SlotKind.I32);
+					int s = pop(SlotKind.I32);
+					int d = pop(SlotKind.I32);
+					code.op(JvmOpcode.GETSTATIC, memoryField());
+					load(SlotKind.I32, d);
+					load(SlotKind.I32, s);
+					load(SlotKind.I32, n);
+					code.op(JvmOpcode.GETSTATIC, moduleField());
+					pushInt(dataIdx.index());
+					invokeVirtual(MODULE, "getData", "(I)L" + DATA + ";");
+					invokeInterface(MEMORY, "init", "(IIIL" + DATA + ";)V");
+				}
+				case MemoryInstr.Data_Drop(var dataIdx) -> {
+					code.op(JvmOpcode.GETSTATIC, moduleField());
+					pushInt(dataIdx.index());
+					invokeVirtual(MODULE, "dropData", "(I)V");
+				}
+
+				case MemoryInstr.Memory_Atomic_Notify(var memArg) -> {
+					int count = pop(SlotKind.I32);
+					int address = pop(SlotKind.I32);
+					code.op(JvmOpcode.GETSTATIC, memoryField());
+					atomicAddress(memArg, address, MemoryInstr.AtomicSize._32);
+					load(SlotKind.I32, count);
+					invokeInterface(MEMORY, "atomicNotify", "(II)I");
+					store(SlotKind.I32, push(SlotKind.I32));
+				}
+
+				case MemoryInstr.Memory_Atomic_Wait(var numSize, var memArg) -> {
+					int timeout = pop(SlotKind.I64);
+					int expected = pop(intKind(numSize));
+					int address = pop(SlotKind.I32);
+					code.op(JvmOpcode.GETSTATIC, memoryField());
+					switch(numSize) {
+						case _32 -> {
+							atomicAddress(memArg, address, MemoryInstr.AtomicSize._32);
+							load(SlotKind.I32, expected);
+							load(SlotKind.I64, timeout);
+							invokeInterface(MEMORY, "atomicWait32", "(IIJ)I");
+						}
+						case _64 -> {
+							atomicAddress(memArg, address, MemoryInstr.AtomicSize._64);
+							load(SlotKind.I64, expected);
+							load(SlotKind.I64, timeout);
+							invokeInterface(MEMORY, "atomicWait64", "(IJJ)I");
+						}
+					}
+					store(SlotKind.I32, push(SlotKind.I32));
+				}
+
+				case MemoryInstr.Atomic_Fence() -> invokeStatic("java/lang/invoke/VarHandle", "fullFence", "()V");
+
+				case MemoryInstr.Inn_Atomic_Load(var numSize, var size, var memArg) -> {
+					int address = pop(SlotKind.I32);
+					code.local(JvmOpcode.ALOAD, memoryBuffer);
+					atomicAddress(memArg, address, size);
+					invokeInterface(MEMORY_BUFFER, "atomicLoad" + atomicSuffix(size), "(I)" + atomicDescriptor(size));
+					atomicExtend(numSize, size);
+					store(intKind(numSize), push(intKind(numSize)));
+				}
+
+				case MemoryInstr.Inn_Atomic_Store(var numSize, var size, var memArg) -> {
+					int value = pop(intKind(numSize));
+					int address = pop(SlotKind.I32);
+					code.local(JvmOpcode.ALOAD, memoryBuffer);
+					atomicAddress(memArg, address, size);
+					load(intKind(numSize), value);
+					atomicWrap(numSize, size);
+					invokeInterface(MEMORY_BUFFER, "atomicStore" + atomicSuffix(size), "(I" + atomicDescriptor(size) + ")V");
+				}
+
+				case MemoryInstr.Inn_Atomic_Rmw(var numSize, var size, var op, var memArg) -> {
+					int value = pop(intKind(numSize));
+					int address = pop(SlotKind.I32);
+					code.local(JvmOpcode.ALOAD, memoryBuffer);
+					code.op(JvmOpcode.GETSTATIC, classFile.fieldRef(ATOMIC_RMW_OP, op.name(), "L" + ATOMIC_RMW_OP + ";"));
+					atomicAddress(memArg, address, size);
+					load(intKind(numSize), value);
+					atomicWrap(numSize, size);
+					String descriptor = atomicDescriptor(size);
+					invokeInterface(MEMORY_BUFFER, "atomicRmw" + atomicSuffix(size), "(L" + ATOMIC_RMW_OP + ";I" + descriptor + ")" + descriptor);
+					atomicExtend(numSize, size);
+					store(intKind(numSize), push(intKind(numSize)));
+				}
+
+				case MemoryInstr.Inn_Atomic_Cmpxchg(var numSize, var size, var memArg) -> {
+					int replacement = pop(intKind(numSize));
+					int expected = pop(intKind(numSize));
+					int address = pop(SlotKind.I32);
+					code.local(JvmOpcode.ALOAD, memoryBuffer);
+					atomicAddress(memArg, address, size);
+					load(intKind(numSize), expected);
+					atomicWrap(numSize, size);
+					load(intKind(numSize), replacement);
+					atomicWrap(numSize, size);
+					String descriptor = atomicDescriptor(size);
+					invokeInterface(MEMORY_BUFFER, "atomicCompareExchange" + atomicSuffix(size), "(I" + descriptor + descriptor + ")" + descriptor);
+					atomicExtend(numSize, size);
+					store(intKind(numSize), push(intKind(numSize)));
+				}
+
+				default -> throw new NotCompilableException("Vector instructions are not supported");
+			}
+		}
+
+		// Atomic accesses must be in bounds and aligned before the memory is accessed.
+		private void atomicAddress(MemoryInstr.MemArg memArg, int address, MemoryInstr.AtomicSize size) {
+			memoryAddress(memArg, address);
+			pushInt(switch(size) {
+				case _8 -> 1;
+				case _16 -> 2;
+				case _32 -> 4;
+				case _64 -> 8;
+			});
+			invokeStatic(UTIL, "checkAtomicAddress", "(L" + MEMORY_BUFFER + ";II)I");
+		}
+
+		private static String atomicSuffix(MemoryInstr.AtomicSize size) {
+			return switch(size) {
+				case _8 -> "I8";
+				case _16 -> "I16";
+				case _32 -> "I32";
+				case _64 -> "I64";
+			};
+		}
+
+		private static String atomicDescriptor(MemoryInstr.AtomicSize size) {
+			return switch(size) {
+				case _8 -> "B";
+				case _16 -> "S";
+				case _32 -> "I";
+				case _64 -> "J";
+			};
+		}
+
+		// Converts an operand to the type of the value in memory.
+		private void atomicWrap(NumericInstr.NumSize numSize, MemoryInstr.AtomicSize size) {
+			switch(size) {
+				case _8 -> {
+					narrow(numSize);
+					code.op(JvmOpcode.I2B);
+				}
+				case _16 -> {
+					narrow(numSize);
+					code.op(JvmOpcode.I2S);
+				}
+				case _32 -> narrow(numSize);
+				case _64 -> {}
+			}
+		}
+
+		// Zero extends a value in memory to the result type.
+		private void atomicExtend(NumericInstr.NumSize numSize, MemoryInstr.AtomicSize size) {
+			switch(size) {
+				case _8 -> {
+					pushInt(0xFF);
+					code.op(JvmOpcode.IAND);
+					widen(numSize);
+				}
+				case _16 -> {
+					code.ldc(classFile.intConstant(0xFFFF));
+					code.op(JvmOpcode.IAND);
+					widen(numSize);
+				}
+				case _32 -> {
+					if(numSize == NumericInstr.NumSize._64) {
+						invokeStatic("java/lang/Integer", "toUnsignedLong", "(I)J");
+					}
+				}
+				case _64 -> {}
+			}
+		}
+
+		private void widen(NumericInstr.NumSize size) {
+			if(size == NumericInstr.NumSize._64) {
+				code.op(JvmOpcode.I2L);
+			}
+		}
+
+		private void narrow(NumericInstr.NumSize size) {
+			if(size == NumericInstr.NumSize._64) {
+				code.op(JvmOpcode.L2I);
+			}
+		}
+
+		private void emitReturn() {
+			if(resultKinds.length == 0) {
+				code.op(JvmOpcode.RETURN);
+			}
+			else {
+				int kind = resultKinds[0];
+				load(kind, pop(kind));
+				++height;
+				code.op(returnOpcode(kind));
+			}
+		}
+
+		private boolean isReturn(LabelIdx label) {
+			return label.index() >= controlStack.size();
+		}
+
+		private ControlFrame target(LabelIdx label) {
+			var frame = controlStack.get(controlStack.size() - 1 - label.index());
+			frame.targeted = true;
+			return frame;
+		}
+
+		private boolean needsCopy(ControlFrame frame) {
+			return frame.branchKinds.length > 0 && height - frame.branchKinds.length != frame.height;
+		}
+
+		// Moves the branch values from the top of the stack to their position after the branch.
+		private void copyBranchValues(ControlFrame frame) {
+			int arity = frame.branchKinds.length;
+			int src = height - arity;
+			if(src == frame.height) {
+				return;
+			}
+
+			for(int i = 0; i < arity; ++i) {
+				int kind = frame.branchKinds[i];
+				if(stackKinds[src + i] != kind) {
+					throw new NotCompilableException("Unexpected operand type");
+				}
+				load(kind, stackSlot(src + i, kind));
+				store(kind, stackSlot(frame.height + i, kind));
+			}
+		}
+
+		private void branch(LabelIdx label) {
+			if(isReturn(label)) {
+				emitReturn();
+				return;
+			}
+
+			var frame = target(label);
+			copyBranchValues(frame);
+			code.jump(JvmOpcode.GOTO, frame.label);
+		}
+
+		private void compileControlInstr(ControlInstr instr) {
+			switch(instr) {
+				case ControlInstr.Nop() -> {}
+				case ControlInstr.Unreachable() -> {
+					String exception = "dev/argon/jawawasm/engine/UnreachableException";
+					code.op(JvmOpcode.NEW, classFile.classRef(exception));
+					code.op(JvmOpcode.DUP);
+					code.invoke(JvmOpcode.INVOKESPECIAL, classFile.methodRef(exception, "<init>", "()V"));
+					code.op(JvmOpcode.ATHROW);
+					reachable = false;
+				}
+
+				case ControlInstr.Block(var blockType, var body) -> {
+					var t = expandBlockType(blockType);
+					int[] results = SlotKind.of(t.results());
+					var frame = new ControlFrame(height - t.args().types().size(), results, new CodeWriter.Label());
+
+					controlStack.add(frame);
+					compileInstrs(body);
+					controlStack.remove(controlStack.size() - 1);
+					endBlock(frame, results);
+				}
+
+				case ControlInstr.Loop(var blockType, var body) -> {
+					var t = expandBlockType(blockType);
+					int[] params = SlotKind.of(t.args());
+					var frame = new ControlFrame(height - params.length, params, new CodeWriter.Label());
+					code.bind(frame.label);
+					checkEpoch();
+
+					controlStack.add(frame);
+					compileInstrs(body);
+					controlStack.remove(controlStack.size() - 1);
+					height = frame.height;
+					pushKinds(SlotKind.of(t.results()));
+				}
+
+				case ControlInstr.If(var blockType, var thenBody, var elseBody) -> {
+					var t = expandBlockType(blockType);
+					int[] params = SlotKind.of(t.args());
+					int[] results = SlotKind.of(t.results());
+
+					int cond = pop(SlotKind.I32);
+					var frame = new ControlFrame(height - params.length, results, new CodeWriter.Label());
+					var elseLabel = new CodeWriter.Label();
+					load(SlotKind.I32, cond);
+					code.jump(JvmOpcode.IFEQ, elseLabel);
+
+					controlStack.add(frame);
+					compileInstrs(thenBody);
+					if(reachable) {
+						frame.targeted = true;
+						code.jump(JvmOpcode.GOTO, frame.label);
+					}
+
+					code.bind(elseLabel);
+					reachable = true;
+					height = frame.height;
+					pushKinds(params);
+					compileInstrs(elseBody);
+					controlStack.remove(controlStack.size() - 1);
+					endBlock(frame, results);
+				}
+
+				case ControlInstr.Br(var label) -> {
+					branch(label);
+					reachable = false;
+				}
+
+				case ControlInstr.Br_If(var label) -> {
+					int cond = pop(SlotKind.I32);
+					load(SlotKind.I32, cond);
+					if(!isReturn(label) && !needsCopy(target(label))) {
+						code.jump(JvmOpcode.IFNE, target(label).label);
+					}
+					else {
+						var skip = new CodeWriter.Label();
+						code.jump(JvmOpcode.IFEQ, skip);
+						branch(label);
+						code.bind(skip);
+					}
+				}
+
+				case ControlInstr.Br_Table(var labels, var fallback) -> {
+					int index = pop(SlotKind.I32);
+					if(labels.isEmpty()) {
+						branch(fallback);
+						reachable = false;
+						return;
+					}
+
+					// Targets that need values moved or that return get a stub that is shared by all entries with the same label.
+					Map<Integer, CodeWriter.Label> stubs = new LinkedHashMap<>();
+					CodeWriter.Label[] targets = new CodeWriter.Label[labels.size()];
+					for(int i = 0; i < targets.length; ++i) {
+						targets[i] = switchTarget(labels.get(i), stubs);
+					}
+					var defaultTarget = switchTarget(fallback, stubs);
+
+					load(SlotKind.I32, index);
+					code.tableSwitch(defaultTarget, targets);
+
+					for(var stub : stubs.entrySet()) {
+						code.bind(stub.getValue());
+						branch(new LabelIdx(stub.getKey()));
+					}
+					reachable = false;
+				}
+
+				case ControlInstr.Return() -> {
+					emitReturn();
+					reachable = false;
+				}
+
+				case ControlInstr.Call(var funcIdx) -> {
+					var t = module.getFunctionType(funcIdx);
+					int[] params = SlotKind.of(t.args());
+					int[] results = SlotKind.of(t.results());
+					int index = funcIdx.index();
+					var callee = module.getFunction(index);
+					if(callee instanceof ModuleFunction moduleFunction && hasJvmSignature(t)) {
+						// Recursive calls invoke the method directly.
+						boolean recursive = callee == function;
+						if(!recursive) {
+							code.op(JvmOpcode.GETSTATIC, callSiteField(index, moduleFunction));
+						}
+
+						for(int i = params.length - 1; i >= 0; --i) {
+							pop(params[i]);
+						}
+						int slots = 1;
+						for(int i = 0; i < params.length; ++i) {
+							load(params[i], stackSlot(height + i, params[i]));
+							slots += CodeWriter.slotSize(descriptor(params[i]));
+						}
+						code.requireStack(slots);
+
+						if(recursive) {
+							invokeStatic(CLASS_NAME, CODE_METHOD, methodDescriptor(t));
+						}
+						else {
+							invokeVirtual(METHOD_HANDLE, "invokeExact", methodDescriptor(t));
+						}
+
+						if(results.length > 0) {
+							store(results[0], push(results[0]));
+						}
+					}
+					else {
+						code.op(JvmOpcode.GETSTATIC, functionField(index));
+						invokeBoxed(params, results);
+					}
+					bindMemory();
+				}
+
+				case ControlInstr.Call_Indirect(var tableIdx, var typeIdx) -> {
+					var t = module.getType(typeIdx);
+					int i = pop(SlotKind.I32);
+					code.op(JvmOpcode.GETSTATIC, indirectCallField(t));
+					code.op(JvmOpcode.GETSTATIC, tableField(tableIdx.index()));
+					load(SlotKind.I32, i);
+					invokeVirtual(INDIRECT_CALL_CACHE, "lookup", "(L" + TABLE + ";I)L" + FUNCTION + ";");
+					invokeBoxed(SlotKind.of(t.args()), SlotKind.of(t.results()));
+					bindMemory();
+				}
+
+				// Tail calls rely on the interpreter returning a delayed result.
+				case ControlInstr.Return_Call(var funcIdx) -> throw new NotCompilableException("Tail calls are not supported");
+				case ControlInstr.Return_Call_Indirect(var tableIdx, var typeIdx) -> throw new NotCompilableException("Tail calls are not supported");
+			}
+		}
+
+		private CodeWriter.Label switchTarget(LabelIdx label, Map<Integer, CodeWriter.Label> stubs) {
+			if(!isReturn(label)) {
+				var frame = target(label);
+				if(!needsCopy(frame)) {
+					return frame.label;
+				}
+			}
+
+			return stubs.computeIfAbsent(label.index(), i -> new CodeWriter.Label());
+		}
+
+		private void endBlock(ControlFrame frame, int[] results) {
+			if(frame.targeted) {
+				code.bind(frame.label);
+				reachable = true;
+			}
+			height = frame.height;
+			pushKinds(results);
+		}
+
+		// Calls the WasmFunction on top of the JVM stack with the arguments and results passed as Object[].
+		private void invokeBoxed(int[] params, int[] results) {
+			for(int i = params.length - 1; i >= 0; --i) {
+				pop(params[i]);
+			}
+
+			code.requireStack(8);
+			pushInt(params.length);
+			code.op(JvmOpcode.ANEWARRAY, classFile.classRef(OBJECT));
+			for(int i = 0; i < params.length; ++i) {
+				code.op(JvmOpcode.DUP);
+				pushInt(i);
+				load(params[i], stackSlot(height + i, params[i]));
+				box(code, params[i]);
+				code.op(JvmOpcode.AASTORE);
+			}
+			invokeInterface(FUNCTION, "invokeNow", "(" + OBJECT_ARRAY + ")" + OBJECT_ARRAY);
+
+			if(results.length == 0) {
+				code.op(JvmOpcode.POP);
+			}
+			for(int i = 0; i < results.length; ++i) {
+				if(i < results.length - 1) {
+					code.op(JvmOpcode.DUP);
+				}
+				pushInt(i);
+				code.op(JvmOpcode.AALOAD);
+				unbox(code, results[i]);
+				store(results[i], push(results[i]));
+			}
+		}
+	}
+}
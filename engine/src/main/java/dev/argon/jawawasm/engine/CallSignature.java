@@ -0,0 +1,16 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.FuncType;
+
+/**
+ * A function type along with the slot kinds of its parameters and results.
+ * @param type The function type.
+ * @param typeId The ID of the function type from FuncTypeIds.
+ * @param params The slot kinds of the parameters.
+ * @param results The slot kinds of the results.
+ */
+record CallSignature(FuncType type, int typeId, int[] params, int[] results) {
+	public static CallSignature of(FuncType type) {
+		return new CallSignature(type, FuncTypeIds.of(type), SlotKind.of(type.args()), SlotKind.of(type.results()));
+	}
+}
@@ -0,0 +1,11 @@
+package dev.argon.jawawasm.engine;
+
+/**
+ * The maximum call depth was exceeded.
+ */
+public class CallStackExhaustedException extends Exception {
+	/**
+	 * Create a CallStackExhaustedException.
+	 */
+	public CallStackExhaustedException() {}
+}
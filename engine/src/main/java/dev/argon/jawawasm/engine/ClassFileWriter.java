@@ -0,0 +1,244 @@
+package dev.argon.jawawasm.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the minimal subset of the class file format needed by BytecodeCompiler.
+ */
+final class ClassFileWriter {
+	public ClassFileWriter(String name, String superName, List<String> interfaces) {
+		thisClass = classRef(name);
+		superClass = classRef(superName);
+		for(String iface : interfaces) {
+			this.interfaces.add(classRef(iface));
+		}
+	}
+
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_PRIVATE = 0x0002;
+	public static final int ACC_STATIC = 0x0008;
+	public static final int ACC_FINAL = 0x0010;
+	public static final int ACC_SUPER = 0x0020;
+
+	// Java 17, the minimum version supported by hidden classes with full stack map frames.
+	private static final int CLASS_VERSION = 61;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private final DataOutputStream pool = new DataOutputStream(poolBytes);
+	private final Map<Object, Integer> poolEntries = new HashMap<>();
+	private int poolSize = 1;
+
+	private final int thisClass;
+	private final int superClass;
+	private final List<Integer> interfaces = new ArrayList<>();
+	private final List<byte[]> fields = new ArrayList<>();
+	private final List<byte[]> methods = new ArrayList<>();
+
+	private record PoolKey(int tag, Object value) {}
+	private record PoolRef(int tag, int a, int b) {}
+
+	private int addEntry(Object key, int slots, IOAction write) {
+		Integer index = poolEntries.get(key);
+		if(index != null) {
+			return index;
+		}
+
+		int newIndex = poolSize;
+		try {
+			write.run();
+		}
+		catch(IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		poolSize += slots;
+		if(poolSize > 0xFFFF) {
+			throw new IllegalStateException("Constant pool is too large");
+		}
+		poolEntries.put(key, newIndex);
+		return newIndex;
+	}
+
+	private interface IOAction {
+		void run() throws IOException;
+	}
+
+	public int utf8(String value) {
+		return addEntry(new PoolKey(CONSTANT_UTF8, value), 1, () -> {
+			pool.writeByte(CONSTANT_UTF8);
+			pool.writeUTF(value);
+		});
+	}
+
+	public int classRef(String internalName) {
+		int name = utf8(internalName);
+		return addEntry(new PoolRef(CONSTANT_CLASS, name, 0), 1, () -> {
+			pool.writeByte(CONSTANT_CLASS);
+			pool.writeShort(name);
+		});
+	}
+
+	public int intConstant(int value) {
+		return addEntry(new PoolKey(CONSTANT_INTEGER, value), 1, () -> {
+			pool.writeByte(CONSTANT_INTEGER);
+			pool.writeInt(value);
+		});
+	}
+
+	// Floats and doubles are keyed by their raw bits so that NaN payloads and negative zero are preserved.
+	public int floatConstant(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		return addEntry(new PoolKey(CONSTANT_FLOAT, bits), 1, () -> {
+			pool.writeByte(CONSTANT_FLOAT);
+			pool.writeInt(bits);
+		});
+	}
+
+	public int longConstant(long value) {
+		return addEntry(new PoolKey(CONSTANT_LONG, value), 2, () -> {
+			pool.writeByte(CONSTANT_LONG);
+			pool.writeLong(value);
+		});
+	}
+
+	public int doubleConstant(double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		return addEntry(new PoolKey(CONSTANT_DOUBLE, bits), 2, () -> {
+			pool.writeByte(CONSTANT_DOUBLE);
+			pool.writeLong(bits);
+		});
+	}
+
+	private int nameAndType(String name, String descriptor) {
+		int nameIndex = utf8(name);
+		int descIndex = utf8(descriptor);
+		return addEntry(new PoolRef(CONSTANT_NAME_AND_TYPE, nameIndex, descIndex), 1, () -> {
+			pool.writeByte(CONSTANT_NAME_AND_TYPE);
+			pool.writeShort(nameIndex);
+			pool.writeShort(descIndex);
+		});
+	}
+
+	private int memberRef(int tag, String owner, String name, String descriptor) {
+		int ownerIndex = classRef(owner);
+		int natIndex = nameAndType(name, descriptor);
+		return addEntry(new PoolRef(tag, ownerIndex, natIndex), 1, () -> {
+			pool.writeByte(tag);
+			pool.writeShort(ownerIndex);
+			pool.writeShort(natIndex);
+		});
+	}
+
+	public int fieldRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+	}
+
+	public int methodRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+	}
+
+	public int interfaceMethodRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+	}
+
+	public void addField(int access, String name, String descriptor) {
+		var bytes = new ByteArrayOutputStream();
+		var out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(0);
+		}
+		catch(IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		fields.add(bytes.toByteArray());
+	}
+
+	public void addMethod(int access, String name, String descriptor, CodeWriter code) {
+		byte[] body = code.toByteArray();
+		byte[] stackMap = code.stackMapTable(this);
+
+		var bytes = new ByteArrayOutputStream();
+		var out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(1);
+
+			int stackMapLength = stackMap == null ? 0 : 6 + stackMap.length;
+
+			out.writeShort(utf8("Code"));
+			out.writeInt(2 + 2 + 4 + body.length + 2 + 2 + stackMapLength);
+			out.writeShort(code.maxStack());
+			out.writeShort(code.maxLocals());
+			out.writeInt(body.length);
+			out.write(body);
+			out.writeShort(0);
+			if(stackMap == null) {
+				out.writeShort(0);
+			}
+			else {
+				out.writeShort(1);
+				out.writeShort(utf8("StackMapTable"));
+				out.writeInt(stackMap.length);
+				out.write(stackMap);
+			}
+		}
+		catch(IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		methods.add(bytes.toByteArray());
+	}
+
+	public byte[] toByteArray() {
+		var bytes = new ByteArrayOutputStream();
+		var out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(CLASS_VERSION);
+			out.writeShort(poolSize);
+			out.write(poolBytes.toByteArray());
+			out.writeShort(ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.size());
+			for(int iface : interfaces) {
+				out.writeShort(iface);
+			}
+			out.writeShort(fields.size());
+			for(byte[] field : fields) {
+				out.write(field);
+			}
+			out.writeShort(methods.size());
+			for(byte[] method : methods) {
+				out.write(method);
+			}
+			out.writeShort(0);
+		}
+		catch(IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,326 @@
+package dev.argon.jawawasm.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Writes the code of a single method.
+ * The operand stack must be empty at every label, so each stack map frame only needs to describe the locals.
+ */
+final class CodeWriter {
+	public CodeWriter(List<String> paramTypes) {
+		for(String type : paramTypes) {
+			addLocal(type);
+		}
+		paramEntries = localTypes.size();
+	}
+
+	private byte[] code = new byte[256];
+	private int size = 0;
+	private int maxStack = 8;
+	private int maxLocals = 0;
+
+	// The descriptors of the locals in the order they were allocated.
+	private final List<String> localTypes = new ArrayList<>();
+	private final int paramEntries;
+
+	// Maps code positions to whether the frame at that position has all locals or just the parameters.
+	private final TreeMap<Integer, Boolean> frames = new TreeMap<>();
+
+	/**
+	 * A position in the code that may be the target of a jump.
+	 */
+	public static final class Label {
+		private int position = -1;
+		private final List<int[]> fixups = new ArrayList<>();
+
+		public boolean isBound() {
+			return position >= 0;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int maxStack() {
+		return maxStack;
+	}
+
+	public int maxLocals() {
+		return maxLocals;
+	}
+
+	public void requireStack(int depth) {
+		if(depth > maxStack) {
+			maxStack = depth;
+		}
+	}
+
+	public int addLocal(String type) {
+		int index = maxLocals;
+		localTypes.add(type);
+		maxLocals += slotSize(type);
+		if(maxLocals > 0xFFFF) {
+			throw new UnsupportedOperationException("Too many locals");
+		}
+		return index;
+	}
+
+	// Locals allocated after the parameters are only initialized by the code emitted by this method.
+	public List<String> nonParamLocals() {
+		return localTypes.subList(paramEntries, localTypes.size());
+	}
+
+	public int firstNonParamLocal() {
+		int index = 0;
+		for(int i = 0; i < paramEntries; ++i) {
+			index += slotSize(localTypes.get(i));
+		}
+		return index;
+	}
+
+	public static int slotSize(String type) {
+		return type.equals("J") || type.equals("D") ? 2 : 1;
+	}
+
+	private void ensure(int n) {
+		if(size + n > code.length) {
+			code = Arrays.copyOf(code, Math.max(code.length * 2, size + n));
+		}
+	}
+
+	public void u1(int value) {
+		ensure(1);
+		code[size++] = (byte)value;
+	}
+
+	public void u2(int value) {
+		ensure(2);
+		code[size++] = (byte)(value >>> 8);
+		code[size++] = (byte)value;
+	}
+
+	public void u4(int value) {
+		ensure(4);
+		code[size++] = (byte)(value >>> 24);
+		code[size++] = (byte)(value >>> 16);
+		code[size++] = (byte)(value >>> 8);
+		code[size++] = (byte)value;
+	}
+
+	private void putU2(int position, int value) {
+		code[position] = (byte)(value >>> 8);
+		code[position + 1] = (byte)value;
+	}
+
+	private void putU4(int position, int value) {
+		code[position] = (byte)(value >>> 24);
+		code[position + 1] = (byte)(value >>> 16);
+		code[position + 2] = (byte)(value >>> 8);
+		code[position + 3] = (byte)value;
+	}
+
+	public void op(int opcode) {
+		u1(opcode);
+	}
+
+	public void op(int opcode, int u2Operand) {
+		u1(opcode);
+		u2(u2Operand);
+	}
+
+	public void pushInt(int value) {
+		if(value >= -1 && value <= 5) {
+			op(JvmOpcode.ICONST_0 + value);
+		}
+		else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			u1(JvmOpcode.BIPUSH);
+			u1(value);
+		}
+		else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			op(JvmOpcode.SIPUSH, value);
+		}
+		else {
+			throw new IllegalArgumentException("Integer constant must be loaded from the constant pool");
+		}
+	}
+
+	public void ldc(int poolIndex) {
+		if(poolIndex <= 0xFF) {
+			u1(JvmOpcode.LDC);
+			u1(poolIndex);
+		}
+		else {
+			op(JvmOpcode.LDC_W, poolIndex);
+		}
+	}
+
+	public void ldc2(int poolIndex) {
+		op(JvmOpcode.LDC2_W, poolIndex);
+	}
+
+	// Emits a load or store of a local, using the wide form if needed.
+	public void local(int opcode, int index) {
+		if(index <= 0xFF) {
+			u1(opcode);
+			u1(index);
+		}
+		else {
+			u1(JvmOpcode.WIDE);
+			op(opcode, index);
+		}
+	}
+
+	public void invoke(int opcode, int methodRef) {
+		op(opcode, methodRef);
+	}
+
+	public void invokeInterface(int methodRef, int argSlots) {
+		op(JvmOpcode.INVOKEINTERFACE, methodRef);
+		u1(argSlots + 1);
+		u1(0);
+	}
+
+	public void jump(int opcode, Label label) {
+		int opPosition = size;
+		u1(opcode);
+		if(label.isBound()) {
+			u2(checkedOffset(label.position - opPosition));
+		}
+		else {
+			label.fixups.add(new int[] { opPosition, size, 2 });
+			u2(0);
+		}
+	}
+
+	public void tableSwitch(Label defaultLabel, Label[] labels) {
+		int opPosition = size;
+		u1(JvmOpcode.TABLESWITCH);
+		while(size % 4 != 0) {
+			u1(0);
+		}
+		switchTarget(opPosition, defaultLabel);
+		u4(0);
+		u4(labels.length - 1);
+		for(Label label : labels) {
+			switchTarget(opPosition, label);
+		}
+	}
+
+	private void switchTarget(int opPosition, Label label) {
+		if(label.isBound()) {
+			u4(label.position - opPosition);
+		}
+		else {
+			label.fixups.add(new int[] { opPosition, size, 4 });
+			u4(0);
+		}
+	}
+
+	private static int checkedOffset(int offset) {
+		if(offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+			throw new UnsupportedOperationException("Branch offset is too large");
+		}
+		return offset;
+	}
+
+	/**
+	 * Binds a label with a frame containing all locals.
+	 * @param label The label.
+	 */
+	public void bind(Label label) {
+		bind(label, true);
+	}
+
+	/**
+	 * Binds a label with a frame containing only the parameters.
+	 * @param label The label.
+	 */
+	public void bindEntry(Label label) {
+		bind(label, false);
+	}
+
+	private void bind(Label label, boolean allLocals) {
+		if(label.isBound()) {
+			throw new IllegalStateException("Label is already bound");
+		}
+
+		label.position = size;
+		for(int[] fixup : label.fixups) {
+			int offset = size - fixup[0];
+			if(fixup[2] == 2) {
+				putU2(fixup[1], checkedOffset(offset));
+			}
+			else {
+				putU4(fixup[1], offset);
+			}
+		}
+		label.fixups.clear();
+
+		Boolean existing = frames.put(size, allLocals);
+		if(existing != null && existing != allLocals) {
+			throw new IllegalStateException("Conflicting frames");
+		}
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(code, size);
+	}
+
+	/**
+	 * Builds the StackMapTable attribute.
+	 * @param classFile The class file that will contain the method.
+	 * @return The attribute content, or null if no frames are needed.
+	 */
+	public byte[] stackMapTable(ClassFileWriter classFile) {
+		if(frames.isEmpty()) {
+			return null;
+		}
+
+		var bytes = new ByteArrayOutputStream();
+		var out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(frames.size());
+			int previous = -1;
+			for(var entry : frames.entrySet()) {
+				int position = entry.getKey();
+				var locals = entry.getValue() ? localTypes : localTypes.subList(0, paramEntries);
+
+				// Every frame is written as a full_frame with an empty stack.
+				out.writeByte(255);
+				out.writeShort(position - previous - 1);
+				out.writeShort(locals.size());
+				for(String type : locals) {
+					writeVerificationType(out, classFile, type);
+				}
+				out.writeShort(0);
+				previous = position;
+			}
+		}
+		catch(IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeVerificationType(DataOutputStream out, ClassFileWriter classFile, String type) throws IOException {
+		switch(type) {
+			case "I" -> out.writeByte(1);
+			case "F" -> out.writeByte(2);
+			case "D" -> out.writeByte(3);
+			case "J" -> out.writeByte(4);
+			default -> {
+				out.writeByte(7);
+				String name = type.startsWith("L") ? type.substring(1, type.length() - 1) : type;
+				out.writeShort(classFile.classRef(name));
+			}
+		}
+	}
+}
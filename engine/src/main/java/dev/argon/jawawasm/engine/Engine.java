@@ -1,30 +1,108 @@
 package dev.argon.jawawasm.engine;
 
 import dev.argon.jawawasm.format.modules.Module;
+import dev.argon.jawawasm.format.types.MemType;
 
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
 import java.lang.foreign.Arena;
-import java.util.concurrent.ExecutionException;
+import java.lang.foreign.MemorySegment;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A WebAssembly engine
+ * <p>
+ * Memories reserve address space through restricted methods of the foreign function API so that they can grow in place.
+ * Run with {@code --enable-native-access=dev.argon.jawawasm.engine}, or {@code --enable-native-access=ALL-UNNAMED}
+ * when the engine is on the class path, to allow this without a warning.
+ * Without native access, memories are copied when they grow.
  */
 public class Engine implements AutoCloseable {
 	/**
 	 * Create an engine.
 	 */
 	public Engine() {
-		arena = Arena.ofShared();
 	}
 
-	private final Arena arena;
+	// The settings are read without locking, so that instantiating modules on many threads does not contend.
+	private volatile int maxMemory = 0;
+	private volatile int memoryReservation = 16384;
+	private volatile long memoryBudget = 0;
+	private final AtomicLong memoryUsage = new AtomicLong();
+	private final AtomicLong peakMemoryUsage = new AtomicLong();
+	private volatile @Nullable MemoryFactory memoryFactory;
+	private volatile @Nullable MemoryAllocator memoryAllocator;
+	private volatile boolean memoryImagesEnabled = false;
+	private volatile boolean compilerEnabled = true;
+	private volatile int compileThreshold = 1000;
+	private volatile int compilerThreads = 1;
+	private volatile int compileQueueDepth = 64;
+	private volatile int maxCallDepth = 100000;
+	private volatile boolean fuelEnabled = false;
+	private volatile long fuel = 0;
+	private volatile boolean epochInterruptionEnabled = false;
+	private volatile long epochYieldInterval = 0;
+	private final Epoch epoch = new Epoch();
+	private volatile long epochDeadline = Long.MAX_VALUE;
+	private volatile int reductionLimit = 0;
+
+	// Modules are compared by identity, since comparing their contents costs as much as instantiating them.
+	// Keys refer to their module weakly, so that the image of a module that is no longer used can be deleted.
+	// A cleared key is only equal to itself, which is how it is removed from the map.
+	private static final class ModuleKey extends WeakReference<Module> {
+		ModuleKey(Module module, @Nullable ReferenceQueue<Module> queue) {
+			super(module, queue);
+			hash = System.identityHashCode(module);
+		}
+
+		private final int hash;
+
+		@Override
+		public boolean equals(Object obj) {
+			if(obj == this) {
+				return true;
+			}
+			if(!(obj instanceof ModuleKey other)) {
+				return false;
+			}
+			var module = get();
+			return module != null && module == other.get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
 
-	private int maxMemory = 0;
+	// Memories that have not been closed, which are released when the engine is closed.
+	private final Set<WasmMemoryMeta> memories = ConcurrentHashMap.newKeySet();
+
+	// Images are kept until their module is collected, they are evicted, or the engine is closed.
+	// Instances that have already mapped an image keep using it after the file is deleted.
+	private final Map<ModuleKey, Optional<MemoryImage>> memoryImages = new ConcurrentHashMap<>();
+	private final ReferenceQueue<Module> collectedModules = new ReferenceQueue<>();
+	private final ReentrantLock imageLock = new ReentrantLock();
+
+	// Guards the creation and shutdown of the compiler threads.
+	private final ReentrantLock compilerLock = new ReentrantLock();
+	private @Nullable ExecutorService compilerExecutor;
 
 	/**
 	 * Get the maximum memory size.
 	 * @return The maximum memory size
 	 */
-	synchronized int getMaxMemory() {
+	int getMaxMemory() {
 		return maxMemory;
 	}
 
@@ -32,10 +110,396 @@ public class Engine implements AutoCloseable {
 	 * Set the maximum memory seize.
 	 * @param maxMemory The maximum memory size.
 	 */
-	public synchronized void setMaxMemory(int maxMemory) {
+	public void setMaxMemory(int maxMemory) {
 		this.maxMemory = maxMemory;
 	}
 
+	/**
+	 * Set the memory budget.
+	 * The budget covers the memories of the engine and the tables defined by its instances, which are charged 8 bytes per element.
+	 * Creating a memory or table that would exceed the budget fails with a MemoryBudgetExceededException,
+	 * and growing past the budget fails in the same way as growing past the maximum size.
+	 * Memories and tables are charged until they are closed, either directly or by closing their instance.
+	 * @param memoryBudget The budget in bytes, or 0 for no budget.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		if(memoryBudget < 0) {
+			throw new IllegalArgumentException("Memory budget must not be negative");
+		}
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Get the number of bytes of memories and tables currently charged to the memory budget.
+	 * Usage is tracked even if there is no budget.
+	 * @return The number of bytes.
+	 */
+	public long getMemoryUsage() {
+		return memoryUsage.get();
+	}
+
+	/**
+	 * Get the highest number of bytes that have been charged to the memory budget at once.
+	 * @return The number of bytes.
+	 */
+	public long getPeakMemoryUsage() {
+		return peakMemoryUsage.get();
+	}
+
+	// Returns false without charging anything if the budget would be exceeded.
+	boolean chargeMemoryBudget(long bytes) {
+		long budget = memoryBudget;
+		long usage;
+		do {
+			usage = memoryUsage.get();
+			if(budget > 0 && usage + bytes > budget) {
+				return false;
+			}
+		} while(!memoryUsage.compareAndSet(usage, usage + bytes));
+
+		peakMemoryUsage.accumulateAndGet(usage + bytes, Math::max);
+		return true;
+	}
+
+	void refundMemoryBudget(long bytes) {
+		memoryUsage.addAndGet(-bytes);
+	}
+
+	/**
+	 * Get the number of pages of address space reserved for a memory.
+	 * @return The number of pages.
+	 */
+	int getMemoryReservation() {
+		return memoryReservation;
+	}
+
+	/**
+	 * Set the number of pages of address space reserved for a memory that can grow.
+	 * Memories grow in place without copying up to the smaller of this and their maximum size.
+	 * The reservation is only committed as the memory grows.
+	 * When 0, or when the platform does not support it, memories are copied when they grow.
+	 * @param memoryReservation The number of pages.
+	 */
+	public void setMemoryReservation(int memoryReservation) {
+		if(memoryReservation < 0) {
+			throw new IllegalArgumentException("Memory reservation must not be negative");
+		}
+		this.memoryReservation = memoryReservation;
+	}
+
+	/**
+	 * Set the factory used to create the memories defined by modules.
+	 * For example, the factory can store memories in files with WasmMemory.map.
+	 * Applies to modules instantiated after it is set.
+	 * @param memoryFactory The memory factory, or null to allocate memories in the engine.
+	 */
+	public void setMemoryFactory(@Nullable MemoryFactory memoryFactory) {
+		this.memoryFactory = memoryFactory;
+	}
+
+	/**
+	 * Set the allocator for the native memory behind memories.
+	 * It is not used for memories created by a memory factory, mapped from a file, or created from a memory image.
+	 * Applies to memories created after it is set.
+	 * @param memoryAllocator The memory allocator, or null to allocate memory directly.
+	 */
+	public void setMemoryAllocator(@Nullable MemoryAllocator memoryAllocator) {
+		this.memoryAllocator = memoryAllocator;
+	}
+
+	/**
+	 * Get whether instances of the same module share the initial contents of their memory.
+	 * @return true if memory images are enabled.
+	 */
+	boolean isMemoryImagesEnabled() {
+		return memoryImagesEnabled;
+	}
+
+	/**
+	 * Set whether instances of the same module share the initial contents of their memory.
+	 * When enabled, the memory is initialized with the active data segments once per module and stored in a temporary file.
+	 * Each instance maps the file copy-on-write, so instantiation does not copy the data, and an instance only uses
+	 * memory for the pages that it writes to.
+	 * Only applies to modules that define their only memory, have data segments at constant offsets,
+	 * and are instantiated without a memory factory.
+	 * The same Module object must be instantiated for the image to be reused.
+	 * The image is deleted once the Module object is no longer reachable, or when it is evicted with evictMemoryImage.
+	 * @param memoryImagesEnabled true to enable memory images.
+	 */
+	public void setMemoryImagesEnabled(boolean memoryImagesEnabled) {
+		this.memoryImagesEnabled = memoryImagesEnabled;
+	}
+
+	/**
+	 * Get the maximum number of nested calls made by interpreted functions.
+	 * @return The maximum call depth.
+	 */
+	int getMaxCallDepth() {
+		return maxCallDepth;
+	}
+
+	/**
+	 * Set the maximum number of nested calls made by interpreted functions.
+	 * Exceeding the limit throws a CallStackExhaustedException.
+	 * Applies to modules instantiated after it is set.
+	 * @param maxCallDepth The maximum call depth.
+	 */
+	public void setMaxCallDepth(int maxCallDepth) {
+		if(maxCallDepth < 1) {
+			throw new IllegalArgumentException("Maximum call depth must be positive");
+		}
+		this.maxCallDepth = maxCallDepth;
+	}
+
+	/**
+	 * Get whether code is charged fuel.
+	 * @return true if fuel metering is enabled.
+	 */
+	boolean isFuelEnabled() {
+		return fuelEnabled;
+	}
+
+	/**
+	 * Set whether code is charged fuel.
+	 * Fuel is charged for each block of straight line code, and an OutOfFuelException is thrown when it runs out.
+	 * Applies to modules instantiated after it is set.
+	 * @param fuelEnabled true to enable fuel metering.
+	 */
+	public void setFuelEnabled(boolean fuelEnabled) {
+		this.fuelEnabled = fuelEnabled;
+	}
+
+	/**
+	 * Get the fuel that each invocation starts with.
+	 * @return The default fuel.
+	 */
+	public long getFuel() {
+		return fuel;
+	}
+
+	/**
+	 * Set the fuel that each invocation starts with.
+	 * Use an Invocation to give a call a different amount or to read the fuel left after it.
+	 * @param fuel The default fuel.
+	 */
+	public void setFuel(long fuel) {
+		if(fuel < 0) {
+			throw new IllegalArgumentException("Fuel must not be negative");
+		}
+		this.fuel = fuel;
+	}
+
+	/**
+	 * Get whether code checks the epoch deadline.
+	 * @return true if epoch interruption is enabled.
+	 */
+	boolean isEpochInterruptionEnabled() {
+		return epochInterruptionEnabled;
+	}
+
+	/**
+	 * Set whether code checks the epoch deadline.
+	 * The deadline is checked on function entry and at loop headers.
+	 * Applies to modules instantiated after it is set.
+	 * @param epochInterruptionEnabled true to enable epoch interruption.
+	 */
+	public void setEpochInterruptionEnabled(boolean epochInterruptionEnabled) {
+		this.epochInterruptionEnabled = epochInterruptionEnabled;
+	}
+
+	/**
+	 * Get the number of epochs that the deadline is extended by when code yields.
+	 * @return The yield interval, or 0 if code traps at the deadline.
+	 */
+	long getEpochYieldInterval() {
+		return epochYieldInterval;
+	}
+
+	/**
+	 * Set how code behaves when the epoch reaches the deadline.
+	 * When 0, an EpochDeadlineException is thrown.
+	 * Otherwise, the function returns a FunctionResult.Delay and the deadline is extended past the current epoch by the interval.
+	 * Functions of modules that yield are not compiled, because compiled code cannot be suspended.
+	 * Applies to modules instantiated after it is set.
+	 * @param epochYieldInterval The yield interval.
+	 */
+	public void setEpochYieldInterval(long epochYieldInterval) {
+		if(epochYieldInterval < 0) {
+			throw new IllegalArgumentException("Epoch yield interval must not be negative");
+		}
+		this.epochYieldInterval = epochYieldInterval;
+	}
+
+	/**
+	 * Get the current epoch.
+	 * @return The current epoch.
+	 */
+	public long getEpoch() {
+		return epoch.current();
+	}
+
+	/**
+	 * Increment the epoch.
+	 * Usually called periodically by a timer thread.
+	 */
+	public void incrementEpoch() {
+		epoch.increment();
+	}
+
+	/**
+	 * Get the epoch deadline that each invocation starts with.
+	 * @return The default deadline epoch.
+	 */
+	public long getEpochDeadline() {
+		return epochDeadline;
+	}
+
+	/**
+	 * Set the epoch deadline that each invocation starts with.
+	 * Use an Invocation to give a call a different deadline.
+	 * @param deadline The default deadline epoch.
+	 */
+	public void setEpochDeadline(long deadline) {
+		epochDeadline = deadline;
+	}
+
+	Epoch epoch() {
+		return epoch;
+	}
+
+	/**
+	 * Get the number of reductions after which an invocation yields.
+	 * @return The reduction limit, or 0 if invocations do not yield.
+	 */
+	int getReductionLimit() {
+		return reductionLimit;
+	}
+
+	/**
+	 * Set the number of reductions after which an invocation yields.
+	 * A reduction is a function entry or a loop iteration.
+	 * After the limit is reached, the function returns a FunctionResult.Delay that continues the invocation.
+	 * This allows a Scheduler to share threads between many invocations.
+	 * When 0, invocations do not yield.
+	 * Functions of modules that yield are not compiled, because compiled code cannot be suspended.
+	 * Applies to modules instantiated after it is set.
+	 * @param reductionLimit The reduction limit.
+	 */
+	public void setReductionLimit(int reductionLimit) {
+		if(reductionLimit < 0) {
+			throw new IllegalArgumentException("Reduction limit must not be negative");
+		}
+		this.reductionLimit = reductionLimit;
+	}
+
+	/**
+	 * Get whether functions are compiled to JVM bytecode.
+	 * @return true if the compiler is enabled.
+	 */
+	boolean isCompilerEnabled() {
+		return compilerEnabled;
+	}
+
+	/**
+	 * Set whether functions are compiled to JVM bytecode.
+	 * When disabled, all functions are interpreted.
+	 * @param compilerEnabled true to enable the compiler.
+	 */
+	public void setCompilerEnabled(boolean compilerEnabled) {
+		this.compilerEnabled = compilerEnabled;
+	}
+
+
+	/**
+	 * Get the number of calls and loop iterations after which a function is compiled.
+	 * @return The compile threshold.
+	 */
+	int getCompileThreshold() {
+		return compileThreshold;
+	}
+
+	/**
+	 * Set the number of calls and loop iterations after which a function is compiled.
+	 * Applies to modules instantiated after it is set.
+	 * @param compileThreshold The compile threshold.
+	 */
+	public void setCompileThreshold(int compileThreshold) {
+		if(compileThreshold < 1) {
+			throw new IllegalArgumentException("Compile threshold must be positive");
+		}
+		this.compileThreshold = compileThreshold;
+	}
+
+	/**
+	 * Set the number of background threads used to compile functions.
+	 * When set to 0, functions are compiled on the thread that makes them hot.
+	 * Must be set before any function is compiled.
+	 * @param compilerThreads The number of compiler threads.
+	 */
+	public void setCompilerThreads(int compilerThreads) {
+		if(compilerThreads < 0) {
+			throw new IllegalArgumentException("Compiler thread count must not be negative");
+		}
+		this.compilerThreads = compilerThreads;
+	}
+
+	/**
+	 * Set the maximum number of functions waiting to be compiled.
+	 * Functions that become hot while the queue is full stay interpreted until they become hot again.
+	 * Must be set before any function is compiled.
+	 * @param compileQueueDepth The maximum queue length.
+	 */
+	public void setCompileQueueDepth(int compileQueueDepth) {
+		if(compileQueueDepth < 1) {
+			throw new IllegalArgumentException("Compile queue depth must be positive");
+		}
+		this.compileQueueDepth = compileQueueDepth;
+	}
+
+	private @Nullable ExecutorService compilerExecutor() {
+		int threads = compilerThreads;
+		if(threads == 0) {
+			return null;
+		}
+
+		compilerLock.lock();
+		try {
+			if(compilerExecutor == null) {
+				compilerExecutor = new ThreadPoolExecutor(
+					threads,
+					threads,
+					0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(compileQueueDepth),
+					task -> {
+						var thread = new Thread(task, "jawawasm-compiler");
+						thread.setDaemon(true);
+						return thread;
+					}
+				);
+			}
+			return compilerExecutor;
+		}
+		finally {
+			compilerLock.unlock();
+		}
+	}
+
+	// Returns false if the compile queue is full.
+	boolean submitCompilation(Runnable task) {
+		var executor = compilerExecutor();
+		if(executor == null) {
+			task.run();
+			return true;
+		}
+
+		try {
+			executor.execute(task);
+			return true;
+		}
+		catch(RejectedExecutionException ex) {
+			return false;
+		}
+	}
 
 	/**
 	 * Instantiates a WebAssembly module.
@@ -49,12 +513,123 @@ public class Engine implements AutoCloseable {
 		return new InstantiatedModule(this, module, resolver);
 	}
 
-	WasmMemoryNoResize allocateMemory(int pages) {
-		return new WasmMemoryImpl(arena.allocate((long)pages * Util.PAGE_SIZE));
+	WasmMemoryNoResize allocateMemory(int pages, Arena arena) {
+		return new WasmMemoryImpl(allocateSegment((long)pages * Util.PAGE_SIZE, arena));
+	}
+
+	MemorySegment allocateSegment(long bytes, Arena arena) {
+		var memoryAllocator = this.memoryAllocator;
+		return memoryAllocator != null ? memoryAllocator.allocate(bytes, arena) : arena.allocate(bytes);
+	}
+
+	// Returns null if the address space cannot be reserved.
+	@Nullable MemoryReservation reserveMemory(int pages, Arena arena) {
+		long bytes = (long)pages * Util.PAGE_SIZE;
+		var memoryAllocator = this.memoryAllocator;
+		return memoryAllocator != null ? memoryAllocator.reserve(bytes, arena) : VirtualMemory.reserve(bytes, arena);
+	}
+
+	// The mapping stays valid after the channel is closed, until the arena is closed.
+	MemorySegment mapMemory(FileChannel channel, FileChannel.MapMode mode, long bytes, Arena arena) throws IOException {
+		return channel.map(mode, 0, bytes, arena);
+	}
+
+	void addMemory(WasmMemoryMeta memory) {
+		memories.add(memory);
+	}
+
+	// Returns false if the memory was already removed, so that it is only released once.
+	boolean removeMemory(WasmMemoryMeta memory) {
+		return memories.remove(memory);
+	}
+
+	// Returns null if instances of the module cannot share a memory image.
+	@Nullable MemoryImage memoryImage(Module module) throws IOException {
+		if(!memoryImagesEnabled || memoryFactory != null) {
+			return null;
+		}
+
+		var image = memoryImages.get(new ModuleKey(module, null));
+		if(image != null) {
+			return image.orElse(null);
+		}
+
+		imageLock.lock();
+		try {
+			deleteCollectedImages();
+
+			var key = new ModuleKey(module, collectedModules);
+			image = memoryImages.get(key);
+			if(image == null) {
+				var type = module.mems().isEmpty() ? null : module.mems().get(0).type();
+				image = Optional.ofNullable(type == null ? null : MemoryImage.build(module, WasmMemoryMeta.reservationPages(this, type)));
+				memoryImages.put(key, image);
+			}
+			return image.orElse(null);
+		}
+		finally {
+			imageLock.unlock();
+		}
+	}
+
+	/**
+	 * Delete the memory image of a module.
+	 * Instances that already exist keep their memory, and the image is built again if the module is instantiated again.
+	 * Images of modules that are no longer reachable are deleted automatically when another image is built.
+	 * @param module The module.
+	 */
+	public void evictMemoryImage(Module module) {
+		imageLock.lock();
+		try {
+			deleteImage(memoryImages.remove(new ModuleKey(module, null)));
+			deleteCollectedImages();
+		}
+		finally {
+			imageLock.unlock();
+		}
+	}
+
+	// Called with the image lock held.
+	private void deleteCollectedImages() {
+		Reference<? extends Module> key;
+		while((key = collectedModules.poll()) != null) {
+			deleteImage(memoryImages.remove(key));
+		}
+	}
+
+	private static void deleteImage(@Nullable Optional<MemoryImage> image) {
+		if(image != null && image.isPresent()) {
+			try {
+				image.get().delete();
+			}
+			catch(IOException ex) {
+				// The file is deleted when the JVM exits.
+			}
+		}
+	}
+
+	WasmMemory createMemory(MemType type) throws IOException {
+		var memoryFactory = this.memoryFactory;
+		return memoryFactory != null ? memoryFactory.create(this, type) : WasmMemory.create(this, type);
 	}
 
 	@Override
 	public void close() {
-		arena.close();
+		compilerLock.lock();
+		try {
+			if(compilerExecutor != null) {
+				compilerExecutor.shutdownNow();
+			}
+		}
+		finally {
+			compilerLock.unlock();
+		}
+		for(var memory : memories) {
+			memory.release();
+		}
+
+		for(var image : memoryImages.values()) {
+			deleteImage(image);
+		}
 	}
 }
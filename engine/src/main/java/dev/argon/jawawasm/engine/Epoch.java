@@ -0,0 +1,31 @@
+package dev.argon.jawawasm.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * The epoch of an engine.
+ * Code checks the epoch against the deadline of its invocation on function entry and at loop headers.
+ */
+final class Epoch {
+	private static final VarHandle CURRENT;
+	static {
+		try {
+			CURRENT = MethodHandles.lookup().findVarHandle(Epoch.class, "current", long.class);
+		}
+		catch(ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	// Incremented by a host thread while code is running.
+	private volatile long current;
+
+	long current() {
+		return current;
+	}
+
+	void increment() {
+		CURRENT.getAndAdd(this, 1L);
+	}
+}
@@ -0,0 +1,11 @@
+package dev.argon.jawawasm.engine;
+
+/**
+ * The epoch of the engine reached the deadline while executing WebAssembly code.
+ */
+public class EpochDeadlineException extends Exception {
+	/**
+	 * Create an EpochDeadlineException.
+	 */
+	public EpochDeadlineException() {}
+}
@@ -0,0 +1,12 @@
+package dev.argon.jawawasm.engine;
+
+/**
+ * A function body lowered into a flat instruction stream.
+ * @param code The instruction stream. See Opcode for the encoding.
+ * @param constants Values referenced by instructions that are too large to store inline.
+ * @param signature The signature of the function.
+ * @param locals The slot kinds of all locals, including the parameters.
+ * @param maxStackHeight The maximum number of operands on the stack at any point.
+ */
+record FlatCode(int[] code, Object[] constants, CallSignature signature, int[] locals, int maxStackHeight) {
+}
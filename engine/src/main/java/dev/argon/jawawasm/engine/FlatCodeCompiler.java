@@ -0,0 +1,813 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.instructions.*;
+import dev.argon.jawawasm.format.modules.LabelIdx;
+import dev.argon.jawawasm.format.types.FuncType;
+import dev.argon.jawawasm.format.types.ResultType;
+import dev.argon.jawawasm.format.types.ValType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lowers instructions into a FlatCode instruction stream.
+ */
+final class FlatCodeCompiler {
+	private FlatCodeCompiler(InstantiatedModule module, int localCount, boolean functionBody) {
+		this.module = module;
+		this.localCount = localCount;
+		metered = functionBody && module.isMetered();
+		interruptible = functionBody && module.isInterruptible();
+		reducible = functionBody && module.getReductionLimit() > 0;
+	}
+
+	private final InstantiatedModule module;
+	private final boolean metered;
+	private final boolean interruptible;
+	private final boolean reducible;
+	private int[] code = new int[64];
+	private int size = 0;
+	private final List<Object> constants = new ArrayList<>();
+	private final int localCount;
+	private final List<ControlFrame> controlStack = new ArrayList<>();
+	private int height = 0;
+	private int maxHeight = 0;
+
+	/**
+	 * Compiles a function body or constant expression.
+	 * @param module The module containing the code.
+	 * @param type The type of the code.
+	 * @param locals The types of the locals declared in addition to the parameters.
+	 * @param body The instructions.
+	 * @param functionBody Whether the code is a function body, which is charged fuel and checks the epoch deadline when enabled.
+	 * @return The compiled code.
+	 */
+	public static FlatCode compile(InstantiatedModule module, FuncType type, List<? extends ValType> locals, List<? extends Instr> body, boolean functionBody) {
+		var signature = CallSignature.of(type);
+
+		int[] localKinds = Arrays.copyOf(signature.params(), signature.params().length + locals.size());
+		for(int i = 0; i < locals.size(); ++i) {
+			localKinds[signature.params().length + i] = SlotKind.of(locals.get(i));
+		}
+
+		var compiler = new FlatCodeCompiler(module, localKinds.length, functionBody);
+		compiler.emitSafepoint();
+		compiler.compileInstrs(body);
+		compiler.emit(Opcode.RETURN);
+		return new FlatCode(
+			Arrays.copyOf(compiler.code, compiler.size),
+			compiler.constants.toArray(),
+			signature,
+			localKinds,
+			compiler.maxHeight
+		);
+	}
+
+	// Function entries and loop headers are where running code can be interrupted or suspended.
+	private void emitSafepoint() {
+		if(interruptible) {
+			emit(Opcode.EPOCH);
+		}
+		if(reducible) {
+			emit(Opcode.REDUCE);
+		}
+	}
+
+	private void emit(int value) {
+		if(size == code.length) {
+			code = Arrays.copyOf(code, code.length * 2);
+		}
+		code[size++] = value;
+	}
+
+	private void emit(int opcode, int a) {
+		emit(opcode);
+		emit(a);
+	}
+
+	private void emit(int opcode, int a, int b) {
+		emit(opcode);
+		emit(a);
+		emit(b);
+	}
+
+	private void emitLong(int opcode, long value) {
+		emit(opcode);
+		emit((int)value);
+		emit((int)(value >>> 32));
+	}
+
+	private void adjustHeight(int delta) {
+		height += delta;
+		if(height > maxHeight) {
+			maxHeight = height;
+		}
+	}
+
+	private int addConstant(Object value) {
+		constants.add(value);
+		return constants.size() - 1;
+	}
+
+	private void patch(int position, int value) {
+		code[position] = value;
+	}
+
+	// A block, loop or if that may be the target of a branch.
+	// The height is the operand stack height below the parameters of the block.
+	private static final class ControlFrame {
+		public ControlFrame(int height, int arity, int loopStart) {
+			this.height = height;
+			this.arity = arity;
+			this.loopStart = loopStart;
+		}
+
+		public final int height;
+		public final int arity;
+		public final int loopStart;
+		public final List<Integer> forwardBranches = new ArrayList<>();
+	}
+
+	// Emits the target, arity and destination slot of a branch.
+	// A negative target indicates a return from the function.
+	private void emitBranchEntry(LabelIdx label) {
+		if(label.index() >= controlStack.size()) {
+			emit(-1, 0, 0);
+			return;
+		}
+
+		var frame = controlStack.get(controlStack.size() - 1 - label.index());
+		if(frame.loopStart >= 0) {
+			emit(frame.loopStart);
+		}
+		else {
+			frame.forwardBranches.add(size);
+			emit(0);
+		}
+		emit(frame.arity);
+		emit(localCount + frame.height);
+	}
+
+	private void patchForwardBranches(ControlFrame frame) {
+		for(int position : frame.forwardBranches) {
+			patch(position, size);
+		}
+	}
+
+	private FuncType expandBlockType(ControlInstr.BlockType blockType) {
+		return switch(blockType) {
+			case ControlInstr.BlockType.Empty() -> new FuncType(new ResultType(List.of()), new ResultType(List.of()));
+			case ControlInstr.BlockType.OfIndex(var index) -> module.getType(index);
+			case ControlInstr.BlockType.OfValType(var valType) -> new FuncType(new ResultType(List.of()), new ResultType(List.of(valType)));
+		};
+	}
+
+	// Instructions following an unconditional transfer of control are unreachable and are not compiled.
+	private void compileInstrs(List<? extends Instr> instrs) {
+		int[] fuelCosts = metered ? Fuel.blockCosts(instrs) : null;
+		for(int i = 0; i < instrs.size(); ++i) {
+			if(fuelCosts != null && fuelCosts[i] > 0) {
+				emit(Opcode.FUEL);
+				emit(fuelCosts[i]);
+			}
+
+			if(!compileInstr(instrs.get(i))) {
+				break;
+			}
+		}
+	}
+
+	// The stack height after the block is known even if the end of the body is unreachable.
+	private void compileBlockBody(List<? extends Instr> body, ControlFrame frame, int results) {
+		controlStack.add(frame);
+		compileInstrs(body);
+		controlStack.remove(controlStack.size() - 1);
+		height = frame.height;
+		adjustHeight(results);
+	}
+
+	// Returns false if the instruction does not continue to the next instruction.
+	private boolean compileInstr(Instr instr) {
+		switch(instr) {
+			case NumericInstr numericInstr -> compileNumericInstr(numericInstr);
+			case VectorInstr vectorInstr -> {
+				emit(Opcode.VECTOR, addConstant(vectorInstr));
+				adjustHeight(vectorStackEffect(vectorInstr));
+			}
+			case ReferenceInstr referenceInstr -> compileReferenceInstr(referenceInstr);
+			case ParametricInstr parametricInstr -> compileParametricInstr(parametricInstr);
+			case VariableInstr variableInstr -> compileVariableInstr(variableInstr);
+			case TableInstr tableInstr -> compileTableInstr(tableInstr);
+			case MemoryInstr memoryInstr -> compileMemoryInstr(memoryInstr);
+			case ControlInstr controlInstr -> {
+				return compileControlInstr(controlInstr);
+			}
+		}
+
+		return true;
+	}
+
+	private void compileNumericInstr(NumericInstr instr) {
+		adjustHeight(switch(instr) {
+			case NumericInstr.I32_Const i32Const -> 1;
+			case NumericInstr.I64_Const i64Const -> 1;
+			case NumericInstr.F32_Const f32Const -> 1;
+			case NumericInstr.F64_Const f64Const -> 1;
+			case NumericInstr.Inn_IBinOp innIBinOp -> -1;
+			case NumericInstr.Fnn_FBinOp fnnFBinOp -> -1;
+			case NumericInstr.Inn_IRelOp innIRelOp -> -1;
+			case NumericInstr.Fnn_FRelOp fnnFRelOp -> -1;
+			default -> 0;
+		});
+
+		switch(instr) {
+			case NumericInstr.I32_Const(var value) -> emit(Opcode.I32_CONST, value);
+			case NumericInstr.I64_Const(var value) -> emitLong(Opcode.I64_CONST, value);
+			case NumericInstr.F32_Const(var value) -> emit(Opcode.F32_CONST, Float.floatToRawIntBits(value));
+			case NumericInstr.F64_Const(var value) -> emitLong(Opcode.F64_CONST, Double.doubleToRawLongBits(value));
+
+			case NumericInstr.Inn_IUnOp(var size, var op) -> emit(switch(size) {
+				case _32 -> switch(op) {
+					case CLZ -> Opcode.I32_CLZ;
+					case CTZ -> Opcode.I32_CTZ;
+					case POPCNT -> Opcode.I32_POPCNT;
+				};
+				case _64 -> switch(op) {
+					case CLZ -> Opcode.I64_CLZ;
+					case CTZ -> Opcode.I64_CTZ;
+					case POPCNT -> Opcode.I64_POPCNT;
+				};
+			});
+
+			case NumericInstr.Fnn_FUnOp(var size, var op) -> emit(switch(size) {
+				case _32 -> switch(op) {
+					case ABS -> Opcode.F32_ABS;
+					case NEG -> Opcode.F32_NEG;
+					case SQRT -> Opcode.F32_SQRT;
+					case CEIL -> Opcode.F32_CEIL;
+					case FLOOR -> Opcode.F32_FLOOR;
+					case TRUNC -> Opcode.F32_TRUNC;
+					case NEAREST -> Opcode.F32_NEAREST;
+				};
+				case _64 -> switch(op) {
+					case ABS -> Opcode.F64_ABS;
+					case NEG -> Opcode.F64_NEG;
+					case SQRT -> Opcode.F64_SQRT;
+					case CEIL -> Opcode.F64_CEIL;
+					case FLOOR -> Opcode.F64_FLOOR;
+					case TRUNC -> Opcode.F64_TRUNC;
+					case NEAREST -> Opcode.F64_NEAREST;
+				};
+			});
+
+			case NumericInstr.Inn_IBinOp(var size, var op) -> emit(switch(size) {
+				case _32 -> switch(op) {
+					case ADD -> Opcode.I32_ADD;
+					case SUB -> Opcode.I32_SUB;
+					case MUL -> Opcode.I32_MUL;
+					case DIV_U -> Opcode.I32_DIV_U;
+					case DIV_S -> Opcode.I32_DIV_S;
+					case REM_U -> Opcode.I32_REM_U;
+					case REM_S -> Opcode.I32_REM_S;
+					case AND -> Opcode.I32_AND;
+					case OR -> Opcode.I32_OR;
+					case XOR -> Opcode.I32_XOR;
+					case SHL -> Opcode.I32_SHL;
+					case SHR_U -> Opcode.I32_SHR_U;
+					case SHR_S -> Opcode.I32_SHR_S;
+					case ROTL -> Opcode.I32_ROTL;
+					case ROTR -> Opcode.I32_ROTR;
+				};
+				case _64 -> switch(op) {
+					case ADD -> Opcode.I64_ADD;
+					case SUB -> Opcode.I64_SUB;
+					case MUL -> Opcode.I64_MUL;
+					case DIV_U -> Opcode.I64_DIV_U;
+					case DIV_S -> Opcode.I64_DIV_S;
+					case REM_U -> Opcode.I64_REM_U;
+					case REM_S -> Opcode.I64_REM_S;
+					case AND -> Opcode.I64_AND;
+					case OR -> Opcode.I64_OR;
+					case XOR -> Opcode.I64_XOR;
+					case SHL -> Opcode.I64_SHL;
+					case SHR_U -> Opcode.I64_SHR_U;
+					case SHR_S -> Opcode.I64_SHR_S;
+					case ROTL -> Opcode.I64_ROTL;
+					case ROTR -> Opcode.I64_ROTR;
+				};
+			});
+
+			case NumericInstr.Fnn_FBinOp(var size, var op) -> emit(switch(size) {
+				case _32 -> switch(op) {
+					case ADD -> Opcode.F32_ADD;
+					case SUB -> Opcode.F32_SUB;
+					case MUL -> Opcode.F32_MUL;
+					case DIV -> Opcode.F32_DIV;
+					case MIN -> Opcode.F32_MIN;
+					case MAX -> Opcode.F32_MAX;
+					case COPYSIGN -> Opcode.F32_COPYSIGN;
+				};
+				case _64 -> switch(op) {
+					case ADD -> Opcode.F64_ADD;
+					case SUB -> Opcode.F64_SUB;
+					case MUL -> Opcode.F64_MUL;
+					case DIV -> Opcode.F64_DIV;
+					case MIN -> Opcode.F64_MIN;
+					case MAX -> Opcode.F64_MAX;
+					case COPYSIGN -> Opcode.F64_COPYSIGN;
+				};
+			});
+
+			case NumericInstr.Inn_ITestOp(var size, var op) -> emit(switch(size) {
+				case _32 -> switch(op) {
+					case EQZ -> Opcode.I32_EQZ;
+				};
+				case _64 -> switch(op) {
+					case EQZ -> Opcode.I64_EQZ;
+				};
+			});
+
+			case NumericInstr.Inn_IRelOp(var size, var op) -> emit(switch(size) {
+				case _32 -> switch(op) {
+					case EQ -> Opcode.I32_EQ;
+					case NE -> Opcode.I32_NE;
+					case LT_U -> Opcode.I32_LT_U;
+					case LT_S -> Opcode.I32_LT_S;
+					case GT_U -> Opcode.I32_GT_U;
+					case GT_S -> Opcode.I32_GT_S;
+					case LE_U -> Opcode.I32_LE_U;
+					case LE_S -> Opcode.I32_LE_S;
+					case GE_U -> Opcode.I32_GE_U;
+					case GE_S -> Opcode.I32_GE_S;
+				};
+				case _64 -> switch(op) {
+					case EQ -> Opcode.I64_EQ;
+					case NE -> Opcode.I64_NE;
+					case LT_U -> Opcode.I64_LT_U;
+					case LT_S -> Opcode.I64_LT_S;
+					case GT_U -> Opcode.I64_GT_U;
+					case GT_S -> Opcode.I64_GT_S;
+					case LE_U -> Opcode.I64_LE_U;
+					case LE_S -> Opcode.I64_LE_S;
+					case GE_U -> Opcode.I64_GE_U;
+					case GE_S -> Opcode.I64_GE_S;
+				};
+			});
+
+			case NumericInstr.Fnn_FRelOp(var size, var op) -> emit(switch(size) {
+				case _32 -> switch(op) {
+					case EQ -> Opcode.F32_EQ;
+					case NE -> Opcode.F32_NE;
+					case LT -> Opcode.F32_LT;
+					case GT -> Opcode.F32_GT;
+					case LE -> Opcode.F32_LE;
+					case GE -> Opcode.F32_GE;
+				};
+				case _64 -> switch(op) {
+					case EQ -> Opcode.F64_EQ;
+					case NE -> Opcode.F64_NE;
+					case LT -> Opcode.F64_LT;
+					case GT -> Opcode.F64_GT;
+					case LE -> Opcode.F64_LE;
+					case GE -> Opcode.F64_GE;
+				};
+			});
+
+			case NumericInstr.Inn_Extend8_S(var size) -> emit(switch(size) {
+				case _32 -> Opcode.I32_EXTEND8_S;
+				case _64 -> Opcode.I64_EXTEND8_S;
+			});
+
+			case NumericInstr.Inn_Extend16_S(var size) -> emit(switch(size) {
+				case _32 -> Opcode.I32_EXTEND16_S;
+				case _64 -> Opcode.I64_EXTEND16_S;
+			});
+
+			case NumericInstr.I64_Extend32_S() -> emit(Opcode.I64_EXTEND32_S);
+			case NumericInstr.I32_Wrap_I64() -> emit(Opcode.I32_WRAP_I64);
+			case NumericInstr.I64_Extend_I32_S() -> emit(Opcode.I64_EXTEND_I32_S);
+			case NumericInstr.I64_Extend_I32_U() -> emit(Opcode.I64_EXTEND_I32_U);
+
+			case NumericInstr.Inn_Trunc_Fmm_S(var intSize, var floatSize) -> emit(switch(intSize) {
+				case _32 -> switch(floatSize) {
+					case _32 -> Opcode.I32_TRUNC_F32_S;
+					case _64 -> Opcode.I32_TRUNC_F64_S;
+				};
+				case _64 -> switch(floatSize) {
+					case _32 -> Opcode.I64_TRUNC_F32_S;
+					case _64 -> Opcode.I64_TRUNC_F64_S;
+				};
+			});
+
+			case NumericInstr.Inn_Trunc_Fmm_U(var intSize, var floatSize) -> emit(switch(intSize) {
+				case _32 -> switch(floatSize) {
+					case _32 -> Opcode.I32_TRUNC_F32_U;
+					case _64 -> Opcode.I32_TRUNC_F64_U;
+				};
+				case _64 -> switch(floatSize) {
+					case _32 -> Opcode.I64_TRUNC_F32_U;
+					case _64 -> Opcode.I64_TRUNC_F64_U;
+				};
+			});
+
+			case NumericInstr.Inn_Trunc_Sat_Fmm_S(var intSize, var floatSize) -> emit(switch(intSize) {
+				case _32 -> switch(floatSize) {
+					case _32 -> Opcode.I32_TRUNC_SAT_F32_S;
+					case _64 -> Opcode.I32_TRUNC_SAT_F64_S;
+				};
+				case _64 -> switch(floatSize) {
+					case _32 -> Opcode.I64_TRUNC_SAT_F32_S;
+					case _64 -> Opcode.I64_TRUNC_SAT_F64_S;
+				};
+			});
+
+			case NumericInstr.Inn_Trunc_Sat_Fmm_U(var intSize, var floatSize) -> emit(switch(intSize) {
+				case _32 -> switch(floatSize) {
+					case _32 -> Opcode.I32_TRUNC_SAT_F32_U;
+					case _64 -> Opcode.I32_TRUNC_SAT_F64_U;
+				};
+				case _64 -> switch(floatSize) {
+					case _32 -> Opcode.I64_TRUNC_SAT_F32_U;
+					case _64 -> Opcode.I64_TRUNC_SAT_F64_U;
+				};
+			});
+
+			case NumericInstr.F32_Demote_F64() -> emit(Opcode.F32_DEMOTE_F64);
+			case NumericInstr.F64_Promote_F32() -> emit(Opcode.F64_PROMOTE_F32);
+
+			case NumericInstr.Fnn_Convert_Imm_S(var floatSize, var intSize) -> emit(switch(floatSize) {
+				case _32 -> switch(intSize) {
+					case _32 -> Opcode.F32_CONVERT_I32_S;
+					case _64 -> Opcode.F32_CONVERT_I64_S;
+				};
+				case _64 -> switch(intSize) {
+					case _32 -> Opcode.F64_CONVERT_I32_S;
+					case _64 -> Opcode.F64_CONVERT_I64_S;
+				};
+			});
+
+			case NumericInstr.Fnn_Convert_Imm_U(var floatSize, var intSize) -> emit(switch(floatSize) {
+				case _32 -> switch(intSize) {
+					case _32 -> Opcode.F32_CONVERT_I32_U;
+					case _64 -> Opcode.F32_CONVERT_I64_U;
+				};
+				case _64 -> switch(intSize) {
+					case _32 -> Opcode.F64_CONVERT_I32_U;
+					case _64 -> Opcode.F64_CONVERT_I64_U;
+				};
+			});
+
+			case NumericInstr.Fnn_Reinterpret_Inn(var size) -> emit(switch(size) {
+				case _32 -> Opcode.F32_REINTERPRET_I32;
+				case _64 -> Opcode.F64_REINTERPRET_I64;
+			});
+
+			case NumericInstr.Inn_Reinterpret_Fnn(var size) -> emit(switch(size) {
+				case _32 -> Opcode.I32_REINTERPRET_F32;
+				case _64 -> Opcode.I64_REINTERPRET_F64;
+			});
+		}
+	}
+
+	private void compileReferenceInstr(ReferenceInstr instr) {
+		switch(instr) {
+			case ReferenceInstr.Ref_Null(var type) -> {
+				emit(Opcode.REF_NULL);
+				adjustHeight(1);
+			}
+			case ReferenceInstr.Ref_IsNull() -> emit(Opcode.REF_IS_NULL);
+			case ReferenceInstr.Ref_Func(var func) -> {
+				emit(Opcode.REF_FUNC, func.index());
+				adjustHeight(1);
+			}
+		}
+	}
+
+	private void compileParametricInstr(ParametricInstr instr) {
+		switch(instr) {
+			case ParametricInstr.Drop() -> {
+				emit(Opcode.DROP);
+				adjustHeight(-1);
+			}
+			case ParametricInstr.Select(var types) -> {
+				emit(Opcode.SELECT);
+				adjustHeight(-2);
+			}
+		}
+	}
+
+	private void compileVariableInstr(VariableInstr instr) {
+		switch(instr) {
+			case VariableInstr.Local_Get(var local) -> {
+				emit(Opcode.LOCAL_GET, local.index());
+				adjustHeight(1);
+			}
+			case VariableInstr.Local_Set(var local) -> {
+				emit(Opcode.LOCAL_SET, local.index());
+				adjustHeight(-1);
+			}
+			case VariableInstr.Local_Tee(var local) -> emit(Opcode.LOCAL_TEE, local.index());
+			case VariableInstr.Global_Get(var global) -> {
+				int kind = SlotKind.of(module.getGlobalType(global).type());
+				var value = module.findGlobal(global.index());
+				if(value != null && value.isConstant() && !SlotKind.isObject(kind)) {
+					// Immutable numeric globals are folded into constants.
+					long bits = value.getBits();
+					switch(kind) {
+						case SlotKind.I32 -> emit(Opcode.I32_CONST, (int)bits);
+						case SlotKind.I64 -> emitLong(Opcode.I64_CONST, bits);
+						case SlotKind.F32 -> emit(Opcode.F32_CONST, (int)bits);
+						default -> emitLong(Opcode.F64_CONST, bits);
+					}
+				}
+				else {
+					emit(Opcode.GLOBAL_GET, global.index(), kind);
+				}
+				adjustHeight(1);
+			}
+			case VariableInstr.Global_Set(var global) -> {
+				emit(Opcode.GLOBAL_SET, global.index(), SlotKind.of(module.getGlobalType(global).type()));
+				adjustHeight(-1);
+			}
+		}
+	}
+
+	private void compileTableInstr(TableInstr instr) {
+		switch(instr) {
+			case TableInstr.Table_Get(var table) -> emit(Opcode.TABLE_GET, table.index());
+			case TableInstr.Table_Set(var table) -> {
+				emit(Opcode.TABLE_SET, table.index());
+				adjustHeight(-2);
+			}
+			case TableInstr.Table_Size(var table) -> {
+				emit(Opcode.TABLE_SIZE, table.index());
+				adjustHeight(1);
+			}
+			case TableInstr.Table_Grow(var table) -> {
+				emit(Opcode.TABLE_GROW, table.index());
+				adjustHeight(-1);
+			}
+			case TableInstr.Table_Fill(var table) -> {
+				emit(Opcode.TABLE_FILL, table.index());
+				adjustHeight(-3);
+			}
+			case TableInstr.Table_Copy(var dest, var src) -> {
+				emit(Opcode.TABLE_COPY, dest.index(), src.index());
+				adjustHeight(-3);
+			}
+			case TableInstr.Table_Init(var table, var elem) -> {
+				emit(Opcode.TABLE_INIT, table.index(), elem.index());
+				adjustHeight(-3);
+			}
+			case TableInstr.Elem_Drop(var elem) -> emit(Opcode.ELEM_DROP, elem.index());
+		}
+	}
+
+	private void compileMemoryInstr(MemoryInstr instr) {
+		adjustHeight(switch(instr) {
+			case MemoryInstr.Inn_Store innStore -> -2;
+			case MemoryInstr.Fnn_Store fnnStore -> -2;
+			case MemoryInstr.Inn_Store8 innStore8 -> -2;
+			case MemoryInstr.Inn_Store16 innStore16 -> -2;
+			case MemoryInstr.I64_Store32 i64Store32 -> -2;
+			case MemoryInstr.V128_Store v128Store -> -2;
+			case MemoryInstr.V128_Store8_Lane v128Store8Lane -> -2;
+			case MemoryInstr.V128_Store16_Lane v128Store16Lane -> -2;
+			case MemoryInstr.V128_Store32_Lane v128Store32Lane -> -2;
+			case MemoryInstr.V128_Store64_Lane v128Store64Lane -> -2;
+			case MemoryInstr.V128_Load8_Lane v128Load8Lane -> -1;
+			case MemoryInstr.V128_Load16_Lane v128Load16Lane -> -1;
+			case MemoryInstr.V128_Load32_Lane v128Load32Lane -> -1;
+			case MemoryInstr.V128_Load64_Lane v128Load64Lane -> -1;
+			case MemoryInstr.Memory_Size memorySize -> 1;
+			case MemoryInstr.Memory_Fill memoryFill -> -3;
+			case MemoryInstr.Memory_Copy memoryCopy -> -3;
+			case MemoryInstr.Memory_Init memoryInit -> -3;
+			case MemoryInstr.Memory_Atomic_Notify memoryAtomicNotify -> -1;
+			case MemoryInstr.Memory_Atomic_Wait memoryAtomicWait -> -2;
+			case MemoryInstr.Inn_Atomic_Store innAtomicStore -> -2;
+			case MemoryInstr.Inn_Atomic_Rmw innAtomicRmw -> -1;
+			case MemoryInstr.Inn_Atomic_Cmpxchg innAtomicCmpxchg -> -2;
+			default -> 0;
+		});
+
+		switch(instr) {
+			case MemoryInstr.Inn_Load(var numSize, var memArg) -> emit(switch(numSize) {
+				case _32 -> Opcode.I32_LOAD;
+				case _64 -> Opcode.I64_LOAD;
+			}, memArg.offset());
+
+			case MemoryInstr.Fnn_Load(var numSize, var memArg) -> emit(switch(numSize) {
+				case _32 -> Opcode.F32_LOAD;
+				case _64 -> Opcode.F64_LOAD;
+			}, memArg.offset());
+
+			case MemoryInstr.Inn_Store(var numSize, var memArg) -> emit(switch(numSize) {
+				case _32 -> Opcode.I32_STORE;
+				case _64 -> Opcode.I64_STORE;
+			}, memArg.offset());
+
+			case MemoryInstr.Fnn_Store(var numSize, var memArg) -> emit(switch(numSize) {
+				case _32 -> Opcode.F32_STORE;
+				case _64 -> Opcode.F64_STORE;
+			}, memArg.offset());
+
+			case MemoryInstr.Inn_Load8_U(var numSize, var memArg) -> emit(switch(numSize) {
+				case _32 -> Opcode.I32_LOAD8_U;
+				case _64 -> Opcode.I64_LOAD8_U;
+			}, memArg.offset());
+
+			case MemoryInstr.Inn_Load8_S(var numSize, var memArg) -> emit(switch(numSize) {
+				case _32 -> Opcode.I32_LOAD8_S;
+				case _64 -> Opcode.I64_LOAD8_S;
+			}, memArg.offset());
+
+			case MemoryInstr.Inn_Load16_U(var numSize, var memArg) -> emit(switch(numSize) {
+				case _32 -> Opcode.I32_LOAD16_U;
+				case _64 -> Opcode.I64_LOAD16_U;
+			}, memArg.offset());
+
+			case MemoryInstr.Inn_Load16_S(var numSize, var memArg) -> emit(switch(numSize) {
+				case _32 -> Opcode.I32_LOAD16_S;
+				case _64 -> Opcode.I64_LOAD16_S;
+			}, memArg.offset());
+
+			case MemoryInstr.I64_Load32_U(var memArg) -> emit(Opcode.I64_LOAD32_U, memArg.offset());
+			case MemoryInstr.I64_Load32_S(var memArg) -> emit(Opcode.I64_LOAD32_S, memArg.offset());
+
+			case MemoryInstr.Inn_Store8(var numSize, var memArg) -> emit(switch(numSize) {
+				case _32 -> Opcode.I32_STORE8;
+				case _64 -> Opcode.I64_STORE8;
+			}, memArg.offset());
+
+			case MemoryInstr.Inn_Store16(var numSize, var memArg) -> emit(switch(numSize) {
+				case _32 -> Opcode.I32_STORE16;
+				case _64 -> Opcode.I64_STORE16;
+			}, memArg.offset());
+
+			case MemoryInstr.I64_Store32(var memArg) -> emit(Opcode.I64_STORE32, memArg.offset());
+
+			case MemoryInstr.Memory_Size() -> emit(Opcode.MEMORY_SIZE);
+			case MemoryInstr.Memory_Grow() -> emit(Opcode.MEMORY_GROW);
+			case MemoryInstr.Memory_Fill() -> emit(Opcode.MEMORY_FILL);
+			case MemoryInstr.Memory_Copy() -> emit(Opcode.MEMORY_COPY);
+			case MemoryInstr.Memory_Init(var dataIdx) -> emit(Opcode.MEMORY_INIT, dataIdx.index());
+			case MemoryInstr.Data_Drop(var dataIdx) -> emit(Opcode.DATA_DROP, dataIdx.index());
+
+			case MemoryInstr.Memory_Atomic_Notify memoryAtomicNotify -> emit(Opcode.ATOMIC, addConstant(instr));
+			case MemoryInstr.Memory_Atomic_Wait memoryAtomicWait -> emit(Opcode.ATOMIC, addConstant(instr));
+			case MemoryInstr.Atomic_Fence atomicFence -> emit(Opcode.ATOMIC, addConstant(instr));
+			case MemoryInstr.Inn_Atomic_Load innAtomicLoad -> emit(Opcode.ATOMIC, addConstant(instr));
+			case MemoryInstr.Inn_Atomic_Store innAtomicStore -> emit(Opcode.ATOMIC, addConstant(instr));
+			case MemoryInstr.Inn_Atomic_Rmw innAtomicRmw -> emit(Opcode.ATOMIC, addConstant(instr));
+			case MemoryInstr.Inn_Atomic_Cmpxchg innAtomicCmpxchg -> emit(Opcode.ATOMIC, addConstant(instr));
+
+			default -> emit(Opcode.VECTOR_MEMORY, addConstant(instr));
+		}
+	}
+
+	// Returns false if the instruction does not continue to the next instruction.
+	private boolean compileControlInstr(ControlInstr instr) {
+		switch(instr) {
+			case ControlInstr.Nop() -> {}
+			case ControlInstr.Unreachable() -> {
+				emit(Opcode.UNREACHABLE);
+				return false;
+			}
+
+			case ControlInstr.Block(var blockType, var body) -> {
+				var t = expandBlockType(blockType);
+				int results = t.results().types().size();
+				var frame = new ControlFrame(height - t.args().types().size(), results, -1);
+
+				compileBlockBody(body, frame, results);
+				patchForwardBranches(frame);
+			}
+
+			case ControlInstr.Loop(var blockType, var body) -> {
+				var t = expandBlockType(blockType);
+				int params = t.args().types().size();
+				var frame = new ControlFrame(height - params, params, size);
+				emitSafepoint();
+
+				compileBlockBody(body, frame, t.results().types().size());
+			}
+
+			case ControlInstr.If(var blockType, var thenBody, var elseBody) -> {
+				var t = expandBlockType(blockType);
+				int params = t.args().types().size();
+				int results = t.results().types().size();
+				emit(Opcode.IF);
+				int elsePos = size;
+				emit(0);
+
+				adjustHeight(-1);
+				var frame = new ControlFrame(height - params, results, -1);
+
+				compileBlockBody(thenBody, frame, results);
+				emit(Opcode.JUMP);
+				frame.forwardBranches.add(size);
+				emit(0);
+
+				patch(elsePos, size);
+				height = frame.height + params;
+				compileBlockBody(elseBody, frame, results);
+				patchForwardBranches(frame);
+			}
+
+			case ControlInstr.Br(var label) -> {
+				if(label.index() >= controlStack.size()) {
+					emit(Opcode.RETURN);
+				}
+				else {
+					emit(Opcode.BR);
+					emitBranchEntry(label);
+				}
+				return false;
+			}
+
+			case ControlInstr.Br_If(var label) -> {
+				emit(Opcode.BR_IF);
+				emitBranchEntry(label);
+				adjustHeight(-1);
+			}
+
+			case ControlInstr.Br_Table(var labels, var fallback) -> {
+				emit(Opcode.BR_TABLE, labels.size());
+				for(var label : labels) {
+					emitBranchEntry(label);
+				}
+				emitBranchEntry(fallback);
+				return false;
+			}
+
+			case ControlInstr.Return() -> {
+				emit(Opcode.RETURN);
+				return false;
+			}
+
+			case ControlInstr.Call(var funcIdx) -> {
+				var t = module.getFunctionType(funcIdx);
+				emit(Opcode.CALL, funcIdx.index(), addConstant(CallSignature.of(t)));
+				adjustHeight(t.results().types().size() - t.args().types().size());
+			}
+
+			case ControlInstr.Call_Indirect(var tableIdx, var typeIdx) -> {
+				var t = module.getType(typeIdx);
+				emit(Opcode.CALL_INDIRECT, tableIdx.index(), addConstant(new IndirectCallCache(CallSignature.of(t))));
+				adjustHeight(t.results().types().size() - t.args().types().size() - 1);
+			}
+
+			case ControlInstr.Return_Call(var funcIdx) -> {
+				var t = module.getFunctionType(funcIdx);
+				emit(Opcode.RETURN_CALL, funcIdx.index(), addConstant(CallSignature.of(t)));
+				return false;
+			}
+
+			case ControlInstr.Return_Call_Indirect(var tableIdx, var typeIdx) -> {
+				var t = module.getType(typeIdx);
+				emit(Opcode.RETURN_CALL_INDIRECT, tableIdx.index(), addConstant(new IndirectCallCache(CallSignature.of(t))));
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int vectorStackEffect(VectorInstr instr) {
+		return switch(instr) {
+			case VectorInstr.V128_Const v128Const -> 1;
+			case VectorInstr.VVUnOp vvUnOp -> 0;
+			case VectorInstr.VVBinOp vvBinOp -> -1;
+			case VectorInstr.VVTernOp vvTernOp -> -2;
+			case VectorInstr.VVTestOp vvTestOp -> 0;
+			case VectorInstr.I8x16_Op_Instr(var op) -> vectorStackEffect(op);
+			case VectorInstr.I16x8_Op_Instr(var op) -> vectorStackEffect(op);
+			case VectorInstr.I32x4_Op_Instr(var op) -> vectorStackEffect(op);
+			case VectorInstr.I64x2_Op_Instr(var op) -> vectorStackEffect(op);
+			case VectorInstr.F32x4_Op_Instr(var op) -> vectorStackEffect(op);
+			case VectorInstr.F64x2_Op_Instr(var op) -> vectorStackEffect(op);
+		};
+	}
+
+	private static int vectorStackEffect(VectorInstr.AnyOp op) {
+		return switch(op) {
+			case VectorInstr.Swizzle swizzle -> -1;
+			case VectorInstr.Shuffle shuffle -> -1;
+			case VectorInstr.ReplaceLane replaceLane -> -1;
+			case VectorInstr.VNBinOp vnBinOp -> -1;
+			case VectorInstr.VNRelOp vnRelOp -> -1;
+			case VectorInstr.VIShiftOp viShiftOp -> -1;
+			case VectorInstr.Narrow_Shape narrowShape -> -1;
+			case VectorInstr.Dot_I16x8_S dot -> -1;
+			case VectorInstr.ExtMul extMul -> -1;
+			case VectorInstr.Q15mulr_Sat_S q15mulrSatS -> -1;
+			case VectorInstr.VIAverageOps viAverageOps -> -1;
+			case VectorInstr.VIMinMaxOp viMinMaxOp -> -1;
+			case VectorInstr.VIMulOp viMulOp -> -1;
+			case VectorInstr.VISatBinOp viSatBinOp -> -1;
+			default -> 0;
+		};
+	}
+}
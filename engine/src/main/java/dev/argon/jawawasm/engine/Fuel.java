@@ -0,0 +1,60 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.instructions.ControlInstr;
+import dev.argon.jawawasm.format.instructions.Instr;
+
+import java.util.List;
+
+/**
+ * The fuel of an invocation.
+ * Code is charged once at the start of each block of straight line code for every instruction in the block.
+ * The blocks are derived from the instructions alone so that the interpreter and compiled code consume the same amount.
+ */
+final class Fuel {
+	// Only accessed by the thread running the invocation, or by the host between calls.
+	private long remaining;
+
+	long remaining() {
+		return remaining;
+	}
+
+	void set(long remaining) {
+		this.remaining = remaining;
+	}
+
+	void consume(int cost) throws OutOfFuelException {
+		long r = remaining - cost;
+		if(r < 0) {
+			remaining = 0;
+			throw new OutOfFuelException();
+		}
+		remaining = r;
+	}
+
+	/**
+	 * Splits instructions into the blocks that are charged.
+	 * A block ends after a nested block, a conditional branch or a call, so that every branch target starts a block.
+	 * @param instrs The instructions.
+	 * @return The cost of the block starting at each instruction, or 0 if no block starts there.
+	 */
+	static int[] blockCosts(List<? extends Instr> instrs) {
+		int[] costs = new int[instrs.size()];
+		int start = 0;
+		for(int i = 0; i < instrs.size(); ++i) {
+			if(i == instrs.size() - 1 || endsBlock(instrs.get(i))) {
+				costs[start] = i - start + 1;
+				start = i + 1;
+			}
+		}
+		return costs;
+	}
+
+	private static boolean endsBlock(Instr instr) {
+		return instr instanceof ControlInstr.Block ||
+			instr instanceof ControlInstr.Loop ||
+			instr instanceof ControlInstr.If ||
+			instr instanceof ControlInstr.Br_If ||
+			instr instanceof ControlInstr.Call ||
+			instr instanceof ControlInstr.Call_Indirect;
+	}
+}
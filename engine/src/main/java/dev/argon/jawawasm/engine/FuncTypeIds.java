@@ -0,0 +1,32 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.FuncType;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns a dense integer ID to each distinct function type.
+ * Two function types have the same ID exactly when they are equal, so signature checks compare IDs instead of types.
+ * The IDs are shared by all engines because tables and host functions are not tied to an engine.
+ */
+final class FuncTypeIds {
+	private FuncTypeIds() {}
+
+	/**
+	 * The ID of values that are not functions.
+	 */
+	public static final int NONE = -1;
+
+	private static final ConcurrentHashMap<FuncType, Integer> ids = new ConcurrentHashMap<>();
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	/**
+	 * Gets the ID of a function type.
+	 * @param type The function type.
+	 * @return The ID.
+	 */
+	public static int of(FuncType type) {
+		return ids.computeIfAbsent(type, t -> nextId.getAndIncrement());
+	}
+}
@@ -0,0 +1,76 @@
+package dev.argon.jawawasm.engine;
+
+import java.util.Arrays;
+
+/**
+ * Caches the targets of a call_indirect instruction.
+ * Entries are valid for a single version of the table, so any change to the table clears the cache.
+ */
+final class IndirectCallCache {
+	public IndirectCallCache(CallSignature signature) {
+		this.signature = signature;
+	}
+
+	private static final int MAX_ENTRIES = 4;
+
+	private final CallSignature signature;
+
+	// Replaced rather than modified, so that threads sharing the cache never see a partially updated entry.
+	private Entries entries = new Entries(-1, new int[0], new WasmFunction[0]);
+
+	private record Entries(int version, int[] indices, WasmFunction[] targets) {}
+
+	public CallSignature signature() {
+		return signature;
+	}
+
+	/**
+	 * Gets the function to call.
+	 * @param table The table used by the instruction.
+	 * @param index The index of the function in the table.
+	 * @return The function, which has already been checked against the signature.
+	 * @throws IndirectCallTypeMismatchException if the function has a different type.
+	 */
+	public WasmFunction lookup(WasmTable table, int index) throws IndirectCallTypeMismatchException {
+		int version = table.version();
+		var entries = this.entries;
+		if(entries.version() == version) {
+			int[] indices = entries.indices();
+			for(int i = 0; i < indices.length; ++i) {
+				if(indices[i] == index) {
+					return entries.targets()[i];
+				}
+			}
+		}
+
+		var target = table.getFunction(index, signature.typeId());
+		add(entries, version, index, target);
+		return target;
+	}
+
+	private void add(Entries entries, int version, int index, WasmFunction target) {
+		int[] indices;
+		WasmFunction[] targets;
+		if(entries.version() != version) {
+			indices = new int[] { index };
+			targets = new WasmFunction[] { target };
+		}
+		else if(entries.indices().length < MAX_ENTRIES) {
+			int n = entries.indices().length;
+			indices = Arrays.copyOf(entries.indices(), n + 1);
+			targets = Arrays.copyOf(entries.targets(), n + 1);
+			indices[n] = index;
+			targets[n] = target;
+		}
+		else {
+			// Megamorphic call sites keep the most recent targets.
+			indices = Arrays.copyOf(entries.indices(), MAX_ENTRIES);
+			targets = Arrays.copyOf(entries.targets(), MAX_ENTRIES);
+			System.arraycopy(indices, 1, indices, 0, MAX_ENTRIES - 1);
+			System.arraycopy(targets, 1, targets, 0, MAX_ENTRIES - 1);
+			indices[MAX_ENTRIES - 1] = index;
+			targets[MAX_ENTRIES - 1] = target;
+		}
+		this.entries = new Entries(version, indices, targets);
+	}
+}
@@ -6,37 +6,85 @@ import dev.argon.jawawasm.format.modules.Module;
 import dev.argon.jawawasm.format.types.*;
 import org.jspecify.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A fully linked and instantiated module.
  */
-public final class InstantiatedModule implements WasmModule {
+public final class InstantiatedModule implements WasmModule, AutoCloseable {
 
 	InstantiatedModule(Engine engine, Module module, ModuleResolver resolver) throws ExecutionException, ModuleLinkException {
 		this.engine = engine;
 		this.module = module;
 		this.resolver = resolver;
+		maxCallDepth = engine.getMaxCallDepth();
+		metered = engine.isFuelEnabled();
+		interruptible = engine.isEpochInterruptionEnabled();
+		epochYieldInterval = interruptible ? engine.getEpochYieldInterval() : 0;
+		reductionLimit = engine.getReductionLimit();
+		compileThreshold = engine.isCompilerEnabled() && epochYieldInterval == 0 && reductionLimit == 0 ? engine.getCompileThreshold() : 0;
+
+		for(Import imp : module.imports()) {
+			switch(imp.desc()) {
+				case ImportDesc.Func(var type) -> functionTypes.add(getType(type));
+				case ImportDesc.Global(var type) -> globalTypes.add(type);
+				default -> {}
+			}
+		}
+		for(Func func : module.funcs()) {
+			functionTypes.add(getType(func.type()));
+		}
+		for(Global global : module.globals()) {
+			globalTypes.add(global.type());
+		}
 
-		new FunctionBuilder().build(functions);
-		new TableBuilder().build(tables);
-		new MemoryBuilder().build(memories);
-		new GlobalBuilder().build(globals);
+		try {
+			new FunctionBuilder().build(functions);
+			new TableBuilder().build(tables);
+			new MemoryBuilder().build(memories);
+			new GlobalBuilder().build(globals);
+		}
+		catch(Throwable ex) {
+			// Nothing refers to the memories and tables yet, so they are released rather than charged to the memory budget until the engine is closed.
+			close();
+			throw ex;
+		}
 
-		elements = new WasmElements[module.elems().size()];
-		for(int i = 0; i < elements.length; ++i) {
-			Elem elem = module.elems().get(i);
+		// Set once functions of this module may be reachable from outside of it.
+		// A failed instantiation then keeps its memories and tables, since those functions may still be called.
+		boolean exposed = false;
+		try {
+			var exports = new HashMap<String, WasmExport>();
+			for(Export export : module.exports()) {
+				exports.put(export.name(), createExport(export.desc()));
+			}
+			this.exports = Map.copyOf(exports);
 
-			Object[] values = new Object[elem.init().size()];
-			for(int j = 0; j < values.length; ++j) {
-				values[j] = evaluateInitializer(elem.init().get(j).body(), elem.type());
+			// Function bodies are lowered once the globals exist so that immutable globals can be folded.
+			for(WasmFunction function : functions) {
+				if(function instanceof ModuleFunction moduleFunction && moduleFunction.module() == this) {
+					var func = moduleFunction.definition();
+					moduleFunction.setCode(FlatCodeCompiler.compile(this, moduleFunction.type(), func.locals(), func.body().body(), true));
+				}
 			}
 
-			elements[i] = new WasmElements(values);
-		}
+			datas = module.datas().toArray(new Data[0]);
+
+			elements = new WasmElements[module.elems().size()];
+			for(int i = 0; i < elements.length; ++i) {
+				Elem elem = module.elems().get(i);
+
+				Object[] values = new Object[elem.init().size()];
+				for(int j = 0; j < values.length; ++j) {
+					values[j] = evaluateInitializer(elem.init().get(j).body(), elem.type());
+				}
+
+				elements[i] = new WasmElements(values);
+			}
 
-		try {
 			for(int i = 0; i < module.elems().size(); ++i) {
 				Elem elem = module.elems().get(i);
 				switch(elem.mode()) {
@@ -44,8 +92,9 @@ public final class InstantiatedModule implements WasmModule {
 						var instElem = getElement(new ElemIdx(i));
 
 						var table = getTable(tableIdx);
-						int offset = (int)evaluateInitializer(offsetExpr.body(), elem.type());
+						int offset = (int)evaluateInitializer(offsetExpr.body(), NumType.I32);
 						WasmTable.init(offset, 0, instElem.size(), table, instElem);
+						exposed |= instElem.size() > 0 && tableIdx.index() < importCount(ImportDesc.Table.class);
 						dropElement(new ElemIdx(i));
 					}
 
@@ -59,6 +108,7 @@ public final class InstantiatedModule implements WasmModule {
 			for(int i = 0; i < module.datas().size(); ++i) {
 				Data data = module.datas().get(i);
 				switch(data.mode()) {
+					case DataMode.Active(var memoryIdx, var offsetExpr) when memoryFromImage -> {}
 					case DataMode.Active(var memoryIdx, var offsetExpr) -> {
 						var memory = getMemory(memoryIdx);
 						int offset = (int)evaluateInitializer(offsetExpr.body(), NumType.I32);
@@ -67,33 +117,54 @@ public final class InstantiatedModule implements WasmModule {
 					case DataMode.Passive() -> {}
 				}
 			}
+
+			if(module.start() != null) {
+				var startFunc = getFunction(module.start().func());
+				exposed |= exposesFunctions();
+				FunctionResult.resolveWith(() -> startFunc.invoke(new Object[] {}));
+			}
 		}
 		catch(Throwable ex) {
-			throw new ExecutionException(ex);
-		}
-
-		if(module.start() != null) {
-			var startFunc = getFunction(module.start().func());
-			FunctionResult.resolveWith(() -> startFunc.invoke(new Object[] {}));
+			if(!exposed) {
+				close();
+			}
+			throw ex instanceof ExecutionException executionException ? executionException : new ExecutionException(ex);
 		}
 	}
 
 	private final Engine engine;
 	private final Module module;
 	private final ModuleResolver resolver;
-
+	private final int compileThreshold;
+	private final int maxCallDepth;
+	private final boolean metered;
+	private final boolean interruptible;
+	private final long epochYieldInterval;
+	private final int reductionLimit;
+
+	private final List<FuncType> functionTypes = new ArrayList<>();
+	private final List<GlobalType> globalTypes = new ArrayList<>();
 	private final List<WasmFunction> functions = new ArrayList<>();
 	private final List<WasmTable> tables = new ArrayList<>();
 	private final List<WasmMemory> memories = new ArrayList<>();
 	private final List<WasmGlobal> globals = new ArrayList<>();
-	private final WasmElements[] elements;
-	private final Set<Integer> droppedData = new HashSet<>();
 
+	// Dropped segments are replaced with empty ones. The segments are immutable, so they are read without locking.
+	private final WasmElements[] elements;
+	private final Data[] datas;
 
+	// Only used while the module is being instantiated.
 	private final Map<String, WasmModule> referencedModules = new HashMap<>();
-	private final Map<String, WasmExport> exports = new HashMap<>();
 
-	private synchronized WasmModule getReference(String name) throws ModuleResolutionException {
+	private final Map<String, WasmExport> exports;
+
+	// Each memory is closed once, since it counts the instances that use it.
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	// Set if the memory already contains the active data segments.
+	private boolean memoryFromImage = false;
+
+	private WasmModule getReference(String name) throws ModuleResolutionException {
 		WasmModule ref = referencedModules.get(name);
 		if(ref == null) {
 			ref = resolver.resolve(name);
@@ -103,26 +174,64 @@ public final class InstantiatedModule implements WasmModule {
 	}
 
 	@Override
-	public synchronized @Nullable WasmExport getExport(String name) {
-		WasmExport export = exports.get(name);
-		if(export == null) {
-			ExportDesc desc = module.exports()
-					.stream()
-					.filter((Export e) -> e.name().equals(name))
-					.map(Export::desc)
-					.findFirst()
-					.orElse(null);
-
-			if(desc == null) {
-				return null;
-			}
+	public @Nullable WasmExport getExport(String name) {
+		return exports.get(name);
+	}
 
+	/**
+	 * Closes the memories defined or imported by this module.
+	 * A memory that was exported to other instances is released once they have been closed too.
+	 * The tables defined by this module are no longer charged to the memory budget of the engine.
+	 * Functions of this module must not be called after it is closed.
+	 */
+	@Override
+	public void close() {
+		if(!closed.compareAndSet(false, true)) {
+			return;
+		}
+
+		for(var memory : memories) {
+			memory.close();
+		}
+		for(var table : defined(tables, ImportDesc.Table.class)) {
+			table.release();
+		}
+	}
 
-			export = createExport(desc);
-			exports.put(name, export);
+	/**
+	 * Gets the number of bytes of the memories and tables defined by this module that are charged to the memory budget of the engine.
+	 * @return The number of bytes.
+	 */
+	public long getMemoryUsage() {
+		long bytes = 0;
+		for(var memory : defined(memories, ImportDesc.Mem.class)) {
+			bytes += memory.byteSize();
+		}
+		for(var table : defined(tables, ImportDesc.Table.class)) {
+			bytes += table.chargedBytes();
 		}
+		return bytes;
+	}
+
+	// Imports come first in each index space. The list may be incomplete if instantiation failed.
+	private <T> List<T> defined(List<T> items, Class<? extends ImportDesc> importKind) {
+		int imported = importCount(importKind);
+		return items.subList(Math.min(imported, items.size()), items.size());
+	}
+
+	private int importCount(Class<? extends ImportDesc> importKind) {
+		return (int)module.imports().stream().filter(imp -> importKind.isInstance(imp.desc())).count();
+	}
 
-		return export;
+	// Whether code of this module can make its functions reachable from outside of it,
+	// by storing references in imported tables or globals or by passing them to imported functions.
+	private boolean exposesFunctions() {
+		return module.imports().stream().anyMatch(imp -> switch(imp.desc()) {
+			case ImportDesc.Func(var type) -> getType(type).args().types().stream().anyMatch(t -> t instanceof RefType);
+			case ImportDesc.Table table -> true;
+			case ImportDesc.Mem mem -> false;
+			case ImportDesc.Global(var type) -> type.mutability() == Mut.Var && type.type() instanceof RefType;
+		});
 	}
 
 	private WasmExport createExport(ExportDesc export) {
@@ -135,18 +244,18 @@ public final class InstantiatedModule implements WasmModule {
 	}
 
 	private Object evaluateInitializer(List<? extends Instr> init, ValType type) throws ExecutionException {
+		var code = FlatCodeCompiler.compile(
+				InstantiatedModule.this,
+				new FuncType(
+						new ResultType(List.of()),
+						new ResultType(List.of(type))
+				),
+				List.of(),
+				init,
+				false
+		);
 		Object[] values = FunctionResult.resolveWith(() ->
-				new StackFrame(
-						InstantiatedModule.this,
-						init,
-						new FuncType(
-								new ResultType(List.of()),
-								new ResultType(List.of(type))
-						),
-						new Object[] {},
-						new Object[] {}
-				)
-						.evaluate()
+				new StackFrame(InstantiatedModule.this, null, code, new Object[] {}).evaluate()
 		);
 		return values[0];
 	}
@@ -233,17 +342,8 @@ public final class InstantiatedModule implements WasmModule {
 
 		@Override
 		protected WasmFunction create(Func func) {
-			return new WasmFunction() {
-				@Override
-				public FuncType type() {
-					return module.types().get(func.type().index());
-				}
-
-				@Override
-				public FunctionResult invoke(Object[] args) throws Throwable {
-					return new StackFrame(InstantiatedModule.this, func, args).evaluate();
-				}
-			};
+			var type = getType(func.type());
+			return new ModuleFunction(engine, InstantiatedModule.this, type, func, compileThreshold);
 		}
 	}
 
@@ -275,8 +375,13 @@ public final class InstantiatedModule implements WasmModule {
 		}
 
 		@Override
-		protected WasmTable create(Table table) {
-			return new WasmTable(table.type());
+		protected WasmTable create(Table table) throws ExecutionException {
+			try {
+				return WasmTable.create(engine, table.type());
+			}
+			catch(MemoryBudgetExceededException ex) {
+				throw new ExecutionException(ex);
+			}
 		}
 	}
 
@@ -293,6 +398,14 @@ public final class InstantiatedModule implements WasmModule {
 			}
 
 			checkLimits(desc.type().limits(), mem.type().limits());
+			if(desc.type().shared() != mem.type().shared()) {
+				throw new ModuleLinkException("incompatible import type");
+			}
+
+			// The instance keeps the memory until it is closed, even if the module that exported it is closed first.
+			if(!((WasmMemoryMeta)mem).retain()) {
+				throw new ModuleLinkException("memory is closed");
+			}
 
 			return mem;
 		}
@@ -303,8 +416,40 @@ public final class InstantiatedModule implements WasmModule {
 		}
 
 		@Override
-		protected WasmMemory create(Mem memory) {
-			return WasmMemory.create(engine, memory.type());
+		protected WasmMemory create(Mem memory) throws ExecutionException {
+			var fromImage = instantiateImage();
+			if(fromImage != null) {
+				memoryFromImage = true;
+				return fromImage;
+			}
+
+			WasmMemory mem;
+			try {
+				mem = engine.createMemory(memory.type());
+			}
+			catch(IOException | MemoryBudgetExceededException ex) {
+				throw new ExecutionException(ex);
+			}
+
+			if(mem.pageSize() < memory.type().limits().min()) {
+				throw new ExecutionException(new IllegalStateException("Memory factory created a memory smaller than the minimum size"));
+			}
+			if(mem.type().shared() != memory.type().shared()) {
+				throw new ExecutionException(new IllegalStateException("Memory factory created a memory that is not shared as required"));
+			}
+			return mem;
+		}
+
+		// Another thread may evict the image and delete its file before it is mapped.
+		// The memory is then created without the image, and the data segments are copied into it.
+		private @Nullable WasmMemory instantiateImage() {
+			try {
+				var image = engine.memoryImage(module);
+				return image != null ? image.instantiate(engine) : null;
+			}
+			catch(IOException ex) {
+				return null;
+			}
 		}
 	}
 
@@ -346,49 +491,108 @@ public final class InstantiatedModule implements WasmModule {
 		return module.types().get(index.index());
 	}
 
+	FuncType getFunctionType(FuncIdx index) {
+		return functionTypes.get(index.index());
+	}
+
+	GlobalType getGlobalType(GlobalIdx index) {
+		return globalTypes.get(index.index());
+	}
+
+	int getMaxCallDepth() {
+		return maxCallDepth;
+	}
+
+	// Whether the functions of the module charge fuel to the invocation they run in.
+	boolean isMetered() {
+		return metered;
+	}
+
+	// Whether the functions of the module check the epoch against the deadline of the invocation they run in.
+	boolean isInterruptible() {
+		return interruptible;
+	}
+
+	// The number of epochs that the deadline is extended by when a function yields, or 0 if it traps.
+	long getEpochYieldInterval() {
+		return epochYieldInterval;
+	}
+
+	// The number of function entries and loop iterations after which an invocation yields, or 0 if it does not.
+	int getReductionLimit() {
+		return reductionLimit;
+	}
+
 	WasmFunction getFunction(FuncIdx index) {
-		return functions.get(index.index());
+		return getFunction(index.index());
+	}
+
+	WasmFunction getFunction(int index) {
+		return functions.get(index);
 	}
 
 	WasmTable getTable(TableIdx index) {
-		return tables.get(index.index());
+		return getTable(index.index());
+	}
+
+	WasmTable getTable(int index) {
+		return tables.get(index);
 	}
 
 	WasmMemory getMemory(MemIdx index) {
-		return memories.get(index.index());
+		return getMemory(index.index());
+	}
+
+	WasmMemory getMemory(int index) {
+		return memories.get(index);
+	}
+
+	// The memory that currently backs memory 0, or null if the module has no memory.
+	// The result changes when the memory grows.
+	@Nullable WasmMemoryNoResize getMemoryBuffer() {
+		return memories.isEmpty() ? null : ((WasmMemoryMeta)memories.get(0)).buffer();
+	}
+
+	boolean hasMemory() {
+		return !memories.isEmpty();
 	}
 
 	WasmGlobal getGlobal(GlobalIdx index) {
-		return globals.get(index.index());
+		return getGlobal(index.index());
+	}
+
+	WasmGlobal getGlobal(int index) {
+		return globals.get(index);
+	}
+
+	// Returns null if the global has not been created yet.
+	@Nullable WasmGlobal findGlobal(int index) {
+		return index < globals.size() ? globals.get(index) : null;
 	}
 
 	WasmElements getElement(ElemIdx index) {
-		synchronized(elements) {
-			return elements[index.index()];
-		}
+		return getElement(index.index());
 	}
 
-	Data getData(DataIdx index) {
-		synchronized(droppedData) {
-			if(droppedData.contains(index.index())) {
-				return new Data(new byte[] {}, new DataMode.Passive());
-			}
+	WasmElements getElement(int index) {
+		return elements[index];
+	}
 
-			return module.datas().get(index.index());
-		}
+	Data getData(int index) {
+		return datas[index];
 	}
 
 
 	void dropElement(ElemIdx index) {
-		synchronized(elements) {
-			elements[index.index()] = new WasmElements(new Object[] {});
-		}
+		dropElement(index.index());
 	}
 
-	void dropData(DataIdx index) {
-		synchronized(droppedData) {
-			droppedData.add(index.index());
-		}
+	void dropElement(int index) {
+		elements[index] = new WasmElements(new Object[] {});
+	}
+
+	void dropData(int index) {
+		datas[index] = new Data(new byte[] {}, new DataMode.Passive());
 	}
 
 
@@ -0,0 +1,147 @@
+package dev.argon.jawawasm.engine;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A call from the host into an engine.
+ * Code is charged the fuel of the invocation that it runs in and is interrupted at its epoch deadline,
+ * so concurrent calls into the same engine are metered and interrupted separately.
+ * A call made without an invocation runs in a new invocation that starts with the defaults of the engine.
+ * Calls made by running code, including calls into modules of other engines, run in the invocation of the caller.
+ * An invocation may be used for many calls, but only by one thread at a time.
+ */
+public final class Invocation {
+	/**
+	 * Create an invocation with the default fuel and epoch deadline of the engine.
+	 * @param engine The engine.
+	 */
+	public Invocation(Engine engine) {
+		fuel.set(engine.getFuel());
+		epoch = engine.epoch();
+		epochDeadline = engine.getEpochDeadline();
+	}
+
+	// Bound while code of the invocation is running, including each step of a delayed result.
+	private static final ThreadLocal<Invocation> CURRENT = new ThreadLocal<>();
+
+	private final Fuel fuel = new Fuel();
+	private final Epoch epoch;
+
+	// Set by the host between calls, or by code yielding.
+	private long epochDeadline;
+
+	/**
+	 * Get the remaining fuel.
+	 * @return The remaining fuel.
+	 */
+	public long getFuel() {
+		return fuel.remaining();
+	}
+
+	/**
+	 * Set the remaining fuel.
+	 * @param fuel The amount of fuel.
+	 */
+	public void setFuel(long fuel) {
+		if(fuel < 0) {
+			throw new IllegalArgumentException("Fuel must not be negative");
+		}
+		this.fuel.set(fuel);
+	}
+
+	/**
+	 * Get the epoch at which running code is interrupted.
+	 * @return The deadline epoch.
+	 */
+	public long getEpochDeadline() {
+		return epochDeadline;
+	}
+
+	/**
+	 * Set the epoch at which running code is interrupted.
+	 * @param deadline The deadline epoch.
+	 */
+	public void setEpochDeadline(long deadline) {
+		epochDeadline = deadline;
+	}
+
+	/**
+	 * Invoke a function in this invocation.
+	 * @param function The function.
+	 * @param args The function arguments.
+	 * @return The function result. Each step of a delayed result also runs in this invocation.
+	 * @throws Throwable if an error occurs.
+	 */
+	public FunctionResult invoke(WasmFunction function, Object[] args) throws Throwable {
+		return run(() -> function.invoke(args));
+	}
+
+	/**
+	 * Invoke a function in this invocation.
+	 * @param function The function.
+	 * @param args The function arguments.
+	 * @return The return values.
+	 * @throws Throwable if an error occurs.
+	 */
+	public Object[] invokeNow(WasmFunction function, Object[] args) throws Throwable {
+		return FunctionResult.resolve(invoke(function, args));
+	}
+
+	private FunctionResult run(FunctionResult.Delay step) throws Throwable {
+		var previous = CURRENT.get();
+		CURRENT.set(this);
+		FunctionResult result;
+		try {
+			result = step.step();
+		}
+		finally {
+			if(previous == null) {
+				CURRENT.remove();
+			}
+			else {
+				CURRENT.set(previous);
+			}
+		}
+
+		return switch(result) {
+			case FunctionResult.Values values -> values;
+			case FunctionResult.Delay delay -> (FunctionResult.Delay)() -> run(delay);
+		};
+	}
+
+	// The invocation running on this thread, or null if no code is running.
+	static @Nullable Invocation current() {
+		return CURRENT.get();
+	}
+
+	// Used by code that needs the invocation.
+	// Every call from the host starts an invocation, so running code always has one.
+	// Failing here rather than starting a new invocation keeps code from being given fresh fuel.
+	static Invocation required() {
+		var invocation = CURRENT.get();
+		if(invocation == null) {
+			throw new IllegalStateException("Code is running outside of an invocation");
+		}
+		return invocation;
+	}
+
+	void consumeFuel(int cost) throws OutOfFuelException {
+		fuel.consume(cost);
+	}
+
+	boolean reachedEpochDeadline() {
+		return epoch.current() >= epochDeadline;
+	}
+
+	// Used by compiled code, which can only trap.
+	void checkEpochDeadline() throws EpochDeadlineException {
+		if(reachedEpochDeadline()) {
+			throw new EpochDeadlineException();
+		}
+	}
+
+	// Called by code yielding at the deadline.
+	void extendEpochDeadline(long interval) {
+		epochDeadline = epoch.current() + interval;
+	}
+}
@@ -1,19 +1,36 @@
 package dev.argon.jawawasm.engine;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 final class Lazy<T> {
 	public Lazy(Initializer<T> initializer) {
 		this.initializer = initializer;
 	}
 
 	private final Initializer<T> initializer;
-	private T value;
 
-	public synchronized T get() throws Throwable {
-		if(value == null) {
-			value = initializer.init();
+	// Read without locking once initialized. The lock only guards initialization.
+	private volatile T value;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	public T get() throws Throwable {
+		T value = this.value;
+		if(value != null) {
+			return value;
 		}
 
-		return value;
+		lock.lock();
+		try {
+			value = this.value;
+			if(value == null) {
+				value = initializer.init();
+				this.value = value;
+			}
+			return value;
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	public static interface Initializer<T> {
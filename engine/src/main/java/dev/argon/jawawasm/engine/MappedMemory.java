@@ -0,0 +1,93 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.MemType;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Address space mapped from a file.
+ * The whole reservation is mapped up front, and the file is kept at the size of the memory.
+ * The memory never accesses the mapping past the end of the file.
+ */
+final class MappedMemory implements MemoryReservation {
+	private MappedMemory(Path path, MemorySegment segment) {
+		this.path = path;
+		this.segment = segment;
+	}
+
+	private final Path path;
+	private final MemorySegment segment;
+
+	static WasmMemoryMeta open(Engine engine, MemType memType, Path path) throws IOException {
+		var limits = memType.limits();
+		if(memType.shared() && limits.max() == null) {
+			throw new IllegalArgumentException("Shared memory must have a maximum size");
+		}
+
+		try(var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+			long fileSize = channel.size();
+			long pages = Math.max(limits.min(), (fileSize + Util.PAGE_SIZE - 1) / Util.PAGE_SIZE);
+
+			int engineMemoryLimit = engine.getMaxMemory();
+			if((limits.max() != null && pages > limits.max()) || (engineMemoryLimit > 0 && pages > engineMemoryLimit) || pages > Integer.MAX_VALUE / Util.PAGE_SIZE) {
+				throw new IOException("Memory file is larger than the maximum memory size");
+			}
+
+			long bytes = pages * Util.PAGE_SIZE;
+			long reserveBytes = Math.max(bytes, (long)WasmMemoryMeta.reservationPages(engine, memType) * Util.PAGE_SIZE);
+
+			var arena = Arena.ofShared();
+			try {
+				// Mapping extends the file to the size of the reservation, so it is truncated back afterwards.
+				var segment = engine.mapMemory(channel, FileChannel.MapMode.READ_WRITE, reserveBytes, arena);
+				channel.truncate(bytes);
+				var memory = new MappedMemory(path, segment);
+				if(fileSize < bytes && !memory.extend(channel, bytes)) {
+					throw new IOException("Could not extend memory file");
+				}
+
+				return new WasmMemoryMeta(engine, arena, limits.max(), memType.shared(), memory, (int)pages);
+			}
+			catch(IOException ex) {
+				arena.close();
+				throw ex;
+			}
+		}
+	}
+
+	@Override
+	public MemorySegment segment() {
+		return segment;
+	}
+
+	@Override
+	public boolean commit(long offset, long bytes) {
+		if(bytes == 0) {
+			return true;
+		}
+
+		try(var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			return extend(channel, offset + bytes);
+		}
+		catch(IOException ex) {
+			return false;
+		}
+	}
+
+	// Writing the last byte extends the file with zeros, which most file systems store sparsely.
+	private boolean extend(FileChannel channel, long size) {
+		try {
+			channel.write(ByteBuffer.allocate(1), size - 1);
+			return true;
+		}
+		catch(IOException ex) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package dev.argon.jawawasm.engine;
+
+import org.jspecify.annotations.Nullable;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Provides the native memory behind the memories created by an engine.
+ * Memory must stay valid until the arena that it was requested for is closed, which happens when the memory is closed.
+ */
+public interface MemoryAllocator {
+	/**
+	 * Allocates zeroed memory for a memory that is copied when it grows.
+	 * @param bytes The size of the memory.
+	 * @param arena The arena that controls the lifetime of the memory.
+	 * @return A segment of exactly the requested size.
+	 */
+	MemorySegment allocate(long bytes, Arena arena);
+
+	/**
+	 * Reserves address space for a memory to grow into in place.
+	 * @param bytes The size of the reservation.
+	 * @param arena The arena that controls the lifetime of the reservation.
+	 * @return A reservation of exactly the requested size, or null if address space cannot be reserved.
+	 */
+	@Nullable MemoryReservation reserve(long bytes, Arena arena);
+}
@@ -0,0 +1,11 @@
+package dev.argon.jawawasm.engine;
+
+/**
+ * Creating a memory or table would exceed the memory budget of the engine.
+ */
+public class MemoryBudgetExceededException extends RuntimeException {
+	/**
+	 * Create a MemoryBudgetExceededException.
+	 */
+	public MemoryBudgetExceededException() {}
+}
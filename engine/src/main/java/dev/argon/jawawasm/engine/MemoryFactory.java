@@ -0,0 +1,21 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.MemType;
+
+import java.io.IOException;
+
+/**
+ * Creates the memories defined by modules.
+ */
+@FunctionalInterface
+public interface MemoryFactory {
+	/**
+	 * Creates a memory.
+	 * @param engine The engine that will be using the memory.
+	 * @param type The type of the memory. The memory may start larger than the minimum size.
+	 * @return The created memory.
+	 * @throws IOException if the memory cannot be created.
+	 * @throws MemoryBudgetExceededException if the memory would exceed the memory budget of the engine.
+	 */
+	WasmMemory create(Engine engine, MemType type) throws IOException;
+}
@@ -0,0 +1,129 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.instructions.NumericInstr;
+import dev.argon.jawawasm.format.modules.Data;
+import dev.argon.jawawasm.format.modules.DataMode;
+import dev.argon.jawawasm.format.modules.ImportDesc;
+import dev.argon.jawawasm.format.modules.Module;
+import dev.argon.jawawasm.format.types.Limits;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The contents of the memory of a module after its active data segments have been copied in.
+ * The image is stored in a file that every instance maps privately, so instances share pages until they write to them.
+ */
+final class MemoryImage {
+	private MemoryImage(Path path, Limits limits, long reserveBytes) {
+		this.path = path;
+		this.limits = limits;
+		this.reserveBytes = reserveBytes;
+	}
+
+	private final Path path;
+	private final Limits limits;
+	private final long reserveBytes;
+
+	/**
+	 * Builds the image of the memory of a module.
+	 * Only modules that define a single memory that is not shared and place every active data segment at a constant offset have an image.
+	 * @param module The module.
+	 * @param reservePages The number of pages of address space to map for each instance.
+	 * @return The image, or null if the memory cannot be shared.
+	 * @throws IOException if the image file cannot be written.
+	 */
+	static @Nullable MemoryImage build(Module module, int reservePages) throws IOException {
+		if(module.mems().size() != 1 || module.mems().get(0).type().shared() || module.imports().stream().anyMatch(imp -> imp.desc() instanceof ImportDesc.Mem)) {
+			return null;
+		}
+
+		var limits = module.mems().get(0).type().limits();
+		long bytes = (long)limits.min() * Util.PAGE_SIZE;
+		long reserveBytes = Math.max(bytes, (long)reservePages * Util.PAGE_SIZE);
+
+		for(Data data : module.datas()) {
+			if(data.mode() instanceof DataMode.Active(var memoryIdx, var offsetExpr)) {
+				// Out of bounds segments trap when the module is instantiated without an image.
+				if(memoryIdx.index() != 0 ||
+					!(offsetExpr.body().size() == 1 && offsetExpr.body().get(0) instanceof NumericInstr.I32_Const(var offset)) ||
+					!Util.sumInRange(offset, data.init().length, (int)Math.min(bytes, Integer.MAX_VALUE))
+				) {
+					return null;
+				}
+			}
+		}
+
+		var path = Files.createTempFile("jawawasm", ".image");
+		path.toFile().deleteOnExit();
+		try(var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			var arena = Arena.ofConfined()
+		) {
+			if(bytes > 0) {
+				var segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes, arena);
+				for(Data data : module.datas()) {
+					if(data.mode() instanceof DataMode.Active(var memoryIdx, var offsetExpr) && offsetExpr.body().get(0) instanceof NumericInstr.I32_Const(var offset)) {
+						MemorySegment.copy(data.init(), 0, segment, ValueLayout.JAVA_BYTE, offset, data.init().length);
+					}
+				}
+			}
+
+			// The rest of the reservation reads as zeros without using any disk space.
+			channel.write(ByteBuffer.allocate(1), reserveBytes - 1);
+		}
+		catch(IOException ex) {
+			Files.deleteIfExists(path);
+			throw ex;
+		}
+
+		return new MemoryImage(path, limits, reserveBytes);
+	}
+
+	/**
+	 * Creates a memory for an instance, initialized with the image.
+	 * @param engine The engine that will be using the memory.
+	 * @return The memory.
+	 * @throws IOException if the image cannot be mapped.
+	 * @throws MemoryBudgetExceededException if the memory would exceed the memory budget of the engine.
+	 */
+	WasmMemoryMeta instantiate(Engine engine) throws IOException {
+		// Private mappings require a writable channel, although the file is never written.
+		var arena = Arena.ofShared();
+		try(var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			var segment = engine.mapMemory(channel, FileChannel.MapMode.PRIVATE, reserveBytes, arena);
+			MemoryReservation reservation = new MemoryReservation() {
+				@Override
+				public MemorySegment segment() {
+					return segment;
+				}
+
+				// The whole file is mapped, and pages past the image are zero.
+				@Override
+				public boolean commit(long offset, long bytes) {
+					return true;
+				}
+			};
+			return new WasmMemoryMeta(engine, arena, limits.max(), false, reservation, limits.min());
+		}
+		catch(IOException ex) {
+			arena.close();
+			throw ex;
+		}
+	}
+
+	Path path() {
+		return path;
+	}
+
+	void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+}
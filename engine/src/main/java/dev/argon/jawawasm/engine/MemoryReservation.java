@@ -0,0 +1,23 @@
+package dev.argon.jawawasm.engine;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Address space that a memory grows into without being copied.
+ */
+public interface MemoryReservation {
+	/**
+	 * Gets the reserved address space.
+	 * @return The reserved segment.
+	 */
+	MemorySegment segment();
+
+	/**
+	 * Makes part of the reservation usable.
+	 * Newly committed memory is zeroed.
+	 * @param offset The start of the range, which is a multiple of the page size.
+	 * @param bytes The size of the range.
+	 * @return true if the range was committed.
+	 */
+	boolean commit(long offset, long bytes);
+}
@@ -0,0 +1,181 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.modules.Func;
+import dev.argon.jawawasm.format.types.FuncType;
+import org.jspecify.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A function defined by a module.
+ * The function starts out interpreted and is compiled to JVM bytecode once it becomes hot.
+ */
+final class ModuleFunction implements WasmFunction {
+	public ModuleFunction(Engine engine, InstantiatedModule module, FuncType type, Func definition, int compileThreshold) {
+		this.engine = engine;
+		this.module = module;
+		this.type = type;
+		typeId = FuncTypeIds.of(type);
+		this.definition = definition;
+		this.compileThreshold = compileThreshold;
+	}
+
+	private static final MethodHandle INVOKE_INTERPRETED;
+	static {
+		try {
+			INVOKE_INTERPRETED = MethodHandles.lookup().findVirtual(ModuleFunction.class, "invokeInterpreted", MethodType.methodType(Object.class, Object[].class));
+		}
+		catch(ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	private final Engine engine;
+	private final InstantiatedModule module;
+	private final FuncType type;
+	private final int typeId;
+	private final Func definition;
+
+	// Set by the module once its globals have been created.
+	private @Nullable FlatCode code;
+
+	// The number of calls and loop back-edges after which the function is compiled, or 0 if it is never compiled.
+	private final int compileThreshold;
+
+	// Updated without synchronization, so some counts may be lost.
+	private int hotness = 0;
+
+	// Used by compiled callers. The target is switched from the interpreter to the compiled code.
+	// Created on first use with the lock held.
+	private volatile @Nullable MutableCallSite callSite;
+	private final ReentrantLock callSiteLock = new ReentrantLock();
+
+	// Takes the arguments as an Object[] and returns the results as an Object[].
+	private volatile @Nullable MethodHandle compiled;
+
+	// Takes the arguments from the operand stack of an interpreter and writes the result back to it.
+	private volatile @Nullable MethodHandle compiledSlots;
+
+	@Override
+	public FuncType type() {
+		return type;
+	}
+
+	public int typeId() {
+		return typeId;
+	}
+
+	public InstantiatedModule module() {
+		return module;
+	}
+
+	public Func definition() {
+		return definition;
+	}
+
+	public FlatCode code() {
+		return code;
+	}
+
+	public void setCode(FlatCode code) {
+		this.code = code;
+	}
+
+	/**
+	 * Gets the call site used by compiled code to call this function.
+	 * The type of the call site is BytecodeCompiler.methodType of the function type.
+	 * @return The call site.
+	 */
+	public MutableCallSite callSite() {
+		var callSite = this.callSite;
+		if(callSite != null) {
+			return callSite;
+		}
+
+		callSiteLock.lock();
+		try {
+			callSite = this.callSite;
+			if(callSite == null) {
+				var methodType = BytecodeCompiler.methodType(type);
+				var target = INVOKE_INTERPRETED.bindTo(this)
+					.asCollector(Object[].class, methodType.parameterCount())
+					.asType(methodType);
+				callSite = new MutableCallSite(target);
+				this.callSite = callSite;
+			}
+			return callSite;
+		}
+		finally {
+			callSiteLock.unlock();
+		}
+	}
+
+	/**
+	 * Switches the function to compiled code.
+	 * @param code The static method of the function.
+	 * @param bridge The same method taking and returning an Object[].
+	 * @param slots The same method taking its arguments from the operand stack of an interpreter.
+	 */
+	public void setCompiled(MethodHandle code, MethodHandle bridge, MethodHandle slots) {
+		callSite().setTarget(code);
+		compiled = bridge;
+		compiledSlots = slots;
+	}
+
+	/**
+	 * Gets the entry point used by the interpreter to call the compiled function.
+	 * The type of the handle is (long[], Object[], int)void. See BytecodeCompiler for details.
+	 * @return The entry point, or null if the function is not compiled.
+	 */
+	public @Nullable MethodHandle slotsEntry() {
+		return compiledSlots;
+	}
+
+	/**
+	 * Records a call or loop back-edge while the function is interpreted.
+	 * Schedules compilation when the threshold is reached.
+	 */
+	public void countHotness() {
+		if(compileThreshold > 0 && ++hotness == compileThreshold) {
+			if(!engine.submitCompilation(() -> BytecodeCompiler.compile(module, this))) {
+				// The compile queue is full, so try again after the function is used more.
+				hotness = 0;
+			}
+		}
+	}
+
+	@Override
+	public FunctionResult invoke(Object[] args) throws Throwable {
+		// A call from the host starts an invocation, so that the fuel and deadline are not shared with other calls.
+		// Calls from code, including code that is not metered, run in the invocation of the caller.
+		if(Invocation.current() == null) {
+			return new Invocation(engine).invoke(this, args);
+		}
+
+		return invokeInInvocation(args);
+	}
+
+	private FunctionResult invokeInInvocation(Object[] args) throws Throwable {
+		var compiled = this.compiled;
+		if(compiled != null) {
+			if(args.length != code.signature().params().length) {
+				throw new IllegalArgumentException("Argument length did not match the expected parameters");
+			}
+
+			return new FunctionResult.Values((Object[])compiled.invokeExact(args));
+		}
+
+		countHotness();
+		return new StackFrame(module, this, code, args).evaluate();
+	}
+
+	// The initial target of the call site.
+	private @Nullable Object invokeInterpreted(Object[] args) throws Throwable {
+		Object[] results = invokeNow(args);
+		return results.length == 0 ? null : results[0];
+	}
+}
@@ -0,0 +1,11 @@
+package dev.argon.jawawasm.engine;
+
+/**
+ * The fuel of the engine ran out while executing WebAssembly code.
+ */
+public class OutOfFuelException extends Exception {
+	/**
+	 * Create an OutOfFuelException.
+	 */
+	public OutOfFuelException() {}
+}
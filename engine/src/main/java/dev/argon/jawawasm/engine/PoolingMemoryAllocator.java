@@ -0,0 +1,191 @@
+package dev.argon.jawawasm.engine;
+
+import org.jspecify.annotations.Nullable;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A memory allocator that keeps the memory of closed memories to reuse for new ones.
+ * Memory is pooled in size classes that are powers of two.
+ * When a memory is closed, only the pages that it committed are zeroed.
+ * On Linux, reserved pages past the resident size are zeroed by releasing them,
+ * so pooled reservations hold address space but little physical memory.
+ * Each memory only sees its pooled memory through a segment that is invalidated when the memory is closed,
+ * so code that still holds a closed memory cannot access the next memory that uses the same pooled memory.
+ * An allocator can be shared by several engines.
+ */
+public final class PoolingMemoryAllocator implements MemoryAllocator, AutoCloseable {
+	/**
+	 * Create a pooling allocator.
+	 * @param maxPooledBytes The maximum number of bytes kept for reuse. Reservations count their full size.
+	 *                       Memory that is closed when the pool is full is released.
+	 */
+	public PoolingMemoryAllocator(long maxPooledBytes) {
+		this(maxPooledBytes, 0);
+	}
+
+	/**
+	 * Create a pooling allocator.
+	 * @param maxPooledBytes The maximum number of bytes kept for reuse. Reservations count their full size.
+	 *                       Memory that is closed when the pool is full is released.
+	 * @param keepResidentBytes The number of bytes at the start of each reservation that are zeroed in place rather than released,
+	 *                          so that the next memory does not fault them in again. Rounded down to a multiple of the page size.
+	 */
+	public PoolingMemoryAllocator(long maxPooledBytes, long keepResidentBytes) {
+		if(maxPooledBytes < 0) {
+			throw new IllegalArgumentException("Maximum pooled size must not be negative");
+		}
+		if(keepResidentBytes < 0) {
+			throw new IllegalArgumentException("Resident size must not be negative");
+		}
+		this.maxPooledBytes = maxPooledBytes;
+		this.keepResidentBytes = keepResidentBytes / Util.PAGE_SIZE * Util.PAGE_SIZE;
+	}
+
+	private final long maxPooledBytes;
+	private final long keepResidentBytes;
+	private final AtomicLong pooledBytes = new AtomicLong();
+	private volatile boolean closed = false;
+
+	// Unused slots by size class.
+	private final Map<Long, Queue<Slot>> allocations = new ConcurrentHashMap<>();
+	private final Map<Long, Queue<Slot>> reservations = new ConcurrentHashMap<>();
+
+	private static final class Slot {
+		Slot(Arena arena, MemorySegment segment, @Nullable MemoryReservation reservation) {
+			this.arena = arena;
+			this.segment = segment;
+			this.reservation = reservation;
+		}
+
+		// Owns the pooled memory, and is only closed when the slot is released.
+		final Arena arena;
+		final MemorySegment segment;
+
+		// Null if the slot is an allocation.
+		final @Nullable MemoryReservation reservation;
+
+		// The end of the pages that the current memory could have written.
+		volatile long dirtyBytes = 0;
+	}
+
+	// Records the pages that are committed so that only those are zeroed when the memory is closed.
+	private record Lease(Slot slot, MemorySegment segment) implements MemoryReservation {
+		@Override
+		public boolean commit(long offset, long bytes) {
+			if(!slot.reservation.commit(offset, bytes)) {
+				return false;
+			}
+
+			slot.dirtyBytes = Math.max(slot.dirtyBytes, offset + bytes);
+			return true;
+		}
+	}
+
+	@Override
+	public MemorySegment allocate(long bytes, Arena arena) {
+		long size = sizeClass(bytes);
+		var slot = take(allocations, size);
+		if(slot == null) {
+			var slotArena = Arena.ofShared();
+			slot = new Slot(slotArena, slotArena.allocate(size), null);
+		}
+
+		slot.dirtyBytes = bytes;
+		return lend(allocations, slot, bytes, arena);
+	}
+
+	@Override
+	public @Nullable MemoryReservation reserve(long bytes, Arena arena) {
+		long size = sizeClass(bytes);
+		var slot = take(reservations, size);
+		if(slot == null) {
+			var slotArena = Arena.ofShared();
+			var reservation = VirtualMemory.reserve(size, slotArena);
+			if(reservation == null) {
+				slotArena.close();
+				return null;
+			}
+			slot = new Slot(slotArena, reservation.segment(), reservation);
+		}
+
+		return new Lease(slot, lend(reservations, slot, bytes, arena));
+	}
+
+	/**
+	 * Releases the pooled memory.
+	 * Memory that is in use is released when it is closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		drain(allocations);
+		drain(reservations);
+	}
+
+	private static long sizeClass(long bytes) {
+		return bytes <= Util.PAGE_SIZE ? Util.PAGE_SIZE : Long.highestOneBit(bytes - 1) << 1;
+	}
+
+	private @Nullable Slot take(Map<Long, Queue<Slot>> pool, long size) {
+		var queue = pool.get(size);
+		var slot = queue != null ? queue.poll() : null;
+		if(slot != null) {
+			pooledBytes.addAndGet(-size);
+		}
+		return slot;
+	}
+
+	// The memory sees the slot through a segment that belongs to its own arena, and the slot is returned when that arena is closed.
+	private MemorySegment lend(Map<Long, Queue<Slot>> pool, Slot slot, long bytes, Arena arena) {
+		return slot.segment.reinterpret(bytes, arena, segment -> recycle(pool, slot));
+	}
+
+	private void recycle(Map<Long, Queue<Slot>> pool, Slot slot) {
+		long size = slot.segment.byteSize();
+		if(closed) {
+			slot.arena.close();
+			return;
+		}
+
+		if(pooledBytes.addAndGet(size) > maxPooledBytes) {
+			pooledBytes.addAndGet(-size);
+			slot.arena.close();
+			return;
+		}
+
+		// Pages past the ones that were committed have never been written.
+		if(slot.reservation != null) {
+			long resident = Math.min(slot.dirtyBytes, keepResidentBytes);
+			slot.segment.asSlice(0, resident).fill((byte)0);
+			VirtualMemory.discard(slot.segment.asSlice(resident), slot.dirtyBytes - resident);
+		}
+		else {
+			slot.segment.asSlice(0, slot.dirtyBytes).fill((byte)0);
+		}
+		slot.dirtyBytes = 0;
+
+		pool.computeIfAbsent(size, key -> new ConcurrentLinkedQueue<>()).add(slot);
+
+		// The allocator may have been closed while the slot was being zeroed.
+		if(closed) {
+			drain(pool);
+		}
+	}
+
+	private void drain(Map<Long, Queue<Slot>> pool) {
+		for(var entry : pool.entrySet()) {
+			Slot slot;
+			while((slot = entry.getValue().poll()) != null) {
+				pooledBytes.addAndGet(-entry.getKey());
+				slot.arena.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package dev.argon.jawawasm.engine;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many invocations on a fixed number of threads.
+ * Invocations are stepped in turn from a first-in first-out run queue.
+ * Each step runs until the function returns a FunctionResult.Delay, which puts the invocation at the back of the queue.
+ * Use Engine.setReductionLimit so that long-running functions yield regularly.
+ */
+public final class Scheduler implements AutoCloseable {
+	/**
+	 * Create a scheduler.
+	 * @param threads The number of threads that run invocations.
+	 */
+	public Scheduler(int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("Thread count must be positive");
+		}
+		this.threads = threads;
+		pool = new ForkJoinPool(threads);
+	}
+
+	private final int threads;
+	private final ForkJoinPool pool;
+	private final Queue<Task> runQueue = new ConcurrentLinkedQueue<>();
+
+	// The number of threads taking invocations from the run queue.
+	private final AtomicInteger workers = new AtomicInteger();
+
+	// Invocations that have not completed, which are cancelled when the scheduler is closed.
+	private final Set<Task> pending = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed = false;
+
+	private final class Task {
+		Task(FunctionResult.Delay next) {
+			this.next = next;
+		}
+
+		private FunctionResult.Delay next;
+		private final CompletableFuture<Object[]> result = new CompletableFuture<>();
+
+		void step() {
+			// The future may have been cancelled while the invocation was queued.
+			if(result.isDone()) {
+				pending.remove(this);
+				return;
+			}
+
+			try {
+				switch(next.step()) {
+					case FunctionResult.Values values -> complete(values.values());
+					case FunctionResult.Delay delay -> {
+						next = delay;
+						schedule(this);
+					}
+				}
+			}
+			catch(Throwable ex) {
+				result.completeExceptionally(ex);
+				pending.remove(this);
+			}
+		}
+
+		private void complete(Object[] values) {
+			result.complete(values);
+			pending.remove(this);
+		}
+
+		void cancel() {
+			result.cancel(false);
+			pending.remove(this);
+		}
+	}
+
+	/**
+	 * Invoke a function.
+	 * @param function The function.
+	 * @param args The function arguments.
+	 * @return The return values, which complete exceptionally if an error occurs, or with a CancellationException if the scheduler is closed first.
+	 */
+	public CompletableFuture<Object[]> submit(WasmFunction function, Object[] args) {
+		var task = new Task(() -> function.invoke(args));
+		pending.add(task);
+
+		// Checked after adding, so that either close sees the task or the task sees the scheduler closed.
+		if(closed) {
+			task.cancel();
+		}
+		else {
+			schedule(task);
+		}
+		return task.result;
+	}
+
+	private void schedule(Task task) {
+		runQueue.add(task);
+		if(tryAddWorker()) {
+			try {
+				pool.execute(this::work);
+			}
+			catch(RejectedExecutionException ex) {
+				// The scheduler was closed, which cancels the task.
+				workers.decrementAndGet();
+				task.cancel();
+			}
+		}
+	}
+
+	private boolean tryAddWorker() {
+		while(true) {
+			int n = workers.get();
+			if(n >= threads) {
+				return false;
+			}
+			if(workers.compareAndSet(n, n + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void work() {
+		while(!closed) {
+			var task = runQueue.poll();
+			if(task == null) {
+				workers.decrementAndGet();
+
+				// An invocation may have been added after the poll by a thread that saw this worker as running.
+				if(runQueue.isEmpty() || !tryAddWorker()) {
+					return;
+				}
+				continue;
+			}
+
+			task.step();
+		}
+		workers.decrementAndGet();
+	}
+
+	/**
+	 * Stops the threads of the scheduler.
+	 * The futures of invocations that have not completed are cancelled.
+	 * An invocation that is running when the scheduler is closed is cancelled without waiting for its current step to return.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		pool.shutdownNow();
+		for(var task : pending) {
+			task.cancel();
+		}
+		runQueue.clear();
+	}
+}
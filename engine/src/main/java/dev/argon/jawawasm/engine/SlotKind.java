@@ -0,0 +1,43 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.*;
+
+/**
+ * Describes how a value is stored in the slots of a StackFrame.
+ * Numeric values are stored as raw bits in the long slots, other values in the object slots.
+ */
+final class SlotKind {
+	private SlotKind() {}
+
+	public static final int I32 = 0;
+	public static final int I64 = 1;
+	public static final int F32 = 2;
+	public static final int F64 = 3;
+	public static final int REF = 4;
+	public static final int V128 = 5;
+
+	public static int of(ValType t) {
+		return switch(t) {
+			case NumType numType -> switch(numType) {
+				case I32 -> I32;
+				case I64 -> I64;
+				case F32 -> F32;
+				case F64 -> F64;
+			};
+			case RefType refType -> REF;
+			case VecType vecType -> V128;
+		};
+	}
+
+	public static int[] of(ResultType t) {
+		int[] kinds = new int[t.types().size()];
+		for(int i = 0; i < kinds.length; ++i) {
+			kinds[i] = of(t.types().get(i));
+		}
+		return kinds;
+	}
+
+	public static boolean isObject(int kind) {
+		return kind >= REF;
+	}
+}
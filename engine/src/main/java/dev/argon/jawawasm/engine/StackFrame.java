@@ -2,613 +2,1153 @@ package dev.argon.jawawasm.engine;
 
 import dev.argon.jawawasm.format.data.V128;
 import dev.argon.jawawasm.format.instructions.*;
-import dev.argon.jawawasm.format.modules.Func;
-import dev.argon.jawawasm.format.modules.LabelIdx;
-import dev.argon.jawawasm.format.modules.MemIdx;
-import dev.argon.jawawasm.format.types.FuncType;
-import dev.argon.jawawasm.format.types.ResultType;
+import org.jspecify.annotations.Nullable;
 
-import java.math.BigDecimal;
-import java.util.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
 
+/**
+ * Interprets a call to a function.
+ * Calls to other interpreted functions push a frame onto a stack owned by this object instead of recursing on the Java stack.
+ */
 class StackFrame {
 
-	public StackFrame(InstantiatedModule module, Func func, Object[] args) {
+	public StackFrame(InstantiatedModule module, @Nullable ModuleFunction function, FlatCode code, Object[] args) {
 		this.module = module;
-		block = func.body().body();
-		topBlockType = module.getType(func.type());
-		blockType = topBlockType;
-
-		if(args.length != topBlockType.args().types().size()) {
+		this.function = function;
+		flatCode = code;
+		this.code = code.code();
+		constants = code.constants();
+		signature = code.signature();
+		maxCallDepth = module.getMaxCallDepth();
+		reductions = module.getReductionLimit();
+
+		int[] params = signature.params();
+		if(args.length != params.length) {
 			throw new IllegalArgumentException("Argument length did not match the expected parameters");
 		}
 
-		locals = new ArrayList<>(args.length + func.locals().size());
-		locals.addAll(Arrays.asList(args));
-		for(var local : func.locals()) {
-			locals.add(Defaults.defaultValue(local));
+		int[] locals = code.locals();
+		slots = new long[locals.length + code.maxStackHeight()];
+		refs = new Object[slots.length];
+
+		for(int i = 0; i < params.length; ++i) {
+			store(params[i], i, args[i]);
 		}
+
+		initLocals(locals, params.length);
+		sp = locals.length;
 	}
 
-	public StackFrame(InstantiatedModule module, List<? extends Instr> block, FuncType blockType, Object[] localValues, Object[] initStack) {
-		this.module = module;
-		this.block = block;
-		topBlockType = blockType;
-		this.blockType = topBlockType;
-		locals = new ArrayList<>(List.of(localValues));
-		pushAll(initStack);
+	// The state of the current frame.
+	private InstantiatedModule module;
+	private @Nullable ModuleFunction function;
+	private FlatCode flatCode;
+	private int[] code;
+	private Object[] constants;
+	private CallSignature signature;
+	private int pc = 0;
+	private int fp = 0;
+
+	// The current backing memory of memory 0.
+	// It is replaced when the memory grows, so it is bound again after anything that can grow it.
+	private @Nullable WasmMemoryNoResize memory;
+
+	// The locals and operand stacks of all frames.
+	// Numeric values are stored as raw bits in slots, references and vectors are stored in refs.
+	// The arguments of a call become the first locals of the callee without being copied.
+	private long[] slots;
+	private Object[] refs;
+	private int sp;
+
+	// The state of the suspended callers, indexed by depth.
+	private final int maxCallDepth;
+	private int depth = 0;
+	private InstantiatedModule[] callerModules = new InstantiatedModule[0];
+	private @Nullable ModuleFunction[] callerFunctions = new ModuleFunction[0];
+	private FlatCode[] callerCode = new FlatCode[0];
+	private int[] callerPcs = new int[0];
+	private int[] callerFps = new int[0];
+
+	// The reductions left before the invocation yields.
+	private int reductions;
+
+	// The invocation that the frames run in, looked up on first use.
+	private @Nullable Invocation invocation;
+
+	private void push(int value) {
+		slots[sp++] = value;
+	}
+
+	private void push(long value) {
+		slots[sp++] = value;
+	}
+
+	private void push(float value) {
+		slots[sp++] = Float.floatToRawIntBits(value);
+	}
+
+	private void push(double value) {
+		slots[sp++] = Double.doubleToRawLongBits(value);
+	}
+
+	private void push(V128 value) {
+		refs[sp++] = value;
+	}
+
+	private void pushRef(Object value) {
+		refs[sp++] = value;
+	}
+
+	private int popI32() {
+		return (int)slots[--sp];
 	}
 
-	private final InstantiatedModule module;
-	private final FuncType topBlockType;
-	private List<? extends Instr> block;
-	private FuncType blockType;
-	private int ip = 0;
-	private final List<Object> locals;
-	private final ArrayList<Object> stack = new ArrayList<>();
-	
-	private void push(Object value) {
-		stack.add(value);
+	private long popI64() {
+		return slots[--sp];
 	}
-	
-	private Object pop() {
-		Object value = stack.get(stack.size() - 1);
-		stack.remove(stack.size() - 1);
+
+	private float popF32() {
+		return Float.intBitsToFloat((int)slots[--sp]);
+	}
+
+	private double popF64() {
+		return Double.longBitsToDouble(slots[--sp]);
+	}
+
+	private V128 popV128() {
+		var value = (V128)refs[--sp];
+		refs[sp] = null;
 		return value;
 	}
 
-	private Object peek() {
-		return stack.get(stack.size() - 1);
+	private Object popRef() {
+		Object value = refs[--sp];
+		refs[sp] = null;
+		return value;
 	}
 
-	private Object[] getTopValues(int n) {
-		Object[] values = new Object[n];
-		for(int i = values.length - 1; i >= 0; --i) {
-			values[i] = pop();
-		}
-		return values;
+	// References are cleared when their slots are popped, so that the stack does not keep them from being collected.
+	// Every slot at or above sp has a null reference, so numeric values can be popped without clearing it.
+	private void clearRefs(int from, int to) {
+		Arrays.fill(refs, from, to, null);
 	}
 
-	private void pushAll(Object[] values) {
-		for(var value : values) {
-			push(value);
-		}
+	// Copies a slot without regard to the type of the value.
+	private void copySlot(int from, int to) {
+		slots[to] = slots[from];
+		refs[to] = refs[from];
 	}
 
-	public FunctionResult evaluate() throws Throwable {
-		while(true) {
-			for(; ip < block.size(); ++ip) {
-				FunctionResult result = null;
+	private Object load(int kind, int slot) {
+		return switch(kind) {
+			case SlotKind.I32 -> (int)slots[slot];
+			case SlotKind.I64 -> slots[slot];
+			case SlotKind.F32 -> Float.intBitsToFloat((int)slots[slot]);
+			case SlotKind.F64 -> Double.longBitsToDouble(slots[slot]);
+			default -> refs[slot];
+		};
+	}
 
-				switch(block.get(ip)) {
-					case NumericInstr numInstr -> evaluateNumInstr(numInstr);
-					case VectorInstr vectorInstr -> evaluateVectorInstr(vectorInstr);
-					case ReferenceInstr referenceInstr -> evaluateReferenceInstr(referenceInstr);
-					case ParametricInstr parametricInstr -> evaluateParametricInstruction(parametricInstr);
-					case VariableInstr variableInstr -> evaluateVariableInstruction(variableInstr);
-					case TableInstr tableInstr -> evaluateTableInstruction(tableInstr);
-					case MemoryInstr memoryInstr -> evaluateMemoryInstruction(memoryInstr);
-					case ControlInstr controlInstr -> result = evaluateControlInstruction(controlInstr);
-				}
+	private void store(int kind, int slot, Object value) {
+		switch(kind) {
+			case SlotKind.I32 -> slots[slot] = (int)value;
+			case SlotKind.I64 -> slots[slot] = (long)value;
+			case SlotKind.F32 -> slots[slot] = Float.floatToRawIntBits((float)value);
+			case SlotKind.F64 -> slots[slot] = Double.doubleToRawLongBits((double)value);
+			default -> refs[slot] = value;
+		}
+	}
 
-				if(result != null) {
-					return result;
-				}
-			}
+	private Object[] popValues(int[] kinds) {
+		sp -= kinds.length;
+		Object[] values = new Object[kinds.length];
+		for(int i = 0; i < kinds.length; ++i) {
+			values[i] = load(kinds[i], sp + i);
+		}
+		clearRefs(sp, sp + kinds.length);
+		return values;
+	}
 
-			Object[] values = getTopValues(blockType.results().types().size());
+	private void pushValues(int[] kinds, Object[] values) {
+		for(int i = 0; i < kinds.length; ++i) {
+			store(kinds[i], sp++, values[i]);
+		}
+	}
 
-			if(stack.isEmpty()) {
-				return new FunctionResult.Values(values);
-			}
+	private long immediateLong() {
+		long low = Integer.toUnsignedLong(code[pc++]);
+		long high = code[pc++];
+		return (high << 32) | low;
+	}
+
+	private WasmMemoryNoResize memory() {
+		return memory;
+	}
 
-			var label = (Label)pop();
-			block = label.block;
-			blockType = label.outerBlockType;
-			ip = label.endIndex;
-			pushAll(values);
+	private Invocation invocation() {
+		var invocation = this.invocation;
+		if(invocation == null) {
+			invocation = Invocation.required();
+			this.invocation = invocation;
 		}
+		return invocation;
 	}
 
-	private record Label(List<? extends Instr> block, FuncType outerBlockType, ResultType resultType, int branchIndex, int endIndex) {
-		@Override
-		public String toString() {
-			return "Label[outerBlockType=" + outerBlockType + ", resultType=" + resultType + ", branchIndex=" + branchIndex + ", endIndex=" + endIndex + "]";
+	// The frame can be resumed by evaluating it again, since pc is past the EPOCH instruction.
+	private FunctionResult interrupt() throws EpochDeadlineException {
+		long interval = module.getEpochYieldInterval();
+		if(interval == 0) {
+			throw new EpochDeadlineException();
 		}
+
+		invocation().extendEpochDeadline(interval);
+		return (FunctionResult.Delay)this::evaluate;
 	}
 
-	private void evaluateNumInstr(NumericInstr instr) {
-		switch(instr) {
-			case NumericInstr.I32_Const(var value) -> push(value);
-			case NumericInstr.I64_Const(var value) -> push(value);
-			case NumericInstr.F32_Const(var value) -> push(value);
-			case NumericInstr.F64_Const(var value) -> push(value);
+	// Must be called whenever the module changes or the memory may have grown.
+	private void bindMemory() {
+		memory = module.getMemoryBuffer();
+	}
 
-			case NumericInstr.Inn_IUnOp innIUnOp -> {
-				switch(innIUnOp.size()) {
-					case _32 -> {
-						int a = (int)pop();
+	private int memoryAddress() {
+		int offset = code[pc++];
+		int i = popI32();
+		return Util.calculateMemoryAddress(i, offset);
+	}
 
-						int result = switch(innIUnOp.op()) {
-							case CLZ -> Integer.numberOfLeadingZeros(a);
-							case CTZ -> Integer.numberOfTrailingZeros(a);
-							case POPCNT -> Integer.bitCount(a);
-						};
-						push(result);
+	public FunctionResult evaluate() throws Throwable {
+		// The memory may have grown or been replaced while the frame was suspended.
+		bindMemory();
+		int[] code = this.code;
+		while(true) {
+			switch(code[pc++]) {
+				case Opcode.UNREACHABLE -> throw new UnreachableException();
+				case Opcode.IF -> {
+					int value = popI32();
+					if(value == 0) {
+						pc = code[pc];
 					}
-					case _64 -> {
-						long a = (long)pop();
-
-						long result = switch(innIUnOp.op()) {
-							case CLZ -> Long.numberOfLeadingZeros(a);
-							case CTZ -> Long.numberOfTrailingZeros(a);
-							case POPCNT -> Long.bitCount(a);
-						};
-						push(result);
+					else {
+						++pc;
 					}
 				}
-			}
-
-			case NumericInstr.Fnn_FUnOp fnnFUnOp -> {
-				switch(fnnFUnOp.size()) {
-					case _32 -> {
-						float a = (float)pop();
-
-						float result = switch(fnnFUnOp.op()) {
-							case ABS -> Math.abs(a);
-							case NEG -> -a;
-							case SQRT -> (float)Math.sqrt(a);
-							case CEIL -> Util.ceilF32(a);
-							case FLOOR -> Util.floorF32(a);
-							case TRUNC -> Util.truncF32(a);
-							case NEAREST -> Util.nearestF32(a);
-						};
-						push(result);
+				case Opcode.JUMP -> pc = code[pc];
+				case Opcode.FUEL -> invocation().consumeFuel(code[pc++]);
+				case Opcode.EPOCH -> {
+					if(invocation().reachedEpochDeadline()) {
+						return interrupt();
 					}
-					case _64 -> {
-						double a = (double)pop();
-
-						double result = switch(fnnFUnOp.op()) {
-							case ABS -> Math.abs(a);
-							case NEG -> -a;
-							case SQRT -> Math.sqrt(a);
-							case CEIL -> Util.ceilF64(a);
-							case FLOOR -> Util.floorF64(a);
-							case TRUNC -> Util.truncF64(a);
-							case NEAREST -> Util.nearestF64(a);
-						};
-						push(result);
+				}
+				case Opcode.REDUCE -> {
+					if(--reductions <= 0) {
+						reductions = module.getReductionLimit();
+						return (FunctionResult.Delay)this::evaluate;
 					}
 				}
-			}
-
-			case NumericInstr.Inn_IBinOp iBinOpInstr -> {
-				switch(iBinOpInstr.size()) {
-					case _32 -> {
-						int b = (int)pop();
-						int a = (int)pop();
-
-						int result = switch(iBinOpInstr.op()) {
-							case ADD -> a + b;
-							case SUB -> a - b;
-							case MUL -> a * b;
-							case DIV_U -> Integer.divideUnsigned(a, b);
-							case DIV_S -> {
-								if(a == Integer.MIN_VALUE && b == -1) {
-									throw new ArithmeticException();
-								}
-								yield a / b;
+				case Opcode.BR -> branch(pc);
+				case Opcode.BR_IF -> {
+					int value = popI32();
+					if(value != 0) {
+						if(code[pc] < 0) {
+							var result = returnValues();
+							if(result != null) {
+								return result;
 							}
-							case REM_U -> Integer.remainderUnsigned(a, b);
-							case REM_S -> a % b;
-							case AND -> a & b;
-							case OR -> a | b;
-							case XOR -> a ^ b;
-							case SHL -> a << b;
-							case SHR_U -> a >>> b;
-							case SHR_S -> a >> b;
-							case ROTL -> Integer.rotateLeft(a, b);
-							case ROTR -> Integer.rotateRight(a, b);
-						};
-						push(result);
+							code = this.code;
+						}
+						else {
+							branch(pc);
+						}
 					}
-					case _64 -> {
-						long b = (long)pop();
-						long a = (long)pop();
-
-						long result = switch(iBinOpInstr.op()) {
-							case ADD -> a + b;
-							case SUB -> a - b;
-							case MUL -> a * b;
-							case DIV_U -> Long.divideUnsigned(a, b);
-							case DIV_S -> {
-								if(a == Long.MIN_VALUE && b == -1) {
-									throw new ArithmeticException();
-								}
-								yield a / b;
-							}
-							case REM_U -> Long.remainderUnsigned(a, b);
-							case REM_S -> a % b;
-							case AND -> a & b;
-							case OR -> a | b;
-							case XOR -> a ^ b;
-							case SHL -> a << b;
-							case SHR_U -> a >>> b;
-							case SHR_S -> a >> b;
-							case ROTL -> Long.rotateLeft(a, (int)b);
-							case ROTR -> Long.rotateRight(a, (int)b);
-						};
-						push(result);
+					else {
+						pc += 3;
 					}
 				}
-			}
-			
-			case NumericInstr.Fnn_FBinOp fnnFBinOp -> {
-				switch(fnnFBinOp.size()) {
-					case _32 -> {
-						float b = (float)pop();
-						float a = (float)pop();
-
-						float result = switch(fnnFBinOp.op()) {
-							case ADD -> a + b;
-							case SUB -> a - b;
-							case MUL -> a * b;
-							case DIV -> a / b;
-							case MIN -> Util.minF32(a, b);
-							case MAX -> Util.maxF32(a, b);
-							case COPYSIGN -> Math.copySign(a, b);
-						};
-						push(result);
+				case Opcode.BR_TABLE -> {
+					int count = code[pc++];
+					int value = popI32();
+					int entry = pc + 3 * (Integer.compareUnsigned(value, count) < 0 ? value : count);
+					if(code[entry] < 0) {
+						var result = returnValues();
+						if(result != null) {
+							return result;
+						}
+						code = this.code;
 					}
-					case _64 -> {
-						double b = (double)pop();
-						double a = (double)pop();
-
-						double result = switch(fnnFBinOp.op()) {
-							case ADD -> a + b;
-							case SUB -> a - b;
-							case MUL -> a * b;
-							case DIV -> a / b;
-							case MIN -> Util.minF64(a, b);
-							case MAX -> Util.maxF64(a, b);
-							case COPYSIGN -> Math.copySign(a, b);
-						};
-						push(result);
+					else {
+						branch(entry);
 					}
 				}
-			}
-
-			case NumericInstr.Inn_ITestOp innITestOp -> {
-				switch(innITestOp.size()) {
-					case _32 -> {
-						int a = (int)pop();
-
-						boolean result = switch(innITestOp.op()) {
-							case EQZ -> a == 0;
-						};
-						push(result ? 1 : 0);
+				case Opcode.RETURN -> {
+					var result = returnValues();
+					if(result != null) {
+						return result;
 					}
-					case _64 -> {
-						long a = (long)pop();
-
-						boolean result = switch(innITestOp.op()) {
-							case EQZ -> a == 0;
-						};
-						push(result ? 1 : 0);
+					code = this.code;
+				}
+				case Opcode.CALL -> {
+					var func = module.getFunction(code[pc++]);
+					var callSignature = (CallSignature)constants[code[pc++]];
+					if(func instanceof ModuleFunction moduleFunction) {
+						var entry = moduleFunction.slotsEntry();
+						if(entry == null) {
+							call(moduleFunction);
+							code = this.code;
+						}
+						else {
+							callCompiled(entry, callSignature);
+						}
+					}
+					else {
+						callExternal(func, callSignature);
 					}
 				}
-			}
-			
-			case NumericInstr.Inn_IRelOp innIRelOp -> {
-				switch(innIRelOp.size()) {
-					case _32 -> {
-						int b = (int)pop();
-						int a = (int)pop();
-
-						boolean result = switch(innIRelOp.op()) {
-							case EQ -> a == b;
-							case NE -> a != b;
-							case LT_U -> Integer.compareUnsigned(a, b) < 0;
-							case LT_S -> a < b;
-							case GT_U -> Integer.compareUnsigned(a, b) > 0;
-							case GT_S -> a > b;
-							case LE_U -> Integer.compareUnsigned(a, b) <= 0;
-							case LE_S -> a <= b;
-							case GE_U -> Integer.compareUnsigned(a, b) >= 0;
-							case GE_S -> a >= b;
-						};
-						push(result ? 1 : 0);
+				case Opcode.CALL_INDIRECT -> {
+					var table = module.getTable(code[pc++]);
+					var cache = (IndirectCallCache)constants[code[pc++]];
+					var callSignature = cache.signature();
+					var func = cache.lookup(table, popI32());
+					if(func instanceof ModuleFunction moduleFunction) {
+						var entry = moduleFunction.slotsEntry();
+						if(entry == null) {
+							call(moduleFunction);
+							code = this.code;
+						}
+						else {
+							callCompiled(entry, callSignature);
+						}
 					}
-					case _64 -> {
-						long b = (long)pop();
-						long a = (long)pop();
-
-						boolean result = switch(innIRelOp.op()) {
-							case EQ -> a == b;
-							case NE -> a != b;
-							case LT_U -> Long.compareUnsigned(a, b) < 0;
-							case LT_S -> a < b;
-							case GT_U -> Long.compareUnsigned(a, b) > 0;
-							case GT_S -> a > b;
-							case LE_U -> Long.compareUnsigned(a, b) <= 0;
-							case LE_S -> a <= b;
-							case GE_U -> Long.compareUnsigned(a, b) >= 0;
-							case GE_S -> a >= b;
-						};
-						push(result ? 1 : 0);
+					else {
+						callExternal(func, callSignature);
 					}
 				}
-			}
+				case Opcode.RETURN_CALL -> {
+					var func = module.getFunction(code[pc++]);
+					var callSignature = (CallSignature)constants[code[pc++]];
+					var result = returnCall(func, callSignature);
+					if(result != null) {
+						return result;
+					}
+					code = this.code;
+				}
+				case Opcode.RETURN_CALL_INDIRECT -> {
+					var table = module.getTable(code[pc++]);
+					var cache = (IndirectCallCache)constants[code[pc++]];
+					var callSignature = cache.signature();
+					var func = cache.lookup(table, popI32());
+					var result = returnCall(func, callSignature);
+					if(result != null) {
+						return result;
+					}
+					code = this.code;
+				}
 
-			case NumericInstr.Fnn_FRelOp fnnFRelOp -> {
-				switch(fnnFRelOp.size()) {
-					case _32 -> {
-						float b = (float)pop();
-						float a = (float)pop();
-
-						boolean result = switch(fnnFRelOp.op()) {
-							case EQ -> a == b;
-							case NE -> a != b;
-							case LT -> a < b;
-							case GT -> a > b;
-							case LE -> a <= b;
-							case GE -> a >= b;
-						};
-						push(result ? 1 : 0);
-					}
-					case _64 -> {
-						double b = (double)pop();
-						double a = (double)pop();
-
-						boolean result = switch(fnnFRelOp.op()) {
-							case EQ -> a == b;
-							case NE -> a != b;
-							case LT -> a < b;
-							case GT -> a > b;
-							case LE -> a <= b;
-							case GE -> a >= b;
-						};
-						push(result ? 1 : 0);
+				case Opcode.DROP -> refs[--sp] = null;
+				case Opcode.SELECT -> {
+					int c = popI32();
+					sp -= 2;
+					if(c == 0) {
+						copySlot(sp + 1, sp);
 					}
+					++sp;
+					refs[sp] = null;
 				}
-			}
 
-			case NumericInstr.Inn_Extend8_S innExtend8S -> {
-				switch(innExtend8S.size()) {
-					case _32 -> {
-						int a = (int)pop();
-						push((int)(byte)a);
+				case Opcode.LOCAL_GET -> copySlot(fp + code[pc++], sp++);
+				case Opcode.LOCAL_SET -> {
+					copySlot(--sp, fp + code[pc++]);
+					refs[sp] = null;
+				}
+				case Opcode.LOCAL_TEE -> copySlot(sp - 1, fp + code[pc++]);
+				case Opcode.GLOBAL_GET -> {
+					var global = module.getGlobal(code[pc++]);
+					if(SlotKind.isObject(code[pc++])) {
+						refs[sp++] = global.getRef();
 					}
-					case _64 -> {
-						long a = (long)pop();
-						push((long)(byte)a);
+					else {
+						slots[sp++] = global.getBits();
 					}
 				}
-			}
-
-			case NumericInstr.Inn_Extend16_S innExtend16S -> {
-				switch(innExtend16S.size()) {
-					case _32 -> {
-						int a = (int)pop();
-						int result = (short)a;
-						push((int)(short)a);
+				case Opcode.GLOBAL_SET -> {
+					var global = module.getGlobal(code[pc++]);
+					if(SlotKind.isObject(code[pc++])) {
+						global.setRef(popRef());
 					}
-					case _64 -> {
-						long a = (long)pop();
-						push((long)(short)a);
+					else {
+						global.setBits(slots[--sp]);
 					}
 				}
-			}
 
-			case NumericInstr.I64_Extend32_S() -> {
-				long a = (long)pop();
-				push((long)(int)a);
-			}
+				case Opcode.I32_LOAD -> push(memory().loadI32(memoryAddress()));
+				case Opcode.I64_LOAD -> push(memory().loadI64(memoryAddress()));
+				case Opcode.F32_LOAD -> push(memory().loadF32(memoryAddress()));
+				case Opcode.F64_LOAD -> push(memory().loadF64(memoryAddress()));
+				case Opcode.I32_LOAD8_S -> push((int)memory().loadI8(memoryAddress()));
+				case Opcode.I32_LOAD8_U -> push(Byte.toUnsignedInt(memory().loadI8(memoryAddress())));
+				case Opcode.I32_LOAD16_S -> push((int)memory().loadI16(memoryAddress()));
+				case Opcode.I32_LOAD16_U -> push(Short.toUnsignedInt(memory().loadI16(memoryAddress())));
+				case Opcode.I64_LOAD8_S -> push((long)memory().loadI8(memoryAddress()));
+				case Opcode.I64_LOAD8_U -> push(Byte.toUnsignedLong(memory().loadI8(memoryAddress())));
+				case Opcode.I64_LOAD16_S -> push((long)memory().loadI16(memoryAddress()));
+				case Opcode.I64_LOAD16_U -> push(Short.toUnsignedLong(memory().loadI16(memoryAddress())));
+				case Opcode.I64_LOAD32_S -> push((long)memory().loadI32(memoryAddress()));
+				case Opcode.I64_LOAD32_U -> push(Integer.toUnsignedLong(memory().loadI32(memoryAddress())));
+				case Opcode.I32_STORE -> {
+					int value = popI32();
+					memory().storeI32(memoryAddress(), value);
+				}
+				case Opcode.I64_STORE -> {
+					long value = popI64();
+					memory().storeI64(memoryAddress(), value);
+				}
+				case Opcode.F32_STORE -> {
+					float value = popF32();
+					memory().storeF32(memoryAddress(), value);
+				}
+				case Opcode.F64_STORE -> {
+					double value = popF64();
+					memory().storeF64(memoryAddress(), value);
+				}
+				case Opcode.I32_STORE8 -> {
+					int value = popI32();
+					memory().storeI8(memoryAddress(), (byte)value);
+				}
+				case Opcode.I32_STORE16 -> {
+					int value = popI32();
+					memory().storeI16(memoryAddress(), (short)value);
+				}
+				case Opcode.I64_STORE8 -> {
+					long value = popI64();
+					memory().storeI8(memoryAddress(), (byte)value);
+				}
+				case Opcode.I64_STORE16 -> {
+					long value = popI64();
+					memory().storeI16(memoryAddress(), (short)value);
+				}
+				case Opcode.I64_STORE32 -> {
+					long value = popI64();
+					memory().storeI32(memoryAddress(), (int)value);
+				}
+				case Opcode.MEMORY_SIZE -> push(memory().pageSize());
+				case Opcode.MEMORY_GROW -> {
+					int n = popI32();
+					push(module.getMemory(0).grow(n));
+					bindMemory();
+				}
 
-			case NumericInstr.I32_Wrap_I64() -> {
-				long a = (long)pop();
-				push((int)a);
-			}
+				case Opcode.I32_CONST -> push(code[pc++]);
+				case Opcode.I64_CONST -> push(immediateLong());
+				case Opcode.F32_CONST -> push(Float.intBitsToFloat(code[pc++]));
+				case Opcode.F64_CONST -> push(Double.longBitsToDouble(immediateLong()));
 
-			case NumericInstr.I64_Extend_I32_S() -> {
-				int a = (int)pop();
-				push((long)a);
-			}
+				case Opcode.I32_EQZ -> {
+					int a = popI32();
+					push(a == 0 ? 1 : 0);
+				}
+				case Opcode.I32_EQ -> {
+					int b = popI32();
+					int a = popI32();
+					push(a == b ? 1 : 0);
+				}
+				case Opcode.I32_NE -> {
+					int b = popI32();
+					int a = popI32();
+					push(a != b ? 1 : 0);
+				}
+				case Opcode.I32_LT_S -> {
+					int b = popI32();
+					int a = popI32();
+					push(a < b ? 1 : 0);
+				}
+				case Opcode.I32_LT_U -> {
+					int b = popI32();
+					int a = popI32();
+					push(Integer.compareUnsigned(a, b) < 0 ? 1 : 0);
+				}
+				case Opcode.I32_GT_S -> {
+					int b = popI32();
+					int a = popI32();
+					push(a > b ? 1 : 0);
+				}
+				case Opcode.I32_GT_U -> {
+					int b = popI32();
+					int a = popI32();
+					push(Integer.compareUnsigned(a, b) > 0 ? 1 : 0);
+				}
+				case Opcode.I32_LE_S -> {
+					int b = popI32();
+					int a = popI32();
+					push(a <= b ? 1 : 0);
+				}
+				case Opcode.I32_LE_U -> {
+					int b = popI32();
+					int a = popI32();
+					push(Integer.compareUnsigned(a, b) <= 0 ? 1 : 0);
+				}
+				case Opcode.I32_GE_S -> {
+					int b = popI32();
+					int a = popI32();
+					push(a >= b ? 1 : 0);
+				}
+				case Opcode.I32_GE_U -> {
+					int b = popI32();
+					int a = popI32();
+					push(Integer.compareUnsigned(a, b) >= 0 ? 1 : 0);
+				}
 
-			case NumericInstr.I64_Extend_I32_U() -> {
-				int a = (int)pop();
-				push(Integer.toUnsignedLong(a));
-			}
+				case Opcode.I64_EQZ -> {
+					long a = popI64();
+					push(a == 0 ? 1 : 0);
+				}
+				case Opcode.I64_EQ -> {
+					long b = popI64();
+					long a = popI64();
+					push(a == b ? 1 : 0);
+				}
+				case Opcode.I64_NE -> {
+					long b = popI64();
+					long a = popI64();
+					push(a != b ? 1 : 0);
+				}
+				case Opcode.I64_LT_S -> {
+					long b = popI64();
+					long a = popI64();
+					push(a < b ? 1 : 0);
+				}
+				case Opcode.I64_LT_U -> {
+					long b = popI64();
+					long a = popI64();
+					push(Long.compareUnsigned(a, b) < 0 ? 1 : 0);
+				}
+				case Opcode.I64_GT_S -> {
+					long b = popI64();
+					long a = popI64();
+					push(a > b ? 1 : 0);
+				}
+				case Opcode.I64_GT_U -> {
+					long b = popI64();
+					long a = popI64();
+					push(Long.compareUnsigned(a, b) > 0 ? 1 : 0);
+				}
+				case Opcode.I64_LE_S -> {
+					long b = popI64();
+					long a = popI64();
+					push(a <= b ? 1 : 0);
+				}
+				case Opcode.I64_LE_U -> {
+					long b = popI64();
+					long a = popI64();
+					push(Long.compareUnsigned(a, b) <= 0 ? 1 : 0);
+				}
+				case Opcode.I64_GE_S -> {
+					long b = popI64();
+					long a = popI64();
+					push(a >= b ? 1 : 0);
+				}
+				case Opcode.I64_GE_U -> {
+					long b = popI64();
+					long a = popI64();
+					push(Long.compareUnsigned(a, b) >= 0 ? 1 : 0);
+				}
 
-			case NumericInstr.Inn_Trunc_Fmm_S innTruncFmmS -> {
-				BigDecimal value = switch(innTruncFmmS.floatSize()) {
-					case _32 -> {
-						float a = (float)pop();
-						if(!Float.isFinite(a)) {
-							throw new ArithmeticException();
-						}
+				case Opcode.I32_CLZ -> push(Integer.numberOfLeadingZeros(popI32()));
+				case Opcode.I32_CTZ -> push(Integer.numberOfTrailingZeros(popI32()));
+				case Opcode.I32_POPCNT -> push(Integer.bitCount(popI32()));
+				case Opcode.I32_ADD -> {
+					int b = popI32();
+					int a = popI32();
+					push(a + b);
+				}
+				case Opcode.I32_SUB -> {
+					int b = popI32();
+					int a = popI32();
+					push(a - b);
+				}
+				case Opcode.I32_MUL -> {
+					int b = popI32();
+					int a = popI32();
+					push(a * b);
+				}
+				case Opcode.I32_DIV_S -> {
+					int b = popI32();
+					int a = popI32();
+					push(Util.divideS32(a, b));
+				}
+				case Opcode.I32_DIV_U -> {
+					int b = popI32();
+					int a = popI32();
+					push(Integer.divideUnsigned(a, b));
+				}
+				case Opcode.I32_REM_S -> {
+					int b = popI32();
+					int a = popI32();
+					push(a % b);
+				}
+				case Opcode.I32_REM_U -> {
+					int b = popI32();
+					int a = popI32();
+					push(Integer.remainderUnsigned(a, b));
+				}
+				case Opcode.I32_AND -> {
+					int b = popI32();
+					int a = popI32();
+					push(a & b);
+				}
+				case Opcode.I32_OR -> {
+					int b = popI32();
+					int a = popI32();
+					push(a | b);
+				}
+				case Opcode.I32_XOR -> {
+					int b = popI32();
+					int a = popI32();
+					push(a ^ b);
+				}
+				case Opcode.I32_SHL -> {
+					int b = popI32();
+					int a = popI32();
+					push(a << b);
+				}
+				case Opcode.I32_SHR_S -> {
+					int b = popI32();
+					int a = popI32();
+					push(a >> b);
+				}
+				case Opcode.I32_SHR_U -> {
+					int b = popI32();
+					int a = popI32();
+					push(a >>> b);
+				}
+				case Opcode.I32_ROTL -> {
+					int b = popI32();
+					int a = popI32();
+					push(Integer.rotateLeft(a, b));
+				}
+				case Opcode.I32_ROTR -> {
+					int b = popI32();
+					int a = popI32();
+					push(Integer.rotateRight(a, b));
+				}
 
-						yield new BigDecimal(a);
-					}
-					case _64 -> {
-						double a = (double)pop();
-						if(!Double.isFinite(a)) {
-							throw new ArithmeticException();
-						}
+				case Opcode.I64_CLZ -> push((long)Long.numberOfLeadingZeros(popI64()));
+				case Opcode.I64_CTZ -> push((long)Long.numberOfTrailingZeros(popI64()));
+				case Opcode.I64_POPCNT -> push((long)Long.bitCount(popI64()));
+				case Opcode.I64_ADD -> {
+					long b = popI64();
+					long a = popI64();
+					push(a + b);
+				}
+				case Opcode.I64_SUB -> {
+					long b = popI64();
+					long a = popI64();
+					push(a - b);
+				}
+				case Opcode.I64_MUL -> {
+					long b = popI64();
+					long a = popI64();
+					push(a * b);
+				}
+				case Opcode.I64_DIV_S -> {
+					long b = popI64();
+					long a = popI64();
+					push(Util.divideS64(a, b));
+				}
+				case Opcode.I64_DIV_U -> {
+					long b = popI64();
+					long a = popI64();
+					push(Long.divideUnsigned(a, b));
+				}
+				case Opcode.I64_REM_S -> {
+					long b = popI64();
+					long a = popI64();
+					push(a % b);
+				}
+				case Opcode.I64_REM_U -> {
+					long b = popI64();
+					long a = popI64();
+					push(Long.remainderUnsigned(a, b));
+				}
+				case Opcode.I64_AND -> {
+					long b = popI64();
+					long a = popI64();
+					push(a & b);
+				}
+				case Opcode.I64_OR -> {
+					long b = popI64();
+					long a = popI64();
+					push(a | b);
+				}
+				case Opcode.I64_XOR -> {
+					long b = popI64();
+					long a = popI64();
+					push(a ^ b);
+				}
+				case Opcode.I64_SHL -> {
+					long b = popI64();
+					long a = popI64();
+					push(a << b);
+				}
+				case Opcode.I64_SHR_S -> {
+					long b = popI64();
+					long a = popI64();
+					push(a >> b);
+				}
+				case Opcode.I64_SHR_U -> {
+					long b = popI64();
+					long a = popI64();
+					push(a >>> b);
+				}
+				case Opcode.I64_ROTL -> {
+					long b = popI64();
+					long a = popI64();
+					push(Long.rotateLeft(a, (int)b));
+				}
+				case Opcode.I64_ROTR -> {
+					long b = popI64();
+					long a = popI64();
+					push(Long.rotateRight(a, (int)b));
+				}
 
-						yield new BigDecimal(a);
-					}
-				};
+				case Opcode.I32_WRAP_I64 -> push((int)popI64());
+				case Opcode.I64_EXTEND_I32_S -> push((long)popI32());
+				case Opcode.I64_EXTEND_I32_U -> push(Integer.toUnsignedLong(popI32()));
+				case Opcode.I32_EXTEND8_S -> push((int)(byte)popI32());
+				case Opcode.I32_EXTEND16_S -> push((int)(short)popI32());
+				case Opcode.I64_EXTEND8_S -> push((long)(byte)popI64());
+				case Opcode.I64_EXTEND16_S -> push((long)(short)popI64());
+				case Opcode.I64_EXTEND32_S -> push((long)(int)popI64());
 
-				switch(innTruncFmmS.intSize()) {
-					case _32 -> {
-						if(value.compareTo(new BigDecimal((long)Integer.MIN_VALUE - 1)) <= 0 || value.compareTo(new BigDecimal((long)Integer.MAX_VALUE + 1)) >= 0) {
-							throw new ArithmeticException();
-						}
-						push(value.intValue());
-					}
-					case _64 -> {
-						if(value.compareTo(new BigDecimal(Long.MIN_VALUE).subtract(BigDecimal.ONE)) <= 0 || value.compareTo(new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE)) >= 0) {
-							throw new ArithmeticException();
-						}
-						push(value.longValue());
-					}
-				}
+				case Opcode.REF_NULL -> pushRef(null);
+				case Opcode.REF_IS_NULL -> push(popRef() == null ? 1 : 0);
+				case Opcode.REF_FUNC -> pushRef(module.getFunction(code[pc++]));
+
+				case Opcode.VECTOR -> evaluateVectorInstr((VectorInstr)constants[code[pc++]]);
+				case Opcode.VECTOR_MEMORY -> evaluateVectorMemoryInstr((MemoryInstr)constants[code[pc++]]);
+				case Opcode.ATOMIC -> evaluateAtomicInstr((MemoryInstr)constants[code[pc++]]);
+
+				default -> evaluateSecondaryInstr(code[pc - 1]);
 			}
-			case NumericInstr.Inn_Trunc_Fmm_U innTruncFmmU -> {
-				BigDecimal value = switch(innTruncFmmU.floatSize()) {
-					case _32 -> {
-						float a = (float)pop();
-						if(!Float.isFinite(a) || a <= -1.0f) {
-							throw new ArithmeticException();
-						}
+		}
+	}
 
-						yield new BigDecimal(a);
-					}
-					case _64 -> {
-						double a = (double)pop();
-						if(!Double.isFinite(a) || a <= -1.0) {
-							throw new ArithmeticException();
-						}
+	// Zeroes the locals of the current frame that are not parameters.
+	private void initLocals(int[] locals, int paramCount) {
+		for(int i = paramCount; i < locals.length; ++i) {
+			slots[fp + i] = 0;
+			refs[fp + i] = locals[i] == SlotKind.V128 ? V128.splat8((byte)0) : null;
+		}
+	}
 
-						yield new BigDecimal(a);
-					}
-				};
+	// Calls a function that is not interpreted by this frame.
+	private void callExternal(WasmFunction func, CallSignature callSignature) throws Throwable {
+		var args = popValues(callSignature.params());
+		Object[] results = func.invokeNow(args);
+		pushValues(callSignature.results(), results);
+		bindMemory();
+	}
 
+	// Calls a compiled function with the arguments on top of the stack.
+	private void callCompiled(MethodHandle entry, CallSignature callSignature) throws Throwable {
+		int base = sp - callSignature.params().length;
+		entry.invokeExact(slots, refs, base);
+		int top = sp;
+		sp = base + callSignature.results().length;
+		if(sp < top) {
+			clearRefs(sp, top);
+		}
+		bindMemory();
+	}
 
-				switch(innTruncFmmU.intSize()) {
-					case _32 -> {
-						if(value.compareTo(new BigDecimal(4294967296L)) >= 0) {
-							throw new ArithmeticException();
-						}
-						push(value.intValue());
-					}
-					case _64 -> {
-						if(value.compareTo(new BigDecimal("18446744073709551616")) >= 0) {
-							throw new ArithmeticException();
-						}
-						push(value.longValue());
-					}
-				}
+	// Suspends the current frame and enters an interpreted function.
+	// The arguments on top of the stack become the first locals of the callee.
+	private void call(ModuleFunction callee) throws CallStackExhaustedException {
+		if(depth + 1 >= maxCallDepth) {
+			throw new CallStackExhaustedException();
+		}
+
+		if(depth == callerPcs.length) {
+			int size = Math.max(16, depth * 2);
+			callerModules = Arrays.copyOf(callerModules, size);
+			callerFunctions = Arrays.copyOf(callerFunctions, size);
+			callerCode = Arrays.copyOf(callerCode, size);
+			callerPcs = Arrays.copyOf(callerPcs, size);
+			callerFps = Arrays.copyOf(callerFps, size);
+		}
+
+		callerModules[depth] = module;
+		callerFunctions[depth] = function;
+		callerCode[depth] = flatCode;
+		callerPcs[depth] = pc;
+		callerFps[depth] = fp;
+		++depth;
+
+		callee.countHotness();
+		enter(callee, sp - callee.code().signature().params().length);
+	}
+
+	// Replaces the current frame with a call to another function.
+	// Returns null if execution continues in this object.
+	private @Nullable FunctionResult returnCall(WasmFunction func, CallSignature callSignature) throws Throwable {
+		if(func instanceof ModuleFunction callee) {
+			var entry = callee.slotsEntry();
+			if(entry != null) {
+				callCompiled(entry, callSignature);
+				return returnValues();
 			}
-			case NumericInstr.Inn_Trunc_Sat_Fmm_S innTruncSatFmmS -> {
-				switch(innTruncSatFmmS.floatSize()) {
-					case _32 -> {
-						float a = (float)pop();
 
-						switch(innTruncSatFmmS.intSize()) {
-							case _32 -> push((int)a);
-							case _64 -> push((long)a);
-						}
-					}
-					case _64 -> {
-						double a = (double)pop();
+			int paramCount = callSignature.params().length;
+			int src = sp - paramCount;
+			for(int i = 0; i < paramCount; ++i) {
+				copySlot(src + i, fp + i);
+			}
 
-						switch(innTruncSatFmmS.intSize()) {
-							case _32 -> push((int)a);
-							case _64 -> push((long)a);
-						}
-					}
-				}
+			int top = sp;
+			callee.countHotness();
+			enter(callee, fp);
+			if(sp < top) {
+				clearRefs(sp, top);
 			}
+			return null;
+		}
 
-			case NumericInstr.Inn_Trunc_Sat_Fmm_U innTruncSatFmmU -> {
-				switch(innTruncSatFmmU.floatSize()) {
-					case _32 -> {
-						float a = (float)pop();
+		if(depth == 0) {
+			var args = popValues(callSignature.params());
+			return (FunctionResult.Delay)() -> func.invoke(args);
+		}
 
-						switch(innTruncSatFmmU.intSize()) {
-							case _32 -> push(Util.truncSatF32U32(a));
-							case _64 -> push(Util.truncSatF32U64(a));
-						}
-					}
-					case _64 -> {
-						double a = (double)pop();
+		callExternal(func, callSignature);
+		return returnValues();
+	}
 
-						switch(innTruncSatFmmU.intSize()) {
-							case _32 -> push(Util.truncSatF64U32(a));
-							case _64 -> push(Util.truncSatF64U64(a));
-						}
-					}
-				}
+	private void enter(ModuleFunction callee, int newFp) {
+		var calleeCode = callee.code();
+		int[] locals = calleeCode.locals();
+
+		int required = newFp + locals.length + calleeCode.maxStackHeight();
+		if(required > slots.length) {
+			int size = Math.max(required, slots.length * 2);
+			slots = Arrays.copyOf(slots, size);
+			refs = Arrays.copyOf(refs, size);
+		}
+
+		module = callee.module();
+		function = callee;
+		flatCode = calleeCode;
+		code = calleeCode.code();
+		constants = calleeCode.constants();
+		signature = calleeCode.signature();
+		pc = 0;
+		fp = newFp;
+
+		initLocals(locals, signature.params().length);
+		sp = fp + locals.length;
+		bindMemory();
+	}
+
+	// Returns from the current frame.
+	// Returns null if execution continues in the caller.
+	private @Nullable FunctionResult returnValues() {
+		if(depth == 0) {
+			return new FunctionResult.Values(popValues(signature.results()));
+		}
+
+		int resultCount = signature.results().length;
+		int src = sp - resultCount;
+		for(int i = 0; i < resultCount; ++i) {
+			copySlot(src + i, fp + i);
+		}
+		clearRefs(fp + resultCount, sp);
+		sp = fp + resultCount;
+
+		--depth;
+		module = callerModules[depth];
+		function = callerFunctions[depth];
+		flatCode = callerCode[depth];
+		code = flatCode.code();
+		constants = flatCode.constants();
+		signature = flatCode.signature();
+		pc = callerPcs[depth];
+		fp = callerFps[depth];
+		bindMemory();
+		return null;
+	}
+
+	// Branches using the branch entry at the specified position.
+	private void branch(int entry) {
+		int target = code[entry];
+		int arity = code[entry + 1];
+		int dest = fp + code[entry + 2];
+
+		int src = sp - arity;
+		if(src != dest) {
+			for(int i = 0; i < arity; ++i) {
+				copySlot(src + i, dest + i);
 			}
+		}
+
+		if(dest + arity < sp) {
+			clearRefs(dest + arity, sp);
+		}
+		sp = dest + arity;
+
+		// Loops are the only backward branches.
+		if(target < pc && function != null) {
+			function.countHotness();
+		}
+		pc = target;
+	}
 
-			case NumericInstr.F32_Demote_F64() -> {
-				double a = (double)pop();
-				push((float)a);
+	// Instructions that are less frequently executed.
+	// These are kept out of evaluate to keep it small enough to be compiled by the JVM.
+	private void evaluateSecondaryInstr(int opcode) throws Throwable {
+		switch(opcode) {
+			case Opcode.F32_EQ -> {
+				float b = popF32();
+				float a = popF32();
+				push(a == b ? 1 : 0);
+			}
+			case Opcode.F32_NE -> {
+				float b = popF32();
+				float a = popF32();
+				push(a != b ? 1 : 0);
+			}
+			case Opcode.F32_LT -> {
+				float b = popF32();
+				float a = popF32();
+				push(a < b ? 1 : 0);
+			}
+			case Opcode.F32_GT -> {
+				float b = popF32();
+				float a = popF32();
+				push(a > b ? 1 : 0);
+			}
+			case Opcode.F32_LE -> {
+				float b = popF32();
+				float a = popF32();
+				push(a <= b ? 1 : 0);
+			}
+			case Opcode.F32_GE -> {
+				float b = popF32();
+				float a = popF32();
+				push(a >= b ? 1 : 0);
+			}
+
+			case Opcode.F64_EQ -> {
+				double b = popF64();
+				double a = popF64();
+				push(a == b ? 1 : 0);
+			}
+			case Opcode.F64_NE -> {
+				double b = popF64();
+				double a = popF64();
+				push(a != b ? 1 : 0);
+			}
+			case Opcode.F64_LT -> {
+				double b = popF64();
+				double a = popF64();
+				push(a < b ? 1 : 0);
+			}
+			case Opcode.F64_GT -> {
+				double b = popF64();
+				double a = popF64();
+				push(a > b ? 1 : 0);
+			}
+			case Opcode.F64_LE -> {
+				double b = popF64();
+				double a = popF64();
+				push(a <= b ? 1 : 0);
+			}
+			case Opcode.F64_GE -> {
+				double b = popF64();
+				double a = popF64();
+				push(a >= b ? 1 : 0);
+			}
+
+			case Opcode.F32_ABS -> push(Math.abs(popF32()));
+			case Opcode.F32_NEG -> push(-popF32());
+			case Opcode.F32_CEIL -> push(Util.ceilF32(popF32()));
+			case Opcode.F32_FLOOR -> push(Util.floorF32(popF32()));
+			case Opcode.F32_TRUNC -> push(Util.truncF32(popF32()));
+			case Opcode.F32_NEAREST -> push(Util.nearestF32(popF32()));
+			case Opcode.F32_SQRT -> push((float)Math.sqrt(popF32()));
+			case Opcode.F32_ADD -> {
+				float b = popF32();
+				float a = popF32();
+				push(a + b);
+			}
+			case Opcode.F32_SUB -> {
+				float b = popF32();
+				float a = popF32();
+				push(a - b);
+			}
+			case Opcode.F32_MUL -> {
+				float b = popF32();
+				float a = popF32();
+				push(a * b);
+			}
+			case Opcode.F32_DIV -> {
+				float b = popF32();
+				float a = popF32();
+				push(a / b);
+			}
+			case Opcode.F32_MIN -> {
+				float b = popF32();
+				float a = popF32();
+				push(Util.minF32(a, b));
+			}
+			case Opcode.F32_MAX -> {
+				float b = popF32();
+				float a = popF32();
+				push(Util.maxF32(a, b));
+			}
+			case Opcode.F32_COPYSIGN -> {
+				float b = popF32();
+				float a = popF32();
+				push(Math.copySign(a, b));
+			}
+
+			case Opcode.F64_ABS -> push(Math.abs(popF64()));
+			case Opcode.F64_NEG -> push(-popF64());
+			case Opcode.F64_CEIL -> push(Util.ceilF64(popF64()));
+			case Opcode.F64_FLOOR -> push(Util.floorF64(popF64()));
+			case Opcode.F64_TRUNC -> push(Util.truncF64(popF64()));
+			case Opcode.F64_NEAREST -> push(Util.nearestF64(popF64()));
+			case Opcode.F64_SQRT -> push(Math.sqrt(popF64()));
+			case Opcode.F64_ADD -> {
+				double b = popF64();
+				double a = popF64();
+				push(a + b);
+			}
+			case Opcode.F64_SUB -> {
+				double b = popF64();
+				double a = popF64();
+				push(a - b);
+			}
+			case Opcode.F64_MUL -> {
+				double b = popF64();
+				double a = popF64();
+				push(a * b);
+			}
+			case Opcode.F64_DIV -> {
+				double b = popF64();
+				double a = popF64();
+				push(a / b);
+			}
+			case Opcode.F64_MIN -> {
+				double b = popF64();
+				double a = popF64();
+				push(Util.minF64(a, b));
+			}
+			case Opcode.F64_MAX -> {
+				double b = popF64();
+				double a = popF64();
+				push(Util.maxF64(a, b));
+			}
+			case Opcode.F64_COPYSIGN -> {
+				double b = popF64();
+				double a = popF64();
+				push(Math.copySign(a, b));
+			}
+
+			case Opcode.I32_TRUNC_F32_S -> push(Util.truncF64ToS32(popF32()));
+			case Opcode.I32_TRUNC_F32_U -> push(Util.truncF64ToU32(popF32()));
+			case Opcode.I32_TRUNC_F64_S -> push(Util.truncF64ToS32(popF64()));
+			case Opcode.I32_TRUNC_F64_U -> push(Util.truncF64ToU32(popF64()));
+			case Opcode.I64_TRUNC_F32_S -> push(Util.truncF64ToS64(popF32()));
+			case Opcode.I64_TRUNC_F32_U -> push(Util.truncF64ToU64(popF32()));
+			case Opcode.I64_TRUNC_F64_S -> push(Util.truncF64ToS64(popF64()));
+			case Opcode.I64_TRUNC_F64_U -> push(Util.truncF64ToU64(popF64()));
+			case Opcode.I32_TRUNC_SAT_F32_S -> push((int)popF32());
+			case Opcode.I32_TRUNC_SAT_F32_U -> push(Util.truncSatF32U32(popF32()));
+			case Opcode.I32_TRUNC_SAT_F64_S -> push((int)popF64());
+			case Opcode.I32_TRUNC_SAT_F64_U -> push(Util.truncSatF64U32(popF64()));
+			case Opcode.I64_TRUNC_SAT_F32_S -> push((long)popF32());
+			case Opcode.I64_TRUNC_SAT_F32_U -> push(Util.truncSatF32U64(popF32()));
+			case Opcode.I64_TRUNC_SAT_F64_S -> push((long)popF64());
+			case Opcode.I64_TRUNC_SAT_F64_U -> push(Util.truncSatF64U64(popF64()));
+
+			case Opcode.F32_CONVERT_I32_S -> push((float)popI32());
+			case Opcode.F32_CONVERT_I32_U -> push((float)Integer.toUnsignedLong(popI32()));
+			case Opcode.F32_CONVERT_I64_S -> push((float)popI64());
+			case Opcode.F32_CONVERT_I64_U -> push(Util.u64ToF32(popI64()));
+			case Opcode.F32_DEMOTE_F64 -> push((float)popF64());
+			case Opcode.F64_CONVERT_I32_S -> push((double)popI32());
+			case Opcode.F64_CONVERT_I32_U -> push((double)Integer.toUnsignedLong(popI32()));
+			case Opcode.F64_CONVERT_I64_S -> push((double)popI64());
+			case Opcode.F64_CONVERT_I64_U -> push(Util.u64ToF64(popI64()));
+			case Opcode.F64_PROMOTE_F32 -> push((double)popF32());
+			case Opcode.I32_REINTERPRET_F32 -> push(Float.floatToRawIntBits(popF32()));
+			case Opcode.I64_REINTERPRET_F64 -> push(Double.doubleToRawLongBits(popF64()));
+			case Opcode.F32_REINTERPRET_I32 -> push(Float.intBitsToFloat(popI32()));
+			case Opcode.F64_REINTERPRET_I64 -> push(Double.longBitsToDouble(popI64()));
+
+			case Opcode.TABLE_GET -> {
+				var table = module.getTable(code[pc++]);
+				int i = popI32();
+				pushRef(table.get(i));
+			}
+			case Opcode.TABLE_SET -> {
+				var table = module.getTable(code[pc++]);
+				Object val = popRef();
+				int i = popI32();
+				table.set(i, val);
+			}
+			case Opcode.TABLE_SIZE -> push(module.getTable(code[pc++]).size());
+			case Opcode.TABLE_GROW -> {
+				var table = module.getTable(code[pc++]);
+				int n = popI32();
+				Object val = popRef();
+				push(table.grow(n, val));
+			}
+			case Opcode.TABLE_FILL -> {
+				var table = module.getTable(code[pc++]);
+				int n = popI32();
+				Object val = popRef();
+				int i = popI32();
+				WasmTable.fill(n, val, i, table);
 			}
-			case NumericInstr.F64_Promote_F32() -> {
-				float a = (float)pop();
-				push((double)a);
+			case Opcode.TABLE_COPY -> {
+				var tableX = module.getTable(code[pc++]);
+				var tableY = module.getTable(code[pc++]);
+				int n = popI32();
+				int s = popI32();
+				int d = popI32();
+				WasmTable.copy(n, s, d, tableX, tableY);
 			}
-
-			case NumericInstr.Fnn_Convert_Imm_S fnnConvertImmS -> {
-				switch(fnnConvertImmS.floatSize()) {
-					case _32 -> {
-						float result = switch(fnnConvertImmS.intSize()) {
-							case _32 -> (float)(int)pop();
-							case _64 -> (float)(long)pop();
-						};
-						push(result);
-					}
-					case _64 -> {
-						double result = switch(fnnConvertImmS.intSize()) {
-							case _32 -> (double)(int)pop();
-							case _64 -> (double)(long)pop();
-						};
-						push(result);
-					}
-				}
+			case Opcode.TABLE_INIT -> {
+				var table = module.getTable(code[pc++]);
+				var elem = module.getElement(code[pc++]);
+				int n = popI32();
+				int s = popI32();
+				int d = popI32();
+				WasmTable.init(d, s, n, table, elem);
 			}
+			case Opcode.ELEM_DROP -> module.dropElement(code[pc++]);
 
-			case NumericInstr.Fnn_Convert_Imm_U fnnConvertImmU -> {
-				switch(fnnConvertImmU.floatSize()) {
-					case _32 -> {
-						float result = switch(fnnConvertImmU.intSize()) {
-							case _32 -> (float)Integer.toUnsignedLong((int)pop());
-							case _64 -> new BigDecimal(Long.toUnsignedString((long)pop())).floatValue();
-						};
-						push(result);
-					}
-					case _64 -> {
-						double result = switch(fnnConvertImmU.intSize()) {
-							case _32 -> (double)Integer.toUnsignedLong((int)pop());
-							case _64 -> new BigDecimal(Long.toUnsignedString((long)pop())).doubleValue();
-						};
-						push(result);
-					}
-				}
+			case Opcode.MEMORY_FILL -> {
+				int n = popI32();
+				byte val = (byte)popI32();
+				int d = popI32();
+				memory().fill(d, val, n);
 			}
-
-			case NumericInstr.Fnn_Reinterpret_Inn fnnReinterpretInn -> {
-				switch(fnnReinterpretInn.size()) {
-					case _32 -> {
-						int a = (int)pop();
-						float result = Float.intBitsToFloat(a);
-						push(result);
-					}
-					case _64 -> {
-						long a = (long)pop();
-						double result = Double.longBitsToDouble(a);
-						push(result);
-					}
-				}
+			case Opcode.MEMORY_COPY -> {
+				int n = popI32();
+				int s = popI32();
+				int d = popI32();
+				memory().copyWithin(d, s, n);
 			}
-
-			case NumericInstr.Inn_Reinterpret_Fnn innReinterpretFnn -> {
-				switch(innReinterpretFnn.size()) {
-					case _32 -> {
-						float a = (float)pop();
-						int result = Float.floatToRawIntBits(a);
-						push(result);
-					}
-					case _64 -> {
-						double a = (double)pop();
-						long result = Double.doubleToRawLongBits(a);
-						push(result);
-					}
-				}
+			case Opcode.MEMORY_INIT -> {
+				var data = module.getData(code[pc++]);
+				int n = popI32();
+				int s = popI32();
+				int d = popI32();
+				memory().init(d, s, n, data);
 			}
+			case Opcode.DATA_DROP -> module.dropData(code[pc++]);
+
+			default -> throw new IllegalStateException("Unknown opcode: " + opcode);
 		}
 	}
 
@@ -617,7 +1157,7 @@ class StackFrame {
 			case VectorInstr.V128_Const(var value) -> push(value);
 
 			case VectorInstr.VVUnOp vvUnOp -> {
-				V128 a = (V128)pop();
+				V128 a = popV128();
 
 				V128.Unary8Function f = switch(vvUnOp) {
 					case NOT -> b -> (byte)~b;
@@ -631,8 +1171,8 @@ class StackFrame {
 			}
 
 			case VectorInstr.VVBinOp vvBinOp -> {
-				V128 b = (V128)pop();
-				V128 a = (V128)pop();
+				V128 b = popV128();
+				V128 a = popV128();
 
 				V128.Binary8Function f = switch(vvBinOp) {
 					case AND -> (b0, b1) -> (byte)(b0 & b1);
@@ -646,9 +1186,9 @@ class StackFrame {
 			}
 
 			case VectorInstr.VVTernOp vvTernOp -> {
-				V128 c = (V128)pop();
-				V128 b = (V128)pop();
-				V128 a = (V128)pop();
+				V128 c = popV128();
+				V128 b = popV128();
+				V128 a = popV128();
 
 				V128.Ternary8Function f = switch(vvTernOp) {
 					case BITSELECT -> (b0, b1, b2) -> (byte)((b0 & b2) | (b1 & ~b2));
@@ -659,7 +1199,7 @@ class StackFrame {
 			}
 
 			case VectorInstr.VVTestOp vvTestOp -> {
-				V128 a = (V128)pop();
+				V128 a = popV128();
 
 				int result = switch(vvTestOp) {
 					case ANY_TRUE -> a.anyTrue() ? 1 : 0;
@@ -671,44 +1211,44 @@ class StackFrame {
 			case VectorInstr.I8x16_Op_Instr(var op) -> {
 				switch(op) {
 					case VectorInstr.Swizzle() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 						push(a.swizzle8(b));
 					}
 
 					case VectorInstr.Shuffle(var laneIndexes) -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 						push(laneIndexes.shuffle8(a, b));
 					}
 
 					case VectorInstr.Splat() -> {
-						int a = (int)pop();
+						int a = popI32();
 						push(V128.splat8((byte)a));
 					}
 
 					case VectorInstr.ExtractLane_U(var laneIdx) -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						byte result = a.extractLane8(laneIdx);
 						push(Byte.toUnsignedInt(result));
 					}
 
 					case VectorInstr.ExtractLane_S(var laneIdx) -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						byte result = a.extractLane8(laneIdx);
 						push((int)result);
 					}
 
 					case VectorInstr.ReplaceLane(var laneIdx) -> {
-						int b = (int)pop();
-						V128 a = (V128)pop();
+						int b = popI32();
+						V128 a = popV128();
 						V128 result = a.replaceLane8(laneIdx, (byte)b);
 						push(result);
 					}
 
 					case VectorInstr.VIRelOp viRelOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary8Function f = switch(viRelOp) {
 							case VectorInstr.VIRelOp_S viRelOpS -> switch(viRelOpS) {
@@ -731,7 +1271,7 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIUnOp viUnOp -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 
 						V128.Unary8Function f = switch(viUnOp) {
 							case ABS -> n0 -> (byte)Math.abs(n0);
@@ -742,41 +1282,41 @@ class StackFrame {
 					}
 
 					case VectorInstr.Popcnt() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						push(a.unary8(n0 -> (byte)Integer.bitCount(Byte.toUnsignedInt(n0))));
 					}
 
 					case VectorInstr.All_True() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						boolean result = a.allTrue8();
 						push(result ? 1 : 0);
 					}
 
 					case VectorInstr.BitMask() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						int result = a.bitmask8();
 						push(result);
 					}
 
 					case VectorInstr.I8x16_Narrow_I16x8_U() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build8(i -> Util.narrowU16I8(i < 8 ? a.extractLane16(i) : b.extractLane16(i - 8)));
 						push(result);
 					}
 
 					case VectorInstr.I8x16_Narrow_I16x8_S() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build8(i -> Util.narrowS16I8(i < 8 ? a.extractLane16(i) : b.extractLane16(i - 8)));
 						push(result);
 					}
 
 					case VectorInstr.VIShiftOp viShiftOp -> {
-						int b = (int)pop() & 0x07;
-						V128 a = (V128)pop();
+						int b = popI32() & 0x07;
+						V128 a = popV128();
 
 						V128.Unary8Function f = switch(viShiftOp) {
 							case SHL -> n0 -> (byte)(n0 << b);
@@ -788,8 +1328,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIBinOp viBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary8Function f = switch(viBinOp) {
 							case ADD -> (n0, n1) -> (byte)(n0 + n1);
@@ -800,8 +1340,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIMinMaxOp viBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary8Function f = switch(viBinOp) {
 							case MIN_U -> (n0, n1) -> (byte)Math.min(Byte.toUnsignedInt(n0), Byte.toUnsignedInt(n1));
@@ -814,8 +1354,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VISatBinOp viSatBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary8Function f = switch(viSatBinOp) {
 							case ADD_SAT_U -> Util::addSatU8;
@@ -828,8 +1368,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIAverageOps viAverageOps -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary8Function f = switch(viAverageOps) {
 							case AVGR_U -> (n0, n1) -> (byte)((Byte.toUnsignedInt(n0) + Byte.toUnsignedInt(n1) + 1) / 2);
@@ -842,32 +1382,32 @@ class StackFrame {
 			case VectorInstr.I16x8_Op_Instr(var op) -> {
 				switch(op) {
 					case VectorInstr.Splat() -> {
-						int a = (int)pop();
+						int a = popI32();
 						push(V128.splat16((short)a));
 					}
 
 					case VectorInstr.ExtractLane_U(var laneIdx) -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						short result = a.extractLane16(laneIdx);
 						push(Short.toUnsignedInt(result));
 					}
 
 					case VectorInstr.ExtractLane_S(var laneIdx) -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						short result = a.extractLane16(laneIdx);
 						push((int)result);
 					}
 
 					case VectorInstr.ReplaceLane(var laneIdx) -> {
-						int b = (int)pop();
-						V128 a = (V128)pop();
+						int b = popI32();
+						V128 a = popV128();
 						V128 result = a.replaceLane16(laneIdx, (short)b);
 						push(result);
 					}
 
 					case VectorInstr.VIRelOp viRelOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary16Function f = switch(viRelOp) {
 							case VectorInstr.VIRelOp_S viRelOpS -> switch(viRelOpS) {
@@ -890,7 +1430,7 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIUnOp viUnOp -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 
 						V128.Unary16Function f = switch(viUnOp) {
 							case ABS -> n0 -> (short)Math.abs(n0);
@@ -901,8 +1441,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.Q15mulr_Sat_S() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = a.binary16(b, (n0, n1) -> Util.narrowS32I16((n0 * n1 + (1 << 14)) >> 15));
 
@@ -910,60 +1450,60 @@ class StackFrame {
 					}
 
 					case VectorInstr.All_True() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						boolean result = a.allTrue16();
 						push(result ? 1 : 0);
 					}
 
 					case VectorInstr.BitMask() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						int result = a.bitmask16();
 						push(result);
 					}
 
 					case VectorInstr.I16x8_Narrow_I32x4_U() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build16(i -> Util.narrowU32I16(i < 4 ? a.extractLane32(i) : b.extractLane32(i - 4)));
 						push(result);
 					}
 
 					case VectorInstr.I16x8_Narrow_I32x4_S() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build16(i -> Util.narrowS32I16(i < 4 ? a.extractLane32(i) : b.extractLane32(i - 4)));
 						push(result);
 					}
 
 					case VectorInstr.I16x8_Extend_Low_I8x16_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build16(i -> (short)Byte.toUnsignedInt(a.extractLane8(i)));
 						push(result);
 					}
 
 					case VectorInstr.I16x8_Extend_Low_I8x16_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build16(i -> (short)a.extractLane8(i));
 						push(result);
 					}
 
 					case VectorInstr.I16x8_Extend_High_I8x16_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build16(i -> (short)Byte.toUnsignedInt(a.extractLane8(i + 8)));
 						push(result);
 					}
 
 					case VectorInstr.I16x8_Extend_High_I8x16_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build16(i -> (short)a.extractLane8(i + 8));
 						push(result);
 					}
 
 					case VectorInstr.VIShiftOp viShiftOp -> {
-						int b = (int)pop() & 0x0F;
-						V128 a = (V128)pop();
+						int b = popI32() & 0x0F;
+						V128 a = popV128();
 
 						V128.Unary16Function f = switch(viShiftOp) {
 							case SHL -> n0 -> (short)(n0 << b);
@@ -975,8 +1515,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIBinOp viBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary16Function f = switch(viBinOp) {
 							case ADD -> (n0, n1) -> (short)(n0 + n1);
@@ -987,8 +1527,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIMinMaxOp viBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary16Function f = switch(viBinOp) {
 							case MIN_U -> (n0, n1) -> (short)Math.min(Short.toUnsignedInt(n0), Short.toUnsignedInt(n1));
@@ -1001,8 +1541,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VISatBinOp viSatBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary16Function f = switch(viSatBinOp) {
 							case ADD_SAT_U -> Util::addSatU16;
@@ -1015,8 +1555,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIMulOp viMulOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary16Function f = switch(viMulOp) {
 							case MUL -> (n0, n1) -> (short)(n0 * n1);
@@ -1026,8 +1566,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.I16x8_ExtMul_Low_I8x16_U() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build16(i -> (short)(Byte.toUnsignedInt(a.extractLane8(i)) * Byte.toUnsignedInt(b.extractLane8(i))));
 
@@ -1035,8 +1575,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.I16x8_ExtMul_Low_I8x16_S() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build16(i -> (short)(a.extractLane8(i) * b.extractLane8(i)));
 
@@ -1044,8 +1584,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.I16x8_ExtMul_High_I8x16_U() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build16(i -> (short)(Byte.toUnsignedInt(a.extractLane8(i + 8)) * Byte.toUnsignedInt(b.extractLane8(i + 8))));
 
@@ -1053,8 +1593,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.I16x8_ExtMul_High_I8x16_S() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build16(i -> (short)(a.extractLane8(i + 8) * b.extractLane8(i + 8)));
 
@@ -1062,8 +1602,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIAverageOps viAverageOps -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary16Function f = switch(viAverageOps) {
 							case AVGR_U -> (n0, n1) -> (short)((Short.toUnsignedInt(n0) + Short.toUnsignedInt(n1) + 1) / 2);
@@ -1073,7 +1613,7 @@ class StackFrame {
 					}
 
 					case VectorInstr.I16x8_ExtAdd_Pairwise_I8x16_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 
 						V128 result = V128.build16(i -> (short)(Byte.toUnsignedInt(a.extractLane8(i)) + Byte.toUnsignedInt(a.extractLane8(i + 8))));
 
@@ -1081,7 +1621,7 @@ class StackFrame {
 					}
 
 					case VectorInstr.I16x8_ExtAdd_Pairwise_I8x16_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 
 						V128 result = V128.build16(i -> (short)(a.extractLane8(i) + a.extractLane8(i + 8)));
 
@@ -1093,26 +1633,26 @@ class StackFrame {
 			case VectorInstr.I32x4_Op_Instr(var op) -> {
 				switch(op) {
 					case VectorInstr.Splat() -> {
-						int a = (int)pop();
+						int a = popI32();
 						push(V128.splat32(a));
 					}
 
 					case VectorInstr.ExtractLane(var laneIdx) -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						int result = a.extractLane32(laneIdx);
 						push(result);
 					}
 
 					case VectorInstr.ReplaceLane(var laneIdx) -> {
-						int b = (int)pop();
-						V128 a = (V128)pop();
+						int b = popI32();
+						V128 a = popV128();
 						V128 result = a.replaceLane32(laneIdx, b);
 						push(result);
 					}
 
 					case VectorInstr.VIRelOp viRelOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary32Function f = switch(viRelOp) {
 							case VectorInstr.VIRelOp_S viRelOpS -> switch(viRelOpS) {
@@ -1135,7 +1675,7 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIUnOp viUnOp -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 
 						V128.Unary32Function f = switch(viUnOp) {
 							case ABS -> Math::abs;
@@ -1146,51 +1686,51 @@ class StackFrame {
 					}
 
 					case VectorInstr.Dot_I16x8_S() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> a.extractLane16(i) * b.extractLane16(i) + a.extractLane16(i + 4) * b.extractLane16(i + 4));
 						push(result);
 					}
 
 					case VectorInstr.All_True() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						boolean result = a.allTrue32();
 						push(result ? 1 : 0);
 					}
 
 					case VectorInstr.BitMask() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						int result = a.bitmask32();
 						push(result);
 					}
 
 					case VectorInstr.I32x4_Extend_Low_I16x8_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> Short.toUnsignedInt(a.extractLane16(i)));
 						push(result);
 					}
 
 					case VectorInstr.I32x4_Extend_Low_I16x8_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build32(a::extractLane16);
 						push(result);
 					}
 
 					case VectorInstr.I32x4_Extend_High_I16x8_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> Short.toUnsignedInt(a.extractLane16(i + 4)));
 						push(result);
 					}
 
 					case VectorInstr.I32x4_Extend_High_I16x8_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> a.extractLane16(i + 4));
 						push(result);
 					}
 
 					case VectorInstr.VIShiftOp viShiftOp -> {
-						int b = (int)pop();
-						V128 a = (V128)pop();
+						int b = popI32();
+						V128 a = popV128();
 
 						V128.Unary32Function f = switch(viShiftOp) {
 							case SHL -> n0 -> n0 << b;
@@ -1202,8 +1742,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIBinOp viBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary32Function f = switch(viBinOp) {
 							case ADD -> Integer::sum;
@@ -1214,8 +1754,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIMinMaxOp viBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary32Function f = switch(viBinOp) {
 							case MIN_U -> Util::minU32;
@@ -1228,8 +1768,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIMulOp viMulOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary32Function f = switch(viMulOp) {
 							case MUL -> (n0, n1) -> n0 * n1;
@@ -1239,64 +1779,64 @@ class StackFrame {
 					}
 
 					case VectorInstr.I32x4_ExtMul_Low_I16x8_U() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> Short.toUnsignedInt(a.extractLane16(i)) * Short.toUnsignedInt(b.extractLane16(i)));
 						push(result);
 					}
 
 					case VectorInstr.I32x4_ExtMul_Low_I16x8_S() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> a.extractLane16(i) * b.extractLane16(i));
 						push(result);
 					}
 
 					case VectorInstr.I32x4_ExtMul_High_I16x8_U() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> Short.toUnsignedInt(a.extractLane16(i + 4)) * Short.toUnsignedInt(b.extractLane16(i + 4)));
 						push(result);
 					}
 
 					case VectorInstr.I32x4_ExtMul_High_I16x8_S() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> a.extractLane16(i + 4) * b.extractLane16(i + 4));
 						push(result);
 					}
 
 					case VectorInstr.I32x4_ExtAdd_Pairwise_I16x8_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> Short.toUnsignedInt(a.extractLane16(i)) + Short.toUnsignedInt(a.extractLane16(i + 4)));
 						push(result);
 					}
 
 					case VectorInstr.I32x4_ExtAdd_Pairwise_I16x8_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> a.extractLane16(i) + a.extractLane16(i + 4));
 						push(result);
 					}
 
 					case VectorInstr.I32x4_Trunc_Sat_F32x4_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> Util.truncSatF32U32(a.extractLaneF32(i)));
 						push(result);
 					}
 
 					case VectorInstr.I32x4_Trunc_Sat_F32x4_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> (int)a.extractLaneF32(i));
 						push(result);
 					}
 
 					case VectorInstr.I32x4_Trunc_Sat_F64x4_U_Zero() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> i < 2 ? Util.truncSatF64U32(a.extractLaneF64(i)) : 0);
 						push(result);
 					}
 					case VectorInstr.I32x4_Trunc_Sat_F64x4_S_Zero() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build32(i -> i < 2 ? (int)a.extractLaneF64(i) : 0);
 						push(result);
 					}
@@ -1306,26 +1846,26 @@ class StackFrame {
 			case VectorInstr.I64x2_Op_Instr(var op) -> {
 				switch(op) {
 					case VectorInstr.Splat() -> {
-						long a = (long)pop();
+						long a = popI64();
 						push(V128.splat64(a));
 					}
 
 					case VectorInstr.ExtractLane(var laneIdx) -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						long result = a.extractLane64(laneIdx);
 						push(result);
 					}
 
 					case VectorInstr.ReplaceLane(var laneIdx) -> {
-						long b = (long)pop();
-						V128 a = (V128)pop();
+						long b = popI64();
+						V128 a = popV128();
 						V128 result = a.replaceLane64(laneIdx, b);
 						push(result);
 					}
 
 					case VectorInstr.VIRelOp_S viRelOpS -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary64Function f = switch(viRelOpS) {
 							case EQ -> (n0, n1) -> n0 == n1 ? -1 : 0;
@@ -1340,7 +1880,7 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIUnOp viUnOp -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 
 						V128.Unary64Function f = switch(viUnOp) {
 							case ABS -> Math::abs;
@@ -1351,44 +1891,44 @@ class StackFrame {
 					}
 
 					case VectorInstr.All_True() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						boolean result = a.allTrue64();
 						push(result ? 1 : 0);
 					}
 
 					case VectorInstr.BitMask() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						int result = a.bitmask64();
 						push(result);
 					}
 
 					case VectorInstr.I64x2_Extend_Low_I32x4_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build64(i -> Integer.toUnsignedLong(a.extractLane32(i)));
 						push(result);
 					}
 
 					case VectorInstr.I64x2_Extend_Low_I32x4_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build64(i -> (long)a.extractLane32(i));
 						push(result);
 					}
 
 					case VectorInstr.I64x2_Extend_High_I32x4_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build64(i -> Integer.toUnsignedLong(a.extractLane32(i + 2)));
 						push(result);
 					}
 
 					case VectorInstr.I64x2_Extend_High_I32x4_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.build64(i -> (long)a.extractLane32(i + 2));
 						push(result);
 					}
 
 					case VectorInstr.VIShiftOp viShiftOp -> {
-						int b = (int)pop();
-						V128 a = (V128)pop();
+						int b = popI32();
+						V128 a = popV128();
 
 						V128.Unary64Function f = switch(viShiftOp) {
 							case SHL -> n0 -> n0 << b;
@@ -1400,8 +1940,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIBinOp viBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary64Function f = switch(viBinOp) {
 							case ADD -> Long::sum;
@@ -1412,8 +1952,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VIMulOp viMulOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.Binary64Function f = switch(viMulOp) {
 							case MUL -> (n0, n1) -> n0 * n1;
@@ -1423,8 +1963,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.I64x2_ExtMul_Low_I32x4_U() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build64(i -> Integer.toUnsignedLong(a.extractLane32(i)) * Integer.toUnsignedLong(b.extractLane32(i)));
 
@@ -1432,8 +1972,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.I64x2_ExtMul_Low_I32x4_S() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build64(i -> (long)a.extractLane32(i) * (long)b.extractLane32(i));
 
@@ -1441,8 +1981,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.I64x2_ExtMul_High_I32x4_U() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build64(i -> Integer.toUnsignedLong(a.extractLane32(i + 2)) * Integer.toUnsignedLong(b.extractLane32(i + 2)));
 
@@ -1450,8 +1990,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.I64x2_ExtMul_High_I32x4_S() -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build64(i -> (long)a.extractLane32(i + 2) * (long)b.extractLane32(i + 2));
 
@@ -1463,26 +2003,26 @@ class StackFrame {
 			case VectorInstr.F32x4_Op_Instr(var op) -> {
 				switch(op) {
 					case VectorInstr.Splat() -> {
-						float a = (float)pop();
+						float a = popF32();
 						push(V128.splatF32(a));
 					}
 
 					case VectorInstr.ExtractLane(var laneIdx) -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						float result = a.extractLaneF32(laneIdx);
 						push(result);
 					}
 
 					case VectorInstr.ReplaceLane(var laneIdx) -> {
-						float b = (float)pop();
-						V128 a = (V128)pop();
+						float b = popF32();
+						V128 a = popV128();
 						V128 result = a.replaceLaneF32(laneIdx, b);
 						push(result);
 					}
 
 					case VectorInstr.VFRelOp vfRelOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build32(switch(vfRelOp) {
 							case EQ -> i -> a.extractLaneF32(i) == b.extractLaneF32(i) ? -1 : 0;
@@ -1497,7 +2037,7 @@ class StackFrame {
 					}
 
 					case VectorInstr.VFUnOp vfUnOp -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 
 						V128.UnaryF32Function f = switch(vfUnOp) {
 							case ABS -> Math::abs;
@@ -1513,8 +2053,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VFBinOp vfBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.BinaryF32Function f = switch(vfBinOp) {
 							case ADD -> Float::sum;
@@ -1531,19 +2071,19 @@ class StackFrame {
 					}
 
 					case VectorInstr.F32x4_Convert_I32x4_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.buildF32(i -> (float)Integer.toUnsignedLong(a.extractLane32(i)));
 						push(result);
 					}
 
 					case VectorInstr.F32x4_Convert_I32x4_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.buildF32(i -> (float)a.extractLane32(i));
 						push(result);
 					}
 
 					case VectorInstr.F32x4_Demote_F64x2_Zero() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.buildF32(i -> i < 2 ? (float)a.extractLaneF64(i) : 0.0f);
 						push(result);
 					}
@@ -1553,26 +2093,26 @@ class StackFrame {
 			case VectorInstr.F64x2_Op_Instr(var op) -> {
 				switch(op) {
 					case VectorInstr.Splat() -> {
-						double a = (double)pop();
+						double a = popF64();
 						push(V128.splatF64(a));
 					}
 
 					case VectorInstr.ExtractLane(var laneIdx) -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						double result = a.extractLaneF64(laneIdx);
 						push(result);
 					}
 
 					case VectorInstr.ReplaceLane(var laneIdx) -> {
-						double b = (double)pop();
-						V128 a = (V128)pop();
+						double b = popF64();
+						V128 a = popV128();
 						V128 result = a.replaceLaneF64(laneIdx, b);
 						push(result);
 					}
 
 					case VectorInstr.VFRelOp vfRelOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128 result = V128.build64(switch(vfRelOp) {
 							case EQ -> i -> a.extractLaneF64(i) == b.extractLaneF64(i) ? -1 : 0;
@@ -1587,7 +2127,7 @@ class StackFrame {
 					}
 
 					case VectorInstr.VFUnOp vfUnOp -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 
 						V128.UnaryF64Function f = switch(vfUnOp) {
 							case ABS -> Math::abs;
@@ -1603,8 +2143,8 @@ class StackFrame {
 					}
 
 					case VectorInstr.VFBinOp vfBinOp -> {
-						V128 b = (V128)pop();
-						V128 a = (V128)pop();
+						V128 b = popV128();
+						V128 a = popV128();
 
 						V128.BinaryF64Function f = switch(vfBinOp) {
 							case ADD -> Double::sum;
@@ -1621,19 +2161,19 @@ class StackFrame {
 					}
 
 					case VectorInstr.F64x2_Convert_Low_I32x4_U() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.buildF64(i -> (double)Integer.toUnsignedLong(a.extractLane32(i)));
 						push(result);
 					}
 
 					case VectorInstr.F64x2_Convert_Low_I32x4_S() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.buildF64(i -> (double)a.extractLane32(i));
 						push(result);
 					}
 
 					case VectorInstr.F64x2_Promote_Low_F32x4() -> {
-						V128 a = (V128)pop();
+						V128 a = popV128();
 						V128 result = V128.buildF64(i -> (double)a.extractLaneF32(i));
 						push(result);
 					}
@@ -1642,297 +2182,141 @@ class StackFrame {
 		}
 	}
 
-	private void evaluateReferenceInstr(ReferenceInstr instr) throws Throwable {
+	private void evaluateAtomicInstr(MemoryInstr instr) throws Throwable {
 		switch(instr) {
-			case ReferenceInstr.Ref_Func refFunc -> {
-				var func = module.getFunction(refFunc.func());
-				push(func);
+			case MemoryInstr.Memory_Atomic_Notify(var memArg) -> {
+				int count = popI32();
+				int address = atomicAddress(memArg, 4);
+				push(module.getMemory(0).atomicNotify(address, count));
 			}
-			case ReferenceInstr.Ref_IsNull refIsNull -> {
-				Object o = pop();
-				int result = o == null ? 1 : 0;
-				push(result);
-			}
-
-			case ReferenceInstr.Ref_Null refNull -> {
-				push(null);
-			}
-		}
-	}
 
-	private void evaluateParametricInstruction(ParametricInstr instr) throws Throwable {
-		switch(instr) {
-			case ParametricInstr.Drop() -> {
-				pop();
-			}
-			case ParametricInstr.Select select -> {
-				int c = (int)pop();
-				Object val2 = pop();
-				Object val1 = pop();
-				push(c != 0 ? val1 : val2);
-			}
-		}
-	}
-
-	private void evaluateVariableInstruction(VariableInstr instr) throws Throwable {
-		switch(instr) {
-			case VariableInstr.Local_Get(var local) -> {
-				push(locals.get(local.index()));
-			}
-			case VariableInstr.Local_Set(var local) -> {
-				locals.set(local.index(), pop());
-			}
-			case VariableInstr.Local_Tee(var local) -> {
-				locals.set(local.index(), peek());
-			}
-			case VariableInstr.Global_Get(var global) -> {
-				push(module.getGlobal(global).get());
-			}
-			case VariableInstr.Global_Set(var global) -> {
-				module.getGlobal(global).set(pop());
-			}
-		}
-	}
-
-	private void evaluateTableInstruction(TableInstr instr) throws Throwable {
-		switch(instr) {
-			case TableInstr.Table_Get tableGet -> {
-				int i = (int)pop();
-				Object val = module.getTable(tableGet.table()).get(i);
-				push(val);
-			}
-
-			case TableInstr.Table_Set tableSet -> {
-				Object val = pop();
-				int i = (int)pop();
-				module.getTable(tableSet.table()).set(i, val);
+			case MemoryInstr.Memory_Atomic_Wait(var numSize, var memArg) -> {
+				long timeout = popI64();
+				switch(numSize) {
+					case _32 -> {
+						int expected = popI32();
+						int address = atomicAddress(memArg, 4);
+						push(module.getMemory(0).atomicWait32(address, expected, timeout));
+					}
+					case _64 -> {
+						long expected = popI64();
+						int address = atomicAddress(memArg, 8);
+						push(module.getMemory(0).atomicWait64(address, expected, timeout));
+					}
+				}
 			}
 
-			case TableInstr.Table_Size tableSize -> {
-				int size = module.getTable(tableSize.table()).size();
-				push(size);
-			}
+			case MemoryInstr.Atomic_Fence() -> VarHandle.fullFence();
 
-			case TableInstr.Table_Grow tableGrow -> {
-				int n = (int)pop();
-				Object val = pop();
-				int result = module.getTable(tableGrow.table()).grow(n, val);
-				push(result);
+			case MemoryInstr.Inn_Atomic_Load(var numSize, var size, var memArg) -> {
+				var memory = memory();
+				int address = atomicAddress(memArg, atomicBytes(size));
+				long value = switch(size) {
+					case _8 -> Byte.toUnsignedLong(memory.atomicLoadI8(address));
+					case _16 -> Short.toUnsignedLong(memory.atomicLoadI16(address));
+					case _32 -> Integer.toUnsignedLong(memory.atomicLoadI32(address));
+					case _64 -> memory.atomicLoadI64(address);
+				};
+				pushAtomicResult(numSize, value);
+			}
+
+			case MemoryInstr.Inn_Atomic_Store(var numSize, var size, var memArg) -> {
+				var memory = memory();
+				long value = popAtomicOperand(numSize);
+				int address = atomicAddress(memArg, atomicBytes(size));
+				switch(size) {
+					case _8 -> memory.atomicStoreI8(address, (byte)value);
+					case _16 -> memory.atomicStoreI16(address, (short)value);
+					case _32 -> memory.atomicStoreI32(address, (int)value);
+					case _64 -> memory.atomicStoreI64(address, value);
+				}
 			}
 
-			case TableInstr.Table_Fill tableFill -> {
-				WasmTable table = module.getTable(tableFill.table());
-
-				int n = (int)pop();
-				Object val = pop();
-				int i = (int)pop();
-
-				WasmTable.fill(n, val, i, table);
+			case MemoryInstr.Inn_Atomic_Rmw(var numSize, var size, var op, var memArg) -> {
+				var memory = memory();
+				long value = popAtomicOperand(numSize);
+				int address = atomicAddress(memArg, atomicBytes(size));
+				long old = switch(size) {
+					case _8 -> Byte.toUnsignedLong(memory.atomicRmwI8(op, address, (byte)value));
+					case _16 -> Short.toUnsignedLong(memory.atomicRmwI16(op, address, (short)value));
+					case _32 -> Integer.toUnsignedLong(memory.atomicRmwI32(op, address, (int)value));
+					case _64 -> memory.atomicRmwI64(op, address, value);
+				};
+				pushAtomicResult(numSize, old);
+			}
+
+			case MemoryInstr.Inn_Atomic_Cmpxchg(var numSize, var size, var memArg) -> {
+				var memory = memory();
+				long replacement = popAtomicOperand(numSize);
+				long expected = popAtomicOperand(numSize);
+				int address = atomicAddress(memArg, atomicBytes(size));
+				long old = switch(size) {
+					case _8 -> Byte.toUnsignedLong(memory.atomicCompareExchangeI8(address, (byte)expected, (byte)replacement));
+					case _16 -> Short.toUnsignedLong(memory.atomicCompareExchangeI16(address, (short)expected, (short)replacement));
+					case _32 -> Integer.toUnsignedLong(memory.atomicCompareExchangeI32(address, (int)expected, (int)replacement));
+					case _64 -> memory.atomicCompareExchangeI64(address, expected, replacement);
+				};
+				pushAtomicResult(numSize, old);
 			}
 
-			case TableInstr.Table_Copy tableCopy -> {
-				WasmTable tableX = module.getTable(tableCopy.dest());
-				WasmTable tableY = module.getTable(tableCopy.src());
-
-				int n = (int)pop();
-				int s = (int)pop();
-				int d = (int)pop();
-
-				WasmTable.copy(n, s, d, tableX, tableY);
-			}
+			default -> throw new IllegalStateException();
+		}
+	}
 
-			case TableInstr.Table_Init tableInit -> {
-				WasmTable table = module.getTable(tableInit.table());
-				WasmElements elem = module.getElement(tableInit.elem());
+	private int atomicAddress(MemoryInstr.MemArg memArg, int bytes) throws UnalignedAtomicException {
+		int i = popI32();
+		return Util.checkAtomicAddress(memory(), Util.calculateMemoryAddress(i, memArg.offset()), bytes);
+	}
 
-				int n = (int)pop();
-				int s = (int)pop();
-				int d = (int)pop();
+	private static int atomicBytes(MemoryInstr.AtomicSize size) {
+		return switch(size) {
+			case _8 -> 1;
+			case _16 -> 2;
+			case _32 -> 4;
+			case _64 -> 8;
+		};
+	}
 
-				WasmTable.init(d, s, n, table, elem);
-			}
+	// Narrow values are zero extended, so the operand and result are handled as 64-bit values.
+	private long popAtomicOperand(NumericInstr.NumSize numSize) {
+		return switch(numSize) {
+			case _32 -> popI32();
+			case _64 -> popI64();
+		};
+	}
 
-			case TableInstr.Elem_Drop elemDrop -> {
-				module.dropElement(elemDrop.elem());
-			}
+	private void pushAtomicResult(NumericInstr.NumSize numSize, long value) {
+		switch(numSize) {
+			case _32 -> push((int)value);
+			case _64 -> push(value);
 		}
 	}
 
-	private void evaluateMemoryInstruction(MemoryInstr instr) throws Throwable {
+	private void evaluateVectorMemoryInstr(MemoryInstr instr) throws Throwable {
 		switch(instr) {
-			case MemoryInstr.Inn_Load innLoad -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, innLoad.memArg().offset());
-
-				switch(innLoad.numSize()) {
-					case _32 -> push(memory.loadI32(address));
-					case _64 -> push(memory.loadI64(address));
-				}
-			}
-
-			case MemoryInstr.Fnn_Load fnnLoad -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, fnnLoad.memArg().offset());
-
-				switch(fnnLoad.numSize()) {
-					case _32 -> push(memory.loadF32(address));
-					case _64 -> push(memory.loadF64(address));
-				}
-			}
-			
-			case MemoryInstr.Inn_Store innStore -> {
-				var memory = module.getMemory(new MemIdx(0));
-				Object value = pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, innStore.memArg().offset());
-
-				switch(innStore.numSize()) {
-					case _32 -> memory.storeI32(address, (int)value);
-					case _64 -> memory.storeI64(address, (long)value);
-				}
-			}
-
-			case MemoryInstr.Fnn_Store fnnStore -> {
-				var memory = module.getMemory(new MemIdx(0));
-				Object value = pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, fnnStore.memArg().offset());
-
-				switch(fnnStore.numSize()) {
-					case _32 -> memory.storeF32(address, (float)value);
-					case _64 -> memory.storeF64(address, (double)value);
-				}
-			}
-
 			case MemoryInstr.V128_Load v128Load -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, v128Load.memArg().offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, v128Load.memArg().offset());
 				push(memory.loadV128(address));
 			}
 
 			case MemoryInstr.V128_Store v128Store -> {
-				var memory = module.getMemory(new MemIdx(0));
-				V128 value = (V128)pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, v128Store.memArg().offset());
+				var memory = memory();
+				V128 value = popV128();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, v128Store.memArg().offset());
 
 				memory.storeV128(address, value);
 			}
-
-			case MemoryInstr.Inn_Load8_U innLoad8U -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, innLoad8U.memArg().offset());
-				byte value = memory.loadI8(address);
-
-				switch(innLoad8U.numSize()) {
-					case _32 -> push(Byte.toUnsignedInt(value));
-					case _64 -> push(Byte.toUnsignedLong(value));
-				}
-			}
-
-			case MemoryInstr.Inn_Load8_S innLoad8S -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, innLoad8S.memArg().offset());
-				byte value = memory.loadI8(address);
-
-				switch(innLoad8S.numSize()) {
-					case _32 -> push((int)value);
-					case _64 -> push((long)value);
-				}
-			}
-
-			case MemoryInstr.Inn_Load16_U innLoad16U -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, innLoad16U.memArg().offset());
-				short value = memory.loadI16(address);
-
-				switch(innLoad16U.numSize()) {
-					case _32 -> push(Short.toUnsignedInt(value));
-					case _64 -> push(Short.toUnsignedLong(value));
-				}
-			}
-
-			case MemoryInstr.Inn_Load16_S innLoad16S -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, innLoad16S.memArg().offset());
-				short value = memory.loadI16(address);
-
-				switch(innLoad16S.numSize()) {
-					case _32 -> push((int)value);
-					case _64 -> push((long)value);
-				}
-			}
-
-			case MemoryInstr.I64_Load32_U(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
-				int value = memory.loadI32(address);
-				push(Integer.toUnsignedLong(value));
-			}
-
-			case MemoryInstr.I64_Load32_S(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
-				int value = memory.loadI32(address);
-				push((long)value);
-			}
-
-			case MemoryInstr.Inn_Store8 innStore8 -> {
-				var memory = module.getMemory(new MemIdx(0));
-				Object value = pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, innStore8.memArg().offset());
-
-				byte numValue = switch(innStore8.numSize()) {
-					case _32 -> (byte)(int)value;
-					case _64 -> (byte)(long)value;
-				};
-
-				memory.storeI8(address, numValue);
-			}
-
-			case MemoryInstr.Inn_Store16 innStore16 -> {
-				var memory = module.getMemory(new MemIdx(0));
-				Object value = pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, innStore16.memArg().offset());
-
-				short numValue = switch(innStore16.numSize()) {
-					case _32 -> (short)(int)value;
-					case _64 -> (short)(long)value;
-				};
-
-				memory.storeI16(address, numValue);
-			}
-
-			case MemoryInstr.I64_Store32(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int value = (int)(long)pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
-
-				memory.storeI32(address, value);
-			}
-
-
-
 			case MemoryInstr.V128_Load8x8_U(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 
 				byte[] values = new byte[8];
 				for(int j = 0; j < values.length; ++j) {
-					values[j] = memory.loadI8(calculateMemoryAddress(address, j));
+					values[j] = memory.loadI8(Util.calculateMemoryAddress(address, j));
 				}
 
 				V128 result = V128.build16(j -> (short)Byte.toUnsignedInt(values[j]));
@@ -1940,13 +2324,13 @@ class StackFrame {
 			}
 
 			case MemoryInstr.V128_Load8x8_S(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 
 				byte[] values = new byte[8];
 				for(int j = 0; j < values.length; ++j) {
-					values[j] = memory.loadI8(calculateMemoryAddress(address, j));
+					values[j] = memory.loadI8(Util.calculateMemoryAddress(address, j));
 				}
 
 				V128 result = V128.build16(j -> values[j]);
@@ -1954,13 +2338,13 @@ class StackFrame {
 			}
 
 			case MemoryInstr.V128_Load16x4_U(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 
 				short[] values = new short[4];
 				for(int j = 0; j < values.length; ++j) {
-					values[j] = memory.loadI16(calculateMemoryAddress(address, j * 2));
+					values[j] = memory.loadI16(Util.calculateMemoryAddress(address, j * 2));
 				}
 
 				V128 result = V128.build32(j -> Short.toUnsignedInt(values[j]));
@@ -1968,13 +2352,13 @@ class StackFrame {
 			}
 
 			case MemoryInstr.V128_Load16x4_S(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 
 				short[] values = new short[4];
 				for(int j = 0; j < values.length; ++j) {
-					values[j] = memory.loadI16(calculateMemoryAddress(address, j * 2));
+					values[j] = memory.loadI16(Util.calculateMemoryAddress(address, j * 2));
 				}
 
 				V128 result = V128.build32(j -> values[j]);
@@ -1982,13 +2366,13 @@ class StackFrame {
 			}
 
 			case MemoryInstr.V128_Load32x2_U(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 
 				int[] values = new int[2];
 				for(int j = 0; j < values.length; ++j) {
-					values[j] = memory.loadI32(calculateMemoryAddress(address, j * 4));
+					values[j] = memory.loadI32(Util.calculateMemoryAddress(address, j * 4));
 				}
 
 				V128 result = V128.build64(j -> Integer.toUnsignedLong(values[j]));
@@ -1996,13 +2380,13 @@ class StackFrame {
 			}
 
 			case MemoryInstr.V128_Load32x2_S(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 
 				int[] values = new int[4];
 				for(int j = 0; j < values.length; ++j) {
-					values[j] = memory.loadI32(calculateMemoryAddress(address, j * 4));
+					values[j] = memory.loadI32(Util.calculateMemoryAddress(address, j * 4));
 				}
 
 				V128 result = V128.build64(j -> values[j]);
@@ -2010,9 +2394,9 @@ class StackFrame {
 			}
 
 			case MemoryInstr.V128_Load32_Zero(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 
 				int value = memory.loadI32(address);
 				V128 result = V128.build32(j -> j == 0 ? value : 0);
@@ -2020,9 +2404,9 @@ class StackFrame {
 			}
 
 			case MemoryInstr.V128_Load64_Zero(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 
 				long value = memory.loadI64(address);
 				V128 result = V128.build64(j -> j == 0 ? value : 0);
@@ -2030,359 +2414,112 @@ class StackFrame {
 			}
 
 			case MemoryInstr.V128_Load8_Splat(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				byte value = memory.loadI8(address);
 				V128 result = V128.splat8(value);
 				push(result);
 			}
 
 			case MemoryInstr.V128_Load16_Splat(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				short value = memory.loadI16(address);
 				V128 result = V128.splat16(value);
 				push(result);
 			}
 
 			case MemoryInstr.V128_Load32_Splat(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				int value = memory.loadI32(address);
 				V128 result = V128.splat32(value);
 				push(result);
 			}
 
 			case MemoryInstr.V128_Load64_Splat(var memArg) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				long value = memory.loadI64(address);
 				V128 result = V128.splat64(value);
 				push(result);
 			}
 
 			case MemoryInstr.V128_Load8_Lane(var memArg, var laneIdx) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				V128 v = (V128)pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				V128 v = popV128();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				byte value = memory.loadI8(address);
 				V128 result = v.replaceLane8(laneIdx, value);
 				push(result);
 			}
 
 			case MemoryInstr.V128_Load16_Lane(var memArg, var laneIdx) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				V128 v = (V128)pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				V128 v = popV128();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				short value = memory.loadI16(address);
 				V128 result = v.replaceLane16(laneIdx, value);
 				push(result);
 			}
 
 			case MemoryInstr.V128_Load32_Lane(var memArg, var laneIdx) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				V128 v = (V128)pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				V128 v = popV128();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				int value = memory.loadI32(address);
 				V128 result = v.replaceLane32(laneIdx, value);
 				push(result);
 			}
 
 			case MemoryInstr.V128_Load64_Lane(var memArg, var laneIdx) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				V128 v = (V128)pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				V128 v = popV128();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				long value = memory.loadI64(address);
 				V128 result = v.replaceLane64(laneIdx, value);
 				push(result);
 			}
 
 			case MemoryInstr.V128_Store8_Lane(var memArg, var laneIdx) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				V128 v = (V128)pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				V128 v = popV128();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				memory.storeI8(address, v.extractLane8(laneIdx));
 			}
 
 			case MemoryInstr.V128_Store16_Lane(var memArg, var laneIdx) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				V128 v = (V128)pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				V128 v = popV128();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				memory.storeI16(address, v.extractLane16(laneIdx));
 			}
 			case MemoryInstr.V128_Store32_Lane(var memArg, var laneIdx) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				V128 v = (V128)pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				V128 v = popV128();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				memory.storeI32(address, v.extractLane32(laneIdx));
 			}
 			case MemoryInstr.V128_Store64_Lane(var memArg, var laneIdx) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				V128 v = (V128)pop();
-				int i = (int)pop();
-				int address = calculateMemoryAddress(i, memArg.offset());
+				var memory = memory();
+				V128 v = popV128();
+				int i = popI32();
+				int address = Util.calculateMemoryAddress(i, memArg.offset());
 				memory.storeI64(address, v.extractLane64(laneIdx));
 			}
 
-			case MemoryInstr.Memory_Size() -> {
-				int size = module.getMemory(new MemIdx(0)).pageSize();
-				push(size);
-			}
-
-			case MemoryInstr.Memory_Grow() -> {
-				int n = (int)pop();
-				int growRes = module.getMemory(new MemIdx(0)).grow(n);
-				push(growRes);
-			}
-
-			case MemoryInstr.Memory_Fill() -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int n = (int)pop();
-				byte val = (byte)(int)pop();
-				int d = (int)pop();
-
-				if(!Util.sumInRange(d, n, memory.byteSize())) {
-					throw new IndexOutOfBoundsException();
-				}
-
-				while(n != 0) {
-					memory.storeI8(d, val);
-					++d;
-					--n;
-				}
-			}
-
-			case MemoryInstr.Memory_Copy() -> {
-				var memory = module.getMemory(new MemIdx(0));
-				int n = (int)pop();
-				int s = (int)pop();
-				int d = (int)pop();
-
-				if(!Util.sumInRange(d, n, memory.byteSize()) || !Util.sumInRange(s, n, memory.byteSize())) {
-					throw new IndexOutOfBoundsException();
-				}
-
-				if(d <= s) {
-					while(n != 0) {
-						byte b = memory.loadI8(s);
-						memory.storeI8(d, b);
-						++d;
-						++s;
-						--n;
-					}
-				}
-				else {
-					while(n != 0) {
-						byte b = memory.loadI8(s + n - 1);
-						memory.storeI8(d + n - 1, b);
-						--n;
-					}
-				}
-			}
-
-			case MemoryInstr.Memory_Init(var dataIdx) -> {
-				var memory = module.getMemory(new MemIdx(0));
-				var data = module.getData(dataIdx);
-				int n = (int)pop();
-				int s = (int)pop();
-				int d = (int)pop();
-
-				memory.init(d, s, n, data);
-			}
-
-
-			case MemoryInstr.Data_Drop(var dataIdx) -> module.dropData(dataIdx);
-		}
-	}
-
-	private int calculateMemoryAddress(int address, int offset) {
-		if(
-				(
-						offset < 0 && address < offset
-				) ||
-				(
-						Integer.compareUnsigned(address + offset, address) < 0 ||
-						Integer.compareUnsigned(address + offset, offset) < 0
-				)
-		) {
-			throw new IndexOutOfBoundsException();
-		}
-
-		return address + offset;
-	}
-
-	private FunctionResult evaluateControlInstruction(ControlInstr instr) throws Throwable {
-		return switch(instr) {
-			case ControlInstr.Nop() -> null;
-			case ControlInstr.Unreachable() -> throw new UnreachableException();
-			case ControlInstr.Block(var type, var innerBlock) -> {
-				enterBlock(type, innerBlock, ip + 1, true);
-				yield null;
-			}
-			case ControlInstr.Loop(var type, var innerBlock) -> {
-				enterBlock(type, innerBlock, ip, false);
-				yield null;
-			}
-			case ControlInstr.If(var type, var thenBlock, var elseBlock) -> {
-				int value = (int)pop();
-				var innerBlock = value != 0 ? thenBlock : elseBlock;
-				enterBlock(type, innerBlock, ip + 1, true);
-				yield null;
-			}
-			case ControlInstr.Br(var label) -> {
-				branch(label.index());
-				yield null;
-			}
-			case ControlInstr.Br_If(var label) -> {
-				int value = (int)pop();
-				if(value != 0) {
-					branch(label.index());
-				}
-				yield null;
-			}
-			case ControlInstr.Br_Table(var table, var fallback) -> {
-				int value = (int)pop();
-
-				LabelIdx labelIdx;
-				if(value >= 0 && value < table.size()) {
-					labelIdx = table.get(value);
-				}
-				else {
-					labelIdx = fallback;
-				}
-
-				branch(labelIdx.index());
-				yield null;
-			}
-			case ControlInstr.Return() -> {
-				var result = getTopValues(topBlockType.results().types().size());
-				yield new FunctionResult.Values(result);
-			}
-			case ControlInstr.Call(var funcIdx) -> {
-				var func = module.getFunction(funcIdx);
-				var args = getTopValues(func.type().args().types().size());
-				Object[] results = func.invokeNow(args);
-				pushAll(results);
-				yield null;
-			}
-			case ControlInstr.Call_Indirect(var tableIdx, var funcTypeIdx) -> {
-				int index = (int)pop();
-
-				var funcType = module.getType(funcTypeIdx);
-				var func = (WasmFunction)module.getTable(tableIdx).get(index);
-
-				if(!func.type().equals(funcType)) {
-					throw new IndirectCallTypeMismatchException();
-				}
-
-				var args = getTopValues(func.type().args().types().size());
-				Object[] results = func.invokeNow(args);
-				pushAll(results);
-				yield null;
-			}
-			case ControlInstr.Return_Call(var funcIdx) -> {
-				var func = module.getFunction(funcIdx);
-				var args = getTopValues(func.type().args().types().size());
-				yield (FunctionResult.Delay)() -> func.invoke(args);
-			}
-			case ControlInstr.Return_Call_Indirect(var tableIdx, var funcTypeIdx) -> {
-				int index = (int)pop();
-
-				var funcType = module.getType(funcTypeIdx);
-				var func = (WasmFunction)module.getTable(tableIdx).get(index);
-
-				if(!func.type().equals(funcType)) {
-					throw new IndirectCallTypeMismatchException();
-				}
-
-				var args = getTopValues(func.type().args().types().size());
-				yield (FunctionResult.Delay)() -> func.invoke(args);
-			}
-		};
-	}
-
-
-
-	private FuncType expandBlockType(ControlInstr.BlockType blockType) {
-		return switch(blockType) {
-			case ControlInstr.BlockType.Empty() -> new FuncType(new ResultType(List.of()), new ResultType(List.of()));
-			case ControlInstr.BlockType.OfIndex(var index) -> module.getType(index);
-			case ControlInstr.BlockType.OfValType(var valType) -> new FuncType(new ResultType(List.of()), new ResultType(List.of(valType)));
-		};
-	}
-
-	private void enterBlock(ControlInstr.BlockType type, List<? extends Instr> innerBlock, int branchIP, boolean useResultType) {
-		var expandedType = expandBlockType(type);
-		var label = new Label(block, blockType, useResultType ? expandedType.results() : expandedType.args(), branchIP, ip + 1);
-
-		Object[] values = getTopValues(expandedType.args().types().size());
-
-		push(label);
-
-		for(Object value : values) {
-			push(value);
+			default -> throw new IllegalStateException();
 		}
-
-		block = innerBlock;
-		blockType = expandedType;
-		ip = -1; // -1 accounts for upcoming increment to set ip to 0
 	}
-
-	private Label getLabel(int n) {
-		for(int i = stack.size() - 1; i >= 0; --i) {
-			if(stack.get(i) instanceof Label label) {
-				if(n > 0) {
-					--n;
-				}
-				else {
-					return label;
-				}
-			}
-		}
-
-		if(n > 0) {
-			throw new IllegalStateException();
-		}
-		else {
-			return new Label(List.of(), topBlockType, topBlockType.results(), 0, 0);
-		}
-	}
-
-	private void branch(int n) {
-		var label = getLabel(n);
-		Object[] values = getTopValues(label.resultType().types().size());
-
-		while(true) {
-			if(n == 0 && stack.isEmpty()) {
-				break;
-			}
-
-			if(pop() instanceof Label) {
-				if(n > 0) {
-					--n;
-				}
-				else {
-					break;
-				}
-			}
-		}
-
-		pushAll(values);
-
-		block = label.block;
-		blockType = label.outerBlockType;
-		ip = label.branchIndex - 1; // -1 accounts for upcoming increment to set ip to label.index
-	}
-
 }
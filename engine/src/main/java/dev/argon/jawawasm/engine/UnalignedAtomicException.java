@@ -0,0 +1,11 @@
+package dev.argon.jawawasm.engine;
+
+/**
+ * Indicates that an atomic instruction accessed an address that is not naturally aligned.
+ */
+public class UnalignedAtomicException extends Exception {
+	/**
+	 * Create an UnalignedAtomicException.
+	 */
+	public UnalignedAtomicException() {}
+}
@@ -0,0 +1,11 @@
+package dev.argon.jawawasm.engine;
+
+/**
+ * Indicates that a thread tried to wait on a memory that is not shared.
+ */
+public class UnsharedMemoryException extends Exception {
+	/**
+	 * Create an UnsharedMemoryException.
+	 */
+	public UnsharedMemoryException() {}
+}
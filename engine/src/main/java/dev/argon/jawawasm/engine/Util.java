@@ -1,6 +1,6 @@
 package dev.argon.jawawasm.engine;
 
-import java.math.BigDecimal;
+import dev.argon.jawawasm.format.instructions.MemoryInstr;
 
 final class Util {
 	private Util() {}
@@ -24,10 +24,49 @@ final class Util {
 	}
 
 
+	public static int calculateMemoryAddress(int address, int offset) {
+		if(
+				(
+						offset < 0 && address < offset
+				) ||
+				(
+						Integer.compareUnsigned(address + offset, address) < 0 ||
+						Integer.compareUnsigned(address + offset, offset) < 0
+				)
+		) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		return address + offset;
+	}
+
 	public static boolean sumInRange(int a, int b, int size) {
 		return a >= 0 && b >= 0 && (a + b) >= 0 && (a + b) <= size;
 	}
 
+	// Computes the value stored by an atomic read-modify-write instruction.
+	public static long applyAtomicRmw(MemoryInstr.AtomicRmwOp op, long old, long value) {
+		return switch(op) {
+			case ADD -> old + value;
+			case SUB -> old - value;
+			case AND -> old & value;
+			case OR -> old | value;
+			case XOR -> old ^ value;
+			case XCHG -> value;
+		};
+	}
+
+	// Atomic accesses trap if they are out of bounds, and otherwise if they are not naturally aligned.
+	public static int checkAtomicAddress(WasmMemoryNoResize memory, int address, int bytes) throws UnalignedAtomicException {
+		if(!sumInRange(address, bytes, memory.byteSize())) {
+			throw new IndexOutOfBoundsException();
+		}
+		if((address & (bytes - 1)) != 0) {
+			throw new UnalignedAtomicException();
+		}
+		return address;
+	}
+
 	public static byte narrowU16I8(short a) {
 		if(a < 0) {
 			return 0;
@@ -41,63 +80,64 @@ final class Util {
 	}
 
 	public static int truncF64ToS32(double a) {
-		if(!Double.isFinite(a)) {
-			throw new ArithmeticException();
-		}
-
-		var value = new BigDecimal(a);
-		if(value.compareTo(new BigDecimal((long)Integer.MIN_VALUE - 1)) <= 0 || value.compareTo(new BigDecimal((long)Integer.MAX_VALUE + 1)) >= 0) {
+		// Both bounds are exactly representable. NaN fails both comparisons.
+		if(!(a > -2147483649.0 && a < 2147483648.0)) {
 			throw new ArithmeticException();
 		}
 
-		return value.intValue();
+		return (int)a;
 	}
 
 	public static long truncF64ToS64(double a) {
-		if(!Double.isFinite(a)) {
+		if(!(a >= -0x1p63 && a < 0x1p63)) {
 			throw new ArithmeticException();
 		}
 
-		var value = new BigDecimal(a);
-		if(value.compareTo(new BigDecimal(Long.MIN_VALUE).subtract(BigDecimal.ONE)) <= 0 || value.compareTo(new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE)) >= 0) {
-			throw new ArithmeticException();
-		}
-
-		return value.longValue();
+		return (long)a;
 	}
 
 	public static int truncF64ToU32(double a) {
-		if(!Double.isFinite(a) || a <= -1.0) {
+		if(!(a > -1.0 && a < 4294967296.0)) {
 			throw new ArithmeticException();
 		}
 
-		var value = new BigDecimal(a);
-		if(value.compareTo(new BigDecimal(4294967296L)) >= 0) {
-			throw new ArithmeticException();
-		}
-
-		return value.intValue();
+		return (int)(long)a;
 	}
 
 	public static long truncF64ToU64(double a) {
-		if(!Double.isFinite(a) || a <= -1.0) {
+		if(!(a > -1.0 && a < 0x1p64)) {
 			throw new ArithmeticException();
 		}
 
-		var value = new BigDecimal(a);
-		if(value.compareTo(new BigDecimal("18446744073709551616")) >= 0) {
-			throw new ArithmeticException();
+		return doubleToU64(a);
+	}
+
+	// Converts a value in the range (-1, 2^64) to an unsigned long, rounding towards zero.
+	private static long doubleToU64(double a) {
+		if(a < 0x1p63) {
+			return (long)a;
 		}
 
-		return value.longValue();
+		// Values of at least 2^63 are integers, so the subtraction is exact.
+		return (long)(a - 0x1p63) ^ Long.MIN_VALUE;
 	}
 
 	public static float u64ToF32(long a) {
-		return new BigDecimal(Long.toUnsignedString(a)).floatValue();
+		if(a >= 0) {
+			return (float)a;
+		}
+
+		// Halve the value, keeping the lowest bit so that rounding is unchanged.
+		return (float)((a >>> 1) | (a & 1)) * 2.0f;
 	}
 
 	public static double u64ToF64(long a) {
-		return new BigDecimal(Long.toUnsignedString(a)).doubleValue();
+		if(a >= 0) {
+			return (double)a;
+		}
+
+		// Halve the value, keeping the lowest bit so that rounding is unchanged.
+		return (double)((a >>> 1) | (a & 1)) * 2.0;
 	}
 
 	public static byte narrowS16I8(short a) {
@@ -344,9 +384,8 @@ final class Util {
 			return -1L;
 		}
 		else {
-			BigDecimal value = new BigDecimal(a);
-			if(value.compareTo(new BigDecimal("18446744073709551615")) <= 0) {
-				return value.longValue();
+			if(a < 0x1p64) {
+				return doubleToU64(a);
 			}
 			else {
 				return -1L;
@@ -362,9 +401,8 @@ final class Util {
 			return -1L;
 		}
 		else {
-			BigDecimal value = new BigDecimal(a);
-			if(value.compareTo(new BigDecimal("18446744073709551615")) <= 0) {
-				return value.longValue();
+			if(a < 0x1p64) {
+				return doubleToU64(a);
 			}
 			else {
 				return -1L;
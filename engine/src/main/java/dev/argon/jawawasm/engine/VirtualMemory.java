@@ -0,0 +1,184 @@
+package dev.argon.jawawasm.engine;
+
+import org.jspecify.annotations.Nullable;
+
+import java.lang.foreign.*;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Reserves address space that is committed as it is used, so that memories can grow in place.
+ * Only supported on Linux and macOS. Elsewhere, reserve returns null.
+ */
+final class VirtualMemory {
+	private VirtualMemory() {}
+
+	private static final int PROT_NONE = 0;
+	private static final int PROT_READ = 1;
+	private static final int PROT_WRITE = 2;
+	private static final int MAP_PRIVATE = 2;
+
+	private static final @Nullable MethodHandle MMAP;
+	private static final @Nullable MethodHandle MPROTECT;
+	private static final @Nullable MethodHandle MUNMAP;
+	private static final @Nullable MethodHandle MADVISE;
+	private static final int MAP_ANONYMOUS;
+	private static final int MAP_NORESERVE;
+
+	// Only Linux guarantees that anonymous pages read as zeros after MADV_DONTNEED.
+	private static final int MADV_DONTNEED = 4;
+	private static final boolean DONTNEED_ZEROES;
+
+	static {
+		String os = System.getProperty("os.name", "");
+		if(os.startsWith("Linux")) {
+			MAP_ANONYMOUS = 0x20;
+			MAP_NORESERVE = 0x4000;
+			DONTNEED_ZEROES = true;
+		}
+		else if(os.startsWith("Mac")) {
+			MAP_ANONYMOUS = 0x1000;
+			MAP_NORESERVE = 0x40;
+			DONTNEED_ZEROES = false;
+		}
+		else {
+			MAP_ANONYMOUS = 0;
+			MAP_NORESERVE = 0;
+			DONTNEED_ZEROES = false;
+		}
+
+		MethodHandle mmap = null;
+		MethodHandle mprotect = null;
+		MethodHandle munmap = null;
+		MethodHandle madvise = null;
+		if(MAP_ANONYMOUS != 0) {
+			try {
+				var linker = Linker.nativeLinker();
+				var libc = linker.defaultLookup();
+				mmap = linker.downcallHandle(
+					libc.find("mmap").orElseThrow(),
+					FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG)
+				);
+				mprotect = linker.downcallHandle(
+					libc.find("mprotect").orElseThrow(),
+					FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT)
+				);
+				munmap = linker.downcallHandle(
+					libc.find("munmap").orElseThrow(),
+					FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG)
+				);
+				if(DONTNEED_ZEROES) {
+					madvise = linker.downcallHandle(
+						libc.find("madvise").orElseThrow(),
+						FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT)
+					);
+				}
+			}
+			catch(RuntimeException ex) {
+				// Native access is not available, so memories are copied when they grow.
+				mmap = null;
+			}
+		}
+		MMAP = mmap;
+		MPROTECT = mprotect;
+		MUNMAP = munmap;
+		MADVISE = madvise;
+	}
+
+	private record Reservation(MemorySegment segment) implements MemoryReservation {
+		@Override
+		public boolean commit(long offset, long bytes) {
+			return VirtualMemory.commit(segment, offset, bytes);
+		}
+	}
+
+	/**
+	 * Reserves address space without committing any of it.
+	 * The address space is released when the arena is closed.
+	 * @param bytes The size of the reservation.
+	 * @param arena The arena that owns the reservation.
+	 * @return The reservation, or null if address space cannot be reserved.
+	 */
+	static @Nullable MemoryReservation reserve(long bytes, Arena arena) {
+		if(MMAP == null) {
+			return null;
+		}
+
+		MemorySegment address;
+		try {
+			address = (MemorySegment)MMAP.invokeExact(MemorySegment.NULL, bytes, PROT_NONE, MAP_PRIVATE | MAP_ANONYMOUS | MAP_NORESERVE, -1, 0L);
+		}
+		catch(Throwable ex) {
+			return null;
+		}
+
+		// MAP_FAILED
+		if(address.address() == -1L) {
+			return null;
+		}
+
+		return new Reservation(address.reinterpret(bytes, arena, segment -> release(segment, bytes)));
+	}
+
+	/**
+	 * Commits part of a reservation so that it can be read and written.
+	 * Newly committed memory is zeroed.
+	 * @param reserved The reserved segment.
+	 * @param offset The start of the range, which must be a multiple of the page size of the platform.
+	 * @param bytes The size of the range.
+	 * @return true if the range was committed.
+	 */
+	private static boolean commit(MemorySegment reserved, long offset, long bytes) {
+		if(bytes == 0) {
+			return true;
+		}
+
+		try {
+			return (int)MPROTECT.invokeExact(reserved.asSlice(offset, bytes), bytes, PROT_READ | PROT_WRITE) == 0;
+		}
+		catch(Throwable ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Zeroes the start of a reservation.
+	 * Where the platform allows, the physical memory is released instead, and the pages are zeroed when they are next used.
+	 * @param reserved The reserved segment.
+	 * @param bytes The size of the range to zero.
+	 */
+	static void discard(MemorySegment reserved, long bytes) {
+		if(bytes == 0) {
+			return;
+		}
+
+		if(MADVISE != null) {
+			int result;
+			try {
+				result = (int)MADVISE.invokeExact(reserved, bytes, MADV_DONTNEED);
+			}
+			catch(Throwable ex) {
+				result = -1;
+			}
+
+			if(result == 0) {
+				return;
+			}
+		}
+
+		reserved.asSlice(0, bytes).fill((byte)0);
+	}
+
+	private static void release(MemorySegment reserved, long bytes) {
+		int result;
+		try {
+			result = (int)MUNMAP.invokeExact(reserved, bytes);
+		}
+		catch(Throwable ex) {
+			throw new RuntimeException(ex);
+		}
+
+		if(result != 0) {
+			throw new IllegalStateException("Could not release reserved memory");
+		}
+	}
+}
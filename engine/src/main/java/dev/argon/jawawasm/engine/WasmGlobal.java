@@ -2,6 +2,10 @@ package dev.argon.jawawasm.engine;
 
 import dev.argon.jawawasm.format.types.GlobalType;
 import dev.argon.jawawasm.format.types.Mut;
+import org.jspecify.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 /**
  * A WebAssembly global.
@@ -14,12 +18,38 @@ public final class WasmGlobal implements WasmExport {
 	 */
 	public WasmGlobal(GlobalType type, Object value) {
 		this.type = type;
-		this.value = value;
+		kind = SlotKind.of(type.type());
+		switch(kind) {
+			case SlotKind.I32 -> bits = (int)value;
+			case SlotKind.I64 -> bits = (long)value;
+			case SlotKind.F32 -> bits = Float.floatToRawIntBits((float)value);
+			case SlotKind.F64 -> bits = Double.doubleToRawLongBits((double)value);
+			default -> ref = value;
+		}
 	}
 
+	private static final VarHandle BITS;
+	private static final VarHandle REF;
+	static {
+		try {
+			var lookup = MethodHandles.lookup();
+			BITS = lookup.findVarHandle(WasmGlobal.class, "bits", long.class);
+			REF = lookup.findVarHandle(WasmGlobal.class, "ref", Object.class);
+		}
+		catch(ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
 
 	private final GlobalType type;
-	private volatile Object value;
+	private final int kind;
+
+	// Numeric values are stored as raw bits in the same way as the slots of a StackFrame.
+	// References and vectors are stored in ref.
+	// Code running in the engine uses plain accesses, while the public accessors are volatile so that hosts can
+	// observe the global from other threads.
+	private long bits;
+	private @Nullable Object ref;
 
 	/**
 	 * Gets the global type.
@@ -34,7 +64,13 @@ public final class WasmGlobal implements WasmExport {
 	 * @return The global value.
 	 */
 	public Object get() {
-		return value;
+		return switch(kind) {
+			case SlotKind.I32 -> (int)(long)BITS.getVolatile(this);
+			case SlotKind.I64 -> (long)BITS.getVolatile(this);
+			case SlotKind.F32 -> Float.intBitsToFloat((int)(long)BITS.getVolatile(this));
+			case SlotKind.F64 -> Double.longBitsToDouble((long)BITS.getVolatile(this));
+			default -> REF.getVolatile(this);
+		};
 	}
 
 	/**
@@ -46,6 +82,65 @@ public final class WasmGlobal implements WasmExport {
 			throw new IllegalStateException();
 		}
 
-		this.value = value;
+		switch(kind) {
+			case SlotKind.I32 -> BITS.setVolatile(this, (long)(int)value);
+			case SlotKind.I64 -> BITS.setVolatile(this, (long)value);
+			case SlotKind.F32 -> BITS.setVolatile(this, (long)Float.floatToRawIntBits((float)value));
+			case SlotKind.F64 -> BITS.setVolatile(this, Double.doubleToRawLongBits((double)value));
+			default -> REF.setVolatile(this, value);
+		}
+	}
+
+	boolean isConstant() {
+		return type.mutability() == Mut.Const;
+	}
+
+	// The raw bits of a numeric value.
+	long getBits() {
+		return bits;
+	}
+
+	void setBits(long bits) {
+		this.bits = bits;
+	}
+
+	@Nullable Object getRef() {
+		return ref;
+	}
+
+	void setRef(@Nullable Object ref) {
+		this.ref = ref;
+	}
+
+	int getI32() {
+		return (int)bits;
+	}
+
+	void setI32(int value) {
+		bits = value;
+	}
+
+	long getI64() {
+		return bits;
+	}
+
+	void setI64(long value) {
+		bits = value;
+	}
+
+	float getF32() {
+		return Float.intBitsToFloat((int)bits);
+	}
+
+	void setF32(float value) {
+		bits = Float.floatToRawIntBits(value);
+	}
+
+	double getF64() {
+		return Double.longBitsToDouble(bits);
+	}
+
+	void setF64(double value) {
+		bits = Double.doubleToRawLongBits(value);
 	}
 }
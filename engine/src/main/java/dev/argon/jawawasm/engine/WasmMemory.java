@@ -3,10 +3,13 @@ package dev.argon.jawawasm.engine;
 import dev.argon.jawawasm.format.modules.Data;
 import dev.argon.jawawasm.format.types.MemType;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 /**
  * A WebAssembly memory space.
  */
-public sealed interface WasmMemory extends WasmMemoryNoResize, WasmExport permits WasmMemoryMeta {
+public sealed interface WasmMemory extends WasmMemoryNoResize, WasmExport, AutoCloseable permits WasmMemoryMeta {
 
 	/**
 	 * Gets the memory type.
@@ -21,14 +24,73 @@ public sealed interface WasmMemory extends WasmMemoryNoResize, WasmExport permit
 	 */
 	int grow(int pages);
 
+	/**
+	 * Waits until another thread notifies the address, if it holds an expected 32-bit value.
+	 * @param address The address, which must be aligned.
+	 * @param expected The expected value.
+	 * @param timeout The maximum time to wait in nanoseconds, or a negative value to wait indefinitely.
+	 * @return 0 if the thread was notified, 1 if the value was not the expected value, or 2 if the wait timed out.
+	 * @throws UnsharedMemoryException if the memory is not shared.
+	 * @throws InterruptedException if the thread was interrupted while waiting.
+	 */
+	int atomicWait32(int address, int expected, long timeout) throws UnsharedMemoryException, InterruptedException;
+
+	/**
+	 * Waits until another thread notifies the address, if it holds an expected 64-bit value.
+	 * @param address The address, which must be aligned.
+	 * @param expected The expected value.
+	 * @param timeout The maximum time to wait in nanoseconds, or a negative value to wait indefinitely.
+	 * @return 0 if the thread was notified, 1 if the value was not the expected value, or 2 if the wait timed out.
+	 * @throws UnsharedMemoryException if the memory is not shared.
+	 * @throws InterruptedException if the thread was interrupted while waiting.
+	 */
+	int atomicWait64(int address, long expected, long timeout) throws UnsharedMemoryException, InterruptedException;
+
+	/**
+	 * Wakes threads waiting on an address, in the order that they started waiting.
+	 * @param address The address.
+	 * @param count The maximum number of threads to wake, as an unsigned value.
+	 * @return The number of threads that were woken, which is always 0 for a memory that is not shared.
+	 */
+	int atomicNotify(int address, int count);
+
+	/**
+	 * Releases the memory and refunds it to the memory budget of the engine.
+	 * Instances that import the memory keep it until they are closed, so the memory is only released
+	 * once its creator and every instance that imported it have closed it.
+	 * Accessing the memory after it is released throws an IllegalStateException.
+	 * Memories that are not released are released when the engine is closed.
+	 */
+	@Override
+	void close();
+
 	/**
 	 * Creates a WasmMemory
+	 * A shared memory can be imported by instances running on different threads.
 	 * @param engine The engine that will be using the memory.
 	 * @param memType The type of the memory object.
 	 * @return The created memory.
+	 * @throws MemoryBudgetExceededException if the memory would exceed the memory budget of the engine.
 	 */
 	public static WasmMemory create(Engine engine, MemType memType) {
-		return new WasmMemoryMeta(engine, memType.limits().max(), engine.allocateMemory(memType.limits().min()));
+		return WasmMemoryMeta.create(engine, memType);
+	}
+
+	/**
+	 * Creates a WasmMemory stored in a file.
+	 * The file holds the contents of the memory and its length is the size of the memory.
+	 * If the file already exists, the memory keeps its contents and size, so that it survives restarts.
+	 * Pages of the file are only read when they are accessed.
+	 * Only supported on platforms that allow a mapped file to be resized, such as Linux and macOS.
+	 * @param engine The engine that will be using the memory.
+	 * @param memType The type of the memory object.
+	 * @param path The file.
+	 * @return The created memory.
+	 * @throws IOException if the file cannot be mapped, or is larger than the maximum size of the memory.
+	 * @throws MemoryBudgetExceededException if the memory would exceed the memory budget of the engine.
+	 */
+	public static WasmMemory map(Engine engine, MemType memType, Path path) throws IOException {
+		return MappedMemory.open(engine, memType, path);
 	}
 
 	/**
@@ -39,15 +101,7 @@ public sealed interface WasmMemory extends WasmMemoryNoResize, WasmExport permit
 	 * @param memory The memory to fill.
 	 */
 	public static void fill(int d, byte val, int n, WasmMemory memory) {
-		if(!Util.sumInRange(d, n, memory.byteSize())) {
-			throw new IndexOutOfBoundsException();
-		}
-
-		while(n != 0) {
-			memory.storeI8(d, val);
-			++d;
-			--n;
-		}
+		memory.fill(d, val, n);
 	}
 
 	/**
@@ -58,26 +112,7 @@ public sealed interface WasmMemory extends WasmMemoryNoResize, WasmExport permit
 	 * @param memory The memory to copy data within.
 	 */
 	public static void copy(int d, int s, int n, WasmMemory memory) {
-		if(!Util.sumInRange(d, n, memory.byteSize()) || !Util.sumInRange(s, n, memory.byteSize())) {
-			throw new IndexOutOfBoundsException();
-		}
-
-		if(d <= s) {
-			while(n != 0) {
-				byte b = memory.loadI8(s);
-				memory.storeI8(d, b);
-				++d;
-				++s;
-				--n;
-			}
-		}
-		else {
-			while(n != 0) {
-				byte b = memory.loadI8(s + n - 1);
-				memory.storeI8(d + n - 1, b);
-				--n;
-			}
-		}
+		memory.copyWithin(d, s, n);
 	}
 
 	/**
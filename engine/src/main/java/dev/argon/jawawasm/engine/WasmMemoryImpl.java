@@ -1,11 +1,14 @@
 package dev.argon.jawawasm.engine;
 
+import dev.argon.jawawasm.format.instructions.MemoryInstr;
+
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
 
 import static java.nio.ByteOrder.LITTLE_ENDIAN;
 
-class WasmMemoryImpl implements WasmMemoryNoResize {
+final class WasmMemoryImpl implements WasmMemoryNoResize {
 
 	WasmMemoryImpl(MemorySegment mem) {
 		this.mem = mem;
@@ -13,6 +16,27 @@ class WasmMemoryImpl implements WasmMemoryNoResize {
 
 	private final MemorySegment mem;
 
+	// WebAssembly does not require accesses to be aligned, even when the alignment hint of the instruction says they are.
+	// The Aligned variants of the accesses check the address and use an aligned layout when they can. See MemoryAccessBenchmark.
+	private static final ValueLayout.OfShort I16 = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(LITTLE_ENDIAN);
+	private static final ValueLayout.OfInt I32 = ValueLayout.JAVA_INT_UNALIGNED.withOrder(LITTLE_ENDIAN);
+	private static final ValueLayout.OfLong I64 = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(LITTLE_ENDIAN);
+	private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(LITTLE_ENDIAN);
+	private static final ValueLayout.OfDouble F64 = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(LITTLE_ENDIAN);
+
+	// Atomic accesses are aligned, so they can also use the atomic access modes of VarHandles.
+	// Only 32-bit and 64-bit values support compare and exchange, so narrower values are updated through the word that contains them.
+	private static final ValueLayout.OfByte ALIGNED_I8 = ValueLayout.JAVA_BYTE;
+	private static final ValueLayout.OfShort ALIGNED_I16 = ValueLayout.JAVA_SHORT.withOrder(LITTLE_ENDIAN);
+	private static final ValueLayout.OfInt ALIGNED_I32 = ValueLayout.JAVA_INT.withOrder(LITTLE_ENDIAN);
+	private static final ValueLayout.OfLong ALIGNED_I64 = ValueLayout.JAVA_LONG.withOrder(LITTLE_ENDIAN).withByteAlignment(8);
+	private static final ValueLayout.OfFloat ALIGNED_F32 = ValueLayout.JAVA_FLOAT.withOrder(LITTLE_ENDIAN);
+	private static final ValueLayout.OfDouble ALIGNED_F64 = ValueLayout.JAVA_DOUBLE.withOrder(LITTLE_ENDIAN).withByteAlignment(8);
+	private static final VarHandle ATOMIC_I8 = ALIGNED_I8.varHandle();
+	private static final VarHandle ATOMIC_I16 = ALIGNED_I16.varHandle();
+	private static final VarHandle ATOMIC_I32 = ALIGNED_I32.varHandle();
+	private static final VarHandle ATOMIC_I64 = ALIGNED_I64.varHandle();
+
 	@Override
 	public int byteSize() {
 		return (int)mem.byteSize();
@@ -29,50 +53,235 @@ class WasmMemoryImpl implements WasmMemoryNoResize {
 	}
 	@Override
 	public short loadI16(int address) {
-		return mem.get(ValueLayout.JAVA_SHORT.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address);
+		return mem.get(I16, address);
 	}
 	@Override
 	public int loadI32(int address) {
-		return mem.get(ValueLayout.JAVA_INT.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address);
+		return mem.get(I32, address);
 	}
 	@Override
 	public long loadI64(int address) {
-		return mem.get(ValueLayout.JAVA_LONG.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address);
+		return mem.get(I64, address);
 	}
 
 	@Override
 	public float loadF32(int address) {
-		return mem.get(ValueLayout.JAVA_FLOAT.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address);
+		return mem.get(F32, address);
 	}
 	@Override
 	public double loadF64(int address) {
-		return mem.get(ValueLayout.JAVA_DOUBLE.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address);
+		return mem.get(F64, address);
+	}
+
+	@Override
+	public short loadI16Aligned(int address) {
+		return (address & 1) == 0 ? mem.get(ALIGNED_I16, address) : mem.get(I16, address);
+	}
+	@Override
+	public int loadI32Aligned(int address) {
+		return (address & 3) == 0 ? mem.get(ALIGNED_I32, address) : mem.get(I32, address);
+	}
+	@Override
+	public long loadI64Aligned(int address) {
+		return (address & 7) == 0 ? mem.get(ALIGNED_I64, address) : mem.get(I64, address);
+	}
+	@Override
+	public float loadF32Aligned(int address) {
+		return (address & 3) == 0 ? mem.get(ALIGNED_F32, address) : mem.get(F32, address);
+	}
+	@Override
+	public double loadF64Aligned(int address) {
+		return (address & 7) == 0 ? mem.get(ALIGNED_F64, address) : mem.get(F64, address);
 	}
 
 	@Override
 	public void storeI8(int address, byte value) {
-		mem.set(ValueLayout.JAVA_BYTE.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address, value);
+		mem.set(ValueLayout.JAVA_BYTE, address, value);
 	}
 	@Override
 	public void storeI16(int address, short value) {
-		mem.set(ValueLayout.JAVA_SHORT.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address, value);
+		mem.set(I16, address, value);
 	}
 	@Override
 	public void storeI32(int address, int value) {
-		mem.set(ValueLayout.JAVA_INT.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address, value);
+		mem.set(I32, address, value);
 	}
 	@Override
 	public void storeI64(int address, long value) {
-		mem.set(ValueLayout.JAVA_LONG.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address, value);
+		mem.set(I64, address, value);
 	}
 
 	@Override
 	public void storeF32(int address, float value) {
-		mem.set(ValueLayout.JAVA_FLOAT.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address, value);
+		mem.set(F32, address, value);
 	}
 	@Override
 	public void storeF64(int address, double value) {
-		mem.set(ValueLayout.JAVA_DOUBLE.withOrder(LITTLE_ENDIAN).withByteAlignment(1), address, value);
+		mem.set(F64, address, value);
+	}
+
+	@Override
+	public void storeI16Aligned(int address, short value) {
+		if((address & 1) == 0) {
+			mem.set(ALIGNED_I16, address, value);
+		}
+		else {
+			mem.set(I16, address, value);
+		}
+	}
+	@Override
+	public void storeI32Aligned(int address, int value) {
+		if((address & 3) == 0) {
+			mem.set(ALIGNED_I32, address, value);
+		}
+		else {
+			mem.set(I32, address, value);
+		}
+	}
+	@Override
+	public void storeI64Aligned(int address, long value) {
+		if((address & 7) == 0) {
+			mem.set(ALIGNED_I64, address, value);
+		}
+		else {
+			mem.set(I64, address, value);
+		}
+	}
+	@Override
+	public void storeF32Aligned(int address, float value) {
+		if((address & 3) == 0) {
+			mem.set(ALIGNED_F32, address, value);
+		}
+		else {
+			mem.set(F32, address, value);
+		}
+	}
+	@Override
+	public void storeF64Aligned(int address, double value) {
+		if((address & 7) == 0) {
+			mem.set(ALIGNED_F64, address, value);
+		}
+		else {
+			mem.set(F64, address, value);
+		}
+	}
+
+	@Override
+	public byte atomicLoadI8(int address) {
+		return (byte)ATOMIC_I8.getVolatile(mem, (long)address);
+	}
+	@Override
+	public short atomicLoadI16(int address) {
+		return (short)ATOMIC_I16.getVolatile(mem, (long)address);
+	}
+	@Override
+	public int atomicLoadI32(int address) {
+		return (int)ATOMIC_I32.getVolatile(mem, (long)address);
+	}
+	@Override
+	public long atomicLoadI64(int address) {
+		return (long)ATOMIC_I64.getVolatile(mem, (long)address);
+	}
+
+	@Override
+	public void atomicStoreI8(int address, byte value) {
+		ATOMIC_I8.setVolatile(mem, (long)address, value);
+	}
+	@Override
+	public void atomicStoreI16(int address, short value) {
+		ATOMIC_I16.setVolatile(mem, (long)address, value);
+	}
+	@Override
+	public void atomicStoreI32(int address, int value) {
+		ATOMIC_I32.setVolatile(mem, (long)address, value);
+	}
+	@Override
+	public void atomicStoreI64(int address, long value) {
+		ATOMIC_I64.setVolatile(mem, (long)address, value);
+	}
+
+	@Override
+	public byte atomicRmwI8(MemoryInstr.AtomicRmwOp op, int address, byte value) {
+		return (byte)atomicRmwNarrow(op, address, 0xFF, value);
+	}
+	@Override
+	public short atomicRmwI16(MemoryInstr.AtomicRmwOp op, int address, short value) {
+		return (short)atomicRmwNarrow(op, address, 0xFFFF, value);
+	}
+	@Override
+	public int atomicRmwI32(MemoryInstr.AtomicRmwOp op, int address, int value) {
+		return switch(op) {
+			case ADD -> (int)ATOMIC_I32.getAndAdd(mem, (long)address, value);
+			case SUB -> (int)ATOMIC_I32.getAndAdd(mem, (long)address, -value);
+			case AND -> (int)ATOMIC_I32.getAndBitwiseAnd(mem, (long)address, value);
+			case OR -> (int)ATOMIC_I32.getAndBitwiseOr(mem, (long)address, value);
+			case XOR -> (int)ATOMIC_I32.getAndBitwiseXor(mem, (long)address, value);
+			case XCHG -> (int)ATOMIC_I32.getAndSet(mem, (long)address, value);
+		};
+	}
+	@Override
+	public long atomicRmwI64(MemoryInstr.AtomicRmwOp op, int address, long value) {
+		return switch(op) {
+			case ADD -> (long)ATOMIC_I64.getAndAdd(mem, (long)address, value);
+			case SUB -> (long)ATOMIC_I64.getAndAdd(mem, (long)address, -value);
+			case AND -> (long)ATOMIC_I64.getAndBitwiseAnd(mem, (long)address, value);
+			case OR -> (long)ATOMIC_I64.getAndBitwiseOr(mem, (long)address, value);
+			case XOR -> (long)ATOMIC_I64.getAndBitwiseXor(mem, (long)address, value);
+			case XCHG -> (long)ATOMIC_I64.getAndSet(mem, (long)address, value);
+		};
+	}
+
+	@Override
+	public byte atomicCompareExchangeI8(int address, byte expected, byte replacement) {
+		return (byte)atomicCompareExchangeNarrow(address, 0xFF, expected, replacement);
+	}
+	@Override
+	public short atomicCompareExchangeI16(int address, short expected, short replacement) {
+		return (short)atomicCompareExchangeNarrow(address, 0xFFFF, expected, replacement);
+	}
+	@Override
+	public int atomicCompareExchangeI32(int address, int expected, int replacement) {
+		return (int)ATOMIC_I32.compareAndExchange(mem, (long)address, expected, replacement);
+	}
+	@Override
+	public long atomicCompareExchangeI64(int address, long expected, long replacement) {
+		return (long)ATOMIC_I64.compareAndExchange(mem, (long)address, expected, replacement);
+	}
+
+	// The memory is little endian, so the value is shifted by its offset in the word.
+	private int atomicRmwNarrow(MemoryInstr.AtomicRmwOp op, int address, int valueMask, int value) {
+		long wordAddress = address & ~3;
+		int shift = (address & 3) * 8;
+		int mask = valueMask << shift;
+		int word = (int)ATOMIC_I32.getVolatile(mem, wordAddress);
+		while(true) {
+			int old = (word & mask) >>> shift;
+			int updated = (int)Util.applyAtomicRmw(op, old, value) << shift;
+			int witness = (int)ATOMIC_I32.compareAndExchange(mem, wordAddress, word, (word & ~mask) | (updated & mask));
+			if(witness == word) {
+				return old;
+			}
+			word = witness;
+		}
+	}
+
+	private int atomicCompareExchangeNarrow(int address, int valueMask, int expected, int replacement) {
+		long wordAddress = address & ~3;
+		int shift = (address & 3) * 8;
+		int mask = valueMask << shift;
+		int word = (int)ATOMIC_I32.getVolatile(mem, wordAddress);
+		while(true) {
+			int old = (word & mask) >>> shift;
+			if(old != (expected & valueMask)) {
+				return old;
+			}
+
+			int witness = (int)ATOMIC_I32.compareAndExchange(mem, wordAddress, word, (word & ~mask) | ((replacement << shift) & mask));
+			if(witness == word) {
+				return old;
+			}
+			word = witness;
+		}
 	}
 
 	@Override
@@ -86,4 +295,27 @@ class WasmMemoryImpl implements WasmMemoryNoResize {
 		var dest = MemorySegment.ofArray(data);
 		dest.asSlice(offset, length).copyFrom(mem.asSlice(address, length));
 	}
+
+	// The bulk operations rely on the bounds checks of MemorySegment.
+	// Addresses above 2 GiB are negative and are rejected in the same way as addresses past the end.
+
+	@Override
+	public void fill(int address, byte value, int length) {
+		mem.asSlice(address, length).fill(value);
+	}
+
+	@Override
+	public void copyWithin(int destination, int source, int length) {
+		MemorySegment.copy(mem, source, mem, destination, length);
+	}
+
+	@Override
+	public void copyTo(int source, WasmMemoryNoResize memory, int destination, int length) {
+		if(memory instanceof WasmMemoryImpl other) {
+			MemorySegment.copy(mem, source, other.mem, destination, length);
+		}
+		else {
+			WasmMemoryNoResize.super.copyTo(source, memory, destination, length);
+		}
+	}
 }
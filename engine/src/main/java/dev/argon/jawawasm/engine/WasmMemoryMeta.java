@@ -1,24 +1,156 @@
 package dev.argon.jawawasm.engine;
 
 import dev.argon.jawawasm.format.data.V128;
+import dev.argon.jawawasm.format.instructions.MemoryInstr;
 import dev.argon.jawawasm.format.types.MemType;
 import dev.argon.jawawasm.format.types.Limits;
+import org.jspecify.annotations.Nullable;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
 final class WasmMemoryMeta implements WasmMemory {
 
-	public WasmMemoryMeta(Engine engine, Integer maxSize, WasmMemoryNoResize mem) {
+	// The memory owns the arena, which is closed if the memory would exceed the memory budget.
+	// A shared memory must have a reservation that covers its maximum size, so that it is never copied.
+	public WasmMemoryMeta(Engine engine, Arena arena, @Nullable Integer maxSize, boolean shared, @Nullable MemoryReservation reserved, int pages) {
+		if(!engine.chargeMemoryBudget((long)pages * Util.PAGE_SIZE)) {
+			arena.close();
+			throw new MemoryBudgetExceededException();
+		}
+
 		this.engine = engine;
+		this.arena = arena;
 		this.maxSize = maxSize;
-		this.mem = mem;
+		this.shared = shared;
+		this.reserved = reserved;
+		try {
+			mem = reserved != null
+				? new WasmMemoryImpl(reserved.segment().asSlice(0, (long)pages * Util.PAGE_SIZE))
+				: engine.allocateMemory(pages, arena);
+		}
+		catch(Throwable ex) {
+			engine.refundMemoryBudget((long)pages * Util.PAGE_SIZE);
+			arena.close();
+			throw ex;
+		}
+		engine.addMemory(this);
+	}
+
+	/**
+	 * Creates a memory in address space reserved for it to grow into.
+	 * @param engine The engine that will be using the memory.
+	 * @param memType The type of the memory.
+	 * @return The memory.
+	 * @throws MemoryBudgetExceededException if the memory would exceed the memory budget of the engine.
+	 */
+	public static WasmMemoryMeta create(Engine engine, MemType memType) {
+		var limits = memType.limits();
+		if(memType.shared() && limits.max() == null) {
+			throw new IllegalArgumentException("Shared memory must have a maximum size");
+		}
+
+		// Memories that cannot grow are allocated directly.
+		int reservePages = reservationPages(engine, memType);
+		var arena = Arena.ofShared();
+		MemoryReservation reserved = null;
+		if(reservePages > limits.min()) {
+			reserved = engine.reserveMemory(reservePages, arena);
+			if(reserved != null && !reserved.commit(0, (long)limits.min() * Util.PAGE_SIZE)) {
+				reserved = null;
+			}
+		}
+
+		// Without address space to grow into, a shared memory is allocated at its maximum size.
+		// Only the pages within the size of the memory are charged to the memory budget.
+		if(memType.shared() && reserved == null) {
+			var segment = engine.allocateSegment((long)reservePages * Util.PAGE_SIZE, arena);
+			reserved = new Preallocated(segment);
+		}
+
+		return new WasmMemoryMeta(engine, arena, limits.max(), memType.shared(), reserved, limits.min());
+	}
+
+	// A reservation that is allocated up front, so that committing does nothing.
+	private record Preallocated(MemorySegment segment) implements MemoryReservation {
+		@Override
+		public boolean commit(long offset, long bytes) {
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the number of pages to reserve for a memory.
+	 * Shared memories reserve their maximum size.
+	 * @param engine The engine that will be using the memory.
+	 * @param memType The type of the memory.
+	 * @return The number of pages.
+	 */
+	public static int reservationPages(Engine engine, MemType memType) {
+		var maxSize = memType.limits().max();
+		int reservePages = memType.shared() ? Integer.MAX_VALUE : engine.getMemoryReservation();
+		if(maxSize != null) {
+			reservePages = Math.min(reservePages, maxSize);
+		}
+		int engineMemoryLimit = engine.getMaxMemory();
+		if(engineMemoryLimit > 0) {
+			reservePages = Math.min(reservePages, engineMemoryLimit);
+		}
+		return reservePages;
 	}
 
 	private final Engine engine;
-	private final Integer maxSize;
-	private WasmMemoryNoResize mem;
+	private final @Nullable Integer maxSize;
+	private final boolean shared;
+
+	// Read without locking by threads that share the memory.
+	private volatile WasmMemoryNoResize mem;
+
+	// Serializes growing the memory, which threads that share the memory may do concurrently.
+	private final ReentrantLock growLock = new ReentrantLock();
+
+	// Threads waiting on the memory by address, in the order that they started waiting.
+	// Only used for shared memories.
+	private final ReentrantLock waitLock = new ReentrantLock();
+	private final Map<Integer, Queue<Waiter>> waiters = new HashMap<>();
+
+	private static final class Waiter {
+		Waiter(Thread thread) {
+			this.thread = thread;
+		}
+
+		final Thread thread;
+
+		// Set with the wait lock held.
+		volatile boolean notified = false;
+	}
+
+	// Held by the instance or host that created the memory and by each instance that imports it.
+	private final AtomicInteger references = new AtomicInteger(1);
+
+	// Owns the current memory, and is replaced when the memory is copied to grow it.
+	private Arena arena;
+
+	// The address space that the memory grows into, or null if the memory is copied when it grows.
+	private @Nullable MemoryReservation reserved;
+
+	// The current memory, which is replaced when the memory grows.
+	// Code running on other threads must see a shared memory grow, so it always goes through this object instead.
+	WasmMemoryNoResize buffer() {
+		return shared ? this : mem;
+	}
 
 	@Override
 	public MemType type() {
-		return new MemType(new Limits(mem.pageSize(), maxSize));
+		return new MemType(new Limits(mem.pageSize(), maxSize), shared);
 	}
 
 	@Override
@@ -61,6 +193,31 @@ final class WasmMemoryMeta implements WasmMemory {
 		return mem.loadF64(address);
 	}
 
+	@Override
+	public short loadI16Aligned(int address) {
+		return mem.loadI16Aligned(address);
+	}
+
+	@Override
+	public int loadI32Aligned(int address) {
+		return mem.loadI32Aligned(address);
+	}
+
+	@Override
+	public long loadI64Aligned(int address) {
+		return mem.loadI64Aligned(address);
+	}
+
+	@Override
+	public float loadF32Aligned(int address) {
+		return mem.loadF32Aligned(address);
+	}
+
+	@Override
+	public double loadF64Aligned(int address) {
+		return mem.loadF64Aligned(address);
+	}
+
 	@Override
 	public V128 loadV128(int address) {
 		return mem.loadV128(address);
@@ -96,9 +253,257 @@ final class WasmMemoryMeta implements WasmMemory {
 		mem.storeF64(address, value);
 	}
 
+	@Override
+	public void storeI16Aligned(int address, short value) {
+		mem.storeI16Aligned(address, value);
+	}
+
+	@Override
+	public void storeI32Aligned(int address, int value) {
+		mem.storeI32Aligned(address, value);
+	}
+
+	@Override
+	public void storeI64Aligned(int address, long value) {
+		mem.storeI64Aligned(address, value);
+	}
+
+	@Override
+	public void storeF32Aligned(int address, float value) {
+		mem.storeF32Aligned(address, value);
+	}
+
+	@Override
+	public void storeF64Aligned(int address, double value) {
+		mem.storeF64Aligned(address, value);
+	}
+
+	@Override
+	public void fill(int address, byte value, int length) {
+		mem.fill(address, value, length);
+	}
+
+	@Override
+	public void copyWithin(int destination, int source, int length) {
+		mem.copyWithin(destination, source, length);
+	}
+
+	@Override
+	public void copyTo(int source, WasmMemoryNoResize memory, int destination, int length) {
+		if(memory instanceof WasmMemoryMeta meta) {
+			memory = meta.mem;
+		}
+		mem.copyTo(source, memory, destination, length);
+	}
+
+	@Override
+	public void copyFromArray(int address, int offset, int length, byte[] data) {
+		mem.copyFromArray(address, offset, length, data);
+	}
+
+	@Override
+	public void copyToArray(int address, int offset, int length, byte[] data) {
+		mem.copyToArray(address, offset, length, data);
+	}
+
+	@Override
+	public byte atomicLoadI8(int address) {
+		return mem.atomicLoadI8(address);
+	}
+
+	@Override
+	public short atomicLoadI16(int address) {
+		return mem.atomicLoadI16(address);
+	}
+
+	@Override
+	public int atomicLoadI32(int address) {
+		return mem.atomicLoadI32(address);
+	}
+
+	@Override
+	public long atomicLoadI64(int address) {
+		return mem.atomicLoadI64(address);
+	}
+
+	@Override
+	public void atomicStoreI8(int address, byte value) {
+		mem.atomicStoreI8(address, value);
+	}
+
+	@Override
+	public void atomicStoreI16(int address, short value) {
+		mem.atomicStoreI16(address, value);
+	}
+
+	@Override
+	public void atomicStoreI32(int address, int value) {
+		mem.atomicStoreI32(address, value);
+	}
+
+	@Override
+	public void atomicStoreI64(int address, long value) {
+		mem.atomicStoreI64(address, value);
+	}
+
+	@Override
+	public byte atomicRmwI8(MemoryInstr.AtomicRmwOp op, int address, byte value) {
+		return mem.atomicRmwI8(op, address, value);
+	}
+
+	@Override
+	public short atomicRmwI16(MemoryInstr.AtomicRmwOp op, int address, short value) {
+		return mem.atomicRmwI16(op, address, value);
+	}
+
+	@Override
+	public int atomicRmwI32(MemoryInstr.AtomicRmwOp op, int address, int value) {
+		return mem.atomicRmwI32(op, address, value);
+	}
+
+	@Override
+	public long atomicRmwI64(MemoryInstr.AtomicRmwOp op, int address, long value) {
+		return mem.atomicRmwI64(op, address, value);
+	}
+
+	@Override
+	public byte atomicCompareExchangeI8(int address, byte expected, byte replacement) {
+		return mem.atomicCompareExchangeI8(address, expected, replacement);
+	}
+
+	@Override
+	public short atomicCompareExchangeI16(int address, short expected, short replacement) {
+		return mem.atomicCompareExchangeI16(address, expected, replacement);
+	}
+
+	@Override
+	public int atomicCompareExchangeI32(int address, int expected, int replacement) {
+		return mem.atomicCompareExchangeI32(address, expected, replacement);
+	}
+
+	@Override
+	public long atomicCompareExchangeI64(int address, long expected, long replacement) {
+		return mem.atomicCompareExchangeI64(address, expected, replacement);
+	}
+
+	@Override
+	public int atomicWait32(int address, int expected, long timeout) throws UnsharedMemoryException, InterruptedException {
+		return atomicWait(address, () -> mem.atomicLoadI32(address) == expected, timeout);
+	}
+
+	@Override
+	public int atomicWait64(int address, long expected, long timeout) throws UnsharedMemoryException, InterruptedException {
+		return atomicWait(address, () -> mem.atomicLoadI64(address) == expected, timeout);
+	}
+
+	private int atomicWait(int address, BooleanSupplier matches, long timeout) throws UnsharedMemoryException, InterruptedException {
+		if(!shared) {
+			throw new UnsharedMemoryException();
+		}
+
+		// The value is compared with the lock held, so a notify that follows a store of a different value cannot be missed.
+		var waiter = new Waiter(Thread.currentThread());
+		waitLock.lock();
+		try {
+			if(!matches.getAsBoolean()) {
+				return 1;
+			}
+			waiters.computeIfAbsent(address, key -> new ArrayDeque<>()).add(waiter);
+		}
+		finally {
+			waitLock.unlock();
+		}
+
+		long deadline = System.nanoTime() + timeout;
+		boolean interrupted = false;
+		while(!waiter.notified) {
+			if(Thread.interrupted()) {
+				interrupted = true;
+				break;
+			}
+
+			if(timeout < 0) {
+				LockSupport.park(this);
+			}
+			else {
+				long remaining = deadline - System.nanoTime();
+				if(remaining <= 0) {
+					break;
+				}
+				LockSupport.parkNanos(this, remaining);
+			}
+		}
+
+		// The thread may have been notified after it stopped waiting.
+		waitLock.lock();
+		try {
+			if(waiter.notified) {
+				if(interrupted) {
+					Thread.currentThread().interrupt();
+				}
+				return 0;
+			}
+
+			var queue = waiters.get(address);
+			queue.remove(waiter);
+			if(queue.isEmpty()) {
+				waiters.remove(address);
+			}
+		}
+		finally {
+			waitLock.unlock();
+		}
+
+		if(interrupted) {
+			throw new InterruptedException();
+		}
+		return 2;
+	}
+
+	@Override
+	public int atomicNotify(int address, int count) {
+		if(!shared) {
+			return 0;
+		}
+
+		waitLock.lock();
+		try {
+			var queue = waiters.get(address);
+			if(queue == null) {
+				return 0;
+			}
+
+			// The count is unsigned.
+			int woken = 0;
+			Waiter waiter;
+			while(Integer.compareUnsigned(woken, count) < 0 && (waiter = queue.poll()) != null) {
+				waiter.notified = true;
+				LockSupport.unpark(waiter.thread);
+				++woken;
+			}
+
+			if(queue.isEmpty()) {
+				waiters.remove(address);
+			}
+			return woken;
+		}
+		finally {
+			waitLock.unlock();
+		}
+	}
 
 	@Override
 	public int grow(int pages) {
+		growLock.lock();
+		try {
+			return growLocked(pages);
+		}
+		finally {
+			growLock.unlock();
+		}
+	}
+
+	private int growLocked(int pages) {
 		int oldPages = mem.pageSize();
 		var newPages = oldPages + pages;
 		if(pages < 0 || newPages < 0 || (maxSize != null && maxSize < newPages)) {
@@ -110,12 +515,76 @@ final class WasmMemoryMeta implements WasmMemory {
 			return -1;
 		}
 
-		var newMem = engine.allocateMemory(newPages);
-		for(int address = 0; address < mem.byteSize(); address += 8) {
-			newMem.storeI64(address, mem.loadI64(address));
+		long oldBytes = (long)oldPages * Util.PAGE_SIZE;
+		long newBytes = (long)newPages * Util.PAGE_SIZE;
+		if(!engine.chargeMemoryBudget(newBytes - oldBytes)) {
+			return -1;
+		}
+
+		if(reserved != null && newBytes <= reserved.segment().byteSize()) {
+			if(!reserved.commit(oldBytes, newBytes - oldBytes)) {
+				engine.refundMemoryBudget(newBytes - oldBytes);
+				return -1;
+			}
+
+			mem = new WasmMemoryImpl(reserved.segment().asSlice(0, newBytes));
+			return oldPages;
+		}
+
+		// Other threads may be accessing a shared memory, so it cannot be copied.
+		if(shared) {
+			engine.refundMemoryBudget(newBytes - oldBytes);
+			return -1;
+		}
+
+		// The charge is refunded if the allocator fails, so that failed grows do not use up the budget.
+		var newArena = Arena.ofShared();
+		WasmMemoryNoResize newMem;
+		try {
+			newMem = engine.allocateMemory(newPages, newArena);
+			mem.copyTo(0, newMem, 0, mem.byteSize());
+		}
+		catch(RuntimeException | OutOfMemoryError ex) {
+			engine.refundMemoryBudget(newBytes - oldBytes);
+			newArena.close();
+			return -1;
 		}
 
+		var oldArena = arena;
 		mem = newMem;
+		arena = newArena;
+		reserved = null;
+
+		// Code that still holds the old memory fails with an IllegalStateException rather than reading freed memory.
+		oldArena.close();
 		return oldPages;
 	}
+
+	// Called when an instance imports the memory, which keeps it from being released until the instance is closed.
+	// Returns false if the memory has already been released.
+	boolean retain() {
+		int count;
+		do {
+			count = references.get();
+			if(count == 0) {
+				return false;
+			}
+		} while(!references.compareAndSet(count, count + 1));
+		return true;
+	}
+
+	@Override
+	public void close() {
+		if(references.updateAndGet(count -> Math.max(count - 1, 0)) == 0) {
+			release();
+		}
+	}
+
+	// Releases the memory regardless of its references, which the engine does when it is closed.
+	void release() {
+		if(engine.removeMemory(this)) {
+			engine.refundMemoryBudget(mem.byteSize());
+			arena.close();
+		}
+	}
 }
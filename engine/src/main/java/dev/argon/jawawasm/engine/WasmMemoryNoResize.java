@@ -1,6 +1,7 @@
 package dev.argon.jawawasm.engine;
 
 import dev.argon.jawawasm.format.data.V128;
+import dev.argon.jawawasm.format.instructions.MemoryInstr;
 import dev.argon.jawawasm.format.modules.Data;
 
 /**
@@ -61,6 +62,54 @@ public interface WasmMemoryNoResize {
 	 */
 	double loadF64(int address);
 
+	// The Aligned variants are used when the alignment hint of the instruction is the natural alignment of the value.
+	// The address is usually aligned then, but it does not have to be.
+
+	/**
+	 * Reads a 16-bit value whose address is expected to be naturally aligned.
+	 * @param address The address to read.
+	 * @return The value.
+	 */
+	default short loadI16Aligned(int address) {
+		return loadI16(address);
+	}
+
+	/**
+	 * Reads a 32-bit value whose address is expected to be naturally aligned.
+	 * @param address The address to read.
+	 * @return The value.
+	 */
+	default int loadI32Aligned(int address) {
+		return loadI32(address);
+	}
+
+	/**
+	 * Reads a 64-bit value whose address is expected to be naturally aligned.
+	 * @param address The address to read.
+	 * @return The value.
+	 */
+	default long loadI64Aligned(int address) {
+		return loadI64(address);
+	}
+
+	/**
+	 * Reads a 32-bit float value whose address is expected to be naturally aligned.
+	 * @param address The address to read.
+	 * @return The value.
+	 */
+	default float loadF32Aligned(int address) {
+		return loadF32(address);
+	}
+
+	/**
+	 * Reads a 64-bit float value whose address is expected to be naturally aligned.
+	 * @param address The address to read.
+	 * @return The value.
+	 */
+	default double loadF64Aligned(int address) {
+		return loadF64(address);
+	}
+
 
 	/**
 	 * Reads a V128 value.
@@ -118,6 +167,51 @@ public interface WasmMemoryNoResize {
 	 */
 	void storeF64(int address, double value);
 
+	/**
+	 * Stores a 16-bit value whose address is expected to be naturally aligned.
+	 * @param address The address to read.
+	 * @param value The value.
+	 */
+	default void storeI16Aligned(int address, short value) {
+		storeI16(address, value);
+	}
+
+	/**
+	 * Stores a 32-bit value whose address is expected to be naturally aligned.
+	 * @param address The address to read.
+	 * @param value The value.
+	 */
+	default void storeI32Aligned(int address, int value) {
+		storeI32(address, value);
+	}
+
+	/**
+	 * Stores a 64-bit value whose address is expected to be naturally aligned.
+	 * @param address The address to read.
+	 * @param value The value.
+	 */
+	default void storeI64Aligned(int address, long value) {
+		storeI64(address, value);
+	}
+
+	/**
+	 * Stores a 32-bit float value whose address is expected to be naturally aligned.
+	 * @param address The address to read.
+	 * @param value The value.
+	 */
+	default void storeF32Aligned(int address, float value) {
+		storeF32(address, value);
+	}
+
+	/**
+	 * Stores a 64-bit float value whose address is expected to be naturally aligned.
+	 * @param address The address to read.
+	 * @param value The value.
+	 */
+	default void storeF64Aligned(int address, double value) {
+		storeF64(address, value);
+	}
+
 	/**
 	 * Stores a V128 value.
 	 * @param address The address to read.
@@ -129,6 +223,225 @@ public interface WasmMemoryNoResize {
 		}
 	}
 
+	// The atomic operations default to locking the memory, which is only atomic with respect to other atomic operations on the same object.
+	// Addresses must be naturally aligned.
+
+	/**
+	 * Atomically reads an 8-bit value.
+	 * @param address The address to read, which must be aligned.
+	 * @return The value.
+	 */
+	default byte atomicLoadI8(int address) {
+		synchronized(this) {
+			return loadI8(address);
+		}
+	}
+
+	/**
+	 * Atomically reads a 16-bit value.
+	 * @param address The address to read, which must be aligned.
+	 * @return The value.
+	 */
+	default short atomicLoadI16(int address) {
+		synchronized(this) {
+			return loadI16(address);
+		}
+	}
+
+	/**
+	 * Atomically reads a 32-bit value.
+	 * @param address The address to read, which must be aligned.
+	 * @return The value.
+	 */
+	default int atomicLoadI32(int address) {
+		synchronized(this) {
+			return loadI32(address);
+		}
+	}
+
+	/**
+	 * Atomically reads a 64-bit value.
+	 * @param address The address to read, which must be aligned.
+	 * @return The value.
+	 */
+	default long atomicLoadI64(int address) {
+		synchronized(this) {
+			return loadI64(address);
+		}
+	}
+
+	/**
+	 * Atomically stores an 8-bit value.
+	 * @param address The address to write, which must be aligned.
+	 * @param value The value.
+	 */
+	default void atomicStoreI8(int address, byte value) {
+		synchronized(this) {
+			storeI8(address, value);
+		}
+	}
+
+	/**
+	 * Atomically stores a 16-bit value.
+	 * @param address The address to write, which must be aligned.
+	 * @param value The value.
+	 */
+	default void atomicStoreI16(int address, short value) {
+		synchronized(this) {
+			storeI16(address, value);
+		}
+	}
+
+	/**
+	 * Atomically stores a 32-bit value.
+	 * @param address The address to write, which must be aligned.
+	 * @param value The value.
+	 */
+	default void atomicStoreI32(int address, int value) {
+		synchronized(this) {
+			storeI32(address, value);
+		}
+	}
+
+	/**
+	 * Atomically stores a 64-bit value.
+	 * @param address The address to write, which must be aligned.
+	 * @param value The value.
+	 */
+	default void atomicStoreI64(int address, long value) {
+		synchronized(this) {
+			storeI64(address, value);
+		}
+	}
+
+	/**
+	 * Atomically reads an 8-bit value and replaces it with the result of an operation.
+	 * @param op The operation.
+	 * @param address The address, which must be aligned.
+	 * @param value The operand of the operation.
+	 * @return The old value.
+	 */
+	default byte atomicRmwI8(MemoryInstr.AtomicRmwOp op, int address, byte value) {
+		synchronized(this) {
+			byte old = loadI8(address);
+			storeI8(address, (byte)Util.applyAtomicRmw(op, old, value));
+			return old;
+		}
+	}
+
+	/**
+	 * Atomically reads a 16-bit value and replaces it with the result of an operation.
+	 * @param op The operation.
+	 * @param address The address, which must be aligned.
+	 * @param value The operand of the operation.
+	 * @return The old value.
+	 */
+	default short atomicRmwI16(MemoryInstr.AtomicRmwOp op, int address, short value) {
+		synchronized(this) {
+			short old = loadI16(address);
+			storeI16(address, (short)Util.applyAtomicRmw(op, old, value));
+			return old;
+		}
+	}
+
+	/**
+	 * Atomically reads a 32-bit value and replaces it with the result of an operation.
+	 * @param op The operation.
+	 * @param address The address, which must be aligned.
+	 * @param value The operand of the operation.
+	 * @return The old value.
+	 */
+	default int atomicRmwI32(MemoryInstr.AtomicRmwOp op, int address, int value) {
+		synchronized(this) {
+			int old = loadI32(address);
+			storeI32(address, (int)Util.applyAtomicRmw(op, old, value));
+			return old;
+		}
+	}
+
+	/**
+	 * Atomically reads a 64-bit value and replaces it with the result of an operation.
+	 * @param op The operation.
+	 * @param address The address, which must be aligned.
+	 * @param value The operand of the operation.
+	 * @return The old value.
+	 */
+	default long atomicRmwI64(MemoryInstr.AtomicRmwOp op, int address, long value) {
+		synchronized(this) {
+			long old = loadI64(address);
+			storeI64(address, Util.applyAtomicRmw(op, old, value));
+			return old;
+		}
+	}
+
+	/**
+	 * Atomically replaces an 8-bit value if it is equal to an expected value.
+	 * @param address The address, which must be aligned.
+	 * @param expected The expected value.
+	 * @param replacement The value to store if the value is equal to the expected value.
+	 * @return The old value.
+	 */
+	default byte atomicCompareExchangeI8(int address, byte expected, byte replacement) {
+		synchronized(this) {
+			byte old = loadI8(address);
+			if(old == expected) {
+				storeI8(address, replacement);
+			}
+			return old;
+		}
+	}
+
+	/**
+	 * Atomically replaces a 16-bit value if it is equal to an expected value.
+	 * @param address The address, which must be aligned.
+	 * @param expected The expected value.
+	 * @param replacement The value to store if the value is equal to the expected value.
+	 * @return The old value.
+	 */
+	default short atomicCompareExchangeI16(int address, short expected, short replacement) {
+		synchronized(this) {
+			short old = loadI16(address);
+			if(old == expected) {
+				storeI16(address, replacement);
+			}
+			return old;
+		}
+	}
+
+	/**
+	 * Atomically replaces a 32-bit value if it is equal to an expected value.
+	 * @param address The address, which must be aligned.
+	 * @param expected The expected value.
+	 * @param replacement The value to store if the value is equal to the expected value.
+	 * @return The old value.
+	 */
+	default int atomicCompareExchangeI32(int address, int expected, int replacement) {
+		synchronized(this) {
+			int old = loadI32(address);
+			if(old == expected) {
+				storeI32(address, replacement);
+			}
+			return old;
+		}
+	}
+
+	/**
+	 * Atomically replaces a 64-bit value if it is equal to an expected value.
+	 * @param address The address, which must be aligned.
+	 * @param expected The expected value.
+	 * @param replacement The value to store if the value is equal to the expected value.
+	 * @return The old value.
+	 */
+	default long atomicCompareExchangeI64(int address, long expected, long replacement) {
+		synchronized(this) {
+			long old = loadI64(address);
+			if(old == expected) {
+				storeI64(address, replacement);
+			}
+			return old;
+		}
+	}
+
 	/**
 	 * Initialize the memory.
 	 * @param d The destination address.
@@ -180,4 +493,61 @@ public interface WasmMemoryNoResize {
 		}
 	}
 
+	/**
+	 * Fills a range of memory with a byte value.
+	 * @param address The start address.
+	 * @param value The value to fill.
+	 * @param length The number of bytes to fill.
+	 */
+	default void fill(int address, byte value, int length) {
+		if(!Util.sumInRange(address, length, byteSize())) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		while(length != 0) {
+			storeI8(address, value);
+			++address;
+			--length;
+		}
+	}
+
+	/**
+	 * Copies data within the memory.
+	 * The ranges may overlap.
+	 * @param destination The start address of the destination.
+	 * @param source The start address of the source.
+	 * @param length The number of bytes to copy.
+	 */
+	default void copyWithin(int destination, int source, int length) {
+		copyTo(source, this, destination, length);
+	}
+
+	/**
+	 * Copies data to another memory, or within the same memory.
+	 * The ranges may overlap if both are in the same memory.
+	 * @param source The start address of the source in this memory.
+	 * @param memory The destination memory.
+	 * @param destination The start address of the destination.
+	 * @param length The number of bytes to copy.
+	 */
+	default void copyTo(int source, WasmMemoryNoResize memory, int destination, int length) {
+		if(!Util.sumInRange(source, length, byteSize()) || !Util.sumInRange(destination, length, memory.byteSize())) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		if(destination <= source) {
+			while(length != 0) {
+				memory.storeI8(destination, loadI8(source));
+				++destination;
+				++source;
+				--length;
+			}
+		}
+		else {
+			while(length != 0) {
+				--length;
+				memory.storeI8(destination + length, loadI8(source + length));
+			}
+		}
+	}
 }
@@ -1,7 +1,7 @@
 package dev.argon.jawawasm.engine;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
 
 import dev.argon.jawawasm.format.types.Limits;
 import dev.argon.jawawasm.format.types.RefType;
@@ -19,30 +19,81 @@ public final class WasmTable implements WasmExport {
 	public WasmTable(TableType type) {
 		elementType = type.elementType();
 		maxSize = type.limits().max();
-		values = new ArrayList<>(type.limits().min());
-		for(int i = 0; i < type.limits().min(); ++i) {
-			values.add(null);
+		values = new Object[type.limits().min()];
+	}
+
+	/**
+	 * Creates a table that is charged to the memory budget of an engine until it is released.
+	 * @param engine The engine.
+	 * @param type The table type.
+	 * @return The table.
+	 * @throws MemoryBudgetExceededException if the table would exceed the memory budget of the engine.
+	 */
+	static WasmTable create(Engine engine, TableType type) {
+		if(!engine.chargeMemoryBudget(ELEMENT_BYTES * type.limits().min())) {
+			throw new MemoryBudgetExceededException();
 		}
+
+		var table = new WasmTable(type);
+		table.engine = engine;
+		return table;
 	}
 
+	// Each element is charged as the size of a reference.
+	private static final long ELEMENT_BYTES = 8;
+
 	private final RefType elementType;
 	private final Integer maxSize;
-	private final List<Object> values;
+
+	// The engine whose memory budget the table is charged to, or null if it is not charged. Changed with the lock held.
+	private @Nullable Engine engine;
+
+	// The length of the array is the size of the table. The array is replaced when the table grows.
+	// Elements are read without locking, while changes are made with the lock held so that none are lost by growing.
+	// Host functions are stored as a HostFunction.
+	private volatile Object[] values;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// Incremented whenever an element changes or the table grows.
+	private volatile int version = 0;
+
+	// A host function together with the ID of its type, which is looked up once when the function is stored
+	// so that indirect calls do not intern the type. Functions defined by modules already know their ID.
+	private record HostFunction(WasmFunction function, int typeId) {}
+
+	private static @Nullable Object wrap(@Nullable Object value) {
+		if(value instanceof WasmFunction function && !(function instanceof ModuleFunction)) {
+			return new HostFunction(function, FuncTypeIds.of(function.type()));
+		}
+		return value;
+	}
+
+	private static @Nullable Object unwrap(@Nullable Object element) {
+		return element instanceof HostFunction host ? host.function() : element;
+	}
+
+	private static int typeIdOf(@Nullable Object element) {
+		return switch(element) {
+			case ModuleFunction function -> function.typeId();
+			case HostFunction host -> host.typeId();
+			case null, default -> FuncTypeIds.NONE;
+		};
+	}
 
 	/**
 	 * Gets the table type.
 	 * @return The table type.
 	 */
-	public synchronized TableType type() {
-		return new TableType(new Limits(values.size(), maxSize), elementType);
+	public TableType type() {
+		return new TableType(new Limits(values.length, maxSize), elementType);
 	}
 
 	/**
 	 * Gets the size of the table.
 	 * @return The size of the table.
 	 */
-	public synchronized int size() {
-		return values.size();
+	public int size() {
+		return values.length;
 	}
 
 	/**
@@ -50,8 +101,31 @@ public final class WasmTable implements WasmExport {
 	 * @param i The index.
 	 * @return The element.
 	 */
-	public synchronized Object get(int i) {
-		return values.get(i);
+	public Object get(int i) {
+		return unwrap(values[i]);
+	}
+
+	int version() {
+		return version;
+	}
+
+	/**
+	 * Gets a function for an indirect call.
+	 * @param i The index.
+	 * @param typeId The ID of the expected function type from FuncTypeIds.
+	 * @return The function.
+	 * @throws IndirectCallTypeMismatchException if the element is a function of a different type.
+	 */
+	WasmFunction getFunction(int i, int typeId) throws IndirectCallTypeMismatchException {
+		// The type is taken from the element itself so that it cannot be mismatched by a concurrent change.
+		Object element = values[i];
+		if(typeIdOf(element) != typeId) {
+			if(element == null) {
+				throw new NullPointerException("Uninitialized table element");
+			}
+			throw new IndirectCallTypeMismatchException();
+		}
+		return element instanceof HostFunction host ? host.function() : (WasmFunction)element;
 	}
 
 	/**
@@ -59,8 +133,19 @@ public final class WasmTable implements WasmExport {
 	 * @param i The index.
 	 * @param value The value.
 	 */
-	public synchronized void set(int i, @Nullable Object value) {
-		values.set(i, value);
+	public void set(int i, @Nullable Object value) {
+		setElement(i, wrap(value));
+	}
+
+	private void setElement(int i, @Nullable Object element) {
+		lock.lock();
+		try {
+			values[i] = element;
+			++version;
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -69,18 +154,56 @@ public final class WasmTable implements WasmExport {
 	 * @param value The value to set for new elements.
 	 * @return The old size.
 	 */
-	public synchronized int grow(int n, Object value) {
-		int oldSize = values.size();
+	public int grow(int n, Object value) {
+		Object element = wrap(value);
+		lock.lock();
+		try {
+			int oldSize = values.length;
+
+			if(n < 0 || (maxSize != null && oldSize + n > maxSize) || oldSize + n < 0) {
+				return -1;
+			}
 
-		if(n < 0 || (maxSize != null && oldSize + n > maxSize) || oldSize + n < 0) {
-			return -1;
+			int newSize = oldSize + n;
+			if(engine != null && !engine.chargeMemoryBudget(ELEMENT_BYTES * n)) {
+				return -1;
+			}
+
+			var newValues = Arrays.copyOf(values, newSize);
+			Arrays.fill(newValues, oldSize, newSize, element);
+			values = newValues;
+			++version;
+
+			return oldSize;
 		}
+		finally {
+			lock.unlock();
+		}
+	}
 
-		for(int i = 0; i < n; ++i) {
-			values.add(value);
+	// The number of bytes charged to the memory budget of the engine.
+	long chargedBytes() {
+		lock.lock();
+		try {
+			return engine != null ? ELEMENT_BYTES * values.length : 0;
 		}
+		finally {
+			lock.unlock();
+		}
+	}
 
-		return oldSize;
+	// Refunds the table to the memory budget when its instance is closed. The table stays usable, but is no longer charged.
+	void release() {
+		lock.lock();
+		try {
+			if(engine != null) {
+				engine.refundMemoryBudget(ELEMENT_BYTES * values.length);
+				engine = null;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -95,8 +218,9 @@ public final class WasmTable implements WasmExport {
 			throw new IndexOutOfBoundsException();
 		}
 
+		Object element = wrap(val);
 		while(n != 0) {
-			table.set(i, val);
+			table.setElement(i, element);
 			++i;
 			--n;
 		}
@@ -116,9 +240,10 @@ public final class WasmTable implements WasmExport {
 		}
 
 		if(d <= s) {
+			// Elements are copied as stored, so host functions keep their type IDs.
 			while(n != 0) {
-				Object value = tableY.get(s);
-				tableX.set(d, value);
+				Object element = tableY.values[s];
+				tableX.setElement(d, element);
 
 				++d;
 				++s;
@@ -127,8 +252,8 @@ public final class WasmTable implements WasmExport {
 		}
 		else {
 			while(n != 0) {
-				Object value = tableY.get(s + n - 1);
-				tableX.set(d + n - 1, value);
+				Object element = tableY.values[s + n - 1];
+				tableX.setElement(d + n - 1, element);
 				--n;
 			}
 		}
@@ -159,6 +284,6 @@ public final class WasmTable implements WasmExport {
 
 	@Override
 	public String toString() {
-		return values.toString();
+		return Arrays.toString(Arrays.stream(values).map(WasmTable::unwrap).toArray());
 	}
 }
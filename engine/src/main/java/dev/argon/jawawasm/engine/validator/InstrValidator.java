@@ -894,6 +894,58 @@ class InstrValidator extends ValidatorBase {
 				case MemoryInstr.Data_Drop(var dataIdx) -> {
 					context.requireData(dataIdx);
 				}
+
+				case MemoryInstr.Memory_Atomic_Notify(var memArg) -> {
+					context.requireMem(new MemIdx(0));
+					checkAtomicAlignment(MemoryInstr.AtomicSize._32, memArg);
+					pop(NumType.I32);
+					pop(NumType.I32);
+					push(NumType.I32);
+				}
+
+				case MemoryInstr.Memory_Atomic_Wait(var numSize, var memArg) -> {
+					context.requireMem(new MemIdx(0));
+					checkAtomicAlignment(atomicSizeForNumSize(numSize), memArg);
+					pop(NumType.I64);
+					pop(intTypeForSize(numSize));
+					pop(NumType.I32);
+					push(NumType.I32);
+				}
+
+				case MemoryInstr.Atomic_Fence() -> {}
+
+				case MemoryInstr.Inn_Atomic_Load(var numSize, var size, var memArg) -> {
+					context.requireMem(new MemIdx(0));
+					checkAtomicAlignment(size, memArg);
+					pop(NumType.I32);
+					push(intTypeForSize(numSize));
+				}
+
+				case MemoryInstr.Inn_Atomic_Store(var numSize, var size, var memArg) -> {
+					context.requireMem(new MemIdx(0));
+					checkAtomicAlignment(size, memArg);
+					pop(intTypeForSize(numSize));
+					pop(NumType.I32);
+				}
+
+				case MemoryInstr.Inn_Atomic_Rmw(var numSize, var size, var op, var memArg) -> {
+					context.requireMem(new MemIdx(0));
+					checkAtomicAlignment(size, memArg);
+					var t = intTypeForSize(numSize);
+					pop(t);
+					pop(NumType.I32);
+					push(t);
+				}
+
+				case MemoryInstr.Inn_Atomic_Cmpxchg(var numSize, var size, var memArg) -> {
+					context.requireMem(new MemIdx(0));
+					checkAtomicAlignment(size, memArg);
+					var t = intTypeForSize(numSize);
+					pop(t);
+					pop(t);
+					pop(NumType.I32);
+					push(t);
+				}
 			}
 		}
 
@@ -1058,6 +1110,24 @@ class InstrValidator extends ValidatorBase {
 			require(Integer.compareUnsigned(memArg.align(), 4) <= 0, "alignment must not be larger than natural");
 		}
 
+		// Atomic instructions must be naturally aligned rather than at most naturally aligned.
+		private void checkAtomicAlignment(MemoryInstr.AtomicSize size, MemoryInstr.MemArg memArg) throws ValidationException {
+			int naturalAlign = switch(size) {
+				case _8 -> 0;
+				case _16 -> 1;
+				case _32 -> 2;
+				case _64 -> 3;
+			};
+			require(memArg.align() == naturalAlign, "alignment must be exactly natural");
+		}
+
+		private static MemoryInstr.AtomicSize atomicSizeForNumSize(NumericInstr.NumSize numSize) {
+			return switch(numSize) {
+				case _32 -> MemoryInstr.AtomicSize._32;
+				case _64 -> MemoryInstr.AtomicSize._64;
+			};
+		}
+
 	}
 
 }
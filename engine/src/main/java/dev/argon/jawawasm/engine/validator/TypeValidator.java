@@ -35,6 +35,7 @@ final class TypeValidator extends ValidatorBase {
 
 	public void validateMemoryType(MemType memType) throws ValidationException {
 		validateLimits(memType.limits(), 1 << 16);
+		require(!memType.shared() || memType.limits().max() != null, "shared memory must have maximum");
 	}
 
 
@@ -0,0 +1,100 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.ModuleFormatException;
+import dev.argon.jawawasm.format.instructions.Instr;
+import dev.argon.jawawasm.format.instructions.MemoryInstr;
+import dev.argon.jawawasm.format.instructions.MemoryInstr.AtomicRmwOp;
+import dev.argon.jawawasm.format.instructions.MemoryInstr.AtomicSize;
+import dev.argon.jawawasm.format.instructions.NumericInstr.NumSize;
+import dev.argon.jawawasm.format.modules.ImportDesc;
+import dev.argon.jawawasm.format.types.Limits;
+import dev.argon.jawawasm.format.types.MemType;
+import org.junit.jupiter.api.Test;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AtomicDecodingTests {
+
+	private static Instr decode(Code body) throws Throwable {
+		var module = new TestModule()
+			.memory(LIMITS_MAX | LIMITS_SHARED, 1, 1)
+			.function("f", types(), types(), body)
+			.read();
+		return module.funcs().getFirst().body().body().getFirst();
+	}
+
+	private static Instr decode(int opcode) throws Throwable {
+		return decode(code().atomic(opcode, 2, 8));
+	}
+
+	@Test
+	void waitNotifyAndFence() throws Throwable {
+		var memArg = new MemoryInstr.MemArg(8, 2);
+		assertEquals(new MemoryInstr.Memory_Atomic_Notify(memArg), decode(0x00));
+		assertEquals(new MemoryInstr.Memory_Atomic_Wait(NumSize._32, memArg), decode(0x01));
+		assertEquals(new MemoryInstr.Memory_Atomic_Wait(NumSize._64, memArg), decode(0x02));
+		assertEquals(new MemoryInstr.Atomic_Fence(), decode(code().op(0xFE, 0x03, 0x00)));
+		assertThrows(ModuleFormatException.class, () -> decode(code().op(0xFE, 0x03, 0x01)));
+	}
+
+	@Test
+	void loadsAndStores() throws Throwable {
+		var memArg = new MemoryInstr.MemArg(8, 2);
+		assertEquals(new MemoryInstr.Inn_Atomic_Load(NumSize._32, AtomicSize._32, memArg), decode(0x10));
+		assertEquals(new MemoryInstr.Inn_Atomic_Load(NumSize._64, AtomicSize._8, memArg), decode(0x14));
+		assertEquals(new MemoryInstr.Inn_Atomic_Load(NumSize._64, AtomicSize._32, memArg), decode(0x16));
+		assertEquals(new MemoryInstr.Inn_Atomic_Store(NumSize._32, AtomicSize._32, memArg), decode(0x17));
+		assertEquals(new MemoryInstr.Inn_Atomic_Store(NumSize._32, AtomicSize._16, memArg), decode(0x1A));
+		assertEquals(new MemoryInstr.Inn_Atomic_Store(NumSize._64, AtomicSize._32, memArg), decode(0x1D));
+	}
+
+	@Test
+	void readModifyWriteGroups() throws Throwable {
+		var memArg = new MemoryInstr.MemArg(8, 2);
+
+		// Each operation has seven opcodes: i32, i64, i32 8, i32 16, i64 8, i64 16 and i64 32.
+		assertEquals(new MemoryInstr.Inn_Atomic_Rmw(NumSize._32, AtomicSize._32, AtomicRmwOp.ADD, memArg), decode(0x1E));
+		assertEquals(new MemoryInstr.Inn_Atomic_Rmw(NumSize._32, AtomicSize._16, AtomicRmwOp.SUB, memArg), decode(0x1E + 7 + 3));
+		assertEquals(new MemoryInstr.Inn_Atomic_Rmw(NumSize._64, AtomicSize._64, AtomicRmwOp.XCHG, memArg), decode(0x1E + 35 + 1));
+		assertEquals(new MemoryInstr.Inn_Atomic_Rmw(NumSize._64, AtomicSize._32, AtomicRmwOp.XCHG, memArg), decode(0x1E + 35 + 6));
+
+		NumSize[] numSizes = { NumSize._32, NumSize._64, NumSize._32, NumSize._32, NumSize._64, NumSize._64, NumSize._64 };
+		AtomicSize[] sizes = { AtomicSize._32, AtomicSize._64, AtomicSize._8, AtomicSize._16, AtomicSize._8, AtomicSize._16, AtomicSize._32 };
+		for(int group = 0; group < 6; ++group) {
+			for(int i = 0; i < 7; ++i) {
+				var op = AtomicRmwOp.values()[group];
+				assertEquals(new MemoryInstr.Inn_Atomic_Rmw(numSizes[i], sizes[i], op, memArg), decode(0x1E + group * 7 + i));
+			}
+		}
+
+		// The seventh group is compare and exchange.
+		for(int i = 0; i < 7; ++i) {
+			assertEquals(new MemoryInstr.Inn_Atomic_Cmpxchg(numSizes[i], sizes[i], memArg), decode(0x48 + i));
+		}
+	}
+
+	@Test
+	void unassignedOpcodesAreRejected() {
+		for(int opcode : new int[] { 0x04, 0x0F, 0x4F, 0x80 }) {
+			assertThrows(ModuleFormatException.class, () -> decode(opcode));
+		}
+	}
+
+	@Test
+	void sharedLimitsFlags() throws Throwable {
+		assertEquals(new MemType(new Limits(1, null), false), memType(0x00));
+		assertEquals(new MemType(new Limits(1, 2), false), memType(LIMITS_MAX));
+		assertEquals(new MemType(new Limits(1, null), true), memType(LIMITS_SHARED));
+		assertEquals(new MemType(new Limits(1, 2), true), memType(LIMITS_MAX | LIMITS_SHARED));
+		assertThrows(ModuleFormatException.class, () -> memType(0x04));
+
+		var imported = new TestModule().importMemory(LIMITS_MAX | LIMITS_SHARED, 1, 2).read();
+		assertEquals(new ImportDesc.Mem(new MemType(new Limits(1, 2), true)), imported.imports().getFirst().desc());
+	}
+
+	private static MemType memType(int flags) throws Throwable {
+		return new TestModule().memory(flags, 1, 2).read().mems().getFirst().type();
+	}
+
+}
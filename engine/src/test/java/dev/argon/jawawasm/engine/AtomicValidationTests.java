@@ -0,0 +1,48 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.engine.validator.ModuleValidator;
+import dev.argon.jawawasm.engine.validator.ValidationException;
+import dev.argon.jawawasm.format.modules.Module;
+import org.junit.jupiter.api.Test;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AtomicValidationTests {
+
+	// Loads with the given atomic opcode from address 0.
+	private static Module load(int opcode, int align, byte result) throws Throwable {
+		return new TestModule()
+			.memory(LIMITS_MAX | LIMITS_SHARED, 1, 1)
+			.function("load", types(), types(result), code().i32Const(0).atomic(opcode, align, 0))
+			.read();
+	}
+
+	private static void assertInvalid(String message, Module module) {
+		var ex = assertThrows(ValidationException.class, () -> ModuleValidator.validateModule(module));
+		assertEquals(message, ex.getMessage());
+	}
+
+	@Test
+	void atomicAlignmentMustBeExactlyNatural() throws Throwable {
+		ModuleValidator.validateModule(load(0x10, 2, I32));
+		ModuleValidator.validateModule(load(0x11, 3, I64));
+		ModuleValidator.validateModule(load(0x12, 0, I32));
+		ModuleValidator.validateModule(load(0x15, 1, I64));
+
+		// Plain loads accept smaller alignments, but atomic ones do not.
+		assertInvalid("alignment must be exactly natural", load(0x10, 1, I32));
+		assertInvalid("alignment must be exactly natural", load(0x10, 0, I32));
+		assertInvalid("alignment must be exactly natural", load(0x11, 2, I64));
+		assertInvalid("alignment must be exactly natural", load(0x15, 0, I64));
+		assertInvalid("alignment must be exactly natural", load(0x12, 1, I32));
+	}
+
+	@Test
+	void sharedMemoryMustHaveMaximum() throws Throwable {
+		ModuleValidator.validateModule(new TestModule().memory(LIMITS_MAX | LIMITS_SHARED, 1, 1).read());
+		assertInvalid("shared memory must have maximum", new TestModule().memory(LIMITS_SHARED, 1, 0).read());
+		assertInvalid("shared memory must have maximum", new TestModule().importMemory(LIMITS_SHARED, 1, 0).read());
+	}
+
+}
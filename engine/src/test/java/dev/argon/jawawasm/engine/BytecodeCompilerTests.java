@@ -0,0 +1,59 @@
+package dev.argon.jawawasm.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BytecodeCompilerTests {
+
+	private static final ModuleResolver NO_IMPORTS = name -> { throw new ModuleResolutionException(); };
+
+	private static TestModule.Code largeBody() {
+		var body = code();
+		for(int i = 0; i < 4000; ++i) {
+			body.i32Const(100_000 + i).op(0x1A);
+		}
+		return body.i32Const(7);
+	}
+
+	private static final TestModule MODULE = new TestModule()
+		.function("add", types(I32, I32), types(I32), code().localGet(0).localGet(1).op(0x6A))
+		.function("tail", types(I32, I32), types(I32), code().localGet(0).localGet(1).op(0x12, 0x00))
+		.function("large", types(), types(I32), largeBody());
+
+	private static ModuleFunction function(InstantiatedModule instance, String name) {
+		return (ModuleFunction)instance.getExport(name);
+	}
+
+	@Test
+	void compilesSupportedFunctions() throws Throwable {
+		try(var engine = new Engine(); var instance = engine.instantiateModule(MODULE.read(), NO_IMPORTS)) {
+			var add = function(instance, "add");
+			assertTrue(BytecodeCompiler.compile(instance, add));
+			assertNotNull(add.slotsEntry());
+			assertArrayEquals(new Object[] { 5 }, add.invokeNow(new Object[] { 2, 3 }));
+		}
+	}
+
+	@Test
+	void declinesTailCalls() throws Throwable {
+		try(var engine = new Engine(); var instance = engine.instantiateModule(MODULE.read(), NO_IMPORTS)) {
+			var tail = function(instance, "tail");
+			assertFalse(BytecodeCompiler.compile(instance, tail));
+			assertNull(tail.slotsEntry());
+			assertArrayEquals(new Object[] { 5 }, tail.invokeNow(new Object[] { 2, 3 }));
+		}
+	}
+
+	@Test
+	void declinesMethodsThatAreTooLarge() throws Throwable {
+		try(var engine = new Engine(); var instance = engine.instantiateModule(MODULE.read(), NO_IMPORTS)) {
+			var large = function(instance, "large");
+			assertFalse(BytecodeCompiler.compile(instance, large));
+			assertNull(large.slotsEntry());
+			assertArrayEquals(new Object[] { 7 }, large.invokeNow(new Object[] {}));
+		}
+	}
+
+}
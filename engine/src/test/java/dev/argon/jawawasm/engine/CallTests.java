@@ -0,0 +1,105 @@
+package dev.argon.jawawasm.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallTests {
+
+	private static final ModuleResolver NO_IMPORTS = name -> { throw new ModuleResolutionException(); };
+
+	private static final TestModule MODULE = new TestModule()
+		// depth calls itself recursively as many times as its argument and returns the number of calls.
+		.function("depth", types(I32), types(I32), code()
+			.localGet(0).op(0x45)
+			.op(0x04, I32)
+			.i32Const(0)
+			.op(0x05)
+			.localGet(0).i32Const(1).op(0x6B).call(0).i32Const(1).op(0x6A)
+			.op(0x0B))
+		// mix returns (c + b) * a.
+		.function("mix", types(I32, I64, F64), types(F64), code()
+			.localGet(2).localGet(1).op(0xB9).op(0xA0)
+			.localGet(0).op(0xB7).op(0xA2))
+		// callMix returns mix(a, b, c) + 7, keeping the 7 on the stack below the call.
+		.function("callMix", types(I32, I64, F64), types(F64), types(F64), code()
+			.i32Const(7)
+			.localGet(0).localGet(1).localGet(2).call(1)
+			.localSet(3)
+			.op(0xB7).localGet(3).op(0xA0));
+
+	private static InstantiatedModule instantiate(Engine engine) throws Throwable {
+		engine.setCompilerEnabled(false);
+		return engine.instantiateModule(MODULE.read(), NO_IMPORTS);
+	}
+
+	private static WasmFunction function(InstantiatedModule instance, String name) {
+		return (WasmFunction)instance.getExport(name);
+	}
+
+	@Test
+	void deepRecursionDoesNotUseTheJavaStack() throws Throwable {
+		try(var engine = new Engine()) {
+			engine.setMaxCallDepth(1_000_000);
+			try(var instance = instantiate(engine)) {
+				var depth = function(instance, "depth");
+
+				// The thread has a small stack, so this overflows if each call uses Java frames.
+				var result = new CompletableFuture<Object[]>();
+				var thread = new Thread(null, () -> {
+					try {
+						result.complete(depth.invokeNow(new Object[] { 200_000 }));
+					}
+					catch(Throwable ex) {
+						result.completeExceptionally(ex);
+					}
+				}, "small-stack", 256 * 1024);
+				thread.start();
+
+				assertArrayEquals(new Object[] { 200_000 }, result.get());
+			}
+		}
+	}
+
+	@Test
+	void exceedingTheMaxCallDepthTraps() throws Throwable {
+		try(var engine = new Engine()) {
+			engine.setMaxCallDepth(100);
+			try(var instance = instantiate(engine)) {
+				var depth = function(instance, "depth");
+
+				assertArrayEquals(new Object[] { 50 }, depth.invokeNow(new Object[] { 50 }));
+				assertThrows(CallStackExhaustedException.class, () -> depth.invokeNow(new Object[] { 1000 }));
+
+				// The next call starts with an empty call stack.
+				assertArrayEquals(new Object[] { 50 }, depth.invokeNow(new Object[] { 50 }));
+			}
+		}
+	}
+
+	@Test
+	void interpretedCallsPassValuesInPlace() throws Throwable {
+		try(var engine = new Engine(); var instance = instantiate(engine)) {
+			assertArrayEquals(new Object[] { 20.5 }, function(instance, "callMix").invokeNow(new Object[] { 3, 4L, 0.5 }));
+		}
+	}
+
+	@Test
+	void compiledCalleesAreCalledThroughTheirSlotsEntry() throws Throwable {
+		try(var engine = new Engine(); var instance = instantiate(engine)) {
+			var mix = (ModuleFunction)function(instance, "mix");
+			assertTrue(BytecodeCompiler.compile(instance, mix));
+			assertNotNull(mix.slotsEntry());
+
+			// callMix is still interpreted.
+			var callMix = (ModuleFunction)function(instance, "callMix");
+			assertNull(callMix.slotsEntry());
+			assertArrayEquals(new Object[] { 20.5 }, callMix.invokeNow(new Object[] { 3, 4L, 0.5 }));
+			assertArrayEquals(new Object[] { 17.0 }, callMix.invokeNow(new Object[] { -2, -1L, -4.0 }));
+		}
+	}
+
+}
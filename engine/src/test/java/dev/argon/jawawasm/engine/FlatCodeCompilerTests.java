@@ -0,0 +1,140 @@
+package dev.argon.jawawasm.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlatCodeCompilerTests {
+
+	private static final ModuleResolver NO_IMPORTS = name -> { throw new ModuleResolutionException(); };
+
+	private static final TestModule MODULE = new TestModule()
+		// loop returns its argument, counting up to it in a loop that takes the count as a parameter.
+		// The block type of the loop is the type of the function.
+		.function("loop", types(I32), types(I32), types(I32), code()
+			.i32Const(0)
+			.op(0x03, 0x00)
+			.i32Const(1).op(0x6A)
+			.op(0x22, 0x01).localGet(1).localGet(0).op(0x48)
+			.op(0x0D, 0x00)
+			.op(0x0B))
+		// brIf returns 103 if its argument is not zero and 104 otherwise.
+		// The branch keeps the top value and drops the two below it, but not the value below the block.
+		.function("brIf", types(I32), types(I32), code()
+			.i32Const(100)
+			.op(0x02, I32)
+			.i32Const(1).i32Const(2).i32Const(3)
+			.localGet(0).op(0x0D, 0x00)
+			.op(0x1A, 0x1A, 0x1A)
+			.i32Const(4)
+			.op(0x0B)
+			.op(0x6A))
+		// brTable returns 23, 22 or 20 for the arguments 0, 1 and anything else.
+		.function("brTable", types(I32), types(I32), code()
+			.op(0x02, I32)
+			.op(0x02, I32)
+			.op(0x02, I32)
+			.i32Const(10).i32Const(20)
+			.localGet(0).op(0x0E, 0x02, 0x00, 0x01, 0x02)
+			.op(0x0B)
+			.i32Const(1).op(0x6A)
+			.op(0x0B)
+			.i32Const(2).op(0x6A)
+			.op(0x0B))
+		// brReturn branches out of the function from inside a block.
+		.function("brReturn", types(), types(I32), code()
+			.op(0x02, 0x40)
+			.i32Const(1).i32Const(5).op(0x0C, 0x01)
+			.op(0x0B)
+			.i32Const(6))
+		// constants returns an i64 and an f64 whose immediates do not fit in a single code unit.
+		.function("constants", types(), types(I64, F64), code()
+			.i64Const(0x123456789ABCDEF0L)
+			.op(0x44).raw(new byte[] { 0, 0, 0, 0, 0, 0, (byte)0xF0, (byte)0xBF }));
+
+	private static void forEachTier(ThrowingConsumer<InstantiatedModule> test) throws Throwable {
+		for(boolean compiled : new boolean[] { false, true }) {
+			try(var engine = new Engine()) {
+				engine.setCompilerEnabled(compiled);
+				engine.setCompilerThreads(0);
+				engine.setCompileThreshold(1);
+				try(var instance = engine.instantiateModule(MODULE.read(), NO_IMPORTS)) {
+					test.accept(instance);
+				}
+			}
+		}
+	}
+
+	private interface ThrowingConsumer<T> {
+		void accept(T value) throws Throwable;
+	}
+
+	private static Object call(InstantiatedModule instance, String name, Object... args) throws Throwable {
+		var results = ((WasmFunction)instance.getExport(name)).invokeNow(args);
+		return results.length == 1 ? results[0] : results;
+	}
+
+	@Test
+	void loopBranchesKeepTheirParameters() throws Throwable {
+		forEachTier(instance -> {
+			assertEquals(1, call(instance, "loop", 1));
+			assertEquals(50, call(instance, "loop", 50));
+		});
+	}
+
+	@Test
+	void branchesKeepTheirResultsAndDropTheRest() throws Throwable {
+		forEachTier(instance -> {
+			assertEquals(103, call(instance, "brIf", 1));
+			assertEquals(104, call(instance, "brIf", 0));
+
+			assertEquals(23, call(instance, "brTable", 0));
+			assertEquals(22, call(instance, "brTable", 1));
+			assertEquals(20, call(instance, "brTable", 2));
+			assertEquals(20, call(instance, "brTable", -1));
+
+			assertEquals(5, call(instance, "brReturn"));
+		});
+	}
+
+	@Test
+	void wideConstantsAreDecoded() throws Throwable {
+		forEachTier(instance -> {
+			assertArrayEquals(new Object[] { 0x123456789ABCDEF0L, -1.0 }, (Object[])call(instance, "constants"));
+		});
+	}
+
+	@Test
+	void branchEntriesAreResolvedWhenLowered() throws Throwable {
+		try(var engine = new Engine()) {
+			engine.setCompilerEnabled(false);
+			var module = MODULE.read();
+			try(var instance = engine.instantiateModule(module, NO_IMPORTS)) {
+				var func = module.funcs().get(1);
+				var code = FlatCodeCompiler.compile(instance, ((WasmFunction)instance.getExport("brIf")).type(), func.locals(), func.body().body(), false);
+
+				// 100, 1, 2, 3 and the condition.
+				assertEquals(5, code.maxStackHeight());
+
+				// The branch keeps one value, moves it to the slot after the one local and the value below the block,
+				// and continues at the add after the block.
+				int branch = indexOf(code.code(), Opcode.BR_IF);
+				int[] entry = { code.code()[branch + 1], code.code()[branch + 2], code.code()[branch + 3] };
+				assertEquals(Opcode.I32_ADD, code.code()[entry[0]]);
+				assertEquals(1, entry[1]);
+				assertEquals(2, entry[2]);
+			}
+		}
+	}
+
+	private static int indexOf(int[] code, int opcode) {
+		for(int i = 0; i < code.length; ++i) {
+			if(code[i] == opcode) {
+				return i;
+			}
+		}
+		throw new AssertionError("Opcode not found");
+	}
+
+}
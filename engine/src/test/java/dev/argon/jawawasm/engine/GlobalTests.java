@@ -0,0 +1,80 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.Mut;
+import dev.argon.jawawasm.format.types.NumType;
+import org.junit.jupiter.api.Test;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GlobalTests {
+
+	private static final ModuleResolver NO_IMPORTS = name -> { throw new ModuleResolutionException(); };
+
+	private static final TestModule MODULE = new TestModule()
+		.global(I64, false, code().i64Const(0x1122334455667788L))
+		.global(F64, true, code().f64Const(1.5))
+		.global(I32, true, code().i32Const(0))
+		.function("getConst", types(), types(I64), code().globalGet(0))
+		// addF64 adds its argument to global1 and returns the new value.
+		.function("addF64", types(F64), types(F64), code().globalGet(1).localGet(0).op(0xA0).globalSet(1).globalGet(1))
+		.function("getI32", types(), types(I32), code().globalGet(2))
+		.function("setI32", types(I32), types(), code().localGet(0).globalSet(2));
+
+	private interface TierTest {
+		void run(InstantiatedModule instance) throws Throwable;
+	}
+
+	private static void forEachTier(TierTest test) throws Throwable {
+		for(boolean compiled : new boolean[] { false, true }) {
+			try(var engine = new Engine()) {
+				engine.setCompilerEnabled(compiled);
+				engine.setCompilerThreads(0);
+				engine.setCompileThreshold(1);
+				try(var instance = engine.instantiateModule(MODULE.read(), NO_IMPORTS)) {
+					test.run(instance);
+				}
+			}
+		}
+	}
+
+	private static Object call(InstantiatedModule instance, String name, Object... args) throws Throwable {
+		var results = ((WasmFunction)instance.getExport(name)).invokeNow(args);
+		return results.length == 0 ? null : results[0];
+	}
+
+	@Test
+	void constantGlobalsAreRead() throws Throwable {
+		forEachTier(instance -> {
+			var global = (WasmGlobal)instance.getExport("global0");
+			assertEquals(Mut.Const, global.type().mutability());
+			assertEquals(NumType.I64, global.type().type());
+			assertEquals(0x1122334455667788L, global.get());
+			assertThrows(IllegalStateException.class, () -> global.set(1L));
+
+			assertEquals(0x1122334455667788L, call(instance, "getConst"));
+			assertEquals(0x1122334455667788L, call(instance, "getConst"));
+		});
+	}
+
+	@Test
+	void mutableGlobalsAreSharedWithTheHost() throws Throwable {
+		forEachTier(instance -> {
+			var f64 = (WasmGlobal)instance.getExport("global1");
+			var i32 = (WasmGlobal)instance.getExport("global2");
+
+			assertEquals(2.0, call(instance, "addF64", 0.5));
+			assertEquals(2.25, call(instance, "addF64", 0.25));
+			assertEquals(2.25, f64.get());
+
+			f64.set(-1.0);
+			assertEquals(0.0, call(instance, "addF64", 1.0));
+
+			i32.set(-7);
+			assertEquals(-7, call(instance, "getI32"));
+			call(instance, "setI32", 42);
+			assertEquals(42, i32.get());
+		});
+	}
+
+}
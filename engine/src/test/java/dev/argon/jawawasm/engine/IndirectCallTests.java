@@ -0,0 +1,101 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.FuncType;
+import dev.argon.jawawasm.format.types.NumType;
+import dev.argon.jawawasm.format.types.ResultType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndirectCallTests {
+
+	private static final ModuleResolver NO_IMPORTS = name -> { throw new ModuleResolutionException(); };
+
+	// The table holds one, two and wrong. dispatch calls the element at its argument with the type of one.
+	private static final TestModule MODULE = new TestModule()
+		.table(3)
+		.elem(0, 0, 1, 2)
+		.function("one", types(), types(I32), code().i32Const(1))
+		.function("two", types(), types(I32), code().i32Const(2))
+		.function("wrong", types(I32), types(I32), code().localGet(0))
+		.function("dispatch", types(I32), types(I32), code().localGet(0).callIndirect(0));
+
+	private static final FuncType NO_PARAMS_TO_I32 = new FuncType(new ResultType(List.of()), new ResultType(List.of(NumType.I32)));
+
+	private interface TierTest {
+		void run(WasmTable table, WasmFunction dispatch, InstantiatedModule instance) throws Throwable;
+	}
+
+	private static void forEachTier(TierTest test) throws Throwable {
+		for(boolean compiled : new boolean[] { false, true }) {
+			try(var engine = new Engine()) {
+				engine.setCompilerEnabled(compiled);
+				engine.setCompilerThreads(0);
+				engine.setCompileThreshold(1);
+				try(var instance = engine.instantiateModule(MODULE.read(), NO_IMPORTS)) {
+					test.run((WasmTable)instance.getExport("table"), (WasmFunction)instance.getExport("dispatch"), instance);
+				}
+			}
+		}
+	}
+
+	private static Object call(WasmFunction dispatch, int index) throws Throwable {
+		return dispatch.invokeNow(new Object[] { index })[0];
+	}
+
+	@Test
+	void signaturesAreChecked() throws Throwable {
+		forEachTier((table, dispatch, instance) -> {
+			assertEquals(1, call(dispatch, 0));
+			assertEquals(2, call(dispatch, 1));
+			assertThrows(IndirectCallTypeMismatchException.class, () -> call(dispatch, 2));
+
+			// A host function with an equal but separately constructed type passes the check.
+			table.set(2, new WasmFunction() {
+				@Override
+				public FuncType type() {
+					return new FuncType(new ResultType(List.of()), new ResultType(List.of(NumType.I32)));
+				}
+
+				@Override
+				public FunctionResult invoke(Object[] args) {
+					return new FunctionResult.Values(new Object[] { 3 });
+				}
+			});
+			assertEquals(3, call(dispatch, 2));
+		});
+	}
+
+	@Test
+	void cachedTargetsAreInvalidatedWhenTheTableChanges() throws Throwable {
+		forEachTier((table, dispatch, instance) -> {
+			var one = instance.getExport("one");
+			var two = instance.getExport("two");
+			for(int i = 0; i < 10; ++i) {
+				assertEquals(1, call(dispatch, 0));
+				assertEquals(2, call(dispatch, 1));
+			}
+
+			table.set(0, two);
+			assertEquals(2, call(dispatch, 0));
+
+			WasmTable.fill(2, one, 0, table);
+			assertEquals(1, call(dispatch, 0));
+			assertEquals(1, call(dispatch, 1));
+
+			assertEquals(3, table.grow(1, two));
+			assertEquals(2, call(dispatch, 3));
+
+			WasmTable.copy(1, 3, 0, table, table);
+			assertEquals(2, call(dispatch, 0));
+
+			table.set(0, null);
+			assertThrows(NullPointerException.class, () -> call(dispatch, 0));
+			assertEquals(FuncTypeIds.of(NO_PARAMS_TO_I32), ((ModuleFunction)one).typeId());
+		});
+	}
+
+}
@@ -0,0 +1,103 @@
+package dev.argon.jawawasm.engine;
+
+import org.junit.jupiter.api.Test;
+
+import dev.argon.jawawasm.format.types.Limits;
+import dev.argon.jawawasm.format.types.MemType;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstantiationTests {
+
+	private static final ModuleResolver NO_IMPORTS = name -> { throw new ModuleResolutionException(); };
+
+	@Test
+	void overBudgetMemoryIsNotCharged() throws Throwable {
+		try(var engine = new Engine()) {
+			engine.setMemoryBudget(Util.PAGE_SIZE);
+			var module = new TestModule().memory(LIMITS_MAX, 2, 2).read();
+
+			assertThrows(ModuleLinkException.class, () -> engine.instantiateModule(module, NO_IMPORTS));
+			assertEquals(0, engine.getMemoryUsage());
+		}
+	}
+
+	@Test
+	void dataSegmentTrapReleasesMemory() throws Throwable {
+		try(var engine = new Engine()) {
+			var module = new TestModule()
+				.memory(LIMITS_MAX, 1, 1)
+				.data(0, new byte[] { 1 })
+				.data(Util.PAGE_SIZE, new byte[] { 1 })
+				.read();
+
+			assertThrows(ExecutionException.class, () -> engine.instantiateModule(module, NO_IMPORTS));
+			assertEquals(0, engine.getMemoryUsage());
+		}
+	}
+
+	@Test
+	void startFunctionTrapReleasesMemory() throws Throwable {
+		try(var engine = new Engine()) {
+			var module = new TestModule()
+				.memory(LIMITS_MAX, 1, 1)
+				.function("start", types(), types(), code().op(0x00))
+				.start()
+				.read();
+
+			assertThrows(ExecutionException.class, () -> engine.instantiateModule(module, NO_IMPORTS));
+			assertEquals(0, engine.getMemoryUsage());
+		}
+	}
+
+	// store writes its second argument to the address in its first argument and returns the value read back.
+	private static TestModule importer(int flags) {
+		return new TestModule()
+			.importMemory(flags, 1, 1)
+			.function("store", types(I32, I32), types(I32), code()
+				.localGet(0).localGet(1).i32Store(2, 0)
+				.localGet(0).i32Load(2, 0));
+	}
+
+	@Test
+	void importersKeepMemoriesOfClosedExporters() throws Throwable {
+		for(int flags : new int[] { LIMITS_MAX, LIMITS_MAX | LIMITS_SHARED }) {
+			try(var engine = new Engine()) {
+				var exporter = engine.instantiateModule(new TestModule().memory(flags, 1, 1).read(), NO_IMPORTS);
+				var importer = engine.instantiateModule(importer(flags).read(), name -> exporter);
+				var store = (WasmFunction)importer.getExport("store");
+
+				exporter.close();
+				exporter.close();
+				assertArrayEquals(new Object[] { 42 }, store.invokeNow(new Object[] { 8, 42 }));
+				assertEquals(Util.PAGE_SIZE, engine.getMemoryUsage());
+
+				importer.close();
+				assertEquals(0, engine.getMemoryUsage());
+			}
+		}
+	}
+
+	@Test
+	void importersKeepMemoriesClosedByTheHost() throws Throwable {
+		try(var engine = new Engine()) {
+			var memory = WasmMemory.create(engine, new MemType(new Limits(1, 1)));
+			var importer = engine.instantiateModule(importer(LIMITS_MAX).read(), name -> exportName -> Map.of("memory", (WasmExport)memory).get(exportName));
+			var store = (WasmFunction)importer.getExport("store");
+
+			memory.close();
+			assertArrayEquals(new Object[] { 7 }, store.invokeNow(new Object[] { 0, 7 }));
+
+			importer.close();
+			assertEquals(0, engine.getMemoryUsage());
+
+			// A released memory cannot be imported.
+			assertThrows(ModuleLinkException.class, () -> engine.instantiateModule(importer(LIMITS_MAX).read(), name -> exportName -> Map.of("memory", (WasmExport)memory).get(exportName)));
+		}
+	}
+
+}
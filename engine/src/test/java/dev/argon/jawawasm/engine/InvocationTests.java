@@ -0,0 +1,83 @@
+package dev.argon.jawawasm.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvocationTests {
+
+	private static final ModuleResolver NO_IMPORTS = name -> { throw new ModuleResolutionException(); };
+
+	// work does a few instructions of work.
+	private static final TestModule METERED = new TestModule()
+		.function("work", types(), types(), code().i32Const(1).op(0x1A));
+
+	// run calls env.work as many times as its argument.
+	private static final TestModule CALLER = new TestModule()
+		.importFunction("work", types(), types())
+		.function("run", types(I32), types(), code()
+			.op(0x03, 0x40)
+			.call(0)
+			.localGet(0).i32Const(1).op(0x6B).op(0x22, 0x00)
+			.op(0x0D, 0x00)
+			.op(0x0B));
+
+	private record Modules(WasmFunction work, WasmFunction run) {}
+
+	// The caller is instantiated without metering and calls into a metered module.
+	private static Modules instantiate(Engine engine, boolean compiled) throws Throwable {
+		engine.setCompilerEnabled(compiled);
+		engine.setCompilerThreads(0);
+		engine.setCompileThreshold(1);
+
+		engine.setFuelEnabled(true);
+		var metered = engine.instantiateModule(METERED.read(), NO_IMPORTS);
+		engine.setFuelEnabled(false);
+		var caller = engine.instantiateModule(CALLER.read(), name -> metered);
+		return new Modules((WasmFunction)metered.getExport("work"), (WasmFunction)caller.getExport("run"));
+	}
+
+	@Test
+	void fuelIsPerInvocation() throws Throwable {
+		try(var engine = new Engine()) {
+			var modules = instantiate(engine, false);
+
+			var first = new Invocation(engine);
+			first.setFuel(100);
+			var second = new Invocation(engine);
+			second.setFuel(100);
+
+			first.invokeNow(modules.work(), new Object[] {});
+			long cost = 100 - first.getFuel();
+			assertTrue(cost > 0);
+			assertEquals(100, second.getFuel());
+
+			second.invokeNow(modules.work(), new Object[] {});
+			assertEquals(100 - cost, second.getFuel());
+		}
+	}
+
+	@Test
+	void unmeteredCallersShareTheFuelOfTheInvocation() throws Throwable {
+		for(boolean compiled : new boolean[] { false, true }) {
+			try(var engine = new Engine()) {
+				var modules = instantiate(engine, compiled);
+
+				var invocation = new Invocation(engine);
+				invocation.setFuel(1_000_000);
+				invocation.invokeNow(modules.work(), new Object[] {});
+				long cost = 1_000_000 - invocation.getFuel();
+
+				invocation.setFuel(1_000_000);
+				invocation.invokeNow(modules.run(), new Object[] { 100 });
+				assertEquals(1_000_000 - 100 * cost, invocation.getFuel());
+
+				// A call from the host gets the default fuel of the engine once, not once for each call into the metered module.
+				engine.setFuel(10 * cost);
+				assertThrows(OutOfFuelException.class, () -> modules.run().invokeNow(new Object[] { 100 }));
+			}
+		}
+	}
+
+}
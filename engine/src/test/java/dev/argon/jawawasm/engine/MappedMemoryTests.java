@@ -0,0 +1,90 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.Limits;
+import dev.argon.jawawasm.format.types.MemType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedMemoryTests {
+
+	private static final MemType TYPE = new MemType(new Limits(1, 4), false);
+
+	private Path path;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		path = Files.createTempFile("jawawasm-test", ".mem");
+		Files.delete(path);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	@Test
+	void contentsAndSizeSurviveReopening() throws Throwable {
+		try(var engine = new Engine()) {
+			try(var memory = WasmMemory.map(engine, TYPE, path)) {
+				assertEquals(Util.PAGE_SIZE, Files.size(path));
+				memory.storeI32(8, 0x12345678);
+				assertEquals(1, memory.grow(1));
+				memory.storeI32(Util.PAGE_SIZE + 8, 42);
+				assertEquals(2L * Util.PAGE_SIZE, Files.size(path));
+			}
+
+			try(var memory = WasmMemory.map(engine, TYPE, path)) {
+				assertEquals(2, memory.type().limits().min());
+				assertEquals(0x12345678, memory.loadI32(8));
+				assertEquals(42, memory.loadI32(Util.PAGE_SIZE + 8));
+			}
+		}
+	}
+
+	@Test
+	void filesLargerThanTheMaximumAreRejected() throws Throwable {
+		Files.write(path, new byte[5 * Util.PAGE_SIZE]);
+		try(var engine = new Engine()) {
+			assertThrows(IOException.class, () -> WasmMemory.map(engine, TYPE, path));
+			assertEquals(0, engine.getMemoryUsage());
+		}
+	}
+
+	@Test
+	void sharedMemoriesNeedAMaximum() throws Throwable {
+		try(var engine = new Engine()) {
+			assertThrows(IllegalArgumentException.class, () -> WasmMemory.map(engine, new MemType(new Limits(1, null), true), path));
+		}
+	}
+
+	@Test
+	void memoryFactoryCreatesTheMemoriesOfModules() throws Throwable {
+		var module = new TestModule()
+			.memory(LIMITS_MAX, 1, 4)
+			.data(16, new byte[] { 1, 2, 3, 4 })
+			.read();
+
+		try(var engine = new Engine()) {
+			engine.setMemoryFactory((e, type) -> WasmMemory.map(e, type, path));
+			try(var instance = engine.instantiateModule(module, name -> { throw new ModuleResolutionException(); })) {
+				var memory = (WasmMemory)instance.getExport("memory");
+				memory.storeI8(20, (byte)5);
+			}
+		}
+
+		var bytes = Files.readAllBytes(path);
+		assertEquals(Util.PAGE_SIZE, bytes.length);
+		for(int i = 0; i < 5; ++i) {
+			assertEquals((byte)(i + 1), bytes[16 + i]);
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.Limits;
+import dev.argon.jawawasm.format.types.MemType;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryBudgetTests {
+
+	// Allocates from the arena until it is told to fail.
+	private static final class FailingAllocator implements MemoryAllocator {
+		boolean failing = false;
+
+		@Override
+		public MemorySegment allocate(long bytes, Arena arena) {
+			if(failing) {
+				throw new OutOfMemoryError("allocation failed");
+			}
+			return arena.allocate(bytes);
+		}
+
+		@Override
+		public @Nullable MemoryReservation reserve(long bytes, Arena arena) {
+			return null;
+		}
+	}
+
+	@Test
+	void memoriesAreChargedUntilClosed() {
+		try(var engine = new Engine()) {
+			engine.setMemoryBudget(2 * Util.PAGE_SIZE);
+			var memory = WasmMemory.create(engine, new MemType(new Limits(1, 3)));
+			assertEquals(Util.PAGE_SIZE, engine.getMemoryUsage());
+
+			assertEquals(1, memory.grow(1));
+			assertEquals(-1, memory.grow(1));
+			assertEquals(2 * Util.PAGE_SIZE, engine.getMemoryUsage());
+			assertThrows(MemoryBudgetExceededException.class, () -> WasmMemory.create(engine, new MemType(new Limits(1, 1))));
+
+			memory.close();
+			assertEquals(0, engine.getMemoryUsage());
+			assertEquals(2 * Util.PAGE_SIZE, engine.getPeakMemoryUsage());
+		}
+	}
+
+	@Test
+	void failedAllocationsAreRefunded() {
+		try(var engine = new Engine()) {
+			var allocator = new FailingAllocator();
+			engine.setMemoryAllocator(allocator);
+			engine.setMemoryReservation(0);
+			var memory = WasmMemory.create(engine, new MemType(new Limits(1, 4)));
+			memory.storeI32(0, 42);
+
+			allocator.failing = true;
+			assertEquals(-1, memory.grow(1));
+			assertEquals(Util.PAGE_SIZE, engine.getMemoryUsage());
+			assertThrows(OutOfMemoryError.class, () -> WasmMemory.create(engine, new MemType(new Limits(1, 1))));
+			assertEquals(Util.PAGE_SIZE, engine.getMemoryUsage());
+
+			allocator.failing = false;
+			assertEquals(1, memory.grow(1));
+			assertEquals(42, memory.loadI32(0));
+			assertEquals(2 * Util.PAGE_SIZE, engine.getMemoryUsage());
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.modules.Module;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryImageTests {
+
+	private static final TestModule MODULE = new TestModule()
+		.memory(LIMITS_MAX, 1, 1)
+		.data(4, new byte[] { 1, 2, 3, 4 })
+		.function("load", types(I32), types(I32), code().localGet(0).i32Load(2, 0));
+
+	private static Engine engine() {
+		var engine = new Engine();
+		engine.setMemoryImagesEnabled(true);
+		return engine;
+	}
+
+	@Test
+	void imagesAreReusedForTheSameModule() throws Throwable {
+		try(var engine = engine()) {
+			var module = MODULE.read();
+			var image = engine.memoryImage(module);
+			assertNotNull(image);
+			assertSame(image, engine.memoryImage(module));
+
+			// Equal modules are not recognized, since modules are compared by identity.
+			assertNotSame(image, engine.memoryImage(MODULE.read()));
+		}
+	}
+
+	@Test
+	void evictDeletesTheImage() throws Throwable {
+		try(var engine = engine()) {
+			var module = MODULE.read();
+			try(var instance = engine.instantiateModule(module, name -> { throw new ModuleResolutionException(); })) {
+				var path = engine.memoryImage(module).path();
+				assertTrue(Files.exists(path));
+
+				engine.evictMemoryImage(module);
+				assertFalse(Files.exists(path));
+
+				// The instance keeps its mapping of the deleted file.
+				var load = (WasmFunction)instance.getExport("load");
+				assertArrayEquals(new Object[] { 0 }, load.invokeNow(new Object[] { 0 }));
+
+				assertNotEquals(path, engine.memoryImage(module).path());
+			}
+		}
+	}
+
+	@Test
+	void deletedImagesFallBackToCopyingTheData() throws Throwable {
+		try(var engine = engine()) {
+			var module = MODULE.read();
+			Files.delete(engine.memoryImage(module).path());
+
+			try(var instance = engine.instantiateModule(module, name -> { throw new ModuleResolutionException(); })) {
+				var load = (WasmFunction)instance.getExport("load");
+				assertArrayEquals(new Object[] { 0x04030201 }, load.invokeNow(new Object[] { 4 }));
+			}
+			assertEquals(0, engine.getMemoryUsage());
+		}
+	}
+
+	@Test
+	void imagesOfCollectedModulesAreDeleted() throws Throwable {
+		try(var engine = engine()) {
+			Path path = imagePath(engine, MODULE.read());
+
+			// The image is deleted when another image is built after the module has been collected.
+			for(int i = 0; i < 100 && Files.exists(path); ++i) {
+				System.gc();
+				Thread.sleep(10);
+				engine.memoryImage(MODULE.read());
+			}
+			assertFalse(Files.exists(path));
+		}
+	}
+
+	private static Path imagePath(Engine engine, Module module) throws Throwable {
+		return engine.memoryImage(module).path();
+	}
+
+}
@@ -0,0 +1,80 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.modules.Module;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Instantiates and closes a module with a memory many times on one engine.
+ * Run with the stressTest task on Linux, since it reads /proc/self. Fails if the resident size or the number of mappings of the process keeps growing.
+ */
+@Tag("soak")
+class MemorySoakTests {
+
+	private static final int WARMUP_CYCLES = 100_000;
+	private static final int CYCLES = 1_000_000;
+
+	// Growth allowed after the warmup, for heap and code cache growth.
+	private static final long RSS_TOLERANCE = 64L * 1024 * 1024;
+	private static final int MAPPINGS_TOLERANCE = 256;
+
+	// touch stores to the first and last byte of the memory, so that both pages are committed, and returns the first word.
+	private static final TestModule MODULE = new TestModule()
+		.memory(LIMITS_MAX, 2, 2)
+		.data(0, new byte[] { 1, 2, 3, 4 })
+		.function("touch", types(), types(I32), code()
+			.i32Const(0).i32Const(1).op(0x3A, 0x00, 0x00)
+			.i32Const(2 * Util.PAGE_SIZE - 1).i32Const(1).op(0x3A, 0x00, 0x00)
+			.i32Const(0).i32Load(2, 0));
+
+	@Test
+	void instantiateAndCloseKeepsNativeMemoryFlat() throws Throwable {
+		var module = MODULE.read();
+		try(var engine = new Engine()) {
+			cycles(engine, module, WARMUP_CYCLES);
+			System.gc();
+			long rss = residentBytes();
+			int mappings = mappings();
+
+			cycles(engine, module, CYCLES);
+			System.gc();
+			long rssGrowth = residentBytes() - rss;
+			int mappingsGrowth = mappings() - mappings;
+
+			System.out.printf("%d cycles: resident size grew by %d KiB, mappings by %d%n", CYCLES, rssGrowth / 1024, mappingsGrowth);
+			assertTrue(rssGrowth < RSS_TOLERANCE, "resident size grew by " + rssGrowth + " bytes");
+			assertTrue(mappingsGrowth < MAPPINGS_TOLERANCE, "mappings grew by " + mappingsGrowth);
+			assertEquals(0, engine.getMemoryUsage());
+		}
+	}
+
+	private static void cycles(Engine engine, Module module, int count) throws Throwable {
+		for(int i = 0; i < count; ++i) {
+			try(var instance = engine.instantiateModule(module, name -> { throw new ModuleResolutionException(); })) {
+				var touch = (WasmFunction)instance.getExport("touch");
+				assertArrayEquals(new Object[] { 0x04030201 }, touch.invokeNow(new Object[] {}));
+			}
+		}
+	}
+
+	private static long residentBytes() throws IOException {
+		for(String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+			if(line.startsWith("VmRSS:")) {
+				return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+			}
+		}
+		throw new IOException("VmRSS not found");
+	}
+
+	private static int mappings() throws IOException {
+		return Files.readAllLines(Path.of("/proc/self/maps")).size();
+	}
+
+}
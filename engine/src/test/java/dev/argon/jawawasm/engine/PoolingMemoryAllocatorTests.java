@@ -0,0 +1,116 @@
+package dev.argon.jawawasm.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PoolingMemoryAllocatorTests {
+
+	private static void assertZero(MemorySegment segment) {
+		for(long i = 0; i < segment.byteSize(); i += 8) {
+			assertEquals(0L, segment.get(ValueLayout.JAVA_LONG_UNALIGNED, i), "offset " + i);
+		}
+	}
+
+	@Test
+	void closedAllocationsAreReusedZeroed() {
+		try(var allocator = new PoolingMemoryAllocator(1 << 20)) {
+			var first = Arena.ofShared();
+			var segment = allocator.allocate(2 * Util.PAGE_SIZE, first);
+			segment.fill((byte)7);
+			long address = segment.address();
+			first.close();
+
+			// The old segment cannot reach the memory that is lent to the next one.
+			assertThrows(IllegalStateException.class, () -> segment.get(ValueLayout.JAVA_BYTE, 0));
+
+			try(var second = Arena.ofShared()) {
+				var reused = allocator.allocate(2 * Util.PAGE_SIZE, second);
+				assertEquals(address, reused.address());
+				assertEquals(2L * Util.PAGE_SIZE, reused.byteSize());
+				assertZero(reused);
+
+				// A different size class does not take the slot.
+				var other = allocator.allocate(4 * Util.PAGE_SIZE, second);
+				assertNotEquals(address, other.address());
+			}
+		}
+	}
+
+	@Test
+	void smallerAllocationsShareASizeClass() {
+		try(var allocator = new PoolingMemoryAllocator(1 << 20)) {
+			long address;
+			try(var first = Arena.ofShared()) {
+				var segment = allocator.allocate(4 * Util.PAGE_SIZE, first);
+				segment.fill((byte)7);
+				address = segment.address();
+			}
+
+			// 3 pages round up to the same size class as 4, and only see 3 pages of it.
+			try(var second = Arena.ofShared()) {
+				var reused = allocator.allocate(3 * Util.PAGE_SIZE, second);
+				assertEquals(address, reused.address());
+				assertEquals(3L * Util.PAGE_SIZE, reused.byteSize());
+				assertZero(reused);
+			}
+
+			// The pages past the 3 were zeroed too, since the previous memory wrote them.
+			try(var third = Arena.ofShared()) {
+				assertZero(allocator.allocate(4 * Util.PAGE_SIZE, third));
+			}
+		}
+	}
+
+	@Test
+	void committedPagesOfReservationsAreZeroed() {
+		try(var allocator = new PoolingMemoryAllocator(1 << 24, Util.PAGE_SIZE)) {
+			long address;
+			try(var first = Arena.ofShared()) {
+				var reservation = allocator.reserve(16 * Util.PAGE_SIZE, first);
+				if(reservation == null) {
+					// Address space cannot be reserved on this platform.
+					return;
+				}
+
+				assertTrue(reservation.commit(0, 3 * Util.PAGE_SIZE));
+				reservation.segment().asSlice(0, 3 * Util.PAGE_SIZE).fill((byte)7);
+				address = reservation.segment().address();
+			}
+
+			try(var second = Arena.ofShared()) {
+				var reservation = allocator.reserve(16 * Util.PAGE_SIZE, second);
+				assertEquals(address, reservation.segment().address());
+				assertTrue(reservation.commit(0, 3 * Util.PAGE_SIZE));
+				assertZero(reservation.segment().asSlice(0, 3 * Util.PAGE_SIZE));
+			}
+		}
+	}
+
+	@Test
+	void instancesGetFreshMemoryFromThePool() throws Throwable {
+		var module = new TestModule()
+			.memory(LIMITS_MAX, 1, 1)
+			.data(0, new byte[] { 1, 2 })
+			.read();
+
+		try(var allocator = new PoolingMemoryAllocator(1 << 24); var engine = new Engine()) {
+			engine.setMemoryAllocator(allocator);
+			for(int i = 0; i < 3; ++i) {
+				try(var instance = engine.instantiateModule(module, name -> { throw new ModuleResolutionException(); })) {
+					var memory = (WasmMemory)instance.getExport("memory");
+					assertEquals(0x0201, memory.loadI32(0));
+					assertEquals(0, memory.loadI32(100));
+					memory.storeI32(0, -1);
+					memory.storeI32(100, -1);
+				}
+			}
+		}
+	}
+
+}
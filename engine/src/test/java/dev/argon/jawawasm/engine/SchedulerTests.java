@@ -0,0 +1,49 @@
+package dev.argon.jawawasm.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulerTests {
+
+	// spin loops forever, yielding after every few iterations; add returns the sum of its arguments.
+	private static final TestModule MODULE = new TestModule()
+		.function("spin", types(), types(), code().op(0x03, 0x40, 0x0C, 0x00, 0x0B))
+		.function("add", types(I32, I32), types(I32), code().localGet(0).localGet(1).op(0x6A));
+
+	@Test
+	void completesInvocations() throws Throwable {
+		try(var engine = new Engine(); var scheduler = new Scheduler(2)) {
+			engine.setReductionLimit(10);
+			var instance = engine.instantiateModule(MODULE.read(), name -> { throw new ModuleResolutionException(); });
+			var add = (WasmFunction)instance.getExport("add");
+
+			assertArrayEquals(new Object[] { 5 }, scheduler.submit(add, new Object[] { 2, 3 }).get(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void closeCancelsPendingInvocations() throws Throwable {
+		try(var engine = new Engine()) {
+			engine.setReductionLimit(10);
+			var instance = engine.instantiateModule(MODULE.read(), name -> { throw new ModuleResolutionException(); });
+			var spin = (WasmFunction)instance.getExport("spin");
+
+			var scheduler = new Scheduler(1);
+			var first = scheduler.submit(spin, new Object[] {});
+			var second = scheduler.submit(spin, new Object[] {});
+			scheduler.close();
+
+			assertThrows(CancellationException.class, () -> first.get(10, TimeUnit.SECONDS));
+			assertThrows(CancellationException.class, () -> second.get(10, TimeUnit.SECONDS));
+
+			var late = scheduler.submit(spin, new Object[] {});
+			assertThrows(CancellationException.class, () -> late.get(10, TimeUnit.SECONDS));
+		}
+	}
+
+}
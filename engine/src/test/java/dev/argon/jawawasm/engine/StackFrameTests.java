@@ -0,0 +1,140 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.ExternRef;
+import dev.argon.jawawasm.format.types.FuncType;
+import dev.argon.jawawasm.format.types.ResultType;
+import dev.argon.jawawasm.format.types.ValType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StackFrameTests {
+
+	@Test
+	void resumedFrameSeesGrownMemory() throws Throwable {
+		var module = new TestModule()
+			.memory(LIMITS_MAX, 1, 2)
+			.function("load", types(I32), types(I32), code().localGet(0).i32Load(2, 0))
+			.read();
+
+		try(var engine = new Engine()) {
+			engine.setEpochInterruptionEnabled(true);
+			engine.setEpochYieldInterval(1);
+			try(var instance = engine.instantiateModule(module, name -> { throw new ModuleResolutionException(); })) {
+				var memory = (WasmMemory)instance.getExport("memory");
+				var load = (WasmFunction)instance.getExport("load");
+
+				// The function yields on entry, before it has read the memory.
+				var invocation = new Invocation(engine);
+				invocation.setEpochDeadline(0);
+				var delay = assertInstanceOf(FunctionResult.Delay.class, invocation.invoke(load, new Object[] { 65536 }));
+
+				assertEquals(1, memory.grow(1));
+				memory.storeI32(65536, 42);
+
+				assertArrayEquals(new Object[] { 42 }, FunctionResult.resolve(delay));
+			}
+		}
+	}
+
+	@Test
+	void memoryIsReboundWhenItGrows() throws Throwable {
+		// growAndStore grows the memory by a page, then stores its argument in the new page and loads it back.
+		var module = new TestModule()
+			.memory(LIMITS_MAX, 1, 4)
+			.function("growAndStore", types(I32), types(I32), code()
+				.i32Const(1).op(0x40, 0x00).op(0x1A)
+				.i32Const(0).localGet(0).i32Store(2, 0)
+				.i32Const(0).i32Load(2, 0)
+				.op(0x3F, 0x00).i32Const(1).op(0x6B).i32Const(16).op(0x74)
+				.localGet(0).i32Store(2, 0)
+				.op(0x3F, 0x00).i32Const(1).op(0x6B).i32Const(16).op(0x74)
+				.i32Load(2, 0)
+				.op(0x6A))
+			.function("load", types(I32), types(I32), code().localGet(0).i32Load(2, 0))
+			.read();
+
+		for(boolean compiled : new boolean[] { false, true }) {
+			try(var engine = new Engine()) {
+				engine.setCompilerEnabled(compiled);
+				engine.setCompilerThreads(0);
+				engine.setCompileThreshold(1);
+				try(var instance = engine.instantiateModule(module, name -> { throw new ModuleResolutionException(); })) {
+					var memory = (WasmMemory)instance.getExport("memory");
+					var growAndStore = (WasmFunction)instance.getExport("growAndStore");
+					var load = (WasmFunction)instance.getExport("load");
+
+					// The store to the new last page only succeeds if the frame sees the grown memory.
+					assertArrayEquals(new Object[] { 10 }, growAndStore.invokeNow(new Object[] { 5 }));
+					assertEquals(2, memory.type().limits().min());
+					assertEquals(5, memory.loadI32(Util.PAGE_SIZE));
+
+					// Growing from the host is seen by the next call.
+					assertEquals(2, memory.grow(1));
+					memory.storeI32(2 * Util.PAGE_SIZE, 7);
+					assertArrayEquals(new Object[] { 7 }, load.invokeNow(new Object[] { 2 * Util.PAGE_SIZE }));
+				}
+			}
+		}
+	}
+
+	// A host function with no parameters.
+	private record HostFunction(FuncType type, Supplier<Object[]> body) implements WasmFunction {
+		HostFunction(List<? extends ValType> results, Supplier<Object[]> body) {
+			this(new FuncType(new ResultType(List.of()), new ResultType(results)), body);
+		}
+
+		@Override
+		public FunctionResult invoke(Object[] args) {
+			return new FunctionResult.Values(body.get());
+		}
+	}
+
+	@Test
+	void poppedReferencesCanBeCollected() throws Throwable {
+		// run drops an object, and branches out of a block with another object on the stack, before calling check.
+		var module = new TestModule()
+			.importFunction("make", types(), types(EXTERNREF))
+			.importFunction("check", types(), types())
+			.function("run", types(), types(), code()
+				.call(0).op(0x1A)
+				.op(0x02, 0x40).call(0).op(0x0C, 0x00).op(0x0B)
+				.call(1))
+			.read();
+
+		var made = new ArrayList<WeakReference<Object>>();
+		var make = new HostFunction(List.of(new ExternRef()), () -> {
+			var value = new Object();
+			made.add(new WeakReference<>(value));
+			return new Object[] { value };
+		});
+
+		var collected = new boolean[1];
+		var check = new HostFunction(List.of(), () -> {
+			for(int i = 0; i < 10 && !collected[0]; ++i) {
+				System.gc();
+				collected[0] = made.stream().allMatch(ref -> ref.get() == null);
+			}
+			return new Object[] {};
+		});
+
+		try(var engine = new Engine()) {
+			engine.setCompilerEnabled(false);
+			Map<String, WasmExport> exports = Map.of("make", make, "check", check);
+			try(var instance = engine.instantiateModule(module, name -> exports::get)) {
+				((WasmFunction)instance.getExport("run")).invokeNow(new Object[] {});
+			}
+		}
+
+		assertEquals(2, made.size());
+		assertTrue(collected[0]);
+	}
+
+}
@@ -0,0 +1,332 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.ModuleFormatException;
+import dev.argon.jawawasm.format.binary.ModuleReader;
+import dev.argon.jawawasm.format.modules.Module;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds small binary modules for tests.
+ * Functions are exported under their names, and a memory or table defined by the module is exported as "memory" or "table".
+ * Globals are exported as "global" followed by their index.
+ */
+final class TestModule {
+
+	static final byte I32 = 0x7F;
+	static final byte I64 = 0x7E;
+	static final byte F64 = 0x7C;
+	static final byte EXTERNREF = 0x6F;
+
+	static final int LIMITS_MAX = 0x01;
+	static final int LIMITS_SHARED = 0x02;
+
+	private record Function(String name, byte[] params, byte[] results, byte[] locals, byte[] body) {}
+
+	private record Import(String name, byte[] params, byte[] results) {}
+
+	private final List<Import> imports = new ArrayList<>();
+	private final List<Function> functions = new ArrayList<>();
+	private byte[] memory;
+	private boolean memoryImported;
+	private byte[] table;
+	private final List<byte[]> elems = new ArrayList<>();
+	private final List<byte[]> globals = new ArrayList<>();
+	private byte[] start;
+	private final List<byte[]> datas = new ArrayList<>();
+
+	/**
+	 * Defines memory 0.
+	 * @param flags The limits flags.
+	 * @param min The minimum number of pages.
+	 * @param max The maximum number of pages, used if the flags include LIMITS_MAX.
+	 */
+	TestModule memory(int flags, int min, int max) {
+		memory = limits(flags, min, max);
+		memoryImported = false;
+		return this;
+	}
+
+	/**
+	 * Imports memory 0 as env.memory.
+	 */
+	TestModule importMemory(int flags, int min, int max) {
+		memory = limits(flags, min, max);
+		memoryImported = true;
+		return this;
+	}
+
+	/**
+	 * Defines table 0 as a funcref table without a maximum size.
+	 */
+	TestModule table(int min) {
+		table = concat(new byte[] { 0x70 }, limits(0, min, 0));
+		return this;
+	}
+
+	// Defines a global initialized by a constant expression.
+	TestModule global(byte type, boolean mutable, Code init) {
+		globals.add(concat(new byte[] { type, (byte)(mutable ? 0x01 : 0x00) }, init.bytes(), new byte[] { 0x0B }));
+		return this;
+	}
+
+	// Adds an active element segment for table 0.
+	TestModule elem(int offset, int... functions) {
+		var indices = new ArrayList<byte[]>();
+		for(int function : functions) {
+			indices.add(uleb(function));
+		}
+		elems.add(concat(new byte[] { 0x00, 0x41 }, sleb(offset), new byte[] { 0x0B }, vec(indices)));
+		return this;
+	}
+
+	/**
+	 * Imports a function as env.name. Imported functions come before the functions defined by the module.
+	 */
+	TestModule importFunction(String name, byte[] params, byte[] results) {
+		imports.add(new Import(name, params, results));
+		return this;
+	}
+
+	TestModule function(String name, byte[] params, byte[] results, Code body) {
+		return function(name, params, results, new byte[0], body);
+	}
+
+	TestModule function(String name, byte[] params, byte[] results, byte[] locals, Code body) {
+		functions.add(new Function(name, params, results, locals, body.bytes()));
+		return this;
+	}
+
+	// Makes the most recently added function the start function.
+	TestModule start() {
+		start = uleb(imports.size() + functions.size() - 1);
+		return this;
+	}
+
+	// Adds an active data segment for memory 0.
+	TestModule data(int offset, byte[] bytes) {
+		datas.add(concat(new byte[] { 0x00, 0x41 }, sleb(offset), new byte[] { 0x0B }, vec(bytes)));
+		return this;
+	}
+
+	byte[] encode() {
+		var out = new ByteArrayOutputStream();
+		out.writeBytes(new byte[] { 0x00, 0x61, 0x73, 0x6D, 0x01, 0x00, 0x00, 0x00 });
+
+		var types = new ArrayList<byte[]>();
+		var importEntries = new ArrayList<byte[]>();
+		for(var imp : imports) {
+			importEntries.add(concat(name("env"), name(imp.name()), new byte[] { 0x00 }, uleb(types.size())));
+			types.add(concat(new byte[] { 0x60 }, vec(imp.params()), vec(imp.results())));
+		}
+		var funcs = new ArrayList<byte[]>();
+		var exports = new ArrayList<byte[]>();
+		var bodies = new ArrayList<byte[]>();
+		for(int i = 0; i < functions.size(); ++i) {
+			var function = functions.get(i);
+			funcs.add(uleb(types.size()));
+			types.add(concat(new byte[] { 0x60 }, vec(function.params()), vec(function.results())));
+			exports.add(concat(name(function.name()), new byte[] { 0x00 }, uleb(imports.size() + i)));
+
+			var locals = new ArrayList<byte[]>();
+			for(byte local : function.locals()) {
+				locals.add(new byte[] { 0x01, local });
+			}
+			byte[] body = concat(vec(locals), function.body(), new byte[] { 0x0B });
+			bodies.add(concat(uleb(body.length), body));
+		}
+
+		section(out, 1, vec(types));
+		if(memory != null && memoryImported) {
+			importEntries.add(concat(name("env"), name("memory"), new byte[] { 0x02 }, memory));
+		}
+		if(!importEntries.isEmpty()) {
+			section(out, 2, vec(importEntries));
+		}
+		section(out, 3, vec(funcs));
+		if(table != null) {
+			section(out, 4, vec(List.of(table)));
+			exports.add(concat(name("table"), new byte[] { 0x01 }, uleb(0)));
+		}
+		if(memory != null && !memoryImported) {
+			section(out, 5, vec(List.of(memory)));
+			exports.add(concat(name("memory"), new byte[] { 0x02 }, uleb(0)));
+		}
+		if(!globals.isEmpty()) {
+			section(out, 6, vec(globals));
+			for(int i = 0; i < globals.size(); ++i) {
+				exports.add(concat(name("global" + i), new byte[] { 0x03 }, uleb(i)));
+			}
+		}
+		section(out, 7, vec(exports));
+		if(start != null) {
+			section(out, 8, start);
+		}
+		if(!elems.isEmpty()) {
+			section(out, 9, vec(elems));
+		}
+		section(out, 10, vec(bodies));
+		if(!datas.isEmpty()) {
+			section(out, 11, vec(datas));
+		}
+		return out.toByteArray();
+	}
+
+	Module read() throws IOException, ModuleFormatException {
+		return read(encode());
+	}
+
+	static Module read(byte[] bytes) throws IOException, ModuleFormatException {
+		return new ModuleReader(new ByteArrayInputStream(bytes)).readModule();
+	}
+
+	/**
+	 * The instructions of a function body, without the final end.
+	 */
+	static final class Code {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Code op(int... bytes) {
+			for(int b : bytes) {
+				out.write(b);
+			}
+			return this;
+		}
+
+		Code localGet(int index) {
+			return op(0x20).raw(uleb(index));
+		}
+
+		Code localSet(int index) {
+			return op(0x21).raw(uleb(index));
+		}
+
+		Code call(int index) {
+			return op(0x10).raw(uleb(index));
+		}
+
+		// Calls through table 0.
+		Code callIndirect(int typeIndex) {
+			return op(0x11).raw(uleb(typeIndex)).op(0x00);
+		}
+
+		Code i32Const(int value) {
+			return op(0x41).raw(sleb(value));
+		}
+
+		Code i64Const(long value) {
+			return op(0x42).raw(sleb(value));
+		}
+
+		Code f64Const(double value) {
+			long bits = Double.doubleToRawLongBits(value);
+			op(0x44);
+			for(int i = 0; i < 8; ++i) {
+				out.write((int)(bits >>> (i * 8)));
+			}
+			return this;
+		}
+
+		Code globalGet(int index) {
+			return op(0x23).raw(uleb(index));
+		}
+
+		Code globalSet(int index) {
+			return op(0x24).raw(uleb(index));
+		}
+
+		Code i32Load(int align, int offset) {
+			return op(0x28).raw(uleb(align)).raw(uleb(offset));
+		}
+
+		Code i32Store(int align, int offset) {
+			return op(0x36).raw(uleb(align)).raw(uleb(offset));
+		}
+
+		// A 0xFE prefixed instruction.
+		Code atomic(int opcode, int align, int offset) {
+			return op(0xFE).raw(uleb(opcode)).raw(uleb(align)).raw(uleb(offset));
+		}
+
+		Code raw(byte[] bytes) {
+			out.writeBytes(bytes);
+			return this;
+		}
+
+		byte[] bytes() {
+			return out.toByteArray();
+		}
+	}
+
+	static Code code() {
+		return new Code();
+	}
+
+	static byte[] types(byte... types) {
+		return types;
+	}
+
+	private static byte[] limits(int flags, int min, int max) {
+		return (flags & LIMITS_MAX) != 0
+			? concat(new byte[] { (byte)flags }, uleb(min), uleb(max))
+			: concat(new byte[] { (byte)flags }, uleb(min));
+	}
+
+	private static void section(ByteArrayOutputStream out, int id, byte[] body) {
+		out.write(id);
+		out.writeBytes(uleb(body.length));
+		out.writeBytes(body);
+	}
+
+	private static byte[] name(String name) {
+		return concat(uleb(name.length()), name.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+	}
+
+	private static byte[] vec(byte[] items) {
+		return concat(uleb(items.length), items);
+	}
+
+	private static byte[] vec(List<byte[]> items) {
+		var out = new ByteArrayOutputStream();
+		out.writeBytes(uleb(items.size()));
+		for(byte[] item : items) {
+			out.writeBytes(item);
+		}
+		return out.toByteArray();
+	}
+
+	static byte[] concat(byte[]... parts) {
+		var out = new ByteArrayOutputStream();
+		for(byte[] part : parts) {
+			out.writeBytes(part);
+		}
+		return out.toByteArray();
+	}
+
+	static byte[] uleb(long value) {
+		var out = new ByteArrayOutputStream();
+		do {
+			int b = (int)(value & 0x7F);
+			value >>>= 7;
+			out.write(value != 0 ? b | 0x80 : b);
+		} while(value != 0);
+		return out.toByteArray();
+	}
+
+	static byte[] sleb(long value) {
+		var out = new ByteArrayOutputStream();
+		while(true) {
+			int b = (int)(value & 0x7F);
+			value >>= 7;
+			if((value == 0 && (b & 0x40) == 0) || (value == -1 && (b & 0x40) != 0)) {
+				out.write(b);
+				return out.toByteArray();
+			}
+			out.write(b | 0x80);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package dev.argon.jawawasm.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieringTests {
+
+	private static final ModuleResolver NO_IMPORTS = name -> { throw new ModuleResolutionException(); };
+
+	private static final TestModule MODULE = new TestModule()
+		.function("add", types(I32, I32), types(I32), code().localGet(0).localGet(1).op(0x6A))
+		// count loops as many times as its argument and returns the argument.
+		.function("count", types(I32), types(I32), types(I32), code()
+			.op(0x03, 0x40)
+			.localGet(1).i32Const(1).op(0x6A).op(0x22, 0x01)
+			.localGet(0).op(0x48)
+			.op(0x0D, 0x00)
+			.op(0x0B)
+			.localGet(1));
+
+	private static ModuleFunction function(InstantiatedModule instance, String name) {
+		return (ModuleFunction)instance.getExport(name);
+	}
+
+	@Test
+	void functionsAreCompiledWhenCallsReachTheThreshold() throws Throwable {
+		try(var engine = new Engine()) {
+			engine.setCompilerThreads(0);
+			engine.setCompileThreshold(10);
+			try(var instance = engine.instantiateModule(MODULE.read(), NO_IMPORTS)) {
+				var add = function(instance, "add");
+				for(int i = 0; i < 9; ++i) {
+					assertArrayEquals(new Object[] { i + 1 }, add.invokeNow(new Object[] { i, 1 }));
+				}
+				assertNull(add.slotsEntry());
+
+				assertArrayEquals(new Object[] { 10 }, add.invokeNow(new Object[] { 9, 1 }));
+				assertNotNull(add.slotsEntry());
+				assertArrayEquals(new Object[] { 11 }, add.invokeNow(new Object[] { 10, 1 }));
+			}
+		}
+	}
+
+	@Test
+	void loopBackEdgesCountTowardsTheThreshold() throws Throwable {
+		try(var engine = new Engine()) {
+			engine.setCompilerThreads(0);
+			engine.setCompileThreshold(50);
+			try(var instance = engine.instantiateModule(MODULE.read(), NO_IMPORTS)) {
+				var count = function(instance, "count");
+
+				// The call that makes the function hot finishes in the interpreter.
+				assertArrayEquals(new Object[] { 100 }, count.invokeNow(new Object[] { 100 }));
+				assertNotNull(count.slotsEntry());
+				assertArrayEquals(new Object[] { 100 }, count.invokeNow(new Object[] { 100 }));
+			}
+		}
+	}
+
+	@Test
+	void backgroundCompilationReplacesTheInterpretedFunction() throws Throwable {
+		try(var engine = new Engine()) {
+			engine.setCompilerThreads(1);
+			engine.setCompileThreshold(5);
+			try(var instance = engine.instantiateModule(MODULE.read(), NO_IMPORTS)) {
+				var add = function(instance, "add");
+				for(int i = 0; i < 1000 && add.slotsEntry() == null; ++i) {
+					assertArrayEquals(new Object[] { 3 }, add.invokeNow(new Object[] { 1, 2 }));
+					Thread.sleep(10);
+				}
+				assertNotNull(add.slotsEntry());
+				assertArrayEquals(new Object[] { 3 }, add.invokeNow(new Object[] { 1, 2 }));
+			}
+		}
+	}
+
+	@Test
+	void disabledCompilerKeepsFunctionsInterpreted() throws Throwable {
+		try(var engine = new Engine()) {
+			engine.setCompilerEnabled(false);
+			engine.setCompilerThreads(0);
+			engine.setCompileThreshold(1);
+			try(var instance = engine.instantiateModule(MODULE.read(), NO_IMPORTS)) {
+				var add = function(instance, "add");
+				for(int i = 0; i < 10; ++i) {
+					add.invokeNow(new Object[] { 1, 2 });
+				}
+				assertNull(add.slotsEntry());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+package dev.argon.jawawasm.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UtilConversionTests {
+
+	private static final double TWO_31 = 0x1p31;
+	private static final double TWO_32 = 0x1p32;
+	private static final double TWO_63 = 0x1p63;
+	private static final double TWO_64 = 0x1p64;
+
+	@Test
+	void truncF64ToS32() {
+		assertEquals(0, Util.truncF64ToS32(0.0));
+		assertEquals(0, Util.truncF64ToS32(-0.0));
+		assertEquals(Integer.MAX_VALUE, Util.truncF64ToS32(TWO_31 - 1));
+		assertEquals(Integer.MAX_VALUE, Util.truncF64ToS32(Math.nextDown(TWO_31)));
+		assertEquals(Integer.MIN_VALUE, Util.truncF64ToS32(-TWO_31));
+		assertEquals(Integer.MIN_VALUE, Util.truncF64ToS32(Math.nextUp(-TWO_31 - 1)));
+		assertEquals(-1, Util.truncF64ToS32(-1.9));
+
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToS32(TWO_31));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToS32(-TWO_31 - 1));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToS32(Double.NaN));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToS32(Double.POSITIVE_INFINITY));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToS32(Double.NEGATIVE_INFINITY));
+	}
+
+	@Test
+	void truncF64ToS64() {
+		assertEquals(0L, Util.truncF64ToS64(-0.0));
+		assertEquals(Long.MIN_VALUE, Util.truncF64ToS64(-TWO_63));
+		assertEquals(0x7FFFFFFFFFFFFC00L, Util.truncF64ToS64(Math.nextDown(TWO_63)));
+
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToS64(TWO_63));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToS64(Math.nextDown(-TWO_63)));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToS64(Double.NaN));
+	}
+
+	@Test
+	void truncF64ToU32() {
+		assertEquals(0, Util.truncF64ToU32(0.0));
+		assertEquals(0, Util.truncF64ToU32(-0.0));
+		assertEquals(0, Util.truncF64ToU32(-0.9));
+		assertEquals(Integer.MIN_VALUE, Util.truncF64ToU32(TWO_31));
+		assertEquals(-1, Util.truncF64ToU32(TWO_32 - 1));
+		assertEquals(-1, Util.truncF64ToU32(Math.nextDown(TWO_32)));
+
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToU32(-1.0));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToU32(TWO_32));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToU32(Double.NaN));
+	}
+
+	@Test
+	void truncF64ToU64() {
+		assertEquals(0L, Util.truncF64ToU64(-0.0));
+		assertEquals(0L, Util.truncF64ToU64(-0.9));
+		assertEquals(Long.MIN_VALUE, Util.truncF64ToU64(TWO_63));
+		assertEquals(0xFFFFFFFFFFFFF800L, Util.truncF64ToU64(Math.nextDown(TWO_64)));
+		assertEquals(0x7FFFFFFFFFFFFC00L, Util.truncF64ToU64(Math.nextDown(TWO_63)));
+
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToU64(-1.0));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToU64(TWO_64));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToU64(Double.NaN));
+		assertThrows(ArithmeticException.class, () -> Util.truncF64ToU64(Double.POSITIVE_INFINITY));
+	}
+
+	@Test
+	void truncSatF32U32() {
+		assertEquals(0, Util.truncSatF32U32(Float.NaN));
+		assertEquals(0, Util.truncSatF32U32(-0.0f));
+		assertEquals(0, Util.truncSatF32U32(-1.0f));
+		assertEquals(0, Util.truncSatF32U32(Float.NEGATIVE_INFINITY));
+		assertEquals(Integer.MIN_VALUE, Util.truncSatF32U32((float)TWO_31));
+		assertEquals(0xFFFFFF00, Util.truncSatF32U32(Math.nextDown((float)TWO_32)));
+		assertEquals(-1, Util.truncSatF32U32((float)TWO_32));
+		assertEquals(-1, Util.truncSatF32U32(Float.POSITIVE_INFINITY));
+	}
+
+	@Test
+	void truncSatF64U32() {
+		assertEquals(0, Util.truncSatF64U32(Double.NaN));
+		assertEquals(0, Util.truncSatF64U32(-0.0));
+		assertEquals(0, Util.truncSatF64U32(-TWO_31));
+		assertEquals(-1, Util.truncSatF64U32(Math.nextDown(TWO_32)));
+		assertEquals(-1, Util.truncSatF64U32(TWO_32));
+		assertEquals(-1, Util.truncSatF64U32(TWO_64));
+	}
+
+	@Test
+	void truncSatF32U64() {
+		assertEquals(0L, Util.truncSatF32U64(Float.NaN));
+		assertEquals(0L, Util.truncSatF32U64(-0.0f));
+		assertEquals(0L, Util.truncSatF32U64(-(float)TWO_63));
+		assertEquals(Long.MIN_VALUE, Util.truncSatF32U64((float)TWO_63));
+		assertEquals(0xFFFFFF0000000000L, Util.truncSatF32U64(Math.nextDown((float)TWO_64)));
+		assertEquals(-1L, Util.truncSatF32U64((float)TWO_64));
+		assertEquals(-1L, Util.truncSatF32U64(Float.POSITIVE_INFINITY));
+	}
+
+	@Test
+	void truncSatF64U64() {
+		assertEquals(0L, Util.truncSatF64U64(Double.NaN));
+		assertEquals(0L, Util.truncSatF64U64(-0.0));
+		assertEquals(0L, Util.truncSatF64U64(Double.NEGATIVE_INFINITY));
+		assertEquals(Long.MIN_VALUE, Util.truncSatF64U64(TWO_63));
+		assertEquals(0x7FFFFFFFFFFFFC00L, Util.truncSatF64U64(Math.nextDown(TWO_63)));
+		assertEquals(0xFFFFFFFFFFFFF800L, Util.truncSatF64U64(Math.nextDown(TWO_64)));
+		assertEquals(-1L, Util.truncSatF64U64(TWO_64));
+		assertEquals(-1L, Util.truncSatF64U64(Double.POSITIVE_INFINITY));
+	}
+
+	@Test
+	void truncPreservesSignedZero() {
+		assertEquals(-0.0f, Util.truncF32(-0.0f));
+		assertEquals(-0.0f, Util.truncF32(-0.5f));
+		assertEquals(0.0f, Util.truncF32(0.5f));
+		assertEquals(-0.0, Util.truncF64(-0.0));
+		assertEquals(-0.0, Util.truncF64(-0.5));
+		assertEquals(0.0, Util.truncF64(0.5));
+		assertTrue(Float.isNaN(Util.truncF32(Float.NaN)));
+		assertTrue(Double.isNaN(Util.truncF64(Double.NaN)));
+	}
+
+	@Test
+	void u64ToF32() {
+		assertEquals(0.0f, Util.u64ToF32(0L));
+		assertEquals((float)TWO_63, Util.u64ToF32(Long.MIN_VALUE));
+		assertEquals((float)TWO_64, Util.u64ToF32(-1L));
+
+		// 2^63 + 2^39 is halfway between two floats; ties round to the even mantissa (2^63).
+		assertEquals((float)TWO_63, Util.u64ToF32(Long.MIN_VALUE | (1L << 39)));
+		// 2^63 + 3 * 2^39 is halfway as well and rounds up to the even neighbour.
+		assertEquals((float)(TWO_63 + 0x1p41), Util.u64ToF32(Long.MIN_VALUE | (3L << 39)));
+		// Any bit below the halfway point must still round up; a naive shift would drop it.
+		assertEquals((float)(TWO_63 + 0x1p40), Util.u64ToF32(Long.MIN_VALUE | (1L << 39) | 1L));
+		assertEquals((float)TWO_63, Util.u64ToF32(Long.MIN_VALUE | ((1L << 39) - 1)));
+	}
+
+	@Test
+	void u64ToF64() {
+		assertEquals(0.0, Util.u64ToF64(0L));
+		assertEquals(TWO_63, Util.u64ToF64(Long.MIN_VALUE));
+		assertEquals(TWO_64, Util.u64ToF64(-1L));
+		assertEquals(TWO_63, Util.u64ToF64(Long.MIN_VALUE | (1L << 10)));
+		assertEquals(TWO_63 + 0x1p12, Util.u64ToF64(Long.MIN_VALUE | (3L << 10)));
+		assertEquals(TWO_63 + 0x1p11, Util.u64ToF64(Long.MIN_VALUE | (1L << 10) | 1L));
+	}
+
+}
@@ -0,0 +1,104 @@
+package dev.argon.jawawasm.engine;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static dev.argon.jawawasm.engine.TestModule.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many virtual threads calling exports on separate instances that share one engine.
+ * Run with the stressTest task. Reports the throughput and fails if an engine monitor pins a carrier thread.
+ */
+@Tag("stress")
+class VirtualThreadStressTests {
+
+	private static final int THREADS = 10_000;
+	private static final int CALLS = 1_000;
+	private static final long FUEL = 1_000_000_000L;
+
+	// bump adds its argument to the counter at address 0 and returns the new value.
+	// sum returns the sum of the integers below its argument, which is long enough for the functions to be compiled.
+	private static final TestModule MODULE = new TestModule()
+		.memory(LIMITS_MAX, 1, 1)
+		.function("bump", types(I32), types(I32), types(I32), code()
+			.i32Const(0)
+			.i32Const(0).i32Load(2, 0).localGet(0).op(0x6A)
+			.op(0x22, 0x01)
+			.i32Store(2, 0)
+			.localGet(1))
+		.function("sum", types(I32), types(I32), types(I32), code()
+			.op(0x03, 0x40)
+			.localGet(1).localGet(0).op(0x6A).localSet(1)
+			.localGet(0).i32Const(1).op(0x6B).op(0x22, 0x00)
+			.op(0x0D, 0x00)
+			.op(0x0B)
+			.localGet(1));
+
+	@Test
+	void virtualThreadsCallSeparateInstances() throws Throwable {
+		var module = MODULE.read();
+		var pinnedEvents = Files.createTempFile("pinned", ".jfr");
+		try(var engine = new Engine(); var recording = new Recording()) {
+			engine.setFuelEnabled(true);
+			engine.setCompileThreshold(100);
+			recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+			recording.start();
+
+			long start = System.nanoTime();
+			var results = new ArrayList<Future<Long>>();
+			try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+				for(int t = 0; t < THREADS; ++t) {
+					int seed = t;
+					results.add(executor.submit(() -> {
+						try(var instance = engine.instantiateModule(module, name -> { throw new ModuleResolutionException(); })) {
+							var bump = (WasmFunction)instance.getExport("bump");
+							var sum = (WasmFunction)instance.getExport("sum");
+
+							// Each thread meters its own invocation, so the fuel used does not depend on other threads.
+							var invocation = new Invocation(engine);
+							invocation.setFuel(FUEL);
+							int expected = 0;
+							for(int i = 0; i < CALLS; ++i) {
+								expected += seed;
+								assertArrayEquals(new Object[] { expected }, FunctionResult.resolveWith(() -> invocation.invoke(bump, new Object[] { seed })));
+								assertArrayEquals(new Object[] { 45 }, FunctionResult.resolveWith(() -> invocation.invoke(sum, new Object[] { 9 })));
+							}
+							return FUEL - invocation.getFuel();
+						}
+					}));
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+
+			long fuelUsed = results.getFirst().get();
+			for(var result : results) {
+				assertEquals(fuelUsed, (long)result.get());
+			}
+
+			recording.stop();
+			recording.dump(pinnedEvents);
+			long pinned = RecordingFile.readAllEvents(pinnedEvents).stream()
+				.filter(event -> event.getStackTrace() != null && event.getStackTrace().getFrames().stream()
+					.anyMatch(frame -> frame.getMethod().getType().getName().startsWith("dev.argon.jawawasm.")))
+				.count();
+
+			long calls = 2L * THREADS * CALLS;
+			System.out.printf("%d virtual threads, %d calls in %d ms (%.0f calls/s)%n", THREADS, calls, elapsed / 1_000_000, calls * 1e9 / elapsed);
+			assertEquals(0, pinned, "engine code pinned a carrier thread");
+			assertEquals(0, engine.getMemoryUsage());
+		}
+		finally {
+			Files.deleteIfExists(pinnedEvents);
+		}
+	}
+
+}
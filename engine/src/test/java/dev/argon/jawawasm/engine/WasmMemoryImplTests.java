@@ -0,0 +1,204 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.instructions.MemoryInstr.AtomicRmwOp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WasmMemoryImplTests {
+
+	private Arena arena;
+	private WasmMemoryImpl memory;
+
+	@BeforeEach
+	void setUp() {
+		arena = Arena.ofShared();
+		memory = new WasmMemoryImpl(arena.allocate(Util.PAGE_SIZE, Util.PAGE_SIZE));
+	}
+
+	@AfterEach
+	void tearDown() {
+		arena.close();
+	}
+
+	private void storeBytes(int address, int... values) {
+		for(int i = 0; i < values.length; ++i) {
+			memory.storeI8(address + i, (byte)values[i]);
+		}
+	}
+
+	private void assertBytes(int address, int... expected) {
+		for(int i = 0; i < expected.length; ++i) {
+			assertEquals((byte)expected[i], memory.loadI8(address + i), "byte " + (address + i));
+		}
+	}
+
+	@Test
+	void fillOnlyChangesItsRange() {
+		storeBytes(0, 1, 2, 3, 4, 5, 6);
+		memory.fill(1, (byte)9, 4);
+		assertBytes(0, 1, 9, 9, 9, 9, 6);
+
+		memory.fill(Util.PAGE_SIZE - 2, (byte)7, 2);
+		assertBytes(Util.PAGE_SIZE - 2, 7, 7);
+
+		// Zero-length fills at the end of the memory are allowed.
+		memory.fill(Util.PAGE_SIZE, (byte)7, 0);
+	}
+
+	@Test
+	void copyWithinHandlesOverlap() {
+		storeBytes(0, 1, 2, 3, 4, 5, 6, 7, 8);
+
+		// Forward overlap, where the destination is after the source.
+		memory.copyWithin(2, 0, 5);
+		assertBytes(0, 1, 2, 1, 2, 3, 4, 5, 8);
+
+		// Backward overlap.
+		storeBytes(0, 1, 2, 3, 4, 5, 6, 7, 8);
+		memory.copyWithin(0, 2, 5);
+		assertBytes(0, 3, 4, 5, 6, 7, 6, 7, 8);
+	}
+
+	@Test
+	void bulkOperationsOutOfBoundsDoNotWrite() {
+		storeBytes(Util.PAGE_SIZE - 4, 1, 2, 3, 4);
+
+		assertThrows(IndexOutOfBoundsException.class, () -> memory.fill(Util.PAGE_SIZE - 2, (byte)9, 3));
+		assertThrows(IndexOutOfBoundsException.class, () -> memory.fill(-1, (byte)9, 1));
+		assertThrows(IndexOutOfBoundsException.class, () -> memory.copyWithin(Util.PAGE_SIZE - 2, 0, 3));
+		assertThrows(IndexOutOfBoundsException.class, () -> memory.copyWithin(0, Util.PAGE_SIZE - 2, 3));
+		assertThrows(IndexOutOfBoundsException.class, () -> memory.copyWithin(0, 0, -1));
+		assertBytes(Util.PAGE_SIZE - 4, 1, 2, 3, 4);
+		assertBytes(0, 0, 0, 0);
+	}
+
+	@Test
+	void copyToAnotherMemory() {
+		var other = new WasmMemoryImpl(arena.allocate(Util.PAGE_SIZE, Util.PAGE_SIZE));
+		storeBytes(10, 1, 2, 3);
+		memory.copyTo(10, other, 20, 3);
+		for(int i = 0; i < 3; ++i) {
+			assertEquals((byte)(i + 1), other.loadI8(20 + i));
+		}
+
+		assertThrows(IndexOutOfBoundsException.class, () -> memory.copyTo(0, other, Util.PAGE_SIZE - 1, 2));
+	}
+
+	@Test
+	void alignedAccessesAllowUnalignedAddresses() {
+		for(int address = 8; address < 16; ++address) {
+			memory.storeI64Aligned(address, 0x0102030405060708L);
+			assertEquals(0x0102030405060708L, memory.loadI64(address));
+			assertEquals(0x0102030405060708L, memory.loadI64Aligned(address));
+			assertEquals(0x05060708, memory.loadI32Aligned(address));
+			assertEquals((short)0x0708, memory.loadI16Aligned(address));
+
+			memory.storeI32Aligned(address, 0x11223344);
+			assertEquals(0x11223344, memory.loadI32(address));
+			memory.storeI16Aligned(address, (short)0x5566);
+			assertEquals((short)0x5566, memory.loadI16(address));
+
+			memory.storeF32Aligned(address, 1.5f);
+			assertEquals(1.5f, memory.loadF32Aligned(address));
+			memory.storeF64Aligned(address, -2.25);
+			assertEquals(-2.25, memory.loadF64Aligned(address));
+		}
+	}
+
+	@Test
+	void alignedAccessesAreBoundsChecked() {
+		assertThrows(IndexOutOfBoundsException.class, () -> memory.loadI32Aligned(Util.PAGE_SIZE));
+		assertThrows(IndexOutOfBoundsException.class, () -> memory.loadI64Aligned(Util.PAGE_SIZE - 4));
+		assertThrows(IndexOutOfBoundsException.class, () -> memory.storeI16Aligned(Util.PAGE_SIZE - 1, (short)0));
+		assertThrows(IndexOutOfBoundsException.class, () -> memory.storeF64Aligned(-8, 0.0));
+	}
+
+	@Test
+	void narrowReadModifyWriteOnlyChangesItsBytes() {
+		for(int offset = 0; offset < 4; ++offset) {
+			memory.storeI32(0, 0x44FF22FF);
+			memory.storeI8(offset, (byte)0xFF);
+			int before = memory.loadI32(0);
+
+			// Overflow wraps within the byte instead of carrying into the next one.
+			assertEquals((byte)0xFF, memory.atomicRmwI8(AtomicRmwOp.ADD, offset, (byte)1));
+			assertEquals(before & ~(0xFF << offset * 8), memory.loadI32(0));
+
+			assertEquals((byte)0x00, memory.atomicRmwI8(AtomicRmwOp.SUB, offset, (byte)1));
+			assertEquals(before, memory.loadI32(0));
+
+			assertEquals((byte)0xFF, memory.atomicRmwI8(AtomicRmwOp.XCHG, offset, (byte)0x5A));
+			assertEquals((byte)0x5A, memory.loadI8(offset));
+		}
+
+		for(int offset = 0; offset < 4; offset += 2) {
+			memory.storeI32(0, 0x1234FFFF);
+			memory.storeI16(offset, (short)0xFFFF);
+			int before = memory.loadI32(0);
+
+			assertEquals((short)0xFFFF, memory.atomicRmwI16(AtomicRmwOp.ADD, offset, (short)1));
+			assertEquals(before & ~(0xFFFF << offset * 8), memory.loadI32(0));
+
+			assertEquals((short)0x0000, memory.atomicRmwI16(AtomicRmwOp.OR, offset, (short)0x8001));
+			assertEquals((short)0x8001, memory.loadI16(offset));
+		}
+	}
+
+	@Test
+	void narrowCompareExchange() {
+		memory.storeI32(0, 0x80FF7F01);
+
+		// Fails without changing the word if the value does not match.
+		assertEquals((byte)0x7F, memory.atomicCompareExchangeI8(1, (byte)0x7E, (byte)0x00));
+		assertEquals(0x80FF7F01, memory.loadI32(0));
+
+		// Sign extended expected values match the stored bytes.
+		assertEquals((byte)0xFF, memory.atomicCompareExchangeI8(2, (byte)0xFF, (byte)0x80));
+		assertEquals(0x80807F01, memory.loadI32(0));
+
+		assertEquals((short)0x8080, memory.atomicCompareExchangeI16(2, (short)0x8080, (short)0x1234));
+		assertEquals(0x12347F01, memory.loadI32(0));
+
+		assertEquals((short)0x7F01, memory.atomicCompareExchangeI16(0, (short)0x7F02, (short)0));
+		assertEquals(0x12347F01, memory.loadI32(0));
+	}
+
+	@Test
+	void concurrentNarrowUpdatesOfOneWordAreNotLost() throws Throwable {
+		final int updates = 100_000;
+		memory.storeI32(0, 0);
+
+		var threads = new ArrayList<Thread>();
+		for(int lane = 0; lane < 4; ++lane) {
+			int address = lane;
+			threads.add(Thread.ofPlatform().start(() -> {
+				for(int i = 0; i < updates; ++i) {
+					if(address < 2) {
+						memory.atomicRmwI8(AtomicRmwOp.ADD, address, (byte)1);
+					}
+					else {
+						// Compare and exchange loop on the byte, as a guest would write it.
+						byte old;
+						do {
+							old = memory.atomicLoadI8(address);
+						} while(memory.atomicCompareExchangeI8(address, old, (byte)(old + 1)) != old);
+					}
+				}
+			}));
+		}
+		for(var thread : threads) {
+			thread.join();
+		}
+
+		for(int lane = 0; lane < 4; ++lane) {
+			assertEquals((byte)updates, memory.loadI8(lane));
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.Limits;
+import dev.argon.jawawasm.format.types.MemType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class WasmMemoryMetaTests {
+
+	private static final long NO_TIMEOUT = -1;
+
+	private Engine engine;
+	private WasmMemoryMeta memory;
+
+	@BeforeEach
+	void setUp() {
+		engine = new Engine();
+		memory = WasmMemoryMeta.create(engine, new MemType(new Limits(1, 1), true));
+	}
+
+	@AfterEach
+	void tearDown() {
+		memory.close();
+		engine.close();
+	}
+
+	@Test
+	void waitReturnsWhenTheValueDiffers() throws Throwable {
+		memory.storeI32(8, 5);
+		assertEquals(1, memory.atomicWait32(8, 6, NO_TIMEOUT));
+		memory.storeI64(16, 5L << 32);
+		assertEquals(1, memory.atomicWait64(16, 5L, NO_TIMEOUT));
+	}
+
+	@Test
+	void waitTimesOut() throws Throwable {
+		long start = System.nanoTime();
+		assertEquals(2, memory.atomicWait32(0, 0, TimeUnit.MILLISECONDS.toNanos(20)));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+		assertEquals(2, memory.atomicWait64(0, 0L, 0));
+
+		// The timed out waiters are no longer queued.
+		assertEquals(0, memory.atomicNotify(0, 1));
+	}
+
+	@Test
+	void notifyWakesAtMostCountWaiters() throws Throwable {
+		var waiters = startWaiters(3, 4);
+
+		assertEquals(0, memory.atomicNotify(8, 1));
+		assertEquals(2, memory.atomicNotify(4, 2));
+		assertEquals(1, memory.atomicNotify(4, 2));
+		assertEquals(0, memory.atomicNotify(4, 2));
+		for(var waiter : waiters) {
+			assertEquals(0, (int)waiter.get(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void notifyCountIsUnsigned() throws Throwable {
+		var waiters = startWaiters(3, 0);
+
+		assertEquals(0, memory.atomicNotify(0, 0));
+		assertEquals(3, memory.atomicNotify(0, -1));
+		for(var waiter : waiters) {
+			assertEquals(0, (int)waiter.get(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void interruptStopsWaiting() throws Throwable {
+		var result = new CompletableFuture<Throwable>();
+		var thread = Thread.ofPlatform().start(() -> {
+			try {
+				memory.atomicWait32(0, 0, NO_TIMEOUT);
+				result.complete(null);
+			}
+			catch(Throwable ex) {
+				result.complete(ex);
+			}
+		});
+		awaitWaiting(thread);
+		thread.interrupt();
+
+		assertInstanceOf(InterruptedException.class, result.get(10, TimeUnit.SECONDS));
+		assertEquals(0, memory.atomicNotify(0, 1));
+	}
+
+	@Test
+	void unsharedMemoriesCannotWait() throws Throwable {
+		try(var unshared = WasmMemoryMeta.create(engine, new MemType(new Limits(1, 1), false))) {
+			assertThrows(UnsharedMemoryException.class, () -> unshared.atomicWait32(0, 0, 0));
+			assertThrows(UnsharedMemoryException.class, () -> unshared.atomicWait64(0, 0L, 0));
+			assertEquals(0, unshared.atomicNotify(0, 1));
+		}
+	}
+
+	// Starts threads waiting on an address that holds 0, and returns once they are all queued.
+	private List<CompletableFuture<Integer>> startWaiters(int count, int address) {
+		var waiters = new ArrayList<CompletableFuture<Integer>>();
+		for(int i = 0; i < count; ++i) {
+			var waiter = new CompletableFuture<Integer>();
+			var thread = Thread.ofPlatform().start(() -> {
+				try {
+					waiter.complete(memory.atomicWait32(address, 0, NO_TIMEOUT));
+				}
+				catch(Throwable ex) {
+					waiter.completeExceptionally(ex);
+				}
+			});
+			awaitWaiting(thread);
+			waiters.add(waiter);
+		}
+		return waiters;
+	}
+
+	// A waiting thread is queued before it parks on the memory.
+	private void awaitWaiting(Thread thread) {
+		while(LockSupport.getBlocker(thread) != memory) {
+			Thread.onSpinWait();
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package dev.argon.jawawasm.engine;
+
+import dev.argon.jawawasm.format.types.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WasmTableTests {
+
+	private static final FuncType I32_TO_I32 = new FuncType(new ResultType(List.of(NumType.I32)), new ResultType(List.of(NumType.I32)));
+	private static final FuncType NO_PARAMS = new FuncType(new ResultType(List.of()), new ResultType(List.of()));
+
+	private static WasmFunction hostFunction(FuncType type) {
+		return new WasmFunction() {
+			@Override
+			public FuncType type() {
+				return type;
+			}
+
+			@Override
+			public FunctionResult invoke(Object[] args) {
+				return new FunctionResult.Values(args);
+			}
+		};
+	}
+
+	private static WasmTable table(int size) {
+		return new WasmTable(new TableType(new Limits(size, null), new FuncRef()));
+	}
+
+	@Test
+	void hostFunctionsKeepTheirIdentity() {
+		var function = hostFunction(I32_TO_I32);
+		var table = table(2);
+		table.set(0, function);
+		table.grow(1, function);
+		WasmTable.fill(1, function, 1, table);
+
+		assertSame(function, table.get(0));
+		assertSame(function, table.get(1));
+		assertSame(function, table.get(2));
+	}
+
+	@Test
+	void indirectCallsCheckHostFunctionTypes() throws Throwable {
+		var function = hostFunction(I32_TO_I32);
+		var table = table(3);
+		table.set(0, function);
+
+		assertSame(function, table.getFunction(0, FuncTypeIds.of(I32_TO_I32)));
+		assertThrows(IndirectCallTypeMismatchException.class, () -> table.getFunction(0, FuncTypeIds.of(NO_PARAMS)));
+		assertThrows(NullPointerException.class, () -> table.getFunction(1, FuncTypeIds.of(I32_TO_I32)));
+
+		// Structurally equal types share an ID even when the type objects differ.
+		var equalType = new FuncType(new ResultType(List.of(NumType.I32)), new ResultType(List.of(NumType.I32)));
+		assertSame(function, table.getFunction(0, FuncTypeIds.of(equalType)));
+	}
+
+	@Test
+	void copiedHostFunctionsKeepTheirTypes() throws Throwable {
+		var function = hostFunction(I32_TO_I32);
+		var source = table(2);
+		var destination = table(2);
+		source.set(1, function);
+		WasmTable.copy(1, 1, 0, destination, source);
+
+		assertSame(function, destination.get(0));
+		assertSame(function, destination.getFunction(0, FuncTypeIds.of(I32_TO_I32)));
+
+		// Overlapping copies within one table.
+		WasmTable.copy(1, 0, 1, destination, destination);
+		assertSame(function, destination.getFunction(1, FuncTypeIds.of(I32_TO_I32)));
+	}
+
+}
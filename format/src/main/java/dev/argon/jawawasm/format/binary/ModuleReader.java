@@ -264,8 +264,11 @@ public class ModuleReader {
 	}
 
 	private Limits readLimits() throws IOException, ModuleFormatException {
-		int b = readU7();
-		return switch(b) {
+		return readLimits(readU7());
+	}
+
+	private Limits readLimits(int flags) throws IOException, ModuleFormatException {
+		return switch(flags) {
 			case 0x00 -> {
 				int min = readU32();
 				yield new Limits(min, null);
@@ -282,8 +285,10 @@ public class ModuleReader {
 	}
 
 	private MemType readMemType() throws IOException, ModuleFormatException {
-		var limits = readLimits();
-		return new MemType(limits);
+		// Bit 1 of the limits flags marks a shared memory.
+		int flags = readU7();
+		var limits = readLimits(flags & ~0x02);
+		return new MemType(limits, (flags & 0x02) != 0);
 	}
 
 	private TableType readTableType() throws IOException, ModuleFormatException {
@@ -892,6 +897,8 @@ public class ModuleReader {
 				default -> throw new ModuleFormatException("illegal opcode");
 			};
 
+			case 0xFE -> readAtomicInstr(readU32());
+
 			case 0xFD -> {
 				int vecOp = readU32();
 				yield switch(vecOp) {
@@ -1353,6 +1360,67 @@ public class ModuleReader {
 		};
 	}
 
+	private MemoryInstr readAtomicInstr(int op) throws IOException, ModuleFormatException {
+		return switch(op) {
+			case 0x00 -> new MemoryInstr.Memory_Atomic_Notify(readMemArg());
+			case 0x01 -> new MemoryInstr.Memory_Atomic_Wait(NumericInstr.NumSize._32, readMemArg());
+			case 0x02 -> new MemoryInstr.Memory_Atomic_Wait(NumericInstr.NumSize._64, readMemArg());
+			case 0x03 -> {
+				if(readByte() != 0) {
+					throw new ModuleFormatException("expected 0");
+				}
+				yield new MemoryInstr.Atomic_Fence();
+			}
+
+			case 0x10 -> new MemoryInstr.Inn_Atomic_Load(NumericInstr.NumSize._32, MemoryInstr.AtomicSize._32, readMemArg());
+			case 0x11 -> new MemoryInstr.Inn_Atomic_Load(NumericInstr.NumSize._64, MemoryInstr.AtomicSize._64, readMemArg());
+			case 0x12 -> new MemoryInstr.Inn_Atomic_Load(NumericInstr.NumSize._32, MemoryInstr.AtomicSize._8, readMemArg());
+			case 0x13 -> new MemoryInstr.Inn_Atomic_Load(NumericInstr.NumSize._32, MemoryInstr.AtomicSize._16, readMemArg());
+			case 0x14 -> new MemoryInstr.Inn_Atomic_Load(NumericInstr.NumSize._64, MemoryInstr.AtomicSize._8, readMemArg());
+			case 0x15 -> new MemoryInstr.Inn_Atomic_Load(NumericInstr.NumSize._64, MemoryInstr.AtomicSize._16, readMemArg());
+			case 0x16 -> new MemoryInstr.Inn_Atomic_Load(NumericInstr.NumSize._64, MemoryInstr.AtomicSize._32, readMemArg());
+
+			case 0x17 -> new MemoryInstr.Inn_Atomic_Store(NumericInstr.NumSize._32, MemoryInstr.AtomicSize._32, readMemArg());
+			case 0x18 -> new MemoryInstr.Inn_Atomic_Store(NumericInstr.NumSize._64, MemoryInstr.AtomicSize._64, readMemArg());
+			case 0x19 -> new MemoryInstr.Inn_Atomic_Store(NumericInstr.NumSize._32, MemoryInstr.AtomicSize._8, readMemArg());
+			case 0x1A -> new MemoryInstr.Inn_Atomic_Store(NumericInstr.NumSize._32, MemoryInstr.AtomicSize._16, readMemArg());
+			case 0x1B -> new MemoryInstr.Inn_Atomic_Store(NumericInstr.NumSize._64, MemoryInstr.AtomicSize._8, readMemArg());
+			case 0x1C -> new MemoryInstr.Inn_Atomic_Store(NumericInstr.NumSize._64, MemoryInstr.AtomicSize._16, readMemArg());
+			case 0x1D -> new MemoryInstr.Inn_Atomic_Store(NumericInstr.NumSize._64, MemoryInstr.AtomicSize._32, readMemArg());
+
+			// The read-modify-write instructions come in groups of seven with the same sizes for each operation.
+			default -> {
+				if(op < 0x1E || op > 0x4E) {
+					throw new ModuleFormatException("illegal opcode");
+				}
+
+				int group = (op - 0x1E) / 7;
+				var numSize = switch((op - 0x1E) % 7) {
+					case 0, 2, 3 -> NumericInstr.NumSize._32;
+					default -> NumericInstr.NumSize._64;
+				};
+				var size = switch((op - 0x1E) % 7) {
+					case 0 -> MemoryInstr.AtomicSize._32;
+					case 1 -> MemoryInstr.AtomicSize._64;
+					case 2, 4 -> MemoryInstr.AtomicSize._8;
+					case 3, 5 -> MemoryInstr.AtomicSize._16;
+					default -> MemoryInstr.AtomicSize._32;
+				};
+				var memArg = readMemArg();
+
+				yield switch(group) {
+					case 0 -> new MemoryInstr.Inn_Atomic_Rmw(numSize, size, MemoryInstr.AtomicRmwOp.ADD, memArg);
+					case 1 -> new MemoryInstr.Inn_Atomic_Rmw(numSize, size, MemoryInstr.AtomicRmwOp.SUB, memArg);
+					case 2 -> new MemoryInstr.Inn_Atomic_Rmw(numSize, size, MemoryInstr.AtomicRmwOp.AND, memArg);
+					case 3 -> new MemoryInstr.Inn_Atomic_Rmw(numSize, size, MemoryInstr.AtomicRmwOp.OR, memArg);
+					case 4 -> new MemoryInstr.Inn_Atomic_Rmw(numSize, size, MemoryInstr.AtomicRmwOp.XOR, memArg);
+					case 5 -> new MemoryInstr.Inn_Atomic_Rmw(numSize, size, MemoryInstr.AtomicRmwOp.XCHG, memArg);
+					default -> new MemoryInstr.Inn_Atomic_Cmpxchg(numSize, size, memArg);
+				};
+			}
+		};
+	}
+
 	private MemoryInstr.MemArg readMemArg() throws IOException, ModuleFormatException {
 		var align = readU32();
 		var offset = readU32();
@@ -283,4 +283,115 @@ public sealed interface MemoryInstr extends Instr {
 	public static record Data_Drop(DataIdx data) implements MemoryInstr {}
 
 
+	/**
+	 * The number of bits accessed by an atomic instruction.
+	 */
+	public static enum AtomicSize {
+		/**
+		 * 8-bit
+		 */
+		_8,
+
+		/**
+		 * 16-bit
+		 */
+		_16,
+
+		/**
+		 * 32-bit
+		 */
+		_32,
+
+		/**
+		 * 64-bit
+		 */
+		_64,
+	}
+
+	/**
+	 * The operation of an atomic read-modify-write instruction.
+	 */
+	public static enum AtomicRmwOp {
+		/**
+		 * +
+		 */
+		ADD,
+
+		/**
+		 * -
+		 */
+		SUB,
+
+		/**
+		 * Bitwise And
+		 */
+		AND,
+
+		/**
+		 * Bitwise Or
+		 */
+		OR,
+
+		/**
+		 * Bitwise Xor
+		 */
+		XOR,
+
+		/**
+		 * Exchange
+		 */
+		XCHG,
+	}
+
+	/**
+	 * WebAssembly `memory.atomic.notify` instruction
+	 * @param memArg The memory argument.
+	 */
+	public static record Memory_Atomic_Notify(MemArg memArg) implements MemoryInstr {}
+
+	/**
+	 * WebAssembly `memory.atomic.waitnn` instruction
+	 * @param numSize The size of the expected value (nn).
+	 * @param memArg The memory argument.
+	 */
+	public static record Memory_Atomic_Wait(NumericInstr.NumSize numSize, MemArg memArg) implements MemoryInstr {}
+
+	/**
+	 * WebAssembly `atomic.fence` instruction
+	 */
+	public static record Atomic_Fence() implements MemoryInstr {}
+
+	/**
+	 * WebAssembly `inn.atomic.load` and `inn.atomic.loadm_u` instructions
+	 * @param numSize The size of the number (nn).
+	 * @param size The size of the value in memory (m), which is the size of the number for `inn.atomic.load`.
+	 * @param memArg The memory argument.
+	 */
+	public static record Inn_Atomic_Load(NumericInstr.NumSize numSize, AtomicSize size, MemArg memArg) implements MemoryInstr {}
+
+	/**
+	 * WebAssembly `inn.atomic.store` and `inn.atomic.storem` instructions
+	 * @param numSize The size of the number (nn).
+	 * @param size The size of the value in memory (m), which is the size of the number for `inn.atomic.store`.
+	 * @param memArg The memory argument.
+	 */
+	public static record Inn_Atomic_Store(NumericInstr.NumSize numSize, AtomicSize size, MemArg memArg) implements MemoryInstr {}
+
+	/**
+	 * WebAssembly `inn.atomic.rmw.op` and `inn.atomic.rmwm.op_u` instructions
+	 * @param numSize The size of the number (nn).
+	 * @param size The size of the value in memory (m), which is the size of the number for `inn.atomic.rmw.op`.
+	 * @param op The operation.
+	 * @param memArg The memory argument.
+	 */
+	public static record Inn_Atomic_Rmw(NumericInstr.NumSize numSize, AtomicSize size, AtomicRmwOp op, MemArg memArg) implements MemoryInstr {}
+
+	/**
+	 * WebAssembly `inn.atomic.rmw.cmpxchg` and `inn.atomic.rmwm.cmpxchg_u` instructions
+	 * @param numSize The size of the number (nn).
+	 * @param size The size of the value in memory (m), which is the size of the number for `inn.atomic.rmw.cmpxchg`.
+	 * @param memArg The memory argument.
+	 */
+	public static record Inn_Atomic_Cmpxchg(NumericInstr.NumSize numSize, AtomicSize size, MemArg memArg) implements MemoryInstr {}
+
 }
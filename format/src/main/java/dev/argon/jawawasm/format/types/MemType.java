@@ -3,6 +3,14 @@ package dev.argon.jawawasm.format.types;
 /**
  * The type of a memory.
  * @param limits The limits on the memory sizes.
+ * @param shared Whether the memory can be shared between threads.
  */
-public record MemType(Limits limits) {
+public record MemType(Limits limits, boolean shared) {
+	/**
+	 * Creates the type of a memory that is not shared.
+	 * @param limits The limits on the memory sizes.
+	 */
+	public MemType(Limits limits) {
+		this(limits, false);
+	}
 }